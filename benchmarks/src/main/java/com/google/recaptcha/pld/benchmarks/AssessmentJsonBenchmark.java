@@ -0,0 +1,95 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import com.google.recaptcha.pld.pld.util.AssessmentJsonComponent;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.module.SimpleModule;
+
+/**
+ * Measures the Jackson bridge for protobuf Assessments on a filled-in response assessment carrying
+ * {@code prefixCount} encrypted leak match prefixes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssessmentJsonBenchmark {
+
+  @Param({"1", "256"})
+  public int prefixCount;
+
+  private JsonMapper mapper;
+
+  private Assessment assessment;
+
+  private String json;
+
+  @Setup
+  public void setUp() throws InvalidProtocolBufferException {
+    mapper =
+        JsonMapper.builder()
+            .addModule(
+                new SimpleModule()
+                    .addSerializer(Assessment.class, new AssessmentJsonComponent.Serializer())
+                    .addDeserializer(Assessment.class, new AssessmentJsonComponent.Deserializer()))
+            .build();
+
+    Random random = new Random(42);
+    PrivatePasswordLeakVerification verification =
+        PrivatePasswordLeakVerification.newBuilder()
+            .setLookupHashPrefix(BenchmarkFixtures.randomMatchPrefixes(1, random).get(0))
+            .setEncryptedUserCredentialsHash(
+                BenchmarkFixtures.randomMatchPrefixes(1, random).get(0))
+            .setReencryptedUserCredentialsHash(
+                BenchmarkFixtures.randomMatchPrefixes(1, random).get(0))
+            .addAllEncryptedLeakMatchPrefixes(
+                BenchmarkFixtures.randomMatchPrefixes(prefixCount, random))
+            .build();
+    assessment =
+        BenchmarkFixtures.responseAssessment(
+            BenchmarkFixtures.requestAssessment(random), verification);
+    // Requests carry the assessment as a JSON object, in the protobuf JSON mapping.
+    json = JsonFormat.printer().print(assessment);
+  }
+
+  @Benchmark
+  public String serialize() {
+    return mapper.writeValueAsString(assessment);
+  }
+
+  @Benchmark
+  public Assessment deserialize() {
+    return mapper.readValue(json, Assessment.class);
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptcha.pld.pld.stub.StubPasswordLeakServer;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import com.google.recaptchaenterprise.v1.RiskAnalysis;
+import com.google.recaptchaenterprise.v1.RiskAnalysis.ClassificationReason;
+import com.google.recaptchaenterprise.v1.TokenProperties;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/** Shared inputs for the benchmarks, sized like production traffic. */
+final class BenchmarkFixtures {
+
+  static final PlaintextCredentials LEAKED_CREDENTIALS =
+      new PlaintextCredentials("leakedusername", "leakedpassword");
+
+  static final PlaintextCredentials CLEAN_CREDENTIALS =
+      new PlaintextCredentials("cleanusername", "a-much-better-password");
+
+  /** reCAPTCHA tokens are typically between 1.5 and 2 KB of URL-safe base64. */
+  private static final int TOKEN_BYTES = 1300;
+
+  private static final int MATCH_PREFIX_BYTES = 20;
+
+  private BenchmarkFixtures() {}
+
+  /**
+   * Runs the engine on the calling thread, so benchmarks measure the hashing itself rather than
+   * hand-offs to a pool.
+   */
+  static PasswordCheckEngine newEngine() {
+    return new PasswordCheckEngine(MoreExecutors.directExecutor());
+  }
+
+  static StubPasswordLeakServer newServer() {
+    return new StubPasswordLeakServer(List.of(LEAKED_CREDENTIALS));
+  }
+
+  static PrivatePasswordLeakVerification request(EncryptedCredentials verification) {
+    return PrivatePasswordLeakVerification.newBuilder()
+        .setLookupHashPrefix(verification.getLookupHashPrefix())
+        .setEncryptedUserCredentialsHash(verification.getEncryptedUserCredentialsHash())
+        .build();
+  }
+
+  /** Returns {@code count} random prefixes, shaped like the API's encrypted leak match prefixes. */
+  static List<ByteString> randomMatchPrefixes(int count, Random random) {
+    List<ByteString> prefixes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      byte[] prefix = new byte[MATCH_PREFIX_BYTES];
+      random.nextBytes(prefix);
+      prefixes.add(ByteString.copyFrom(prefix));
+    }
+    return prefixes;
+  }
+
+  /** Returns the event a site would send to {@code /mergeAssessment}. */
+  static Assessment requestAssessment(Random random) {
+    byte[] token = new byte[TOKEN_BYTES];
+    random.nextBytes(token);
+    return Assessment.newBuilder()
+        .setEvent(
+            Event.newBuilder()
+                .setToken(Base64.getUrlEncoder().withoutPadding().encodeToString(token))
+                .setSiteKey("6LcBenchmarkSiteKeyAAAAAAAAAAAAAAAAAAAAA")
+                .setExpectedAction("login")
+                .setUserAgent(
+                    "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)"
+                        + " Chrome/126.0.0.0 Safari/537.36")
+                .setUserIpAddress("203.0.113.42"))
+        .build();
+  }
+
+  /** Returns a fully populated response assessment, as the API answers a merged request. */
+  static Assessment responseAssessment(
+      Assessment request, PrivatePasswordLeakVerification verification) {
+    return request.toBuilder()
+        .setName("projects/benchmark-project/assessments/f4ce5a7e00000000")
+        .setTokenProperties(
+            TokenProperties.newBuilder()
+                .setValid(true)
+                .setHostname("www.example.com")
+                .setAction(request.getEvent().getExpectedAction())
+                .setCreateTime(Timestamp.newBuilder().setSeconds(1_720_000_000L)))
+        .setRiskAnalysis(
+            RiskAnalysis.newBuilder()
+                .setScore(0.9f)
+                .addReasons(ClassificationReason.LOW_CONFIDENCE_SCORE))
+        .setPrivatePasswordLeakVerification(verification)
+        .build();
+  }
+}
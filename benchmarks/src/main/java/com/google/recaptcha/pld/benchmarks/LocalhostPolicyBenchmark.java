@@ -0,0 +1,69 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import com.google.recaptcha.pld.pld.util.LocalhostPolicy;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Measures the interceptor that runs in front of every request, for each spelling of a loopback
+ * address and for a rejected remote address.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalhostPolicyBenchmark {
+
+  @Param({"127.0.0.1", "::1", "0000:0000:0000:0000:0000:0000:0000:0001", "203.0.113.42"})
+  public String remoteAddr;
+
+  private LocalhostPolicy policy;
+
+  private MockHttpServletRequest request;
+
+  @Setup
+  public void setUp() {
+    PldEnvironment env = new PldEnvironment();
+    ReflectionTestUtils.setField(env, "useHttps", false);
+    policy = new LocalhostPolicy();
+    ReflectionTestUtils.setField(policy, "env", env);
+
+    request = new MockHttpServletRequest("POST", "/createAssessment");
+    request.setRemoteAddr(remoteAddr);
+  }
+
+  /** A rejected request commits its response, so each invocation gets a fresh one. */
+  @Benchmark
+  public boolean preHandle() throws Exception {
+    return policy.preHandle(request, new MockHttpServletResponse(), null);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PasswordCheckEngine#indexMatchPrefixes}, which indexes views of the API's
+ * encrypted leak match prefixes for the lookup of a decrypted digest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchPrefixIndexBenchmark {
+
+  @Param({"1", "16", "256", "4096"})
+  public int prefixCount;
+
+  private PrivatePasswordLeakVerification answer;
+
+  @Setup
+  public void setUp() {
+    answer =
+        PrivatePasswordLeakVerification.newBuilder()
+            .addAllEncryptedLeakMatchPrefixes(
+                BenchmarkFixtures.randomMatchPrefixes(prefixCount, new Random(42)))
+            .build();
+  }
+
+  @Benchmark
+  public PasswordCheckEngine.MatchPrefixIndex indexMatchPrefixes() {
+    return PasswordCheckEngine.indexMatchPrefixes(answer);
+  }
+}
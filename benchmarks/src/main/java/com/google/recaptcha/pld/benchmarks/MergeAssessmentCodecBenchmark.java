@@ -0,0 +1,129 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import com.google.protobuf.util.JsonFormat;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.pld.util.MergeAssessmentProtobufConverter;
+import com.google.recaptcha.pld.v1.Credentials;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+/**
+ * Per-request codec cost of {@code /mergeAssessment}: reading the request body and writing the
+ * response body through the HTTP message converter each content type uses. Run with {@code -prof
+ * gc} for allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeAssessmentCodecBenchmark {
+
+  @Param({"json", "protobuf"})
+  public String encoding;
+
+  @Param({"1", "256"})
+  public int prefixCount;
+
+  private AbstractHttpMessageConverter<Object> converter;
+
+  private MediaType mediaType;
+
+  private byte[] requestBody;
+
+  private MergeAssessmentResponse response;
+
+  @Setup
+  public void setUp() throws IOException {
+    Random random = new Random(42);
+    Assessment request = BenchmarkFixtures.requestAssessment(random);
+    PrivatePasswordLeakVerification verification =
+        PrivatePasswordLeakVerification.newBuilder()
+            .setLookupHashPrefix(BenchmarkFixtures.randomMatchPrefixes(1, random).get(0))
+            .setEncryptedUserCredentialsHash(
+                BenchmarkFixtures.randomMatchPrefixes(1, random).get(0))
+            .setReencryptedUserCredentialsHash(
+                BenchmarkFixtures.randomMatchPrefixes(1, random).get(0))
+            .addAllEncryptedLeakMatchPrefixes(
+                BenchmarkFixtures.randomMatchPrefixes(prefixCount, random))
+            .build();
+    response =
+        new MergeAssessmentResponse(
+            BenchmarkFixtures.responseAssessment(request, verification), PldLeakedStatus.LEAKED);
+
+    if (encoding.equals("json")) {
+      converter = new JacksonJsonHttpMessageConverter();
+      mediaType = MediaType.APPLICATION_JSON;
+      requestBody =
+          ("{\"credentials\":{\"username\":\"leakedusername\",\"password\":\"leakedpassword\"},"
+                  + "\"assessment\":"
+                  + JsonFormat.printer().print(request)
+                  + "}")
+              .getBytes(StandardCharsets.UTF_8);
+    } else {
+      converter = new MergeAssessmentProtobufConverter(new SimpleMeterRegistry());
+      mediaType = ProtobufHttpMessageConverter.PROTOBUF;
+      requestBody =
+          com.google.recaptcha.pld.v1.MergeAssessmentRequest.newBuilder()
+              .setCredentials(
+                  Credentials.newBuilder()
+                      .setUsername("leakedusername")
+                      .setPassword("leakedpassword"))
+              .setAssessment(request)
+              .build()
+              .toByteArray();
+    }
+  }
+
+  @Benchmark
+  public MockHttpOutputMessage mergeAssessmentCodec() throws IOException {
+    MockHttpInputMessage input = new MockHttpInputMessage(requestBody);
+    input.getHeaders().setContentType(mediaType);
+    MergeAssessmentRequest request =
+        (MergeAssessmentRequest) converter.read(MergeAssessmentRequest.class, input);
+    if (request.getAssessment() == null) {
+      throw new IllegalStateException("Request body had no assessment");
+    }
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+    converter.write(response, mediaType, output);
+    return output;
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import com.google.protobuf.ByteString;
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the client side of the password leak protocol: hashing and encrypting the credentials,
+ * and decrypting and matching the API's answer against a match prefix list of {@code prefixCount}
+ * entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordCheckEngineBenchmark {
+
+  @Param({"1", "16", "256", "4096"})
+  public int prefixCount;
+
+  private PasswordCheckEngine engine;
+
+  private EncryptedCredentials verification;
+
+  private PrivatePasswordLeakVerification answer;
+
+  @Setup
+  public void setUp() throws Exception {
+    engine = BenchmarkFixtures.newEngine();
+    verification =
+        engine
+            .createVerification(
+                BenchmarkFixtures.LEAKED_CREDENTIALS.getUsername(),
+                BenchmarkFixtures.LEAKED_CREDENTIALS.getPassword())
+            .get();
+    PrivatePasswordLeakVerification serverAnswer =
+        BenchmarkFixtures.newServer().answer(BenchmarkFixtures.request(verification));
+
+    // One real match hidden among random prefixes, so every run takes the same path.
+    Random random = new Random(42);
+    List<ByteString> prefixes = new ArrayList<>(serverAnswer.getEncryptedLeakMatchPrefixesList());
+    prefixes.addAll(BenchmarkFixtures.randomMatchPrefixes(prefixCount - prefixes.size(), random));
+    Collections.shuffle(prefixes, random);
+    answer =
+        serverAnswer.toBuilder()
+            .clearEncryptedLeakMatchPrefixes()
+            .addAllEncryptedLeakMatchPrefixes(prefixes)
+            .build();
+  }
+
+  @Benchmark
+  public EncryptedCredentials createVerification() throws Exception {
+    return engine
+        .createVerification(
+            BenchmarkFixtures.LEAKED_CREDENTIALS.getUsername(),
+            BenchmarkFixtures.LEAKED_CREDENTIALS.getPassword())
+        .get();
+  }
+
+  @Benchmark
+  public boolean verify() throws Exception {
+    return engine.verify(verification, answer).get();
+  }
+}
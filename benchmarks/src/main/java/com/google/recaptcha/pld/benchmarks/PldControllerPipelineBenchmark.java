@@ -0,0 +1,197 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import com.google.protobuf.util.JsonFormat;
+import com.google.recaptcha.pld.pld.controllers.PldController;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.VerificationResponse;
+import com.google.recaptcha.pld.pld.services.BreachedPasswordCorpus;
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
+import com.google.recaptcha.pld.pld.services.LeakCheckService;
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptcha.pld.pld.services.PldService;
+import com.google.recaptcha.pld.pld.services.RecaptchaContext;
+import com.google.recaptcha.pld.pld.services.Tenant;
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import com.google.recaptcha.pld.pld.services.VerdictCache;
+import com.google.recaptcha.pld.pld.stub.StubPasswordLeakServer;
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.AssessmentJsonComponent;
+import com.google.recaptcha.pld.pld.util.CredentialDigest;
+import com.google.recaptcha.pld.pld.util.LocalhostPolicy;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.pld.util.RateLimits;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import io.grpc.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.module.SimpleModule;
+
+/**
+ * Measures a request end to end through MockMvc: the localhost interceptor, JSON binding and
+ * validation, hashing, verification and the response body. The reCAPTCHA API is replaced by a
+ * mocked {@link RecaptchaContext} that answers instantly with real server-side crypto, so the
+ * numbers are the service's own cost per request without the network round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PldControllerPipelineBenchmark {
+
+  @Param({"leaked", "clean"})
+  public String credentials;
+
+  private MockMvc mockMvc;
+
+  private String createAssessmentBody;
+
+  private String mergeAssessmentBody;
+
+  @Setup
+  public void setUp() throws Exception {
+    PasswordCheckEngine engine = BenchmarkFixtures.newEngine();
+    StubPasswordLeakServer server = BenchmarkFixtures.newServer();
+
+    // Stub-only mocks do not record invocations, which would otherwise grow without bound.
+    RecaptchaContext recaptchaContext = mock(RecaptchaContext.class, withSettings().stubOnly());
+    when(recaptchaContext.createAssessmentAsync(
+            any(EncryptedCredentials.class), any(Deadline.class)))
+        .thenAnswer(
+            invocation -> {
+              EncryptedCredentials verification = invocation.getArgument(0);
+              return CompletableFuture.completedFuture(
+                  Assessment.newBuilder()
+                      .setPrivatePasswordLeakVerification(
+                          server.answer(BenchmarkFixtures.request(verification)))
+                      .build());
+            });
+    when(recaptchaContext.createAssessmentAsync(
+            any(EncryptedCredentials.class), any(Assessment.class), any(Deadline.class)))
+        .thenAnswer(
+            invocation -> {
+              EncryptedCredentials verification = invocation.getArgument(0);
+              PrivatePasswordLeakVerification answer =
+                  server.answer(BenchmarkFixtures.request(verification));
+              return CompletableFuture.completedFuture(
+                  new VerificationResponse(
+                      BenchmarkFixtures.responseAssessment(invocation.getArgument(1), answer),
+                      verification));
+            });
+
+    PldEnvironment env = new PldEnvironment();
+    ReflectionTestUtils.setField(env, "useHttps", false);
+    ReflectionTestUtils.setField(env, "defaultTimeoutMillis", 5000L);
+    ReflectionTestUtils.setField(env, "maxTimeoutMillis", 30000L);
+    LocalhostPolicy localhostPolicy = new LocalhostPolicy();
+    ReflectionTestUtils.setField(localhostPolicy, "env", env);
+
+    PldMetrics metrics = new PldMetrics(new SimpleMeterRegistry());
+    LeakCheckService leakCheckService =
+        new LeakCheckService(
+            new PldService(engine, metrics),
+            recaptchaContext,
+            Validation.buildDefaultValidatorFactory().getValidator(),
+            new VerdictCache(env, new SimpleMeterRegistry()),
+            new BreachedPasswordCorpus(null, 0),
+            new CredentialDigest(),
+            RateLimits.unlimited(),
+            metrics,
+            Runnable::run);
+    JsonMapper mapper =
+        JsonMapper.builder()
+            .addModule(
+                new SimpleModule()
+                    .addSerializer(Assessment.class, new AssessmentJsonComponent.Serializer())
+                    .addDeserializer(Assessment.class, new AssessmentJsonComponent.Deserializer()))
+            .build();
+    mockMvc =
+        MockMvcBuilders.standaloneSetup(
+                new PldController(
+                    new TenantRegistry(
+                        new Tenant(
+                            PldMetrics.DEFAULT_TENANT,
+                            leakCheckService,
+                            new AdmissionLimiter(env, new SimpleMeterRegistry()),
+                            metrics)),
+                    env,
+                    mapper))
+            .addInterceptors(localhostPolicy)
+            .setMessageConverters(new JacksonJsonHttpMessageConverter(mapper))
+            .build();
+
+    PlaintextCredentials plaintextCredentials =
+        credentials.equals("leaked")
+            ? BenchmarkFixtures.LEAKED_CREDENTIALS
+            : BenchmarkFixtures.CLEAN_CREDENTIALS;
+    createAssessmentBody = mapper.writeValueAsString(plaintextCredentials);
+    mergeAssessmentBody =
+        "{\"credentials\": "
+            + createAssessmentBody
+            + ", \"assessment\": "
+            + JsonFormat.printer().print(BenchmarkFixtures.requestAssessment(new Random(42)))
+            + "}";
+  }
+
+  @Benchmark
+  public String createAssessment() throws Exception {
+    return perform("/createAssessment", createAssessmentBody);
+  }
+
+  @Benchmark
+  public String mergeAssessment() throws Exception {
+    return perform("/mergeAssessment", mergeAssessmentBody);
+  }
+
+  private String perform(String path, String body) throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(post(path).contentType(MediaType.APPLICATION_JSON).content(body))
+            .andReturn();
+    return mockMvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsString();
+  }
+}
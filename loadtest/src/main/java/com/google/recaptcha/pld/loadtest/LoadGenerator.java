@@ -0,0 +1,117 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Steps a running service through a list of arrival rates and reports, for each, the latency
+ * distribution and the throughput achieved. Together the steps trace the saturation curve: p99
+ * stays flat as the rate rises until the service saturates, then climbs steeply while throughput
+ * stops following the rate.
+ *
+ * <p>Writes to the output directory, for each rate R:
+ *
+ * <ul>
+ *   <li>{@code rate-R.hlog}: an HdrHistogram log of the latency of every measured second
+ *   <li>{@code rate-R.hgrm}: the latency percentile distribution of the whole step, in milliseconds
+ *   <li>{@code rate-R-service.hgrm}: the same measured from when requests were actually sent
+ * </ul>
+ *
+ * <p>and {@code saturation.csv}, one line per rate.
+ */
+public class LoadGenerator {
+
+  private static final String CSV_HEADER =
+      "target_rps,achieved_rps,succeeded,failed,skipped,p50_ms,p90_ms,p99_ms,p999_ms,max_ms,"
+          + "service_p99_ms";
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    LoadTestOptions options;
+    try {
+      options = LoadTestOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(LoadTestOptions.USAGE);
+      System.exit(2);
+      return;
+    }
+    Path output = Files.createDirectories(options.getOutput());
+    HttpClient client =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(options.getTimeout())
+            .build();
+    Workload workload = new Workload(options);
+
+    System.out.println(CSV_HEADER);
+    try (PrintWriter csv =
+        new PrintWriter(Files.newBufferedWriter(output.resolve("saturation.csv")))) {
+      csv.println(CSV_HEADER);
+      for (double rate : options.getRates()) {
+        String name = "rate-" + format(rate);
+        LoadStep.Result result =
+            new LoadStep(client, workload, rate, options).run(output.resolve(name + ".hlog"));
+        writeDistribution(result.getLatency(), output.resolve(name + ".hgrm"));
+        writeDistribution(result.getServiceTime(), output.resolve(name + "-service.hgrm"));
+        String line = csvLine(result);
+        csv.println(line);
+        csv.flush();
+        System.out.println(line);
+        if (!result.getFailures().isEmpty()) {
+          System.out.println("  failures at " + format(rate) + "/s: " + result.getFailures());
+        }
+      }
+    }
+    System.out.println("Reports written to " + output.toAbsolutePath());
+  }
+
+  private static String csvLine(LoadStep.Result result) {
+    Histogram latency = result.getLatency();
+    return String.join(
+        ",",
+        format(result.getRate()),
+        String.format(Locale.ROOT, "%.1f", result.getThroughput()),
+        String.valueOf(result.getSucceeded()),
+        String.valueOf(result.getFailed()),
+        String.valueOf(result.getSkipped()),
+        millis(latency.getValueAtPercentile(50)),
+        millis(latency.getValueAtPercentile(90)),
+        millis(latency.getValueAtPercentile(99)),
+        millis(latency.getValueAtPercentile(99.9)),
+        millis(latency.getMaxValue()),
+        millis(result.getServiceTime().getValueAtPercentile(99)));
+  }
+
+  private static void writeDistribution(Histogram histogram, Path path) throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(path), false, "UTF-8")) {
+      histogram.outputPercentileDistribution(out, LoadStep.MICROS_PER_MILLI);
+    }
+  }
+
+  private static String millis(long micros) {
+    return String.format(Locale.ROOT, "%.3f", micros / LoadStep.MICROS_PER_MILLI);
+  }
+
+  private static String format(double rate) {
+    return rate == Math.rint(rate) ? String.valueOf((long) rate) : String.valueOf(rate);
+  }
+}
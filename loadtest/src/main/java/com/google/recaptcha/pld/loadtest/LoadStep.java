@@ -0,0 +1,308 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Sends requests at a fixed arrival rate for a warm-up and then a measured period, whatever the
+ * service's response times: an open model, as real users arrive, rather than a fixed set of clients
+ * each waiting for its last response. Latency is measured from when each request was due to be sent
+ * rather than from when it was, so if the generator falls behind, the time requests spent waiting
+ * to be sent still counts. Measuring from the send instead, as closed-loop tools do, omits exactly
+ * the slow periods, which is known as coordinated omission.
+ *
+ * <p>For the same reason every measured request is recorded in the latency distribution, not only
+ * the successful ones. A failed or timed-out request is recorded at the time from when it was due
+ * to when it failed. A request skipped because {@code --maxInFlight} were already in flight is
+ * recorded at the request timeout, or at how late it was if that is longer: it is a user left
+ * waiting, and leaving it out would make an overloaded generator report better latencies the more
+ * it skips.
+ */
+class LoadStep {
+
+  /** Latencies above this are recorded as this. */
+  static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  static final int SIGNIFICANT_DIGITS = 3;
+
+  /** Scales the microseconds recorded to the milliseconds reported. */
+  static final double MICROS_PER_MILLI = 1000.0;
+
+  private static final long LOG_INTERVAL_MILLIS = 1000;
+
+  private final HttpClient client;
+
+  private final Workload workload;
+
+  private final double rate;
+
+  private final Duration warmup;
+
+  private final Duration duration;
+
+  private final Duration timeout;
+
+  private final int maxInFlight;
+
+  /** Latency from when each measured request was due, whatever its outcome. */
+  private final Recorder latency = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+
+  /** Latency from when each measured request was actually sent, for comparison. */
+  private final Recorder serviceTime = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+
+  private final Histogram latencyTotal =
+      new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+
+  private final Histogram serviceTimeTotal =
+      new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+
+  private final LongAdder succeeded = new LongAdder();
+
+  private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicLong measuredInFlight = new AtomicLong();
+
+  private long skipped;
+
+  LoadStep(HttpClient client, Workload workload, double rate, LoadTestOptions options) {
+    this.client = client;
+    this.workload = workload;
+    this.rate = rate;
+    this.warmup = options.getWarmup();
+    this.duration = options.getDuration();
+    this.timeout = options.getTimeout();
+    this.maxInFlight = options.getMaxInFlight();
+  }
+
+  /**
+   * Runs the step, writing the latency of every measured second to {@code intervalLog} as it goes,
+   * and returns once every measured request has completed or timed out.
+   */
+  Result run(Path intervalLog) throws IOException, InterruptedException {
+    try (PrintStream log = new PrintStream(Files.newOutputStream(intervalLog), false, "UTF-8")) {
+      HistogramLogWriter writer = new HistogramLogWriter(log);
+      long startMillis = System.currentTimeMillis();
+      writer.outputLogFormatVersion();
+      writer.outputStartTime(startMillis);
+      writer.setBaseTime(startMillis);
+      writer.outputLegend();
+      ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor();
+      try {
+        logger.scheduleAtFixedRate(
+            () -> writeInterval(writer),
+            LOG_INTERVAL_MILLIS,
+            LOG_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+        sendAll();
+        awaitMeasured();
+      } finally {
+        logger.shutdownNow();
+        logger.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      writeInterval(writer);
+    }
+    Map<String, Long> failureCounts = new TreeMap<>();
+    failures.forEach((reason, count) -> failureCounts.put(reason, count.sum()));
+    return new Result(
+        rate, duration, succeeded.sum(), failureCounts, skipped, latencyTotal, serviceTimeTotal);
+  }
+
+  /** Sends each request when it is due, catching up at once if the loop has fallen behind. */
+  private void sendAll() {
+    long start = System.nanoTime();
+    long measureStart = start + warmup.toNanos();
+    long end = measureStart + duration.toNanos();
+    for (long i = 0; ; i++) {
+      long due = dueNanos(start, rate, i);
+      if (due - end >= 0) {
+        return;
+      }
+      long now;
+      while ((now = System.nanoTime()) - due < 0) {
+        LockSupport.parkNanos(due - now);
+      }
+      boolean measured = due - measureStart >= 0;
+      HttpRequest request = workload.next();
+      if (inFlight.get() >= maxInFlight) {
+        if (measured) {
+          skipped++;
+          latency.recordValue(toMicros(Math.max(timeout.toNanos(), System.nanoTime() - due)));
+        }
+        continue;
+      }
+      inFlight.incrementAndGet();
+      if (measured) {
+        measuredInFlight.incrementAndGet();
+      }
+      long sent = System.nanoTime();
+      client
+          .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .whenComplete(
+              (response, t) -> {
+                long done = System.nanoTime();
+                inFlight.decrementAndGet();
+                if (measured) {
+                  record(response, t, done - due, done - sent);
+                  measuredInFlight.decrementAndGet();
+                }
+              });
+    }
+  }
+
+  private void record(HttpResponse<Void> response, Throwable t, long latencyNanos, long sentNanos) {
+    latency.recordValue(toMicros(latencyNanos));
+    serviceTime.recordValue(toMicros(sentNanos));
+    if (t == null && response.statusCode() == 200) {
+      succeeded.increment();
+      return;
+    }
+    String reason;
+    if (t == null) {
+      reason = "HTTP " + response.statusCode();
+    } else {
+      Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+      reason = cause instanceof HttpTimeoutException ? "timeout" : cause.getClass().getSimpleName();
+    }
+    failures.computeIfAbsent(reason, r -> new LongAdder()).increment();
+  }
+
+  /** Waits for the measured requests still in flight, which the request timeout bounds. */
+  private void awaitMeasured() throws InterruptedException {
+    long deadline = System.nanoTime() + timeout.plusSeconds(5).toNanos();
+    while (measuredInFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+      Thread.sleep(10);
+    }
+  }
+
+  private synchronized void writeInterval(HistogramLogWriter writer) {
+    Histogram interval = latency.getIntervalHistogram();
+    latencyTotal.add(interval);
+    serviceTimeTotal.add(serviceTime.getIntervalHistogram());
+    writer.outputIntervalHistogram(
+        (interval.getStartTimeStamp() - writer.getBaseTime()) / 1000.0,
+        (interval.getEndTimeStamp() - writer.getBaseTime()) / 1000.0,
+        interval,
+        MICROS_PER_MILLI);
+  }
+
+  /**
+   * Returns when the {@code i}th request of a step that starts at {@code startNanos} is due. Each
+   * is computed from the start rather than from the one before, so rounding never accumulates.
+   */
+  static long dueNanos(long startNanos, double rate, long i) {
+    return startNanos + (long) (i * (TimeUnit.SECONDS.toNanos(1) / rate));
+  }
+
+  private static long toMicros(long nanos) {
+    return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS);
+  }
+
+  /**
+   * The outcome of one step. Latencies are in microseconds, and include failed and skipped
+   * requests.
+   */
+  static class Result {
+
+    private final double rate;
+
+    private final Duration duration;
+
+    private final long succeeded;
+
+    private final Map<String, Long> failures;
+
+    private final long skipped;
+
+    private final Histogram latency;
+
+    private final Histogram serviceTime;
+
+    Result(
+        double rate,
+        Duration duration,
+        long succeeded,
+        Map<String, Long> failures,
+        long skipped,
+        Histogram latency,
+        Histogram serviceTime) {
+      this.rate = rate;
+      this.duration = duration;
+      this.succeeded = succeeded;
+      this.failures = failures;
+      this.skipped = skipped;
+      this.latency = latency;
+      this.serviceTime = serviceTime;
+    }
+
+    double getRate() {
+      return rate;
+    }
+
+    /** Returns the rate of successful responses over the measured period. */
+    double getThroughput() {
+      return succeeded / (duration.toMillis() / 1000.0);
+    }
+
+    long getSucceeded() {
+      return succeeded;
+    }
+
+    long getFailed() {
+      return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /** Returns the failed requests by HTTP status or exception. */
+    Map<String, Long> getFailures() {
+      return failures;
+    }
+
+    /** Returns the requests not sent because {@code --maxInFlight} were already in flight. */
+    long getSkipped() {
+      return skipped;
+    }
+
+    Histogram getLatency() {
+      return latency;
+    }
+
+    Histogram getServiceTime() {
+      return serviceTime;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The {@code --name=value} options of a load test, with their defaults. */
+class LoadTestOptions {
+
+  static final String USAGE =
+      String.join(
+          "\n",
+          "Usage: java -jar loadtest.jar [--name=value...]",
+          "  --url=http://127.0.0.1:8080          service to load",
+          "  --rates=50,100,200,400               arrival rates to step through, requests/s",
+          "  --duration=30                        seconds measured at each rate",
+          "  --warmup=5                           seconds run at each rate before measuring",
+          "  --mergeRatio=0.2                     fraction of requests to /mergeAssessment",
+          "  --leakedRatio=0.1                    fraction of requests with leaked credentials",
+          "  --leakedCredentials=leakedusername:leakedpassword",
+          "                                       comma separated username:password pairs",
+          "  --siteKey=loadtest-site-key          site key of the generated events",
+          "  --timeout=10                         seconds before a request counts as failed",
+          "  --maxInFlight=10000                  requests in flight before new ones are skipped",
+          "  --seed=1                             seed of the generated requests",
+          "  --output=loadtest-results            directory for the reports");
+
+  private static final Map<String, String> DEFAULTS =
+      Map.ofEntries(
+          Map.entry("url", "http://127.0.0.1:8080"),
+          Map.entry("rates", "50,100,200,400"),
+          Map.entry("duration", "30"),
+          Map.entry("warmup", "5"),
+          Map.entry("mergeRatio", "0.2"),
+          Map.entry("leakedRatio", "0.1"),
+          Map.entry("leakedCredentials", "leakedusername:leakedpassword"),
+          Map.entry("siteKey", "loadtest-site-key"),
+          Map.entry("timeout", "10"),
+          Map.entry("maxInFlight", "10000"),
+          Map.entry("seed", "1"),
+          Map.entry("output", "loadtest-results"));
+
+  private final Map<String, String> values;
+
+  private LoadTestOptions(Map<String, String> values) {
+    this.values = values;
+  }
+
+  /** Parses {@code args}, throwing {@link IllegalArgumentException} on an unknown or bad one. */
+  static LoadTestOptions parse(String[] args) {
+    Map<String, String> values = new HashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      String name = equals < 0 || !arg.startsWith("--") ? null : arg.substring(2, equals);
+      if (name == null || !DEFAULTS.containsKey(name)) {
+        throw new IllegalArgumentException("Unknown option " + arg);
+      }
+      values.put(name, arg.substring(equals + 1));
+    }
+    LoadTestOptions options = new LoadTestOptions(values);
+    if (options.getRates().isEmpty() || options.getDuration().isZero()) {
+      throw new IllegalArgumentException("--rates and --duration must not be empty or zero");
+    }
+    return options;
+  }
+
+  URI getUrl() {
+    return URI.create(values.get("url"));
+  }
+
+  List<Double> getRates() {
+    List<Double> rates = new ArrayList<>();
+    for (String rate : values.get("rates").split(",")) {
+      if (!rate.isBlank()) {
+        double perSecond = Double.parseDouble(rate.trim());
+        if (perSecond <= 0) {
+          throw new IllegalArgumentException("Rates must be positive: " + rate);
+        }
+        rates.add(perSecond);
+      }
+    }
+    return rates;
+  }
+
+  Duration getDuration() {
+    return Duration.ofSeconds(Long.parseLong(values.get("duration")));
+  }
+
+  Duration getWarmup() {
+    return Duration.ofSeconds(Long.parseLong(values.get("warmup")));
+  }
+
+  double getMergeRatio() {
+    return Double.parseDouble(values.get("mergeRatio"));
+  }
+
+  double getLeakedRatio() {
+    return Double.parseDouble(values.get("leakedRatio"));
+  }
+
+  /** Returns the leaked credentials as {@code {username, password}} pairs. */
+  List<String[]> getLeakedCredentials() {
+    List<String[]> credentials = new ArrayList<>();
+    for (String entry : values.get("leakedCredentials").split(",")) {
+      int colon = entry.indexOf(':');
+      if (colon <= 0) {
+        throw new IllegalArgumentException("Expected username:password, got " + entry);
+      }
+      credentials.add(new String[] {entry.substring(0, colon), entry.substring(colon + 1)});
+    }
+    return credentials;
+  }
+
+  String getSiteKey() {
+    return values.get("siteKey");
+  }
+
+  Duration getTimeout() {
+    return Duration.ofSeconds(Long.parseLong(values.get("timeout")));
+  }
+
+  int getMaxInFlight() {
+    return Integer.parseInt(values.get("maxInFlight"));
+  }
+
+  long getSeed() {
+    return Long.parseLong(values.get("seed"));
+  }
+
+  Path getOutput() {
+    return Path.of(values.get("output"));
+  }
+}
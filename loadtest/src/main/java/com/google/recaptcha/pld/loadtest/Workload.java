@@ -0,0 +1,139 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Builds the requests of a load test: a mix of {@code /createAssessment} and {@code
+ * /mergeAssessment} calls, with leaked and fresh credentials and random Assessment events. Fresh
+ * credentials are random, so they miss the verdict cache and take the full hashing and reCAPTCHA
+ * path; leaked ones repeat, as credential stuffing does.
+ *
+ * <p>Not thread safe: requests are built on the thread that schedules them, from a seeded random,
+ * so the same seed sends the same requests in the same order.
+ */
+class Workload {
+
+  private static final String ALPHANUMERIC =
+      "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+  private static final List<String> USER_AGENTS =
+      List.of(
+          "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko)"
+              + " Chrome/126.0 Safari/537.36",
+          "Mozilla/5.0 (Macintosh; Intel Mac OS X 14_5) AppleWebKit/605.1.15 (KHTML, like Gecko)"
+              + " Version/17.5 Safari/605.1.15",
+          "Mozilla/5.0 (iPhone; CPU iPhone OS 17_5 like Mac OS X) AppleWebKit/605.1.15"
+              + " (KHTML, like Gecko) Mobile/15E148",
+          "Mozilla/5.0 (X11; Linux x86_64; rv:127.0) Gecko/20100101 Firefox/127.0");
+
+  private static final List<String> ACTIONS = List.of("login", "signup", "password_change");
+
+  private final URI createAssessmentUri;
+
+  private final URI mergeAssessmentUri;
+
+  private final Duration timeout;
+
+  private final double mergeRatio;
+
+  private final double leakedRatio;
+
+  private final List<String[]> leakedCredentials;
+
+  private final String siteKey;
+
+  private final SplittableRandom random;
+
+  Workload(LoadTestOptions options) {
+    this.createAssessmentUri = options.getUrl().resolve("/createAssessment");
+    this.mergeAssessmentUri = options.getUrl().resolve("/mergeAssessment");
+    this.timeout = options.getTimeout();
+    this.mergeRatio = options.getMergeRatio();
+    this.leakedRatio = options.getLeakedRatio();
+    this.leakedCredentials = options.getLeakedCredentials();
+    this.siteKey = options.getSiteKey();
+    this.random = new SplittableRandom(options.getSeed());
+  }
+
+  /** Returns the next request of the mix. */
+  HttpRequest next() {
+    String[] credentials =
+        random.nextDouble() < leakedRatio
+            ? leakedCredentials.get(random.nextInt(leakedCredentials.size()))
+            : new String[] {"user-" + randomString(12), randomString(16)};
+    String credentialsJson =
+        "{\"username\":" + quote(credentials[0]) + ",\"password\":" + quote(credentials[1]) + "}";
+    boolean merge = random.nextDouble() < mergeRatio;
+    String body =
+        merge
+            ? "{\"credentials\":" + credentialsJson + ",\"assessment\":" + assessmentJson() + "}"
+            : credentialsJson;
+    return HttpRequest.newBuilder(merge ? mergeAssessmentUri : createAssessmentUri)
+        .timeout(timeout)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+  }
+
+  /** Returns an Assessment with a random event, in the protobuf JSON mapping. */
+  private String assessmentJson() {
+    return "{\"event\":{\"token\":"
+        + quote(randomString(400 + random.nextInt(200)))
+        + ",\"siteKey\":"
+        + quote(siteKey)
+        + ",\"userAgent\":"
+        + quote(USER_AGENTS.get(random.nextInt(USER_AGENTS.size())))
+        + ",\"userIpAddress\":"
+        + quote(
+            "10."
+                + random.nextInt(256)
+                + "."
+                + random.nextInt(256)
+                + "."
+                + (1 + random.nextInt(254)))
+        + ",\"expectedAction\":"
+        + quote(ACTIONS.get(random.nextInt(ACTIONS.size())))
+        + "}}";
+  }
+
+  private String randomString(int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = ALPHANUMERIC.charAt(random.nextInt(ALPHANUMERIC.length()));
+    }
+    return new String(chars);
+  }
+
+  /** Returns {@code value} as a JSON string literal. */
+  static String quote(String value) {
+    StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"').toString();
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LoadStepTests {
+
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  private HttpServer server;
+
+  @TempDir private Path directory;
+
+  @BeforeEach
+  void startServer() throws Exception {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          exchange.getRequestBody().readAllBytes();
+          exchange.sendResponseHeaders(503, -1);
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void shouldScheduleRequestsFromStartWithoutDrift() {
+    assertEquals(1000, LoadStep.dueNanos(1000, 3, 0));
+    assertEquals(1000 + 333_333_333, LoadStep.dueNanos(1000, 3, 1));
+    assertEquals(1000 + 666_666_666, LoadStep.dueNanos(1000, 3, 2));
+    // An hour of requests at 3/s still ends on the hour, within rounding of one period.
+    long hour = TimeUnit.HOURS.toNanos(1);
+    assertTrue(Math.abs(LoadStep.dueNanos(0, 3, 3 * 3600) - hour) < 10);
+    assertEquals(TimeUnit.SECONDS.toNanos(1) / 8, LoadStep.dueNanos(0, 8, 1));
+  }
+
+  @Test
+  void shouldRecordFailedRequestsInLatency() throws Exception {
+    LoadStep.Result result = step("--maxInFlight=10000").run(directory.resolve("step.hlog"));
+
+    assertEquals(0, result.getSucceeded());
+    assertEquals(20, result.getFailed());
+    assertEquals(result.getFailed(), result.getLatency().getTotalCount());
+  }
+
+  @Test
+  void shouldRecordSkippedRequestsAtLeastAtTimeout() throws Exception {
+    LoadStep.Result result = step("--maxInFlight=0").run(directory.resolve("step.hlog"));
+
+    assertEquals(20, result.getSkipped());
+    assertEquals(20, result.getLatency().getTotalCount());
+    // The histogram reports the bottom of the bucket that the smallest value fell in.
+    long min = result.getLatency().getMinValue();
+    assertTrue(
+        result.getLatency().highestEquivalentValue(min) >= TimeUnit.SECONDS.toMicros(2),
+        "min " + min);
+  }
+
+  private LoadStep step(String maxInFlight) {
+    LoadTestOptions options =
+        LoadTestOptions.parse(
+            new String[] {
+              "--url=http://127.0.0.1:" + server.getAddress().getPort(),
+              "--warmup=0",
+              "--duration=1",
+              "--timeout=2",
+              maxInFlight
+            });
+    return new LoadStep(client, new Workload(options), 20, options);
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class LoadTestOptionsTests {
+
+  @Test
+  void shouldUseDefaults() {
+    LoadTestOptions options = LoadTestOptions.parse(new String[0]);
+
+    assertEquals(URI.create("http://127.0.0.1:8080"), options.getUrl());
+    assertEquals(List.of(50.0, 100.0, 200.0, 400.0), options.getRates());
+    assertEquals(Duration.ofSeconds(30), options.getDuration());
+    assertEquals(Duration.ofSeconds(5), options.getWarmup());
+    assertEquals(Duration.ofSeconds(10), options.getTimeout());
+    assertEquals(10000, options.getMaxInFlight());
+    assertEquals(1, options.getSeed());
+  }
+
+  @Test
+  void shouldParseOptions() {
+    LoadTestOptions options =
+        LoadTestOptions.parse(
+            new String[] {
+              "--rates=12.5, 25,,50",
+              "--duration=60",
+              "--mergeRatio=0.5",
+              "--leakedCredentials=a:b,c:d:e",
+              "--seed=7"
+            });
+
+    assertEquals(List.of(12.5, 25.0, 50.0), options.getRates());
+    assertEquals(Duration.ofSeconds(60), options.getDuration());
+    assertEquals(0.5, options.getMergeRatio());
+    assertEquals(2, options.getLeakedCredentials().size());
+    assertArrayEquals(new String[] {"a", "b"}, options.getLeakedCredentials().get(0));
+    // Only the first colon separates the username; the password may contain more.
+    assertArrayEquals(new String[] {"c", "d:e"}, options.getLeakedCredentials().get(1));
+    assertEquals(7, options.getSeed());
+  }
+
+  @Test
+  void shouldRejectBadOptions() {
+    assertThrows(IllegalArgumentException.class, () -> parse("--unknown=1"));
+    assertThrows(IllegalArgumentException.class, () -> parse("rates=1"));
+    assertThrows(IllegalArgumentException.class, () -> parse("--rates"));
+    assertThrows(IllegalArgumentException.class, () -> parse("--rates="));
+    assertThrows(IllegalArgumentException.class, () -> parse("--rates=10,-5"));
+    assertThrows(IllegalArgumentException.class, () -> parse("--duration=0"));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> parse("--leakedCredentials=nocolon").getLeakedCredentials());
+  }
+
+  private static LoadTestOptions parse(String arg) {
+    return LoadTestOptions.parse(new String[] {arg});
+  }
+}
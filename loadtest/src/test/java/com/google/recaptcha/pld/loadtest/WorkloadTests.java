@@ -0,0 +1,113 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+
+public class WorkloadTests {
+
+  private static final int REQUESTS = 20000;
+
+  @Test
+  void shouldSendSameRequestsForSameSeed() {
+    assertEquals(bodies("--seed=3", 50), bodies("--seed=3", 50));
+    assertNotEquals(bodies("--seed=3", 50), bodies("--seed=4", 50));
+  }
+
+  @Test
+  void shouldMixRequestsInConfiguredRatios() {
+    Workload workload =
+        new Workload(
+            LoadTestOptions.parse(
+                new String[] {
+                  "--mergeRatio=0.25", "--leakedRatio=0.1", "--leakedCredentials=leaked:secret"
+                }));
+    int merges = 0;
+    int leaked = 0;
+    for (int i = 0; i < REQUESTS; i++) {
+      HttpRequest request = workload.next();
+      String body = body(request);
+      if (request.uri().getPath().equals("/mergeAssessment")) {
+        merges++;
+        assertTrue(body.startsWith("{\"credentials\":"), body);
+      } else {
+        assertEquals("/createAssessment", request.uri().getPath());
+      }
+      if (body.contains("\"username\":\"leaked\",\"password\":\"secret\"")) {
+        leaked++;
+      }
+    }
+    // Binomial standard deviations are about 0.3% and 0.2% of the requests here.
+    assertEquals(0.25, merges / (double) REQUESTS, 0.015);
+    assertEquals(0.1, leaked / (double) REQUESTS, 0.01);
+  }
+
+  @Test
+  void shouldQuoteJsonStrings() {
+    assertEquals("\"a\\\"b\\\\c\\u000a\"", Workload.quote("a\"b\\c\n"));
+  }
+
+  private static List<String> bodies(String seed, int count) {
+    Workload workload = new Workload(LoadTestOptions.parse(new String[] {seed}));
+    List<String> bodies = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      bodies.add(body(workload.next()));
+    }
+    return bodies;
+  }
+
+  /** Reads the body a request would send. */
+  private static String body(HttpRequest request) {
+    CompletableFuture<String> body = new CompletableFuture<>();
+    request
+        .bodyPublisher()
+        .orElseThrow()
+        .subscribe(
+            new Flow.Subscriber<ByteBuffer>() {
+              private final StringBuilder text = new StringBuilder();
+
+              @Override
+              public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+              }
+
+              @Override
+              public void onNext(ByteBuffer item) {
+                text.append(StandardCharsets.UTF_8.decode(item));
+              }
+
+              @Override
+              public void onError(Throwable throwable) {
+                body.completeExceptionally(throwable);
+              }
+
+              @Override
+              public void onComplete() {
+                body.complete(text.toString());
+              }
+            });
+    return body.join();
+  }
+}
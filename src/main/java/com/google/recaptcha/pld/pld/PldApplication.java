@@ -13,35 +13,122 @@
 // limitations under the License.
 package com.google.recaptcha.pld.pld;
 
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerifier;
+import com.google.recaptcha.pld.pld.config.PldRuntimeHints;
+import com.google.recaptcha.pld.pld.services.BulkScanner;
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptcha.pld.pld.util.ExecutorShare;
 import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 @Configuration
-@EnableAsync
 @SpringBootApplication
+@ImportRuntimeHints(PldRuntimeHints.class)
 public class PldApplication {
 
+  private static final String SCAN_INPUT_PROPERTY = "pld.scan.input";
+
   @Autowired private PldEnvironment env;
 
+  /**
+   * Runs credential hashing and verification, the CPU bound stages, with one thread per CPU of the
+   * container's quota by default. The queue is bounded so that a burst beyond what the pool can
+   * hash in time is rejected up front rather than queued until callers have given up.
+   */
   @Bean
   ExecutorService passwordCheckExecutorService() {
-    return Executors.newFixedThreadPool(env.getPasswordCheckThreadPoolSize());
+    return new ThreadPoolExecutor(
+        env.getPasswordCheckThreadPoolSize(),
+        env.getPasswordCheckThreadPoolSize(),
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(env.getPasswordCheckQueueSize()),
+        new CustomizableThreadFactory("password-check-"));
+  }
+
+  /** Publishes the hashing pool's queue depth, active threads and completed tasks. */
+  @Bean
+  MeterBinder passwordCheckExecutorMetrics() {
+    return new ExecutorServiceMetrics(
+        passwordCheckExecutorService(), "passwordCheck", Tags.empty());
+  }
+
+  /**
+   * Completes reCAPTCHA RPCs and request deadlines, the I/O stages. Its tasks only hand results on,
+   * so a few threads serve any number of requests in flight.
+   */
+  @Bean
+  @ConditionalOnThreading(Threading.PLATFORM)
+  ExecutorService recaptchaCompletionExecutorService() {
+    return Executors.newFixedThreadPool(
+        env.getRecaptchaCompletionThreadPoolSize(),
+        new CustomizableThreadFactory("recaptcha-completion-"));
+  }
+
+  @Bean
+  @ConditionalOnThreading(Threading.PLATFORM)
+  MeterBinder recaptchaCompletionExecutorMetrics() {
+    return new ExecutorServiceMetrics(
+        recaptchaCompletionExecutorService(), "recaptchaCompletion", Tags.empty());
+  }
+
+  /**
+   * The default tenant's share of the password check pool, all of it unless {@code pld.tenants}
+   * adds more tenants. See {@link ExecutorShare}.
+   */
+  @Bean
+  ExecutorService defaultTenantExecutorService(MeterRegistry meterRegistry) {
+    return new ExecutorShare(
+        passwordCheckExecutorService(),
+        ExecutorShare.permits(
+            env.getTenantCpuShare(PldMetrics.DEFAULT_TENANT),
+            env.getPasswordCheckThreadPoolSize(),
+            env.getPasswordCheckQueueSize()),
+        PldMetrics.DEFAULT_TENANT,
+        meterRegistry);
+  }
+
+  @Bean
+  PasswordCheckEngine passwordCheckEngine(
+      @Qualifier("defaultTenantExecutorService") ExecutorService defaultTenantExecutorService) {
+    return new PasswordCheckEngine(defaultTenantExecutorService);
   }
 
+  /**
+   * Runs a bulk scan of {@code pld.scan.input} instead of serving; {@link #main} exits once it and
+   * the other runners complete. See {@link BulkScanner}.
+   */
   @Bean
-  PasswordCheckVerifier passwordCheckVerifier() {
-    return new PasswordCheckVerifier(passwordCheckExecutorService());
+  @ConditionalOnProperty(SCAN_INPUT_PROPERTY)
+  CommandLineRunner bulkScanRunner(BulkScanner bulkScanner) {
+    return args -> bulkScanner.scan();
   }
 
   public static void main(String[] args) {
-    SpringApplication.run(PldApplication.class, args);
+    ConfigurableApplicationContext context = SpringApplication.run(PldApplication.class, args);
+    if (context.getEnvironment().containsProperty(SCAN_INPUT_PROPERTY)) {
+      System.exit(SpringApplication.exit(context));
+    }
   }
 }
@@ -0,0 +1,87 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedResult;
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
+import com.google.recaptchaenterprise.v1.Assessment;
+import java.util.HashSet;
+import java.util.Set;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Reflection metadata for a native image. Protobuf's JSON mapping reaches the getters and setters
+ * of generated messages, builders and enums by reflection, so every type reachable from {@link
+ * Assessment} is registered. The request and response models and the encrypted credentials they
+ * carry are registered for JSON binding.
+ */
+public class PldRuntimeHints implements RuntimeHintsRegistrar {
+
+  private static final Class<?>[] BINDING_TYPES = {
+    PlaintextCredentials.class,
+    PldLeakedResult.class,
+    MergeAssessmentRequest.class,
+    MergeAssessmentResponse.class,
+    BatchAssessmentResult.class,
+    EncryptedCredentials.class,
+  };
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    registerMessage(hints, Assessment.getDefaultInstance(), new HashSet<>());
+    new BindingReflectionHintsRegistrar()
+        .registerReflectionHints(hints.reflection(), BINDING_TYPES);
+  }
+
+  private static void registerMessage(RuntimeHints hints, Message prototype, Set<Class<?>> seen) {
+    if (!seen.add(prototype.getClass())) {
+      return;
+    }
+    Message.Builder builder = prototype.newBuilderForType();
+    hints.reflection().registerType(prototype.getClass(), MemberCategory.INVOKE_PUBLIC_METHODS);
+    hints.reflection().registerType(builder.getClass(), MemberCategory.INVOKE_PUBLIC_METHODS);
+    for (FieldDescriptor field : prototype.getDescriptorForType().getFields()) {
+      if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+        registerMessage(hints, builder.newBuilderForField(field).getDefaultInstanceForType(), seen);
+      } else if (field.getJavaType() == FieldDescriptor.JavaType.ENUM) {
+        Class<?> enumType = enumType(prototype.getClass(), field);
+        if (seen.add(enumType)) {
+          hints.reflection().registerType(enumType, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+      }
+    }
+  }
+
+  /** Returns the generated enum class of {@code field}, the return type of its getter. */
+  private static Class<?> enumType(Class<?> messageType, FieldDescriptor field) {
+    String jsonName = field.getJsonName();
+    String getter = "get" + Character.toUpperCase(jsonName.charAt(0)) + jsonName.substring(1);
+    try {
+      return field.isRepeated()
+          ? messageType.getMethod(getter, int.class).getReturnType()
+          : messageType.getMethod(getter).getReturnType();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("No getter for enum field " + field.getFullName(), e);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import java.util.concurrent.Executor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+/**
+ * Completes reCAPTCHA RPCs on virtual threads when {@code spring.threads.virtual.enabled=true} on a
+ * Java 21+ runtime. Spring Boot already moves Tomcat's request handling to virtual threads for that
+ * property.
+ *
+ * <p>Scrypt hashing and verification stay on the bounded {@code passwordCheckExecutorService}: they
+ * are CPU bound, so more threads than cores only adds contention.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class ThreadingConfig {
+
+  @Bean
+  Executor recaptchaCompletionExecutorService() {
+    return new VirtualThreadTaskExecutor("recaptcha-completion-");
+  }
+}
@@ -0,0 +1,247 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptcha.pld.pld.services.RecaptchaContext;
+import com.google.recaptcha.pld.pld.services.TenantFactory;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Warms the service up before it takes traffic. Application runners finish before the application
+ * reports itself ready, so the readiness probe stays down until every phase is done:
+ *
+ * <ol>
+ *   <li>{@code verifier}: {@code pld.warmup.rounds} synthetic createVerification and verify rounds,
+ *       so the JIT compiles the scrypt and EC code.
+ *   <li>{@code json}: as many Assessment JSON round trips through the application's mapper.
+ *   <li>{@code connection}: waits, for up to {@code pld.grpc.warmupTimeoutMillis}, on the channel
+ *       warm-up of every tenant's reCAPTCHA client.
+ * </ol>
+ *
+ * <p>Each phase's duration goes to the {@code pld.warmup} timer. For the first two, {@code
+ * pld.warmup.speedup} is the first round's time over the last's, which shows how much of the cold
+ * start the warm-up absorbed. A failed phase is logged and does not stop the application.
+ */
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+  public static final String WARMUP_TIMER = "pld.warmup";
+
+  public static final String SPEEDUP_GAUGE = "pld.warmup.speedup";
+
+  public static final String CONNECTIONS_GAUGE = "pld.warmup.connections";
+
+  static final String VERIFIER_PHASE = "verifier";
+
+  static final String JSON_PHASE = "json";
+
+  static final String CONNECTION_PHASE = "connection";
+
+  private static final String USERNAME = "pld-warmup";
+
+  private static final String PASSWORD = "pld-warmup-password";
+
+  private static final Logger logger = LoggerFactory.getLogger(WarmupRunner.class);
+
+  private final RecaptchaContext recaptchaContext;
+
+  private final TenantFactory tenantFactory;
+
+  private final PasswordCheckEngine passwordCheckEngine;
+
+  private final JsonMapper jsonMapper;
+
+  private final PldEnvironment env;
+
+  private final MeterRegistry registry;
+
+  public WarmupRunner(
+      RecaptchaContext recaptchaContext,
+      TenantFactory tenantFactory,
+      PasswordCheckEngine passwordCheckEngine,
+      JsonMapper jsonMapper,
+      PldEnvironment env,
+      MeterRegistry registry) {
+    this.recaptchaContext = recaptchaContext;
+    this.tenantFactory = tenantFactory;
+    this.passwordCheckEngine = passwordCheckEngine;
+    this.jsonMapper = jsonMapper;
+    this.env = env;
+    this.registry = registry;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws InterruptedException {
+    int rounds = env.getWarmupRounds();
+    if (rounds > 0) {
+      try {
+        EncryptedCredentials verification = warmUpVerifier(rounds);
+        warmUpJson(rounds, verification);
+      } catch (ExecutionException | RuntimeException e) {
+        logger.warn("Local warm-up failed", e instanceof ExecutionException ? e.getCause() : e);
+      }
+    }
+    warmUpConnection();
+  }
+
+  /** Runs {@code rounds} leak checks of synthetic credentials and returns the last verification. */
+  private EncryptedCredentials warmUpVerifier(int rounds)
+      throws InterruptedException, ExecutionException {
+    long start = System.nanoTime();
+    long first = 0;
+    long last = 0;
+    EncryptedCredentials verification = null;
+    for (int i = 0; i < rounds; i++) {
+      long roundStart = System.nanoTime();
+      verification = passwordCheckEngine.createVerification(USERNAME, PASSWORD).get();
+      // The client's own encrypted hash is a valid curve point, which is all verify needs.
+      passwordCheckEngine.verify(verification, passwordLeakVerification(verification)).get();
+      last = System.nanoTime() - roundStart;
+      if (i == 0) {
+        first = last;
+      }
+    }
+    record(VERIFIER_PHASE, System.nanoTime() - start, first, last);
+    return verification;
+  }
+
+  /** Serializes and parses an Assessment {@code rounds} times, the way requests and replies are. */
+  private void warmUpJson(int rounds, EncryptedCredentials verification) {
+    Assessment assessment =
+        Assessment.newBuilder()
+            .setPrivatePasswordLeakVerification(passwordLeakVerification(verification))
+            .build();
+    String json;
+    try {
+      // Requests carry the assessment as a JSON object, in the protobuf JSON mapping.
+      json = JsonFormat.printer().print(assessment);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException(e);
+    }
+    long start = System.nanoTime();
+    long first = 0;
+    long last = 0;
+    for (int i = 0; i < rounds; i++) {
+      long roundStart = System.nanoTime();
+      jsonMapper.writeValueAsString(assessment);
+      jsonMapper.readValue(json, Assessment.class);
+      last = System.nanoTime() - roundStart;
+      if (i == 0) {
+        first = last;
+      }
+    }
+    record(JSON_PHASE, System.nanoTime() - start, first, last);
+  }
+
+  /**
+   * Returns the fields of a request and its answer at once, with the client's own encrypted hash
+   * standing in for the re-encrypted one.
+   */
+  private static PrivatePasswordLeakVerification passwordLeakVerification(
+      EncryptedCredentials verification) {
+    return PrivatePasswordLeakVerification.newBuilder()
+        .setLookupHashPrefix(verification.getLookupHashPrefix())
+        .setEncryptedUserCredentialsHash(verification.getEncryptedUserCredentialsHash())
+        .setReencryptedUserCredentialsHash(verification.getEncryptedUserCredentialsHash())
+        .addEncryptedLeakMatchPrefixes(verification.getLookupHashPrefix())
+        .build();
+  }
+
+  /**
+   * Waits on the channel warm-up of the default tenant's client and of every tenant in {@code
+   * pld.tenants}, all within one {@code pld.grpc.warmupTimeoutMillis}.
+   */
+  private void warmUpConnection() throws InterruptedException {
+    List<RecaptchaContext> contexts = new ArrayList<>();
+    contexts.add(recaptchaContext);
+    contexts.addAll(tenantFactory.getRecaptchaContexts());
+    if (contexts.stream().allMatch(context -> context.getWarmup() == null)) {
+      return;
+    }
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(env.getGrpcWarmupTimeoutMillis());
+    for (RecaptchaContext context : contexts) {
+      CompletableFuture<Integer> warmup = context.getWarmup();
+      if (warmup == null) {
+        continue;
+      }
+      String tenant = context.getTenantName();
+      int reached = 0;
+      try {
+        reached = warmup.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (reached > 0) {
+          logger.info("Warmed up {} reCAPTCHA API channel(s) for tenant {}", reached, tenant);
+        } else {
+          logger.warn("reCAPTCHA API warm-up calls for tenant {} did not reach the API", tenant);
+        }
+      } catch (TimeoutException e) {
+        logger.warn(
+            "reCAPTCHA API warm-up for tenant {} did not finish within {} ms",
+            tenant,
+            env.getGrpcWarmupTimeoutMillis());
+      } catch (ExecutionException e) {
+        logger.warn("reCAPTCHA API warm-up for tenant {} failed", tenant, e.getCause());
+      }
+      int connections = reached;
+      Gauge.builder(CONNECTIONS_GAUGE, () -> connections)
+          .description("Warm-up calls that reached the reCAPTCHA API")
+          .tag(PldMetrics.TENANT_TAG, tenant)
+          .register(registry);
+    }
+    timer(CONNECTION_PHASE).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private void record(String phase, long elapsedNanos, long firstNanos, long lastNanos) {
+    timer(phase).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    double speedup = (double) firstNanos / Math.max(1, lastNanos);
+    Gauge.builder(SPEEDUP_GAUGE, () -> speedup)
+        .description("First warm-up round's time over the last round's")
+        .tag("phase", phase)
+        .register(registry);
+    logger.info(
+        "Warmed up {} in {} ms; the first round took {}x as long as the last",
+        phase,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        String.format("%.1f", speedup));
+  }
+
+  private Timer timer(String phase) {
+    return Timer.builder(WARMUP_TIMER)
+        .description("Time spent in each startup warm-up phase")
+        .tag("phase", phase)
+        .register(registry);
+  }
+}
@@ -15,19 +15,70 @@
 package com.google.recaptcha.pld.pld.config;
 
 import com.google.recaptcha.pld.pld.util.LocalhostPolicy;
+import com.google.recaptcha.pld.pld.util.MergeAssessmentProtobufConverter;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.RateLimitPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverters;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @EnableWebMvc
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WebConfig implements WebMvcConfigurer {
   @Autowired private LocalhostPolicy localhostPolicy;
 
+  @Autowired private RateLimitPolicy rateLimitPolicy;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired private PldEnvironment env;
+
   @Override
   public void addInterceptors(InterceptorRegistry registry) {
     registry.addInterceptor(localhostPolicy);
+    registry
+        .addInterceptor(rateLimitPolicy)
+        .addPathPatterns(
+            "/createAssessment", "/mergeAssessment", "/createAssessments", "/tenants/**");
+  }
+
+  /**
+   * Reads {@code /createAssessments} bodies, a thread per batch for as long as it streams. Batches
+   * beyond {@code pld.batch.maxBatches} are shed with a 503. It is the only handler that relies on
+   * the default async timeout; the others set their own.
+   */
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.setTaskExecutor(batchExecutor());
+    configurer.setDefaultTimeout(env.getBatchTimeoutMillis());
+  }
+
+  @Bean
+  ThreadPoolTaskExecutor batchExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(env.getBatchMaxBatches());
+    executor.setMaxPoolSize(env.getBatchMaxBatches());
+    executor.setQueueCapacity(0);
+    executor.setThreadNamePrefix("batch-");
+    return executor;
+  }
+
+  /**
+   * Adds {@code application/x-protobuf} bodies for /mergeAssessment. It goes after the default
+   * converters, so that requests that do not ask for protobuf keep getting JSON.
+   */
+  @Override
+  public void configureMessageConverters(HttpMessageConverters.ServerBuilder builder) {
+    builder.configureMessageConvertersList(
+        converters -> converters.add(new MergeAssessmentProtobufConverter(meterRegistry)));
   }
 }
@@ -0,0 +1,435 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.services.LeakCheckService;
+import com.google.recaptcha.pld.pld.services.Tenant;
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.CancellableFutures;
+import com.google.recaptcha.pld.pld.util.Deadlines;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldProtos;
+import com.google.recaptcha.pld.pld.util.RateLimitedException;
+import com.google.recaptcha.pld.pld.util.RateLimits;
+import com.google.recaptcha.pld.pld.util.ServiceOverloadedException;
+import com.google.recaptcha.pld.v1.CheckResponse;
+import com.google.recaptcha.pld.v1.Credentials;
+import com.google.recaptcha.pld.v1.PasswordLeakServiceGrpc;
+import io.grpc.BindableService;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Deadline;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Serves the {@code PasswordLeakService} of {@code src/main/proto/pld.proto} on the gRPC server,
+ * with the same checks, deadlines and admission limit as {@link PldController}. It implements the
+ * generated {@link PasswordLeakServiceGrpc.AsyncService} rather than extending the generated base
+ * class, whose {@code bindService} is final, so that it can install its own interceptor.
+ *
+ * <p>A call's gRPC deadline takes the place of the {@code X-PLD-Timeout-Millis} header, and is
+ * capped the same way. Cancelling a call cancels the checks it started. The {@code x-pld-tenant}
+ * metadata key picks the tenant, as the {@code X-PLD-Tenant} header does over HTTP.
+ */
+@GrpcService
+public class PasswordLeakGrpcService
+    implements PasswordLeakServiceGrpc.AsyncService, BindableService {
+
+  public static final Metadata.Key<String> TENANT_KEY =
+      Metadata.Key.of(TenantRegistry.TENANT_HEADER, Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final Metadata.Key<String> FORWARDED_FOR_KEY =
+      Metadata.Key.of(RateLimits.FORWARDED_FOR_HEADER, Metadata.ASCII_STRING_MARSHALLER);
+
+  // The tenant a call named in its metadata, set by the interceptor bindService installs.
+  private static final Context.Key<String> TENANT_CONTEXT_KEY = Context.key("pld-tenant");
+
+  private final TenantRegistry tenants;
+
+  private final Validator validator;
+
+  private final PldEnvironment env;
+
+  private final RateLimits rateLimits;
+
+  public PasswordLeakGrpcService(
+      TenantRegistry tenants, Validator validator, PldEnvironment env, RateLimits rateLimits) {
+    this.tenants = tenants;
+    this.validator = validator;
+    this.env = env;
+    this.rateLimits = rateLimits;
+  }
+
+  @Override
+  public ServerServiceDefinition bindService() {
+    return ServerInterceptors.intercept(
+        PasswordLeakServiceGrpc.bindService(this), new TenantInterceptor());
+  }
+
+  @Override
+  public void check(Credentials request, StreamObserver<CheckResponse> responses) {
+    PlaintextCredentials credentials = PldProtos.fromProto(request);
+    Tenant tenant = resolveTenant(responses);
+    if (tenant == null) {
+      return;
+    }
+    String violations = describeViolations(credentials);
+    if (violations != null) {
+      responses.onError(Status.INVALID_ARGUMENT.withDescription(violations).asRuntimeException());
+      return;
+    }
+    Deadline deadline = deadline();
+    respond(
+        tenant,
+        () ->
+            CancellableFutures.thenApply(
+                tenant.getLeakCheckService().checkCredentials(credentials, deadline),
+                status ->
+                    PldProtos.toProto(
+                        BatchAssessmentResult.completed(credentials.getId(), status))),
+        responses);
+  }
+
+  @Override
+  public void mergeAssessment(
+      com.google.recaptcha.pld.v1.MergeAssessmentRequest message,
+      StreamObserver<com.google.recaptcha.pld.v1.MergeAssessmentResponse> responses) {
+    MergeAssessmentRequest request = PldProtos.fromProto(message);
+    Tenant tenant = resolveTenant(responses);
+    if (tenant == null) {
+      return;
+    }
+    String violations =
+        request.getCredentials() == null
+            ? "credentials are required"
+            : describeViolations(request.getCredentials());
+    if (violations == null && request.getAssessment() == null) {
+      violations = "assessment is required";
+    }
+    if (violations != null) {
+      responses.onError(Status.INVALID_ARGUMENT.withDescription(violations).asRuntimeException());
+      return;
+    }
+    Deadline deadline = deadline();
+    respond(
+        tenant,
+        () ->
+            CancellableFutures.thenApply(
+                tenant.getLeakCheckService().mergeAssessment(request, deadline),
+                PldProtos::toProto),
+        responses);
+  }
+
+  @Override
+  public StreamObserver<Credentials> checkStream(StreamObserver<CheckResponse> responses) {
+    Tenant tenant = resolveTenant(responses);
+    if (tenant == null) {
+      // The call is already closed, so nothing more arrives here.
+      return new StreamObserver<>() {
+        @Override
+        public void onNext(Credentials credentials) {}
+
+        @Override
+        public void onError(Throwable t) {}
+
+        @Override
+        public void onCompleted() {}
+      };
+    }
+    return new CheckStream(tenant, (ServerCallStreamObserver<CheckResponse>) responses);
+  }
+
+  /**
+   * Returns the tenant the call's metadata names, or closes the call with {@code NOT_FOUND} and
+   * returns null when there is no such tenant.
+   */
+  private Tenant resolveTenant(StreamObserver<?> responses) {
+    try {
+      return tenants.resolve(TENANT_CONTEXT_KEY.get());
+    } catch (ResponseStatusException e) {
+      responses.onError(
+          statusForHttpStatus(e.getStatusCode().value())
+              .withDescription(e.getReason())
+              .asRuntimeException());
+      return null;
+    }
+  }
+
+  /**
+   * Answers a unary call with the result of {@code call}, run under the tenant's admission limit.
+   * The call is cancelled when the client cancels or its deadline passes.
+   */
+  private <T> void respond(
+      Tenant tenant, Supplier<CompletableFuture<T>> call, StreamObserver<T> responses) {
+    CompletableFuture<T> future;
+    try {
+      future = tenant.getAdmissionLimiter().admit(call);
+    } catch (ServiceOverloadedException | RejectedExecutionException e) {
+      responses.onError(toStatus(tenant, e).asRuntimeException());
+      return;
+    }
+    ((ServerCallStreamObserver<T>) responses).setOnCancelHandler(() -> future.cancel(true));
+    future.whenComplete(
+        (value, t) -> {
+          if (t == null) {
+            responses.onNext(value);
+            responses.onCompleted();
+          } else if (!future.isCancelled()) {
+            responses.onError(toStatus(tenant, t).asRuntimeException());
+          }
+        });
+  }
+
+  /**
+   * Returns the call's own deadline, capped at {@code pld.deadline.maxMillis}, or the default, or
+   * null if there is neither.
+   */
+  private Deadline deadline() {
+    Deadline callDeadline = Context.current().getDeadline();
+    return Deadlines.fromTimeout(
+        callDeadline == null ? null : callDeadline.timeRemaining(TimeUnit.MILLISECONDS), env);
+  }
+
+  private String describeViolations(PlaintextCredentials credentials) {
+    Set<ConstraintViolation<PlaintextCredentials>> violations = validator.validate(credentials);
+    if (violations.isEmpty()) {
+      return null;
+    }
+    return violations.stream()
+        .map(ConstraintViolation::getMessage)
+        .sorted()
+        .collect(Collectors.joining(", "));
+  }
+
+  private Status toStatus(Tenant tenant, Throwable t) {
+    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    if (cause instanceof ServiceOverloadedException
+        || cause instanceof RejectedExecutionException) {
+      tenant
+          .getMetrics()
+          .countRejection(cause instanceof ServiceOverloadedException ? "admission" : "queue");
+      return Status.UNAVAILABLE.withDescription(Messages.SERVICE_OVERLOADED_MESSAGE);
+    }
+    if (cause instanceof ResponseStatusException) {
+      ResponseStatusException exception = (ResponseStatusException) cause;
+      return statusForHttpStatus(exception.getStatusCode().value())
+          .withDescription(exception.getReason());
+    }
+    return Status.INTERNAL.withDescription(cause.getMessage()).withCause(cause);
+  }
+
+  /** Maps the HTTP status the pipeline fails with back to the gRPC code it usually stands for. */
+  static Status statusForHttpStatus(int httpStatus) {
+    switch (httpStatus) {
+      case 400:
+        return Status.INVALID_ARGUMENT;
+      case 401:
+        return Status.UNAUTHENTICATED;
+      case 403:
+        return Status.PERMISSION_DENIED;
+      case 404:
+        return Status.NOT_FOUND;
+      case 409:
+        return Status.ABORTED;
+      case 429:
+        return Status.RESOURCE_EXHAUSTED;
+      case 499:
+        return Status.CANCELLED;
+      case 501:
+        return Status.UNIMPLEMENTED;
+      case 503:
+        return Status.UNAVAILABLE;
+      case 504:
+        return Status.DEADLINE_EXCEEDED;
+      default:
+        return Status.INTERNAL;
+    }
+  }
+
+  /**
+   * One CheckStream call. Inbound flow control is manual: the stream asks for {@code
+   * pld.grpc.server.streamWindow} credentials up front, and for one more each time a result is
+   * handed to the transport. Each credential is admitted by the tenant's admission limit, and shed
+   * with an error result when it is reached. Results wait in a queue while the client is not
+   * reading them, so a slow reader stops the service from reading, and in turn the client from
+   * sending, instead of piling results up in memory.
+   */
+  private final class CheckStream implements StreamObserver<Credentials> {
+
+    private final LeakCheckService leakCheckService;
+
+    private final AdmissionLimiter admissionLimiter;
+
+    private final ServerCallStreamObserver<CheckResponse> responses;
+
+    private final Deadline streamDeadline = Context.current().getDeadline();
+
+    private final Set<CompletableFuture<BatchAssessmentResult>> inFlight =
+        ConcurrentHashMap.newKeySet();
+
+    // The queue and the fields below are guarded by this.
+    private final Queue<BatchAssessmentResult> results = new ArrayDeque<>();
+
+    // Credentials received whose result has not been sent yet.
+    private int unsent;
+
+    private boolean halfClosed;
+
+    private boolean closed;
+
+    CheckStream(Tenant tenant, ServerCallStreamObserver<CheckResponse> responses) {
+      this.leakCheckService = tenant.getLeakCheckService();
+      this.admissionLimiter = tenant.getAdmissionLimiter();
+      this.responses = responses;
+      responses.disableAutoRequest();
+      responses.setOnReadyHandler(this::drain);
+      responses.setOnCancelHandler(this::cancel);
+      responses.request(Math.max(1, env.getGrpcServerStreamWindow()));
+    }
+
+    @Override
+    public void onNext(Credentials credentials) {
+      Deadline deadline =
+          Deadlines.fromTimeout(
+              streamDeadline == null ? null : streamDeadline.timeRemaining(TimeUnit.MILLISECONDS),
+              env);
+      synchronized (this) {
+        unsent++;
+      }
+      CompletableFuture<BatchAssessmentResult> result =
+          leakCheckService.checkEntry(PldProtos.fromProto(credentials), deadline, admissionLimiter);
+      inFlight.add(result);
+      result.whenComplete(
+          (value, t) -> {
+            inFlight.remove(result);
+            if (value != null) {
+              synchronized (this) {
+                results.add(value);
+              }
+              drain();
+            }
+          });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      cancel();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      halfClosed = true;
+      completeIfDone();
+    }
+
+    /** Sends queued results while the transport takes them, and asks for as many credentials. */
+    private synchronized void drain() {
+      int sent = 0;
+      while (!closed && !results.isEmpty() && responses.isReady()) {
+        responses.onNext(PldProtos.toProto(results.poll()));
+        unsent--;
+        sent++;
+      }
+      if (sent > 0 && !halfClosed && !closed) {
+        responses.request(sent);
+      }
+      completeIfDone();
+    }
+
+    private void completeIfDone() {
+      if (halfClosed && unsent == 0 && !closed) {
+        closed = true;
+        responses.onCompleted();
+      }
+    }
+
+    private void cancel() {
+      synchronized (this) {
+        closed = true;
+        results.clear();
+      }
+      inFlight.forEach(future -> future.cancel(true));
+    }
+  }
+
+  /**
+   * Carries the {@code x-pld-tenant} metadata value into the call's {@link Context}, and closes the
+   * call with {@code RESOURCE_EXHAUSTED} when its client address or tenant is over its rate limit.
+   */
+  private final class TenantInterceptor implements ServerInterceptor {
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+        ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+      String tenantName = headers.get(TENANT_KEY);
+      if (rateLimits.limitsRequests()) {
+        try {
+          checkRateLimits(call, headers, tenants.resolve(tenantName));
+        } catch (ResponseStatusException e) {
+          call.close(
+              statusForHttpStatus(e.getStatusCode().value()).withDescription(e.getReason()),
+              new Metadata());
+          return new ServerCall.Listener<>() {};
+        }
+      }
+      Context context = Context.current().withValue(TENANT_CONTEXT_KEY, tenantName);
+      return Contexts.interceptCall(context, call, headers, next);
+    }
+
+    private void checkRateLimits(ServerCall<?, ?> call, Metadata headers, Tenant tenant) {
+      SocketAddress remoteAddr = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+      try {
+        rateLimits.checkSource(
+            remoteAddr instanceof InetSocketAddress
+                    && ((InetSocketAddress) remoteAddr).getAddress() != null
+                ? ((InetSocketAddress) remoteAddr).getAddress().getHostAddress()
+                : null,
+            headers.getAll(FORWARDED_FOR_KEY));
+        rateLimits.checkConsumer(tenant.getName());
+      } catch (RateLimitedException e) {
+        tenant.getMetrics().countRateLimited(e.getLimit());
+        throw e;
+      }
+    }
+  }
+}
@@ -13,91 +13,225 @@
 // limitations under the License.
 package com.google.recaptcha.pld.pld.controllers;
 
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerification;
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
 import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
 import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.Messages;
 import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
 import com.google.recaptcha.pld.pld.model.PldLeakedResult;
-import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
-import com.google.recaptcha.pld.pld.model.VerificationResponse;
-import com.google.recaptcha.pld.pld.services.PldService;
-import com.google.recaptcha.pld.pld.services.RecaptchaContext;
+import com.google.recaptcha.pld.pld.services.LeakCheckService;
+import com.google.recaptcha.pld.pld.services.Tenant;
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import com.google.recaptcha.pld.pld.util.CancellableFutures;
+import com.google.recaptcha.pld.pld.util.Deadlines;
+import com.google.recaptcha.pld.pld.util.JsonArrayIterator;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.ServiceOverloadedException;
+import io.grpc.Deadline;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
 
+/**
+ * Serves the PLD endpoints on the servlet stack, the default. See {@link ReactivePldController}.
+ */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class PldController {
 
-  private final PldService pldService;
+  /** Request header carrying the caller's timeout in milliseconds. */
+  public static final String TIMEOUT_HEADER = "X-PLD-Timeout-Millis";
 
-  private final RecaptchaContext recaptchaContext;
+  static final String MALFORMED_BATCH_MESSAGE = "Malformed JSON array of credentials";
 
-  public PldController(PldService pldService, RecaptchaContext recaptchaContext) {
-    this.pldService = pldService;
-    this.recaptchaContext = recaptchaContext;
+  private final TenantRegistry tenants;
+
+  private final PldEnvironment env;
+
+  private final JsonMapper jsonMapper;
+
+  public PldController(TenantRegistry tenants, PldEnvironment env, JsonMapper jsonMapper) {
+    this.tenants = tenants;
+    this.env = env;
+    this.jsonMapper = jsonMapper;
   }
 
-  @PostMapping("/createAssessment")
-  public CompletableFuture<PldLeakedResult> postCreateAssessment(
-      @Valid @RequestBody PlaintextCredentials credentials)
+  @PostMapping({"/createAssessment", "/tenants/{tenant}/createAssessment"})
+  public DeferredResult<PldLeakedResult> postCreateAssessment(
+      @Valid @RequestBody PlaintextCredentials credentials,
+      @RequestHeader(name = TIMEOUT_HEADER, required = false) Long timeoutMillis,
+      @PathVariable(name = TenantRegistry.TENANT_PATH_VARIABLE, required = false) String pathTenant,
+      @RequestHeader(name = TenantRegistry.TENANT_HEADER, required = false) String headerTenant)
       throws InterruptedException, ExecutionException {
-
-    return pldService
-        .newPasswordCheckVerification(credentials)
-        .thenCompose(verification -> executePasswordLeakAssessment(verification))
-        .thenApply(status -> new PldLeakedResult(status));
+    Tenant tenant = tenants.resolve(pathTenant, headerTenant);
+    Deadline deadline = Deadlines.fromTimeout(timeoutMillis, env);
+    return toDeferredResult(
+        CancellableFutures.thenApply(
+            tenant
+                .getAdmissionLimiter()
+                .admit(() -> tenant.getLeakCheckService().checkCredentials(credentials, deadline)),
+            status -> new PldLeakedResult(status)),
+        deadline);
   }
 
-  @PostMapping("/mergeAssessment")
-  public CompletableFuture<MergeAssessmentResponse> postMergeAssessment(
-      @Valid @RequestBody MergeAssessmentRequest request)
+  @PostMapping({"/mergeAssessment", "/tenants/{tenant}/mergeAssessment"})
+  public DeferredResult<MergeAssessmentResponse> postMergeAssessment(
+      @Valid @RequestBody MergeAssessmentRequest request,
+      @RequestHeader(name = TIMEOUT_HEADER, required = false) Long timeoutMillis,
+      @PathVariable(name = TenantRegistry.TENANT_PATH_VARIABLE, required = false) String pathTenant,
+      @RequestHeader(name = TenantRegistry.TENANT_HEADER, required = false) String headerTenant)
       throws InterruptedException, ExecutionException {
-    return pldService
-        .newPasswordCheckVerification(request.getCredentials())
-        .thenCompose(
-            verification ->
-                recaptchaContext.createAssessmentAsync(verification, request.getAssessment()))
-        .thenCompose(response -> populateMergedResponse(response));
+    Tenant tenant = tenants.resolve(pathTenant, headerTenant);
+    Deadline deadline = Deadlines.fromTimeout(timeoutMillis, env);
+    return toDeferredResult(
+        tenant
+            .getAdmissionLimiter()
+            .admit(() -> tenant.getLeakCheckService().mergeAssessment(request, deadline)),
+        deadline);
+  }
+
+  /**
+   * Answers with the result of {@code future}, or with a 504 once {@code deadline} passes. The
+   * future is cancelled, and the work behind it with it, when the deadline passes first or the
+   * client goes away. Without a deadline, the MVC async request timeout applies.
+   */
+  private static <T> DeferredResult<T> toDeferredResult(
+      CompletableFuture<T> future, Deadline deadline) {
+    DeferredResult<T> result =
+        deadline == null
+            ? new DeferredResult<>()
+            : new DeferredResult<>(
+                Math.max(1, deadline.timeRemaining(TimeUnit.MILLISECONDS)), Deadlines::exceeded);
+    future.whenComplete(
+        (value, t) -> {
+          if (t == null) {
+            result.setResult(value);
+          } else if (!future.isCancelled()) {
+            result.setErrorResult(t instanceof CompletionException ? t.getCause() : t);
+          }
+        });
+    result.onTimeout(() -> future.cancel(true));
+    result.onError(t -> future.cancel(true));
+    return result;
+  }
+
+  /**
+   * Checks a JSON array of credentials and streams one JSON result per line, in completion order.
+   * Each result carries the {@code id} of the credentials it belongs to.
+   *
+   * <p>Each entry goes through the admission limit like a single request and is shed with an error
+   * result when the limit is reached. It is bounded by the timeout header, counted from when it
+   * starts, as well as by {@code pld.batch.timeoutMillis} for the whole batch.
+   *
+   * <p>The array is read as the checks progress, on the MVC async executor, so that at most {@code
+   * pld.batch.maxConcurrency} entries are held in memory however long it is. If the array turns out
+   * to be malformed part way, the results of the entries before it are still sent, followed by a
+   * line with only an {@code error}.
+   */
+  @PostMapping(
+      value = {"/createAssessments", "/tenants/{tenant}/createAssessments"},
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> postCreateAssessments(
+      HttpServletRequest request,
+      @RequestHeader(name = TIMEOUT_HEADER, required = false) Long timeoutMillis,
+      @PathVariable(name = TenantRegistry.TENANT_PATH_VARIABLE, required = false) String pathTenant,
+      @RequestHeader(name = TenantRegistry.TENANT_HEADER, required = false) String headerTenant)
+      throws IOException {
+    Tenant tenant = tenants.resolve(pathTenant, headerTenant);
+    LeakCheckService leakCheckService = tenant.getLeakCheckService();
+    JsonArrayIterator<PlaintextCredentials> entries;
+    try {
+      entries =
+          JsonArrayIterator.open(jsonMapper, request.getInputStream(), PlaintextCredentials.class);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    Deadline deadline = Deadline.after(env.getBatchTimeoutMillis(), TimeUnit.MILLISECONDS);
+    StreamingResponseBody body =
+        out -> {
+          try (entries) {
+            leakCheckService.checkAll(
+                entries,
+                env.getBatchMaxConcurrency(),
+                tenant.getAdmissionLimiter(),
+                () -> Deadlines.forEntry(timeoutMillis, deadline, env),
+                result -> sendLine(out, result));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (JacksonException | IllegalArgumentException e) {
+            sendLine(out, BatchAssessmentResult.failed(null, MALFORMED_BATCH_MESSAGE));
+          }
+        };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+  }
+
+  /** Writes one result and a newline. Results complete on many threads, so writes are serial. */
+  private void sendLine(OutputStream out, BatchAssessmentResult result) {
+    byte[] line = jsonMapper.writeValueAsBytes(result);
+    synchronized (out) {
+      try {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
   }
 
-  private CompletableFuture<PldLeakedStatus> executePasswordLeakAssessment(
-      PasswordCheckVerification verification) {
-    return recaptchaContext
-        .createAssessmentAsync(verification)
-        .thenCompose(
-            assessment ->
-                pldService.verifyAssessment(
-                    verification, assessment.getPrivatePasswordLeakVerification()))
-        .thenApply(
-            pldResult ->
-                pldResult.areCredentialsLeaked()
-                    ? PldLeakedStatus.LEAKED
-                    : PldLeakedStatus.NO_STATUS);
+  /**
+   * Sheds load with a 503 when the admission limit is reached or the hashing queue is full, and
+   * tells clients when to retry.
+   */
+  @ExceptionHandler({ServiceOverloadedException.class, RejectedExecutionException.class})
+  public ResponseEntity<Map<String, String>> handleOverload(Exception ex, WebRequest request) {
+    tenantOf(request)
+        .getMetrics()
+        .countRejection(ex instanceof ServiceOverloadedException ? "admission" : "queue");
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(env.getAdmissionRetryAfterSeconds()))
+        .body(Map.of("error", Messages.SERVICE_OVERLOADED_MESSAGE));
   }
 
-  private CompletableFuture<MergeAssessmentResponse> populateMergedResponse(
-      VerificationResponse response) {
-
-    return pldService
-        .verifyAssessment(
-            response.getPasswordCheckVerification(),
-            response.getAssessment().getPrivatePasswordLeakVerification())
-        .thenApply(
-            pldResult ->
-                new MergeAssessmentResponse(
-                    response.getAssessment(),
-                    pldResult.areCredentialsLeaked()
-                        ? PldLeakedStatus.LEAKED
-                        : PldLeakedStatus.NO_STATUS));
+  /** Returns the tenant of a request whose handler failed, once routing has succeeded. */
+  private Tenant tenantOf(WebRequest request) {
+    @SuppressWarnings("unchecked")
+    Map<String, String> pathVariables =
+        (Map<String, String>)
+            request.getAttribute(
+                HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    return tenants.resolve(
+        pathVariables == null ? null : pathVariables.get(TenantRegistry.TENANT_PATH_VARIABLE),
+        request.getHeader(TenantRegistry.TENANT_HEADER));
   }
 
   @ExceptionHandler(MethodArgumentNotValidException.class)
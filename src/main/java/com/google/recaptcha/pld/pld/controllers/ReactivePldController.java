@@ -0,0 +1,178 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedResult;
+import com.google.recaptcha.pld.pld.services.LeakCheckService;
+import com.google.recaptcha.pld.pld.services.Tenant;
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import com.google.recaptcha.pld.pld.util.CancellableFutures;
+import com.google.recaptcha.pld.pld.util.Deadlines;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.ServiceOverloadedException;
+import io.grpc.Deadline;
+import jakarta.validation.Valid;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Serves the PLD endpoints on WebFlux and Reactor Netty when {@code
+ * spring.main.web-application-type=reactive}, with the same contract as {@link PldController}.
+ * Handlers only start the check and return, so a few event loop threads serve every request while
+ * it waits on hashing and the reCAPTCHA API.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactivePldController {
+
+  private static final String PROTOBUF_VALUE = "application/x-protobuf";
+
+  private final TenantRegistry tenants;
+
+  private final PldEnvironment env;
+
+  public ReactivePldController(TenantRegistry tenants, PldEnvironment env) {
+    this.tenants = tenants;
+    this.env = env;
+  }
+
+  @PostMapping({"/createAssessment", "/tenants/{tenant}/createAssessment"})
+  public Mono<PldLeakedResult> postCreateAssessment(
+      @Valid @RequestBody PlaintextCredentials credentials,
+      @RequestHeader(name = PldController.TIMEOUT_HEADER, required = false) Long timeoutMillis,
+      @PathVariable(name = TenantRegistry.TENANT_PATH_VARIABLE, required = false) String pathTenant,
+      @RequestHeader(name = TenantRegistry.TENANT_HEADER, required = false) String headerTenant) {
+    Tenant tenant = tenants.resolve(pathTenant, headerTenant);
+    Deadline deadline = Deadlines.fromTimeout(timeoutMillis, env);
+    return toMono(
+        tenant,
+        () ->
+            CancellableFutures.thenApply(
+                tenant.getLeakCheckService().checkCredentials(credentials, deadline),
+                status -> new PldLeakedResult(status)),
+        deadline);
+  }
+
+  /** Answers in JSON unless the client only accepts {@code application/x-protobuf}. */
+  @PostMapping(
+      value = {"/mergeAssessment", "/tenants/{tenant}/mergeAssessment"},
+      produces = {MediaType.APPLICATION_JSON_VALUE, PROTOBUF_VALUE})
+  public Mono<MergeAssessmentResponse> postMergeAssessment(
+      @Valid @RequestBody MergeAssessmentRequest request,
+      @RequestHeader(name = PldController.TIMEOUT_HEADER, required = false) Long timeoutMillis,
+      @PathVariable(name = TenantRegistry.TENANT_PATH_VARIABLE, required = false) String pathTenant,
+      @RequestHeader(name = TenantRegistry.TENANT_HEADER, required = false) String headerTenant) {
+    Tenant tenant = tenants.resolve(pathTenant, headerTenant);
+    Deadline deadline = Deadlines.fromTimeout(timeoutMillis, env);
+    return toMono(
+        tenant, () -> tenant.getLeakCheckService().mergeAssessment(request, deadline), deadline);
+  }
+
+  /**
+   * Runs {@code call} under the tenant's admission limit, and fails with a 504 once {@code
+   * deadline}, if any, passes. The future is cancelled, and the work behind it with it, when the
+   * deadline passes first or the client goes away.
+   */
+  private <T> Mono<T> toMono(
+      Tenant tenant, Supplier<CompletableFuture<T>> call, Deadline deadline) {
+    Mono<T> result = Mono.fromFuture(() -> tenant.getAdmissionLimiter().admit(call));
+    return deadline == null
+        ? result
+        : result.timeout(Deadlines.remaining(deadline), Mono.error(Deadlines::exceeded));
+  }
+
+  /**
+   * Checks a JSON array of credentials and streams one JSON result per line, in request order, with
+   * at most {@code pld.batch.maxConcurrency} checks in flight. The array is decoded as it arrives
+   * and only as fast as results are read, so only the entries in flight and their results are held
+   * in memory however long it is. Entries are admitted and bounded as in {@link PldController}.
+   */
+  @PostMapping(
+      value = {"/createAssessments", "/tenants/{tenant}/createAssessments"},
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<BatchAssessmentResult> postCreateAssessments(
+      @RequestBody Flux<PlaintextCredentials> credentials,
+      @RequestHeader(name = PldController.TIMEOUT_HEADER, required = false) Long timeoutMillis,
+      @PathVariable(name = TenantRegistry.TENANT_PATH_VARIABLE, required = false) String pathTenant,
+      @RequestHeader(name = TenantRegistry.TENANT_HEADER, required = false) String headerTenant) {
+    Tenant tenant = tenants.resolve(pathTenant, headerTenant);
+    LeakCheckService leakCheckService = tenant.getLeakCheckService();
+    Deadline deadline = Deadline.after(env.getBatchTimeoutMillis(), TimeUnit.MILLISECONDS);
+    int maxConcurrency = Math.max(1, env.getBatchMaxConcurrency());
+    return credentials.flatMapSequential(
+        entry ->
+            Mono.fromFuture(
+                () ->
+                    leakCheckService.checkEntry(
+                        entry,
+                        Deadlines.forEntry(timeoutMillis, deadline, env),
+                        tenant.getAdmissionLimiter())),
+        maxConcurrency,
+        1);
+  }
+
+  /**
+   * Sheds load with a 503 when the admission limit is reached or the hashing queue is full, and
+   * tells clients when to retry.
+   */
+  @ExceptionHandler({ServiceOverloadedException.class, RejectedExecutionException.class})
+  public ResponseEntity<Map<String, String>> handleOverload(
+      Exception ex, ServerWebExchange exchange) {
+    Map<String, String> pathVariables =
+        exchange.getAttributeOrDefault(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of());
+    tenants
+        .resolve(
+            pathVariables.get(TenantRegistry.TENANT_PATH_VARIABLE),
+            exchange.getRequest().getHeaders().getFirst(TenantRegistry.TENANT_HEADER))
+        .getMetrics()
+        .countRejection(ex instanceof ServiceOverloadedException ? "admission" : "queue");
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(env.getAdmissionRetryAfterSeconds()))
+        .body(Map.of("error", Messages.SERVICE_OVERLOADED_MESSAGE));
+  }
+
+  @ExceptionHandler(WebExchangeBindException.class)
+  public ResponseEntity<Map<String, String>> handleValidationExceptions(
+      WebExchangeBindException ex) {
+    Map<String, String> errors = new HashMap<>();
+    ex.getFieldErrors().forEach(error -> errors.put(error.getField(), error.getDefaultMessage()));
+
+    return ResponseEntity.badRequest().body(errors);
+  }
+}
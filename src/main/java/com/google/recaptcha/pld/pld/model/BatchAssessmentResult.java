@@ -0,0 +1,53 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"id", "leakedStatus", "error"})
+public class BatchAssessmentResult {
+  private String id;
+
+  private PldLeakedStatus leakedStatus;
+
+  private String error;
+
+  private BatchAssessmentResult(String id, PldLeakedStatus leakedStatus, String error) {
+    this.id = id;
+    this.leakedStatus = leakedStatus;
+    this.error = error;
+  }
+
+  public static BatchAssessmentResult completed(String id, PldLeakedStatus leakedStatus) {
+    return new BatchAssessmentResult(id, leakedStatus, null);
+  }
+
+  public static BatchAssessmentResult failed(String id, String error) {
+    return new BatchAssessmentResult(id, null, error);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public PldLeakedStatus getLeakedStatus() {
+    return leakedStatus;
+  }
+
+  public String getError() {
+    return error;
+  }
+}
@@ -26,4 +26,12 @@ public class Messages {
       "Internal Error -- Encrypted Credentials missing required information.";
   public static final String LOCALHOST_OR_HTTPS_ONLY_MESSAGE =
       "Forbidden Request -- HTTPS must be enabled to accept non-localhost connections.";
+  public static final String SERVICE_OVERLOADED_MESSAGE =
+      "Service Unavailable -- Too many requests in flight, retry later.";
+  public static final String DEADLINE_EXCEEDED_MESSAGE =
+      "Gateway Timeout -- The request deadline passed before the check completed.";
+  public static final String RATE_LIMITED_MESSAGE =
+      "Too Many Requests -- The request rate limit was reached, retry later.";
+  public static final String UNKNOWN_TENANT_MESSAGE =
+      "Not Found -- The request names a tenant this service is not configured for.";
 }
@@ -19,6 +19,8 @@ import org.springframework.validation.annotation.Validated;
 @Validated
 public class PlaintextCredentials {
 
+  private String id;
+
   @NotBlank(message = "username is required")
   private String username;
 
@@ -32,6 +34,14 @@ public class PlaintextCredentials {
     this.password = password;
   }
 
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
   public String getUsername() {
     return username;
   }
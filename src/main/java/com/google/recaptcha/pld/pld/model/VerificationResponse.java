@@ -13,15 +13,15 @@
 // limitations under the License.
 package com.google.recaptcha.pld.pld.model;
 
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerification;
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
 import com.google.recaptchaenterprise.v1.Assessment;
 
 public class VerificationResponse {
   private Assessment assessment;
-  private PasswordCheckVerification passwordCheckVerification;
+  private EncryptedCredentials passwordCheckVerification;
 
   public VerificationResponse(
-      Assessment assessment, PasswordCheckVerification passwordCheckVerification) {
+      Assessment assessment, EncryptedCredentials passwordCheckVerification) {
     this.assessment = assessment;
     this.passwordCheckVerification = passwordCheckVerification;
   }
@@ -34,11 +34,11 @@ public class VerificationResponse {
     this.assessment = assessment;
   }
 
-  public PasswordCheckVerification getPasswordCheckVerification() {
+  public EncryptedCredentials getPasswordCheckVerification() {
     return passwordCheckVerification;
   }
 
-  public void setPasswordCheckVerification(PasswordCheckVerification passwordCheckVerification) {
+  public void setPasswordCheckVerification(EncryptedCredentials passwordCheckVerification) {
     this.passwordCheckVerification = passwordCheckVerification;
   }
 }
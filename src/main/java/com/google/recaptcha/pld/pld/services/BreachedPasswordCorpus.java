@@ -0,0 +1,135 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.recaptcha.pld.pld.util.CorpusIndex;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The local breach corpus configured by {@code pld.corpus.path}, an index built by {@link
+ * com.google.recaptcha.pld.pld.util.CorpusIndexBuilder}. Passwords found in it are reported as
+ * leaked without hashing or calling the reCAPTCHA API; all others still take the remote check.
+ *
+ * <p>The file is polled every {@code pld.corpus.reloadSeconds} and swapped in when it changes, so a
+ * new index can be renamed over it without a restart. Lookups in flight finish against the index
+ * they started with. If the new file cannot be opened the current index is kept.
+ */
+@Component
+public class BreachedPasswordCorpus {
+
+  private static final Logger logger = LoggerFactory.getLogger(BreachedPasswordCorpus.class);
+
+  private final Path path;
+
+  private final AtomicReference<CorpusIndex> index = new AtomicReference<>();
+
+  private final ScheduledExecutorService reloader;
+
+  private List<Object> loadedVersion;
+
+  @Autowired
+  public BreachedPasswordCorpus(PldEnvironment env) {
+    this(
+        env.getCorpusPath().isEmpty() ? null : Path.of(env.getCorpusPath()),
+        env.getCorpusReloadSeconds());
+  }
+
+  /** Loads the index at {@code path}, or none if it is null, and polls it for changes. */
+  public BreachedPasswordCorpus(Path path, long reloadSeconds) {
+    this.path = path;
+    if (path == null) {
+      this.reloader = null;
+      return;
+    }
+    try {
+      reload();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load breach corpus " + path, e);
+    }
+    if (reloadSeconds > 0) {
+      this.reloader =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "pld-corpus-reload");
+                thread.setDaemon(true);
+                return thread;
+              });
+      reloader.scheduleWithFixedDelay(
+          this::reloadIfChanged, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+    } else {
+      this.reloader = null;
+    }
+  }
+
+  /** Returns whether a corpus is configured, so that lookups are worth making. */
+  public boolean isLoaded() {
+    return index.get() != null;
+  }
+
+  /** Returns whether {@code password} is in the corpus; always false when none is loaded. */
+  public boolean contains(String password) {
+    CorpusIndex current = index.get();
+    return current != null && current.contains(password);
+  }
+
+  /** Swaps in the file at the corpus path if it has been replaced or modified since last loaded. */
+  void reloadIfChanged() {
+    try {
+      if (!version().equals(loadedVersion)) {
+        reload();
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Failed to reload breach corpus {}, keeping the current one", path, e);
+    }
+  }
+
+  private synchronized void reload() throws IOException {
+    List<Object> version = version();
+    CorpusIndex loaded = CorpusIndex.open(path);
+    index.set(loaded);
+    loadedVersion = version;
+    logger.info("Loaded {} breached password hashes from {}", loaded.entries(), path);
+  }
+
+  /** Identifies the file at the corpus path, which changes when it is replaced or modified. */
+  private List<Object> version() throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    return List.of(
+        attributes.lastModifiedTime(),
+        attributes.size(),
+        attributes.fileKey() == null ? "" : attributes.fileKey());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (reloader != null) {
+      reloader.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,569 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.pld.util.Deadlines;
+import com.google.recaptcha.pld.pld.util.LineReader;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.RateLimiter;
+import com.google.recaptcha.pld.pld.util.ServiceOverloadedException;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Checks every line of a credential file, {@code username:password}, through the same leak checks
+ * as the HTTP endpoints, and writes one {@link BatchAssessmentResult} per line to an NDJSON file,
+ * in input order, with the line number as its id.
+ *
+ * <p>The file is read a buffer at a time, and a line is only read once fewer than {@code
+ * pld.scan.concurrency} lines are waiting for their result to be written, so a slow reCAPTCHA API
+ * holds the reader back instead of filling memory. {@code pld.scan.ratePerSecond} paces the checks
+ * below the project's quota.
+ *
+ * <p>Only a line that can never be checked, because it is malformed or its credentials are invalid,
+ * is written as failed. A check that fails because the service or the reCAPTCHA API is overloaded,
+ * unavailable or too slow is retried after {@code pld.scan.retryBackoffMillis}, doubling for each
+ * retry, for up to {@code pld.scan.maxAttempts} attempts. A line that fails for any other reason,
+ * or that runs out of attempts, stops the scan with an {@link IOException}. Results are written in
+ * line order, so the output and the checkpoint never go past that line, and running the scan again
+ * resumes from it.
+ *
+ * <p>Every {@code pld.scan.checkpointSeconds}, the output is flushed to disk and a checkpoint
+ * records how far both files go. A scan that finds a checkpoint for its input resumes from it,
+ * dropping output written after it, so a crash costs at most the lines checked since. The
+ * checkpoint is deleted once the scan completes.
+ */
+@Service
+public class BulkScanner {
+
+  static final String MALFORMED_LINE_MESSAGE = "Malformed line, expected username:password";
+
+  private static final int READ_BUFFER_BYTES = 1 << 16;
+
+  private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+  private static final long MAX_RETRY_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final Logger logger = LoggerFactory.getLogger(BulkScanner.class);
+
+  private final TenantRegistry tenants;
+
+  private final PldEnvironment env;
+
+  private final JsonMapper jsonMapper;
+
+  public BulkScanner(TenantRegistry tenants, PldEnvironment env, JsonMapper jsonMapper) {
+    this.tenants = tenants;
+    this.env = env;
+    this.jsonMapper = jsonMapper;
+  }
+
+  /** Scans the files named by {@code pld.scan.input}, {@code output} and {@code checkpoint}. */
+  public Summary scan() throws IOException, InterruptedException {
+    return scan(
+        Path.of(env.getScanInput()),
+        Path.of(env.getScanOutput()),
+        Path.of(env.getScanCheckpoint()));
+  }
+
+  public Summary scan(Path input, Path output, Path checkpointPath)
+      throws IOException, InterruptedException {
+    LeakCheckService leakCheckService = tenants.resolve(env.getScanTenant()).getLeakCheckService();
+    long inputSize = Files.size(input);
+    Checkpoint start = Checkpoint.read(checkpointPath, input, inputSize);
+    if (start.lines > 0) {
+      logger.info("Resuming scan of {} after line {}", input, start.lines);
+    }
+    Summary summary;
+    try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+        FileChannel out =
+            FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      if (out.size() < start.outputLength) {
+        throw new IOException(
+            output + " is shorter than its checkpoint; delete both to start over");
+      }
+      out.truncate(start.outputLength);
+      out.position(start.outputLength);
+      Scan scan =
+          new Scan(
+              leakCheckService,
+              new LineReader(in, start.inputOffset, READ_BUFFER_BYTES),
+              out,
+              start,
+              checkpointPath,
+              input,
+              inputSize);
+      summary = scan.run();
+    }
+    Files.deleteIfExists(checkpointPath);
+    logger.info(
+        "Scanned {} lines of {}: {} leaked, {} failed",
+        summary.getLines(),
+        input,
+        summary.getLeaked(),
+        summary.getFailed());
+    return summary;
+  }
+
+  /** One run over a file. Only the thread calling {@link #run()} touches its state. */
+  private final class Scan {
+
+    private final LeakCheckService leakCheckService;
+
+    private final LineReader reader;
+
+    private final FileChannel out;
+
+    private final OutputStream output;
+
+    private final Path checkpointPath;
+
+    private final Path input;
+
+    private final long inputSize;
+
+    private final RateLimiter pacer;
+
+    private final int window = Math.max(1, env.getScanConcurrency());
+
+    private final long checkpointNanos = TimeUnit.SECONDS.toNanos(env.getScanCheckpointSeconds());
+
+    // Results arrive here from the completion threads, in completion order.
+    private final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+
+    // Results that arrived ahead of an earlier line, by line number.
+    private final Map<Long, Result> pending = new HashMap<>();
+
+    // Lines waiting to be checked again, earliest retry first.
+    private final PriorityQueue<Retry> retries =
+        new PriorityQueue<>(Comparator.comparingLong(retry -> retry.dueNanos));
+
+    private long read;
+
+    private long written;
+
+    private long inputOffset;
+
+    private long outputLength;
+
+    private long leaked;
+
+    private long failed;
+
+    private long lastCheckpoint = System.nanoTime();
+
+    Scan(
+        LeakCheckService leakCheckService,
+        LineReader reader,
+        FileChannel out,
+        Checkpoint start,
+        Path checkpointPath,
+        Path input,
+        long inputSize) {
+      this.leakCheckService = leakCheckService;
+      this.reader = reader;
+      this.out = out;
+      // Closing the scan's stream would close the channel, which the caller owns.
+      this.output = new BufferedOutputStream(Channels.newOutputStream(out), WRITE_BUFFER_BYTES);
+      this.checkpointPath = checkpointPath;
+      this.input = input;
+      this.inputSize = inputSize;
+      this.pacer =
+          env.getScanRatePerSecond() > 0 ? new RateLimiter(env.getScanRatePerSecond(), 1, 2) : null;
+      this.read = start.lines;
+      this.written = start.lines;
+      this.inputOffset = start.inputOffset;
+      this.outputLength = start.outputLength;
+    }
+
+    Summary run() throws IOException, InterruptedException {
+      String line;
+      while ((line = reader.next()) != null) {
+        long number = ++read;
+        long end = reader.position();
+        while (number - written > window) {
+          accept(nextCompleted());
+        }
+        drainCompleted();
+        retryDue();
+        check(number, end, line);
+      }
+      while (written < read) {
+        accept(nextCompleted());
+      }
+      checkpoint();
+      return new Summary(written, leaked, failed);
+    }
+
+    private void check(long number, long end, String line)
+        throws IOException, InterruptedException {
+      String id = String.valueOf(number);
+      int separator = line.indexOf(':');
+      if (separator < 0) {
+        completed.add(
+            new Result(number, end, BatchAssessmentResult.failed(id, MALFORMED_LINE_MESSAGE)));
+        return;
+      }
+      PlaintextCredentials credentials =
+          new PlaintextCredentials(line.substring(0, separator), line.substring(separator + 1));
+      credentials.setId(id);
+      String invalid = leakCheckService.validate(credentials);
+      if (invalid != null) {
+        completed.add(new Result(number, end, BatchAssessmentResult.failed(id, invalid)));
+        return;
+      }
+      attempt(new Result(number, end, credentials, 0, null));
+    }
+
+    /** Starts another check of the line {@code previous} is the last attempt of. */
+    private void attempt(Result previous) throws IOException, InterruptedException {
+      pace();
+      PlaintextCredentials credentials = previous.credentials;
+      int attempt = previous.attempt + 1;
+      CompletableFuture<PldLeakedStatus> status;
+      try {
+        status = leakCheckService.checkCredentials(credentials, Deadlines.fromTimeout(null, env));
+      } catch (RuntimeException e) {
+        status = CompletableFuture.failedFuture(e);
+      }
+      status.whenComplete(
+          (leakedStatus, t) ->
+              completed.add(
+                  t == null
+                      ? new Result(
+                          previous.line,
+                          previous.inputOffset,
+                          BatchAssessmentResult.completed(credentials.getId(), leakedStatus))
+                      : new Result(previous.line, previous.inputOffset, credentials, attempt, t)));
+    }
+
+    /** Takes the next result, starting the retries that fall due while waiting for it. */
+    private Result nextCompleted() throws IOException, InterruptedException {
+      while (true) {
+        retryDue();
+        Retry next = retries.peek();
+        if (next == null) {
+          return completed.take();
+        }
+        Result result = completed.poll(next.dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (result != null) {
+          return result;
+        }
+      }
+    }
+
+    private void retryDue() throws IOException, InterruptedException {
+      while (!retries.isEmpty() && retries.peek().dueNanos - System.nanoTime() <= 0) {
+        attempt(retries.poll().failed);
+      }
+    }
+
+    /**
+     * Schedules another attempt of a line whose check failed transiently, or stops the scan. The
+     * line is never written as failed, so the checkpoint stays below it.
+     */
+    private void retryOrStop(Result failed) throws IOException {
+      Throwable cause =
+          failed.failure instanceof CompletionException && failed.failure.getCause() != null
+              ? failed.failure.getCause()
+              : failed.failure;
+      if (!isTransient(cause)) {
+        checkpoint();
+        throw new IOException(
+            "Line " + failed.line + " failed; rerun to resume from the checkpoint", cause);
+      }
+      if (failed.attempt >= env.getScanMaxAttempts()) {
+        checkpoint();
+        throw new IOException(
+            "Line "
+                + failed.line
+                + " still failed after "
+                + failed.attempt
+                + " attempts; rerun to resume from the checkpoint",
+            cause);
+      }
+      long backoffMillis =
+          Math.min(
+              MAX_RETRY_BACKOFF_MILLIS,
+              env.getScanRetryBackoffMillis() << Math.min(failed.attempt - 1, 20));
+      logger.debug(
+          "Retrying line {} of {} in {} ms: {}",
+          failed.line,
+          input,
+          backoffMillis,
+          cause.toString());
+      retries.add(
+          new Retry(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis), failed));
+    }
+
+    /** Waits until the pacer allows one more check, writing results in the meantime. */
+    private void pace() throws IOException, InterruptedException {
+      if (pacer == null) {
+        return;
+      }
+      long waitNanos;
+      while ((waitNanos = pacer.acquire(0)) > 0) {
+        drainCompleted();
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+    }
+
+    private void drainCompleted() throws IOException {
+      Result result;
+      while ((result = completed.poll()) != null) {
+        accept(result);
+      }
+    }
+
+    /** Writes {@code result}, and every result it was holding back, in line order. */
+    private void accept(Result result) throws IOException {
+      if (result.failure != null) {
+        retryOrStop(result);
+        return;
+      }
+      pending.put(result.line, result);
+      Result next;
+      while ((next = pending.remove(written + 1)) != null) {
+        byte[] json = jsonMapper.writeValueAsBytes(next.result);
+        output.write(json);
+        output.write('\n');
+        outputLength += json.length + 1;
+        inputOffset = next.inputOffset;
+        written++;
+        if (next.result.getLeakedStatus() == PldLeakedStatus.LEAKED) {
+          leaked++;
+        } else if (next.result.getError() != null) {
+          failed++;
+        }
+      }
+      if (System.nanoTime() - lastCheckpoint >= checkpointNanos) {
+        checkpoint();
+        logger.info("Scanned {} lines of {}: {} leaked, {} failed", written, input, leaked, failed);
+      }
+    }
+
+    /** Makes the output written so far durable, then records how far it and the input go. */
+    private void checkpoint() throws IOException {
+      output.flush();
+      out.force(false);
+      new Checkpoint(inputOffset, written, outputLength).write(checkpointPath, input, inputSize);
+      lastCheckpoint = System.nanoTime();
+    }
+  }
+
+  /**
+   * Whether {@code cause} is the service or the reCAPTCHA API being overloaded, unavailable or too
+   * slow, so that the same check may succeed later.
+   */
+  static boolean isTransient(Throwable cause) {
+    if (cause instanceof RejectedExecutionException
+        || cause instanceof ServiceOverloadedException) {
+      return true;
+    }
+    if (cause instanceof ResponseStatusException) {
+      int status = ((ResponseStatusException) cause).getStatusCode().value();
+      return status == HttpStatus.TOO_MANY_REQUESTS.value()
+          || status == HttpStatus.SERVICE_UNAVAILABLE.value()
+          || status == HttpStatus.GATEWAY_TIMEOUT.value();
+    }
+    return false;
+  }
+
+  /**
+   * The verdict of one line, or its credentials and the failure of its latest attempt, and the
+   * input offset just past it.
+   */
+  private static final class Result {
+
+    private final long line;
+
+    private final long inputOffset;
+
+    private final BatchAssessmentResult result;
+
+    private final PlaintextCredentials credentials;
+
+    private final int attempt;
+
+    private final Throwable failure;
+
+    Result(long line, long inputOffset, BatchAssessmentResult result) {
+      this.line = line;
+      this.inputOffset = inputOffset;
+      this.result = result;
+      this.credentials = null;
+      this.attempt = 0;
+      this.failure = null;
+    }
+
+    Result(
+        long line,
+        long inputOffset,
+        PlaintextCredentials credentials,
+        int attempt,
+        Throwable failure) {
+      this.line = line;
+      this.inputOffset = inputOffset;
+      this.result = null;
+      this.credentials = credentials;
+      this.attempt = attempt;
+      this.failure = failure;
+    }
+  }
+
+  /** A line to check again once {@code dueNanos} is reached. */
+  private static final class Retry {
+
+    private final long dueNanos;
+
+    private final Result failed;
+
+    Retry(long dueNanos, Result failed) {
+      this.dueNanos = dueNanos;
+      this.failed = failed;
+    }
+  }
+
+  /** How far a scan had got: input consumed, lines written and output length, all in step. */
+  static final class Checkpoint {
+
+    private static final Checkpoint START = new Checkpoint(0, 0, 0);
+
+    final long inputOffset;
+
+    final long lines;
+
+    final long outputLength;
+
+    Checkpoint(long inputOffset, long lines, long outputLength) {
+      this.inputOffset = inputOffset;
+      this.lines = lines;
+      this.outputLength = outputLength;
+    }
+
+    /**
+     * Returns the checkpoint at {@code path}, or the start of the file when there is none.
+     *
+     * @throws IOException if the checkpoint was written for another input, or one of another size
+     */
+    static Checkpoint read(Path path, Path input, long inputSize) throws IOException {
+      if (!Files.exists(path)) {
+        return START;
+      }
+      Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        properties.load(reader);
+      }
+      if (!input.toAbsolutePath().toString().equals(properties.getProperty("input"))
+          || !String.valueOf(inputSize).equals(properties.getProperty("inputSize"))) {
+        throw new IOException(path + " is a checkpoint for another input; delete it to start over");
+      }
+      return new Checkpoint(
+          Long.parseLong(properties.getProperty("inputOffset")),
+          Long.parseLong(properties.getProperty("lines")),
+          Long.parseLong(properties.getProperty("outputLength")));
+    }
+
+    /**
+     * Writes the checkpoint next to {@code path}, forces it to disk, and moves it into place in one
+     * step.
+     */
+    void write(Path path, Path input, long inputSize) throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty("input", input.toAbsolutePath().toString());
+      properties.setProperty("inputSize", String.valueOf(inputSize));
+      properties.setProperty("inputOffset", String.valueOf(inputOffset));
+      properties.setProperty("lines", String.valueOf(lines));
+      properties.setProperty("outputLength", String.valueOf(outputLength));
+      StringWriter text = new StringWriter();
+      properties.store(text, null);
+      Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+      // The checkpoint must be on disk before it replaces the old one, or a crash right after the
+      // move could leave an empty file in its place.
+      try (FileChannel channel =
+          FileChannel.open(
+              temporary,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        channel.force(true);
+      }
+      Files.move(
+          temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+
+  /** Counts of a finished scan. */
+  public static final class Summary {
+
+    private final long lines;
+
+    private final long leaked;
+
+    private final long failed;
+
+    Summary(long lines, long leaked, long failed) {
+      this.lines = lines;
+      this.leaked = leaked;
+      this.failed = failed;
+    }
+
+    public long getLines() {
+      return lines;
+    }
+
+    public long getLeaked() {
+      return leaked;
+    }
+
+    public long getFailed() {
+      return failed;
+    }
+  }
+}
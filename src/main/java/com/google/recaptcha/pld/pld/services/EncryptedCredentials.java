@@ -0,0 +1,59 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.protobuf.ByteString;
+import java.math.BigInteger;
+
+/**
+ * The client half of a password leak check: what is sent to the reCAPTCHA API, and the key that
+ * decrypts its answer. Created by {@link PasswordCheckEngine#createVerification}.
+ */
+public final class EncryptedCredentials {
+
+  private final String username;
+
+  private final ByteString lookupHashPrefix;
+
+  private final ByteString encryptedUserCredentialsHash;
+
+  private final BigInteger key;
+
+  EncryptedCredentials(
+      String username,
+      ByteString lookupHashPrefix,
+      ByteString encryptedUserCredentialsHash,
+      BigInteger key) {
+    this.username = username;
+    this.lookupHashPrefix = lookupHashPrefix;
+    this.encryptedUserCredentialsHash = encryptedUserCredentialsHash;
+    this.key = key;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public ByteString getLookupHashPrefix() {
+    return lookupHashPrefix;
+  }
+
+  public ByteString getEncryptedUserCredentialsHash() {
+    return encryptedUserCredentialsHash;
+  }
+
+  BigInteger getKey() {
+    return key;
+  }
+}
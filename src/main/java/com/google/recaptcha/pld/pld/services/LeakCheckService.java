@@ -0,0 +1,383 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.protobuf.ByteString;
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.pld.model.VerificationResponse;
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.CancellableFutures;
+import com.google.recaptcha.pld.pld.util.CredentialDigest;
+import com.google.recaptcha.pld.pld.util.Deadlines;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.pld.util.RateLimitedException;
+import com.google.recaptcha.pld.pld.util.RateLimits;
+import com.google.recaptcha.pld.pld.util.ServiceOverloadedException;
+import com.google.recaptcha.pld.pld.util.SingleFlight;
+import io.grpc.Deadline;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/** Runs the hash, createAssessment and verify stages for one or many sets of credentials. */
+@Service
+public class LeakCheckService {
+
+  private final PldService pldService;
+
+  private final RecaptchaContext recaptchaContext;
+
+  private final Validator validator;
+
+  private final VerdictCache verdictCache;
+
+  private final BreachedPasswordCorpus breachedPasswordCorpus;
+
+  private final CredentialDigest credentialDigest;
+
+  private final RateLimits rateLimits;
+
+  private final PldMetrics metrics;
+
+  private final Executor completionExecutor;
+
+  private final SingleFlight<ByteString, PldLeakedStatus> inFlightChecks = new SingleFlight<>();
+
+  public LeakCheckService(
+      PldService pldService,
+      RecaptchaContext recaptchaContext,
+      Validator validator,
+      VerdictCache verdictCache,
+      BreachedPasswordCorpus breachedPasswordCorpus,
+      CredentialDigest credentialDigest,
+      RateLimits rateLimits,
+      PldMetrics metrics,
+      @Qualifier("recaptchaCompletionExecutorService") Executor completionExecutor) {
+    this.pldService = pldService;
+    this.recaptchaContext = recaptchaContext;
+    this.validator = validator;
+    this.verdictCache = verdictCache;
+    this.breachedPasswordCorpus = breachedPasswordCorpus;
+    this.credentialDigest = credentialDigest;
+    this.rateLimits = rateLimits;
+    this.metrics = metrics;
+    this.completionExecutor = completionExecutor;
+  }
+
+  public CompletableFuture<PldLeakedStatus> checkCredentials(PlaintextCredentials credentials) {
+    return checkCredentials(credentials, null);
+  }
+
+  /**
+   * Checks one set of credentials. Concurrent checks of the same credentials share a single hash
+   * and reCAPTCHA call, and each is bounded by its own deadline.
+   *
+   * <p>Once {@code deadline} passes the check fails with a 504. When it does, or when the returned
+   * future is cancelled, the queued hashing or the RPC in flight is cancelled, unless another
+   * caller is still waiting for them. Hashing that has already started runs to completion, since
+   * the verifier cannot be interrupted.
+   *
+   * <p>Passwords in the local breach corpus are leaked whatever the username, and are answered
+   * without hashing. Other credentials not in the verdict cache count against the username rate
+   * limit, and fail with a 429 without being hashed once it is reached.
+   */
+  public CompletableFuture<PldLeakedStatus> checkCredentials(
+      PlaintextCredentials credentials, Deadline deadline) {
+    ByteString key = credentialDigest.digest(credentials.getUsername(), credentials.getPassword());
+    PldLeakedStatus known = knownVerdict(key, credentials);
+    if (known != null) {
+      return CompletableFuture.completedFuture(countVerdict(known));
+    }
+    CompletableFuture<PldLeakedStatus> limited = rateLimited(credentials);
+    if (limited != null) {
+      return limited;
+    }
+    // The shared check runs without a deadline of its own: it is cancelled once every caller's
+    // copy has passed its deadline or been cancelled.
+    CompletableFuture<PldLeakedStatus> shared =
+        inFlightChecks.execute(
+            key,
+            () ->
+                CancellableFutures.thenApply(
+                    checkUncachedCredentials(credentials, null),
+                    status -> {
+                      verdictCache.put(key, status);
+                      return status;
+                    }));
+    return CancellableFutures.thenApply(
+        Deadlines.bound(shared, deadline, completionExecutor), status -> countVerdict(status));
+  }
+
+  /**
+   * Assesses the request's event and checks its credentials. On a verdict cache or breach corpus
+   * hit only the event is sent to the reCAPTCHA API, and the credentials are not hashed.
+   */
+  public CompletableFuture<MergeAssessmentResponse> mergeAssessment(
+      MergeAssessmentRequest request) {
+    return mergeAssessment(request, null);
+  }
+
+  /** Like {@link #mergeAssessment(MergeAssessmentRequest)}, bounded by {@code deadline}. */
+  public CompletableFuture<MergeAssessmentResponse> mergeAssessment(
+      MergeAssessmentRequest request, Deadline deadline) {
+    PlaintextCredentials credentials = request.getCredentials();
+    ByteString key = credentialDigest.digest(credentials.getUsername(), credentials.getPassword());
+    PldLeakedStatus known = knownVerdict(key, credentials);
+    if (known != null) {
+      return CancellableFutures.thenApply(
+          recaptchaContext.createAssessmentAsync(request.getAssessment(), deadline),
+          assessment -> new MergeAssessmentResponse(assessment, countVerdict(known)));
+    }
+    CompletableFuture<MergeAssessmentResponse> limited = rateLimited(credentials);
+    if (limited != null) {
+      return limited;
+    }
+    return CancellableFutures.thenApply(
+        mergeUncachedAssessment(request, deadline),
+        response -> {
+          verdictCache.put(key, response.getPldLeakedStatus());
+          countVerdict(response.getPldLeakedStatus());
+          return response;
+        });
+  }
+
+  /**
+   * Returns the cached verdict for the credentials, or {@code LEAKED} if their password is in the
+   * local breach corpus, or null if neither knows them.
+   */
+  private PldLeakedStatus knownVerdict(ByteString key, PlaintextCredentials credentials) {
+    PldLeakedStatus cached = verdictCache.getIfPresent(key);
+    if (cached != null || !breachedPasswordCorpus.isLoaded()) {
+      return cached;
+    }
+    boolean breached = breachedPasswordCorpus.contains(credentials.getPassword());
+    metrics.countCorpusLookup(breached);
+    return breached ? PldLeakedStatus.LEAKED : null;
+  }
+
+  /** Returns a future failed with a 429 when the username is over its rate limit, or null. */
+  private <T> CompletableFuture<T> rateLimited(PlaintextCredentials credentials) {
+    try {
+      rateLimits.checkUsername(credentials.getUsername());
+      return null;
+    } catch (RateLimitedException e) {
+      metrics.countRateLimited(e.getLimit());
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private CompletableFuture<PldLeakedStatus> checkUncachedCredentials(
+      PlaintextCredentials credentials, Deadline deadline) {
+    return CancellableFutures.thenCompose(
+        newPasswordCheckVerification(credentials, deadline),
+        verification -> executePasswordLeakAssessment(verification, deadline));
+  }
+
+  private CompletableFuture<MergeAssessmentResponse> mergeUncachedAssessment(
+      MergeAssessmentRequest request, Deadline deadline) {
+    return CancellableFutures.thenCompose(
+        CancellableFutures.thenCompose(
+            newPasswordCheckVerification(request.getCredentials(), deadline),
+            verification ->
+                recaptchaContext.createAssessmentAsync(
+                    verification, request.getAssessment(), deadline)),
+        response -> populateMergedResponse(response));
+  }
+
+  /**
+   * Checks every entry {@code entries} yields with at most {@code maxConcurrency} checks in flight,
+   * and hands each result to {@code sink} in completion order. Invalid or failed entries produce a
+   * result carrying an error instead of failing the batch. Each entry is admitted by {@code
+   * admissionLimiter} like a single request, and bounded by the deadline {@code entryDeadline}
+   * returns when it starts.
+   *
+   * <p>Entries are taken one at a time on the calling thread, which blocks while {@code
+   * maxConcurrency} checks are in flight, so only that many are held at once however long the batch
+   * is. Returns once every result has been handed to {@code sink}.
+   *
+   * <p>If {@code entries} throws, no more entries are taken, and the exception is rethrown once the
+   * checks in flight have been handed to {@code sink}. If {@code sink} throws or the calling thread
+   * is interrupted, the checks in flight are cancelled instead.
+   */
+  public void checkAll(
+      Iterator<PlaintextCredentials> entries,
+      int maxConcurrency,
+      AdmissionLimiter admissionLimiter,
+      Supplier<Deadline> entryDeadline,
+      Consumer<BatchAssessmentResult> sink)
+      throws InterruptedException {
+    int permits = Math.max(1, maxConcurrency);
+    Semaphore lanes = new Semaphore(permits);
+    Set<CompletableFuture<BatchAssessmentResult>> inFlight = ConcurrentHashMap.newKeySet();
+    AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+    RuntimeException entriesFailure = null;
+    try {
+      while (sinkFailure.get() == null) {
+        PlaintextCredentials entry;
+        try {
+          if (!entries.hasNext()) {
+            break;
+          }
+          entry = entries.next();
+        } catch (RuntimeException e) {
+          entriesFailure = e;
+          break;
+        }
+        lanes.acquire();
+        CompletableFuture<BatchAssessmentResult> result =
+            checkEntry(entry, entryDeadline.get(), admissionLimiter);
+        inFlight.add(result);
+        result.whenComplete(
+            (value, t) -> {
+              inFlight.remove(result);
+              try {
+                if (value != null && sinkFailure.get() == null) {
+                  sink.accept(value);
+                }
+              } catch (RuntimeException e) {
+                sinkFailure.compareAndSet(null, e);
+              } finally {
+                lanes.release();
+              }
+            });
+      }
+      if (sinkFailure.get() != null) {
+        inFlight.forEach(result -> result.cancel(false));
+      }
+      lanes.acquire(permits);
+    } catch (InterruptedException e) {
+      inFlight.forEach(result -> result.cancel(false));
+      throw e;
+    }
+    if (sinkFailure.get() != null) {
+      throw sinkFailure.get();
+    }
+    if (entriesFailure != null) {
+      throw entriesFailure;
+    }
+  }
+
+  /**
+   * Checks one entry of a batch or stream, if {@code admissionLimiter} admits it. Invalid, shed or
+   * failed entries complete the returned future with a result carrying an error, so it only fails
+   * when cancelled, which cancels the check.
+   */
+  public CompletableFuture<BatchAssessmentResult> checkEntry(
+      PlaintextCredentials credentials, Deadline deadline, AdmissionLimiter admissionLimiter) {
+    String error = validate(credentials);
+    if (error != null) {
+      return CompletableFuture.completedFuture(
+          BatchAssessmentResult.failed(credentials.getId(), error));
+    }
+    CompletableFuture<PldLeakedStatus> status;
+    try {
+      status = admissionLimiter.admit(() -> checkCredentials(credentials, deadline));
+    } catch (ServiceOverloadedException e) {
+      metrics.countRejection("admission");
+      status = CompletableFuture.failedFuture(e);
+    } catch (RuntimeException e) {
+      status = CompletableFuture.failedFuture(e);
+    }
+    return CancellableFutures.propagateCancellation(
+        status.handle(
+            (leakedStatus, t) ->
+                t == null
+                    ? BatchAssessmentResult.completed(credentials.getId(), leakedStatus)
+                    : BatchAssessmentResult.failed(credentials.getId(), describeFailure(t))),
+        status);
+  }
+
+  /** Returns why {@code credentials} cannot be checked, or null when they can. */
+  public String validate(PlaintextCredentials credentials) {
+    Set<ConstraintViolation<PlaintextCredentials>> violations = validator.validate(credentials);
+    if (violations.isEmpty()) {
+      return null;
+    }
+    return violations.stream()
+        .map(ConstraintViolation::getMessage)
+        .sorted()
+        .collect(Collectors.joining(", "));
+  }
+
+  private String describeFailure(Throwable t) {
+    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    if (cause instanceof ResponseStatusException) {
+      return ((ResponseStatusException) cause).getReason();
+    }
+    if (cause instanceof RejectedExecutionException) {
+      return Messages.SERVICE_OVERLOADED_MESSAGE;
+    }
+    return cause.getMessage();
+  }
+
+  private CompletableFuture<EncryptedCredentials> newPasswordCheckVerification(
+      PlaintextCredentials credentials, Deadline deadline) {
+    try {
+      return Deadlines.bound(
+          pldService.newPasswordCheckVerification(credentials), deadline, completionExecutor);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private CompletableFuture<PldLeakedStatus> executePasswordLeakAssessment(
+      EncryptedCredentials verification, Deadline deadline) {
+    return CancellableFutures.thenApply(
+        CancellableFutures.thenCompose(
+            recaptchaContext.createAssessmentAsync(verification, deadline),
+            assessment ->
+                pldService.verifyAssessment(
+                    verification, assessment.getPrivatePasswordLeakVerification())),
+        LeakCheckService::leakedStatus);
+  }
+
+  private CompletableFuture<MergeAssessmentResponse> populateMergedResponse(
+      VerificationResponse response) {
+
+    return pldService
+        .verifyAssessment(
+            response.getPasswordCheckVerification(),
+            response.getAssessment().getPrivatePasswordLeakVerification())
+        .thenApply(
+            leaked -> new MergeAssessmentResponse(response.getAssessment(), leakedStatus(leaked)));
+  }
+
+  private static PldLeakedStatus leakedStatus(boolean leaked) {
+    return leaked ? PldLeakedStatus.LEAKED : PldLeakedStatus.NO_STATUS;
+  }
+
+  private PldLeakedStatus countVerdict(PldLeakedStatus status) {
+    metrics.countLeakedStatus(status);
+    return status;
+  }
+}
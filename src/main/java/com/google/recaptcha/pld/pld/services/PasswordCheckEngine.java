@@ -0,0 +1,266 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.SCrypt;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.BigIntegers;
+
+/**
+ * Client side of the private password leak protocol, on BouncyCastle.
+ *
+ * <p>Credentials are hashed with scrypt, mapped onto P-256 and encrypted with a per-check key. The
+ * reCAPTCHA API re-encrypts that point with its own key and answers with the match prefixes of the
+ * leaked credentials it holds under the same lookup hash prefix. Removing the per-check key leaves
+ * the credentials encrypted under the API's key alone, and they are leaked if the SHA-256 of that
+ * point starts with one of the match prefixes.
+ *
+ * <p>Every step produces the same bytes as {@code PasswordCheckVerifier} from
+ * recaptcha-password-check-helpers, so lookups and verdicts are interchangeable with it. The
+ * answer's match prefixes are not copied out of their {@link ByteString}s: see {@link
+ * MatchPrefixIndex}.
+ */
+public class PasswordCheckEngine {
+
+  public static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256r1");
+
+  private static final int LOOKUP_HASH_PREFIX_LENGTH = 4;
+
+  /** Keeps the top 26 bits of the lookup hash prefix, so that many usernames share a prefix. */
+  private static final byte LOOKUP_HASH_PREFIX_LAST_BYTE_MASK = (byte) 0xC0;
+
+  private static final byte[] SCRYPT_SALT = "salt".getBytes(StandardCharsets.US_ASCII);
+
+  private static final int SCRYPT_COST = 4096;
+
+  private static final int SCRYPT_BLOCK_SIZE = 8;
+
+  private static final int SCRYPT_PARALLELIZATION = 1;
+
+  private static final int SCRYPT_KEY_LENGTH = 32;
+
+  private static final int KEY_BITS = 255;
+
+  private static final int FIELD_ELEMENT_LENGTH = 32;
+
+  private static final byte COMPRESSED_EVEN_Y = 0x02;
+
+  private static final int DIGEST_LENGTH = 32;
+
+  private final SecureRandom random = new SecureRandom();
+
+  private final Executor executor;
+
+  public PasswordCheckEngine(Executor executor) {
+    this.executor = executor;
+  }
+
+  /** Hashes and encrypts a pair of credentials on the engine's executor. */
+  public CompletableFuture<EncryptedCredentials> createVerification(
+      String username, String password) {
+    return CompletableFuture.supplyAsync(() -> encrypt(username, password), executor);
+  }
+
+  /**
+   * Decrypts the re-encrypted credentials hash of an answer on the engine's executor, and completes
+   * with whether it matches one of the answer's leak match prefixes. Fails if the answer does not
+   * hold a point on the curve.
+   */
+  public CompletableFuture<Boolean> verify(
+      EncryptedCredentials credentials, PrivatePasswordLeakVerification answer) {
+    return CompletableFuture.supplyAsync(() -> isLeaked(credentials, answer), executor);
+  }
+
+  /** Indexes the match prefixes of an answer for the lookup of a decrypted digest. */
+  public static MatchPrefixIndex indexMatchPrefixes(PrivatePasswordLeakVerification answer) {
+    return new MatchPrefixIndex(answer.getEncryptedLeakMatchPrefixesList());
+  }
+
+  /** Returns the lookup hash prefix sent for a username. */
+  public static byte[] lookupHashPrefix(String username) {
+    byte[] prefix =
+        Arrays.copyOf(
+            sha256(canonicalize(username).getBytes(StandardCharsets.UTF_8)),
+            LOOKUP_HASH_PREFIX_LENGTH);
+    prefix[LOOKUP_HASH_PREFIX_LENGTH - 1] &= LOOKUP_HASH_PREFIX_LAST_BYTE_MASK;
+    return prefix;
+  }
+
+  /** Returns the unencrypted curve point that a pair of credentials hashes to. */
+  public static ECPoint credentialsPoint(String username, String password) {
+    byte[] scrypt =
+        SCrypt.generate(
+            (canonicalize(username) + password).getBytes(StandardCharsets.UTF_8),
+            SCRYPT_SALT,
+            SCRYPT_COST,
+            SCRYPT_BLOCK_SIZE,
+            SCRYPT_PARALLELIZATION,
+            SCRYPT_KEY_LENGTH);
+    return hashToCurve(scrypt);
+  }
+
+  /** Returns the SHA-256 of a point's compressed encoding, which match prefixes are cut from. */
+  public static byte[] matchDigest(ECPoint point) {
+    return sha256(point.normalize().getEncoded(true));
+  }
+
+  private EncryptedCredentials encrypt(String username, String password) {
+    BigInteger key = new BigInteger(KEY_BITS, random).mod(CURVE.getN());
+    byte[] encrypted =
+        credentialsPoint(username, password).multiply(key).normalize().getEncoded(true);
+    return new EncryptedCredentials(
+        username,
+        UnsafeByteOperations.unsafeWrap(lookupHashPrefix(username)),
+        UnsafeByteOperations.unsafeWrap(encrypted),
+        key);
+  }
+
+  private static boolean isLeaked(
+      EncryptedCredentials credentials, PrivatePasswordLeakVerification answer) {
+    ECPoint reEncrypted =
+        CURVE.getCurve().decodePoint(answer.getReencryptedUserCredentialsHash().toByteArray());
+    byte[] digest =
+        matchDigest(reEncrypted.multiply(credentials.getKey().modInverse(CURVE.getN())));
+    return indexMatchPrefixes(answer).matches(digest);
+  }
+
+  /**
+   * Maps bytes onto the curve by try-and-increment: the SHA-256 chain of the input is read as an x
+   * coordinate until one lies on the curve, taking the point with even y.
+   */
+  private static ECPoint hashToCurve(byte[] input) {
+    BigInteger p = CURVE.getCurve().getField().getCharacteristic();
+    byte[] hash = sha256(input);
+    while (true) {
+      BigInteger x = new BigInteger(1, hash).mod(p);
+      byte[] encoded = new byte[FIELD_ELEMENT_LENGTH + 1];
+      encoded[0] = COMPRESSED_EVEN_Y;
+      BigIntegers.asUnsignedByteArray(x, encoded, 1, FIELD_ELEMENT_LENGTH);
+      try {
+        ECPoint point = CURVE.getCurve().decodePoint(encoded);
+        if (point.isValid()) {
+          return point;
+        }
+      } catch (IllegalArgumentException e) {
+        // Not an x coordinate on the curve, try the next hash.
+      }
+      hash = sha256(hash);
+    }
+  }
+
+  /** Lowercases usernames in the default locale, as the helper library does. */
+  private static String canonicalize(String username) {
+    return username.toLowerCase();
+  }
+
+  private static byte[] sha256(byte[] input) {
+    SHA256Digest sha256 = new SHA256Digest();
+    sha256.update(input, 0, input.length);
+    byte[] digest = new byte[DIGEST_LENGTH];
+    sha256.doFinal(digest, 0);
+    return digest;
+  }
+
+  /**
+   * Read-only views of an answer's match prefixes, ordered by their leading bits with a counting
+   * sort, so that building the index stays linear in the number of prefixes. A digest is only
+   * compared with the prefixes that share its leading bits, about one per lookup. Prefixes shorter
+   * than four bytes, which the API does not send in practice, are compared with every digest.
+   */
+  public static final class MatchPrefixIndex {
+
+    private static final int MAX_BUCKET_BITS = 16;
+
+    private final ByteBuffer[] shortPrefixes;
+
+    private final int bucketBits;
+
+    private final int[] bucketOffsets;
+
+    private final ByteBuffer[] sortedPrefixes;
+
+    private MatchPrefixIndex(List<ByteString> prefixes) {
+      List<ByteBuffer> shortViews = new ArrayList<>(0);
+      ByteBuffer[] views = new ByteBuffer[prefixes.size()];
+      int count = 0;
+      for (ByteString prefix : prefixes) {
+        ByteBuffer view = prefix.asReadOnlyByteBuffer();
+        if (view.remaining() > DIGEST_LENGTH) {
+          continue;
+        }
+        if (view.remaining() < Integer.BYTES) {
+          shortViews.add(view);
+        } else {
+          views[count++] = view;
+        }
+      }
+      this.shortPrefixes = shortViews.toArray(new ByteBuffer[0]);
+      this.bucketBits =
+          count <= 1
+              ? 0
+              : Math.min(MAX_BUCKET_BITS, Integer.SIZE - Integer.numberOfLeadingZeros(count - 1));
+      this.bucketOffsets = new int[(1 << bucketBits) + 1];
+      for (int i = 0; i < count; i++) {
+        bucketOffsets[bucket(views[i]) + 1]++;
+      }
+      for (int b = 1; b < bucketOffsets.length; b++) {
+        bucketOffsets[b] += bucketOffsets[b - 1];
+      }
+      this.sortedPrefixes = new ByteBuffer[count];
+      int[] next = Arrays.copyOf(bucketOffsets, bucketOffsets.length - 1);
+      for (int i = 0; i < count; i++) {
+        sortedPrefixes[next[bucket(views[i])]++] = views[i];
+      }
+    }
+
+    /** Returns whether a digest starts with one of the prefixes. An empty prefix matches any. */
+    public boolean matches(byte[] digest) {
+      for (ByteBuffer prefix : shortPrefixes) {
+        if (startsWith(digest, prefix)) {
+          return true;
+        }
+      }
+      int bucket = bucket(ByteBuffer.wrap(digest));
+      for (int i = bucketOffsets[bucket]; i < bucketOffsets[bucket + 1]; i++) {
+        if (startsWith(digest, sortedPrefixes[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private int bucket(ByteBuffer bytes) {
+      return bucketBits == 0 ? 0 : bytes.getInt(bytes.position()) >>> (Integer.SIZE - bucketBits);
+    }
+
+    private static boolean startsWith(byte[] digest, ByteBuffer prefix) {
+      return prefix.equals(ByteBuffer.wrap(digest, 0, prefix.remaining()));
+    }
+  }
+}
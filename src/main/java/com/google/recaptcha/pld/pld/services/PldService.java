@@ -13,46 +13,41 @@
 // limitations under the License.
 package com.google.recaptcha.pld.pld.services;
 
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckResult;
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerification;
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerifier;
-import com.google.protobuf.ByteString;
 import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
 import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
-import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+/**
+ * Runs the CPU bound stages of a check, hashing and verification, on the password check pool. Both
+ * are submitted from the calling thread, with no hop through another pool on the way.
+ */
 @Service
 public class PldService {
 
-  private final PasswordCheckVerifier passwordCheckVerifier;
+  private final PasswordCheckEngine passwordCheckEngine;
 
-  public PldService(PasswordCheckVerifier passwordCheckVerifier) {
-    this.passwordCheckVerifier = passwordCheckVerifier;
-  }
-
-  @Async
-  public CompletableFuture<PasswordCheckResult> verifyAssessment(
-      PasswordCheckVerification originalVerification,
-      PrivatePasswordLeakVerification assessmentData) {
-    Collection<byte[]> matchPrefixes =
-        assessmentData.getEncryptedLeakMatchPrefixesList().stream()
-            .map(ByteString::toByteArray)
-            .collect(Collectors.toList());
+  private final PldMetrics metrics;
 
-    byte[] reEncryptedHash = assessmentData.getReencryptedUserCredentialsHash().toByteArray();
+  public PldService(PasswordCheckEngine passwordCheckEngine, PldMetrics metrics) {
+    this.passwordCheckEngine = passwordCheckEngine;
+    this.metrics = metrics;
+  }
 
-    return passwordCheckVerifier.verify(originalVerification, reEncryptedHash, matchPrefixes);
+  public CompletableFuture<Boolean> verifyAssessment(
+      EncryptedCredentials originalVerification, PrivatePasswordLeakVerification assessmentData) {
+    return metrics.timeStage(
+        PldMetrics.VERIFY_STAGE,
+        () -> passwordCheckEngine.verify(originalVerification, assessmentData));
   }
 
-  @Async
-  public CompletableFuture<PasswordCheckVerification> newPasswordCheckVerification(
-      PlaintextCredentials credentials) throws InterruptedException, ExecutionException {
-    return passwordCheckVerifier.createVerification(
-        credentials.getUsername(), credentials.getPassword());
+  public CompletableFuture<EncryptedCredentials> newPasswordCheckVerification(
+      PlaintextCredentials credentials) {
+    return metrics.timeStage(
+        PldMetrics.HASH_STAGE,
+        () ->
+            passwordCheckEngine.createVerification(
+                credentials.getUsername(), credentials.getPassword()));
   }
 }
@@ -13,25 +13,50 @@
 // limitations under the License.
 package com.google.recaptcha.pld.pld.services;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.GrpcCallContext;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.retrying.RetrySettings;
 import com.google.api.gax.rpc.ApiException;
 import com.google.api.gax.rpc.FixedHeaderProvider;
-import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerification;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.api.gax.rpc.TransportChannelProvider;
 import com.google.cloud.recaptchaenterprise.v1.RecaptchaEnterpriseServiceClient;
 import com.google.cloud.recaptchaenterprise.v1.RecaptchaEnterpriseServiceSettings;
-import com.google.protobuf.ByteString;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.recaptcha.pld.pld.model.Messages;
 import com.google.recaptcha.pld.pld.model.RecaptchaAuthMethod;
 import com.google.recaptcha.pld.pld.model.RecaptchaConfig;
 import com.google.recaptcha.pld.pld.model.VerificationResponse;
+import com.google.recaptcha.pld.pld.stub.StubRecaptchaBackend;
+import com.google.recaptcha.pld.pld.util.CancellableFutures;
+import com.google.recaptcha.pld.pld.util.Deadlines;
 import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.pld.util.RequestHedger;
 import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.CreateAssessmentRequest;
+import com.google.recaptchaenterprise.v1.ListKeysRequest;
+import com.google.recaptchaenterprise.v1.ListKeysResponse;
 import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import io.grpc.Deadline;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -40,14 +65,46 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class RecaptchaContext {
 
+  private static final Duration INITIAL_RETRY_DELAY = Duration.ofMillis(50);
+
+  private static final Duration MAX_RETRY_DELAY = Duration.ofMillis(500);
+
+  private static final String STUB_PROJECT_ID = "stub-project";
+
+  private static final String STUB_API_KEY = "stub-api-key";
+
   @Autowired private PldEnvironment env;
 
+  @Autowired private PldMetrics metrics;
+
+  @Autowired private RequestHedger hedger;
+
+  @Autowired
+  @Qualifier("recaptchaCompletionExecutorService")
+  private Executor completionExecutorService;
+
+  @Autowired(required = false)
+  private StubRecaptchaBackend stubBackend;
+
   @Value("Recaptcha PldClient 0.0.1")
   private String userAgent;
 
+  /** The tenant this context serves, or null for the default tenant. */
+  private String tenant;
+
   private RecaptchaConfig config;
+
+  private RetrySettings retrySettings;
+
   private RecaptchaEnterpriseServiceClient recaptchaClient;
 
+  private CompletableFuture<Integer> warmup;
+
+  /** Returns the name of the tenant this context serves. */
+  public String getTenantName() {
+    return tenant == null ? PldMetrics.DEFAULT_TENANT : tenant;
+  }
+
   public RecaptchaConfig getConfig() {
     return config;
   }
@@ -56,10 +113,87 @@ public class RecaptchaContext {
     return recaptchaClient;
   }
 
+  void setRecaptchaClient(RecaptchaEnterpriseServiceClient recaptchaClient) {
+    this.recaptchaClient = recaptchaClient;
+  }
+
+  /**
+   * Makes this context serve {@code tenant}: its project and API key come from {@code
+   * pld.tenant.<tenant>.projectId} and {@code apiKey}, and its calls are recorded in {@code
+   * metrics} and hedged by {@code hedger}. Must be called before the context is initialized.
+   */
+  void serveTenant(String tenant, PldMetrics metrics, RequestHedger hedger) {
+    this.tenant = tenant;
+    this.metrics = metrics;
+    this.hedger = hedger;
+  }
+
   @PostConstruct
   public void initialize() throws IllegalArgumentException, IOException {
     if (env.shouldRecaptchaContextRunInit()) {
       initializeInternal();
+      if (env.shouldWarmUpGrpc()) {
+        warmup = warmUp();
+      }
+    }
+  }
+
+  /**
+   * Returns the warm-up started at initialization, completed with the number of warm-up calls that
+   * reached the API, or null when no warm-up was started.
+   */
+  public CompletableFuture<Integer> getWarmup() {
+    return warmup;
+  }
+
+  /**
+   * Opens the client's channels and fetches its access token ahead of the first request, by sending
+   * one small ListKeys call per channel the pool starts with. The calls only need to reach the API:
+   * an error such as {@code PERMISSION_DENIED} still leaves a connected channel and a token behind.
+   * The returned future completes with the number of calls that reached the API, and never fails.
+   */
+  public CompletableFuture<Integer> warmUp() {
+    ListKeysRequest request =
+        ListKeysRequest.newBuilder()
+            .setParent("projects/" + config.getProjectId())
+            .setPageSize(1)
+            .build();
+    GrpcCallContext context =
+        GrpcCallContext.createDefault()
+            .withTimeoutDuration(Duration.ofMillis(env.getGrpcWarmupTimeoutMillis()));
+    List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, env.getGrpcMinChannels()); i++) {
+      CompletableFuture<Boolean> reached = new CompletableFuture<>();
+      ApiFutures.addCallback(
+          recaptchaClient.listKeysCallable().futureCall(request, context),
+          new ApiFutureCallback<ListKeysResponse>() {
+            @Override
+            public void onSuccess(ListKeysResponse response) {
+              reached.complete(true);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              reached.complete(t instanceof ApiException && reachedApi((ApiException) t));
+            }
+          },
+          MoreExecutors.directExecutor());
+      calls.add(reached);
+    }
+    return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> (int) calls.stream().filter(CompletableFuture::join).count());
+  }
+
+  /** Whether a failed call got as far as an answer from the API. */
+  private static boolean reachedApi(ApiException exception) {
+    switch (exception.getStatusCode().getCode()) {
+      case UNAVAILABLE:
+      case DEADLINE_EXCEEDED:
+      case CANCELLED:
+      case UNKNOWN:
+        return false;
+      default:
+        return true;
     }
   }
 
@@ -75,24 +209,50 @@ public class RecaptchaContext {
     }
   }
 
+  private String projectId() {
+    return tenant == null
+        ? env.getProjectId()
+        : env.getTenantProperty(tenant, "projectId", String.class, null);
+  }
+
+  private String apiKey() {
+    return tenant == null
+        ? env.getApiKey()
+        : env.getTenantProperty(tenant, "apiKey", String.class, null);
+  }
+
   private RecaptchaAuthMethod detectAuthMethod() {
+    // A tenant's own API key wins over the process's default credentials, which it shares.
+    if (tenant != null && apiKey() != null) {
+      return RecaptchaAuthMethod.API_KEY;
+    }
     if (env.defaultCredentialsAreSet()) {
       return RecaptchaAuthMethod.DEFAULT_CREDENTIALS;
     }
-    if (env.getApiKey() != null) {
+    if (apiKey() != null) {
       return RecaptchaAuthMethod.API_KEY;
     }
     return null;
   }
 
   private void loadConfig() throws IllegalArgumentException {
+    if (env.useStubBackend()) {
+      // The stub checks neither the project nor the credentials, so they are optional offline.
+      this.config =
+          new RecaptchaConfig.RecaptchaConfigBuilder()
+              .withAuthMethod(RecaptchaAuthMethod.API_KEY)
+              .withApiKey(apiKey() != null ? apiKey() : STUB_API_KEY)
+              .withProjectId(projectId() != null ? projectId() : STUB_PROJECT_ID)
+              .build();
+      return;
+    }
     RecaptchaAuthMethod authMethod = detectAuthMethod();
 
     RecaptchaConfig loadedConfig =
         new RecaptchaConfig.RecaptchaConfigBuilder()
             .withAuthMethod(authMethod)
-            .withApiKey(env.getApiKey())
-            .withProjectId(env.getProjectId())
+            .withApiKey(apiKey())
+            .withProjectId(projectId())
             .build();
     this.config = loadedConfig;
   }
@@ -103,14 +263,81 @@ public class RecaptchaContext {
         "gRPC error: " + exception.getMessage());
   }
 
+  /**
+   * Returns settings that bound each createAssessment call by {@code pld.recaptcha.timeoutMillis}
+   * in total, retrying {@code UNAVAILABLE} up to {@code pld.recaptcha.maxAttempts} attempts. A
+   * request's own deadline, when shorter, replaces the timeout for its call.
+   */
+  private RecaptchaEnterpriseServiceSettings.Builder newSettingsBuilder() {
+    RecaptchaEnterpriseServiceSettings.Builder builder =
+        RecaptchaEnterpriseServiceSettings.newBuilder();
+    if (env.getRecaptchaTimeoutMillis() > 0) {
+      int maxAttempts = Math.max(1, env.getRecaptchaMaxAttempts());
+      this.retrySettings =
+          RetrySettings.newBuilder()
+              .setLogicalTimeout(Duration.ofMillis(env.getRecaptchaTimeoutMillis()))
+              .setMaxAttempts(maxAttempts)
+              .setInitialRetryDelayDuration(INITIAL_RETRY_DELAY)
+              .setRetryDelayMultiplier(2.0)
+              .setMaxRetryDelayDuration(MAX_RETRY_DELAY)
+              .build();
+      builder
+          .createAssessmentSettings()
+          .setRetrySettings(retrySettings)
+          .setRetryableCodes(maxAttempts > 1 ? Set.of(StatusCode.Code.UNAVAILABLE) : Set.of());
+    }
+    return builder;
+  }
+
+  /**
+   * Returns a pool of channels to the reCAPTCHA API that starts at {@code pld.grpc.minChannels} and
+   * grows, up to {@code pld.grpc.maxChannels}, while its channels average more than {@code
+   * pld.grpc.maxRpcsPerChannel} calls in flight. A single channel is one HTTP/2 connection, whose
+   * concurrent stream limit caps throughput well before a large host runs out of CPU.
+   */
+  private TransportChannelProvider newChannelProvider() {
+    int minChannels = Math.max(1, env.getGrpcMinChannels());
+    ChannelPoolSettings.Builder pool =
+        ChannelPoolSettings.builder()
+            .setInitialChannelCount(minChannels)
+            .setMinChannelCount(minChannels)
+            .setMaxChannelCount(Math.max(minChannels, env.getGrpcMaxChannels()));
+    if (env.getGrpcMaxRpcsPerChannel() > 0) {
+      pool.setMaxRpcsPerChannel(env.getGrpcMaxRpcsPerChannel());
+    }
+    InstantiatingGrpcChannelProvider.Builder builder =
+        RecaptchaEnterpriseServiceSettings.defaultGrpcTransportProviderBuilder()
+            .setChannelPoolSettings(pool.build());
+    if (env.getGrpcKeepAliveTimeSeconds() > 0) {
+      builder
+          .setKeepAliveTimeDuration(Duration.ofSeconds(env.getGrpcKeepAliveTimeSeconds()))
+          .setKeepAliveTimeoutDuration(Duration.ofSeconds(env.getGrpcKeepAliveTimeoutSeconds()))
+          .setKeepAliveWithoutCalls(env.isGrpcKeepAliveWithoutCalls());
+    }
+    return builder.build();
+  }
+
   private void initializeClient() throws IOException, IllegalStateException {
+    if (env.useStubBackend()) {
+      RecaptchaEnterpriseServiceSettings settings =
+          newSettingsBuilder()
+              .setCredentialsProvider(NoCredentialsProvider.create())
+              .setTransportChannelProvider(stubBackend.createTransportChannelProvider())
+              .setHeaderProvider(FixedHeaderProvider.create("User-Agent", userAgent))
+              .build();
+      RecaptchaEnterpriseServiceClient client = RecaptchaEnterpriseServiceClient.create(settings);
+      this.recaptchaClient = client;
+      return;
+    }
+
     if (config.getAuthMethod() == RecaptchaAuthMethod.API_KEY) {
       RecaptchaEnterpriseServiceSettings settings =
-          RecaptchaEnterpriseServiceSettings.newBuilder()
+          newSettingsBuilder()
               .setCredentialsProvider(NoCredentialsProvider.create())
+              .setTransportChannelProvider(newChannelProvider())
               .setHeaderProvider(
                   FixedHeaderProvider.create(
-                      "X-goog-api-key", env.getApiKey(), "User-Agent", userAgent))
+                      "X-goog-api-key", config.getApiKey(), "User-Agent", userAgent))
               .build();
       RecaptchaEnterpriseServiceClient client = RecaptchaEnterpriseServiceClient.create(settings);
       this.recaptchaClient = client;
@@ -119,7 +346,8 @@ public class RecaptchaContext {
 
     if (config.getAuthMethod() == RecaptchaAuthMethod.DEFAULT_CREDENTIALS) {
       RecaptchaEnterpriseServiceSettings settings =
-          RecaptchaEnterpriseServiceSettings.newBuilder()
+          newSettingsBuilder()
+              .setTransportChannelProvider(newChannelProvider())
               .setHeaderProvider(FixedHeaderProvider.create("User-Agent", userAgent))
               .build();
       RecaptchaEnterpriseServiceClient client = RecaptchaEnterpriseServiceClient.create(settings);
@@ -132,45 +360,156 @@ public class RecaptchaContext {
   }
 
   public CompletableFuture<VerificationResponse> createAssessmentAsync(
-      PasswordCheckVerification clientEncryptedCredentials, Assessment requestAssessment) {
+      EncryptedCredentials clientEncryptedCredentials, Assessment requestAssessment) {
+    return createAssessmentAsync(clientEncryptedCredentials, requestAssessment, null);
+  }
+
+  /**
+   * Creates an assessment of {@code requestAssessment} with the password leak verification of
+   * {@code clientEncryptedCredentials}. A non-null {@code deadline} becomes the deadline of the
+   * RPC.
+   */
+  public CompletableFuture<VerificationResponse> createAssessmentAsync(
+      EncryptedCredentials clientEncryptedCredentials,
+      Assessment requestAssessment,
+      Deadline deadline) {
+    return createAssessmentAsync(clientEncryptedCredentials, requestAssessment, deadline, false);
+  }
+
+  /**
+   * Creates the assessment, hedged by {@link RequestHedger} if {@code hedge} is set. Only
+   * assessments that carry nothing but the password leak verification are hedged: a site's event is
+   * assessed once, since its token may only be accepted once.
+   */
+  private CompletableFuture<VerificationResponse> createAssessmentAsync(
+      EncryptedCredentials clientEncryptedCredentials,
+      Assessment requestAssessment,
+      Deadline deadline,
+      boolean hedge) {
     if (clientEncryptedCredentials.getLookupHashPrefix() == null
         || clientEncryptedCredentials.getEncryptedUserCredentialsHash() == null) {
       throw new IllegalArgumentException(Messages.INTERNAL_CREDENTIALS_ARE_NULL_MESSAGE);
     }
-    return CompletableFuture.supplyAsync(
-        () -> {
-          PrivatePasswordLeakVerification pldVerification =
-              PrivatePasswordLeakVerification.newBuilder()
-                  .setLookupHashPrefix(
-                      ByteString.copyFrom(clientEncryptedCredentials.getLookupHashPrefix()))
-                  .setEncryptedUserCredentialsHash(
-                      ByteString.copyFrom(
-                          clientEncryptedCredentials.getEncryptedUserCredentialsHash()))
-                  .build();
-
-          try {
-            Assessment mergeedRequest =
-                requestAssessment.toBuilder()
-                    .setPrivatePasswordLeakVerification(pldVerification)
-                    .build();
-
-            Assessment responseAssessment =
-                recaptchaClient.createAssessment(
-                    "projects/" + config.getProjectId(), mergeedRequest);
-
-            return new VerificationResponse(responseAssessment, clientEncryptedCredentials);
-          } catch (ApiException apiException) {
-            throw convertGrpcException(apiException);
-          } catch (Exception e) {
-            throw e;
+    PrivatePasswordLeakVerification pldVerification =
+        PrivatePasswordLeakVerification.newBuilder()
+            .setLookupHashPrefix(clientEncryptedCredentials.getLookupHashPrefix())
+            .setEncryptedUserCredentialsHash(
+                clientEncryptedCredentials.getEncryptedUserCredentialsHash())
+            .build();
+
+    return CancellableFutures.thenApply(
+        createAssessmentAsync(
+            requestAssessment.toBuilder()
+                .setPrivatePasswordLeakVerification(pldVerification)
+                .build(),
+            deadline,
+            hedge),
+        responseAssessment ->
+            new VerificationResponse(responseAssessment, clientEncryptedCredentials));
+  }
+
+  /**
+   * Creates an assessment as given, without a password leak verification. Used when the leak
+   * verdict is already known and only the site's event still needs assessing.
+   */
+  public CompletableFuture<Assessment> createAssessmentAsync(Assessment requestAssessment) {
+    return createAssessmentAsync(requestAssessment, null);
+  }
+
+  /**
+   * Creates an assessment as given, failing with a 504 without calling the API if {@code deadline}
+   * has already passed.
+   */
+  public CompletableFuture<Assessment> createAssessmentAsync(
+      Assessment requestAssessment, Deadline deadline) {
+    return createAssessmentAsync(requestAssessment, deadline, false);
+  }
+
+  private CompletableFuture<Assessment> createAssessmentAsync(
+      Assessment requestAssessment, Deadline deadline, boolean hedge) {
+    if (deadline != null && deadline.isExpired()) {
+      return CompletableFuture.failedFuture(Deadlines.exceeded());
+    }
+    CreateAssessmentRequest request =
+        CreateAssessmentRequest.newBuilder()
+            .setParent("projects/" + config.getProjectId())
+            .setAssessment(requestAssessment)
+            .build();
+
+    Supplier<CompletableFuture<Assessment>> attempt =
+        () ->
+            toCompletableFuture(
+                deadline == null
+                    ? recaptchaClient.createAssessmentCallable().futureCall(request)
+                    : recaptchaClient
+                        .createAssessmentCallable()
+                        .futureCall(request, callContext(deadline)));
+    return metrics.timeStage(
+        PldMetrics.ASSESSMENT_STAGE, hedge ? () -> hedger.call(attempt) : attempt);
+  }
+
+  /**
+   * Returns a call context that gives the RPC, retries included, no more than the time left before
+   * {@code deadline}.
+   */
+  private GrpcCallContext callContext(Deadline deadline) {
+    Duration remaining = Deadlines.remaining(deadline);
+    GrpcCallContext context = GrpcCallContext.createDefault().withTimeoutDuration(remaining);
+    if (retrySettings != null && remaining.compareTo(retrySettings.getTotalTimeoutDuration()) < 0) {
+      context =
+          context.withRetrySettings(retrySettings.toBuilder().setLogicalTimeout(remaining).build());
+    }
+    return context;
+  }
+
+  /**
+   * Bridges a gax {@link ApiFuture} to a {@link CompletableFuture} without parking a thread on the
+   * RPC. The result is completed on the completion executor, so dependent stages never run on gRPC
+   * transport threads. Cancelling the returned future cancels the underlying RPC.
+   */
+  private <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    ApiFutures.addCallback(
+        apiFuture,
+        new ApiFutureCallback<T>() {
+          @Override
+          public void onSuccess(T value) {
+            metrics.countRecaptchaCall(StatusCode.Code.OK.name());
+            result.complete(value);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            metrics.countRecaptchaCall(
+                t instanceof ApiException
+                    ? ((ApiException) t).getStatusCode().getCode().name()
+                    : t instanceof CancellationException
+                        ? StatusCode.Code.CANCELLED.name()
+                        : StatusCode.Code.UNKNOWN.name());
+            result.completeExceptionally(
+                t instanceof ApiException ? convertGrpcException((ApiException) t) : t);
+          }
+        },
+        completionExecutorService);
+    result.whenComplete(
+        (value, t) -> {
+          if (result.isCancelled()) {
+            apiFuture.cancel(true);
           }
         });
+    return result;
+  }
+
+  public CompletableFuture<Assessment> createAssessmentAsync(
+      EncryptedCredentials clientEncryptedCredentials) {
+    return createAssessmentAsync(clientEncryptedCredentials, (Deadline) null);
   }
 
   public CompletableFuture<Assessment> createAssessmentAsync(
-      PasswordCheckVerification clientEncryptedCredentials) {
+      EncryptedCredentials clientEncryptedCredentials, Deadline deadline) {
     Assessment requestAssessment = Assessment.newBuilder().build();
-    return this.createAssessmentAsync(clientEncryptedCredentials, requestAssessment)
-        .thenApply(response -> response.getAssessment());
+    return CancellableFutures.thenApply(
+        this.createAssessmentAsync(clientEncryptedCredentials, requestAssessment, deadline, true),
+        response -> response.getAssessment());
   }
 }
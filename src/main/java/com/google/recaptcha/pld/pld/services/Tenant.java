@@ -0,0 +1,59 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+
+/**
+ * What serves one tenant's requests: its leak checks, with their own reCAPTCHA client and share of
+ * the password check pool, its admission limit, and its metrics.
+ */
+public class Tenant {
+
+  private final String name;
+
+  private final LeakCheckService leakCheckService;
+
+  private final AdmissionLimiter admissionLimiter;
+
+  private final PldMetrics metrics;
+
+  public Tenant(
+      String name,
+      LeakCheckService leakCheckService,
+      AdmissionLimiter admissionLimiter,
+      PldMetrics metrics) {
+    this.name = name;
+    this.leakCheckService = leakCheckService;
+    this.admissionLimiter = admissionLimiter;
+    this.metrics = metrics;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public LeakCheckService getLeakCheckService() {
+    return leakCheckService;
+  }
+
+  public AdmissionLimiter getAdmissionLimiter() {
+    return admissionLimiter;
+  }
+
+  public PldMetrics getMetrics() {
+    return metrics;
+  }
+}
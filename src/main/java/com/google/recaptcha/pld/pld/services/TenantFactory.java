@@ -0,0 +1,141 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.CredentialDigest;
+import com.google.recaptcha.pld.pld.util.ExecutorShare;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.pld.util.RateLimits;
+import com.google.recaptcha.pld.pld.util.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.Validator;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the tenants listed in {@code pld.tenants}. Each gets its own reCAPTCHA client and channel
+ * pool, admission limit, hedging budget and share of the password check pool, so that one tenant's
+ * burst or failing project cannot starve the others. The verdict cache and the completion pool are
+ * shared: a verdict does not depend on the project that asked for it, and completions never block.
+ * So are the {@link RateLimits}, since a username or address is limited whichever tenant serves it,
+ * and the {@link BreachedPasswordCorpus}.
+ */
+@Component
+public class TenantFactory {
+
+  private final PldEnvironment env;
+
+  private final AutowireCapableBeanFactory beanFactory;
+
+  private final ExecutorService passwordCheckExecutorService;
+
+  private final Executor completionExecutorService;
+
+  private final VerdictCache verdictCache;
+
+  private final BreachedPasswordCorpus breachedPasswordCorpus;
+
+  private final Validator validator;
+
+  private final CredentialDigest credentialDigest;
+
+  private final RateLimits rateLimits;
+
+  private final MeterRegistry meterRegistry;
+
+  private final List<RecaptchaContext> contexts = new CopyOnWriteArrayList<>();
+
+  public TenantFactory(
+      PldEnvironment env,
+      AutowireCapableBeanFactory beanFactory,
+      @Qualifier("passwordCheckExecutorService") ExecutorService passwordCheckExecutorService,
+      @Qualifier("recaptchaCompletionExecutorService") Executor completionExecutorService,
+      VerdictCache verdictCache,
+      BreachedPasswordCorpus breachedPasswordCorpus,
+      Validator validator,
+      CredentialDigest credentialDigest,
+      RateLimits rateLimits,
+      MeterRegistry meterRegistry) {
+    this.env = env;
+    this.beanFactory = beanFactory;
+    this.passwordCheckExecutorService = passwordCheckExecutorService;
+    this.completionExecutorService = completionExecutorService;
+    this.verdictCache = verdictCache;
+    this.breachedPasswordCorpus = breachedPasswordCorpus;
+    this.validator = validator;
+    this.credentialDigest = credentialDigest;
+    this.rateLimits = rateLimits;
+    this.meterRegistry = meterRegistry;
+  }
+
+  public Tenant create(String name) {
+    PldMetrics metrics = new PldMetrics(meterRegistry, name);
+    ExecutorService share =
+        new ExecutorShare(
+            passwordCheckExecutorService,
+            ExecutorShare.permits(
+                env.getTenantCpuShare(name),
+                env.getPasswordCheckThreadPoolSize(),
+                env.getPasswordCheckQueueSize()),
+            name,
+            meterRegistry);
+    PldService pldService = new PldService(new PasswordCheckEngine(share), metrics);
+
+    RecaptchaContext recaptchaContext = new RecaptchaContext();
+    beanFactory.autowireBean(recaptchaContext);
+    recaptchaContext.serveTenant(
+        name, metrics, new RequestHedger(env, metrics, meterRegistry, completionExecutorService));
+    beanFactory.initializeBean(recaptchaContext, "recaptchaContext." + name);
+    contexts.add(recaptchaContext);
+
+    LeakCheckService leakCheckService =
+        new LeakCheckService(
+            pldService,
+            recaptchaContext,
+            validator,
+            verdictCache,
+            breachedPasswordCorpus,
+            credentialDigest,
+            rateLimits,
+            metrics,
+            completionExecutorService);
+    AdmissionLimiter admissionLimiter =
+        new AdmissionLimiter(
+            env,
+            env.getTenantProperty(name, "admissionLimit", Integer.class, env.getAdmissionLimit()),
+            name,
+            meterRegistry);
+    return new Tenant(name, leakCheckService, admissionLimiter, metrics);
+  }
+
+  /** Returns the reCAPTCHA contexts of the tenants this factory built. */
+  public List<RecaptchaContext> getRecaptchaContexts() {
+    return Collections.unmodifiableList(contexts);
+  }
+
+  /** Closes the reCAPTCHA clients of the tenants this factory built. */
+  @PreDestroy
+  public void cleanup() {
+    contexts.forEach(RecaptchaContext::cleanup);
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Routes requests to the tenant they name, by the {@code X-PLD-Tenant} header or a {@code
+ * /tenants/{tenant}} path prefix. Requests that name none go to the default tenant, configured by
+ * {@code RECAPTCHA_PROJECT_ID} and served by the application's own beans.
+ */
+@Service
+public class TenantRegistry {
+
+  /** Request header, and gRPC metadata key, naming the tenant of a request. */
+  public static final String TENANT_HEADER = "X-PLD-Tenant";
+
+  /** Path variable naming the tenant of a request under {@code /tenants/{tenant}}. */
+  public static final String TENANT_PATH_VARIABLE = "tenant";
+
+  private final Tenant defaultTenant;
+
+  private final Map<String, Tenant> tenants = new HashMap<>();
+
+  @Autowired
+  public TenantRegistry(
+      LeakCheckService leakCheckService,
+      AdmissionLimiter admissionLimiter,
+      PldMetrics metrics,
+      PldEnvironment env,
+      TenantFactory factory) {
+    this(new Tenant(PldMetrics.DEFAULT_TENANT, leakCheckService, admissionLimiter, metrics));
+    for (String name : env.getTenants()) {
+      if (name.isBlank() || name.equals(PldMetrics.DEFAULT_TENANT) || tenants.containsKey(name)) {
+        throw new IllegalArgumentException(
+            "Invalid or repeated tenant name in pld.tenants: " + name);
+      }
+      tenants.put(name, factory.create(name));
+    }
+  }
+
+  /** Creates a registry that serves every request from {@code defaultTenant}. */
+  public TenantRegistry(Tenant defaultTenant) {
+    this.defaultTenant = defaultTenant;
+  }
+
+  /**
+   * Returns the tenant named by the first of {@code names} that is set, or the default tenant when
+   * none is.
+   *
+   * @throws ResponseStatusException with a 404 if the name is not a configured tenant
+   */
+  public Tenant resolve(String... names) {
+    for (String name : names) {
+      if (name != null && !name.isEmpty()) {
+        if (name.equals(PldMetrics.DEFAULT_TENANT)) {
+          return defaultTenant;
+        }
+        Tenant tenant = tenants.get(name);
+        if (tenant == null) {
+          throw new ResponseStatusException(HttpStatus.NOT_FOUND, Messages.UNKNOWN_TENANT_MESSAGE);
+        }
+        return tenant;
+      }
+    }
+    return defaultTenant;
+  }
+}
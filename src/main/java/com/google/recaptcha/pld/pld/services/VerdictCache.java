@@ -0,0 +1,65 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.ByteString;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.pld.util.CredentialDigest;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers recent verdicts so that repeat checks of the same credentials skip hashing and the
+ * password leak half of the reCAPTCHA call. Entries are keyed by a {@link CredentialDigest}, so no
+ * plaintext is retained. Caffeine's frequency-based admission keeps regularly returning users
+ * cached when a burst of one-off logins would otherwise flush them.
+ */
+@Component
+public class VerdictCache {
+
+  private final Cache<ByteString, PldLeakedStatus> cache;
+
+  public VerdictCache(PldEnvironment env, MeterRegistry meterRegistry) {
+    if (env.isCacheEnabled()) {
+      this.cache =
+          Caffeine.newBuilder()
+              .maximumSize(env.getCacheMaximumSize())
+              .expireAfterWrite(Duration.ofSeconds(env.getCacheTtlSeconds()))
+              .recordStats()
+              .build();
+      CaffeineCacheMetrics.monitor(meterRegistry, cache, "pldVerdicts");
+    } else {
+      this.cache = null;
+    }
+  }
+
+  /**
+   * Returns the cached verdict for a {@link CredentialDigest}, or null if there is none or caching
+   * is disabled.
+   */
+  public PldLeakedStatus getIfPresent(ByteString key) {
+    return cache == null ? null : cache.getIfPresent(key);
+  }
+
+  public void put(ByteString key, PldLeakedStatus status) {
+    if (cache != null) {
+      cache.put(key, status);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.stub;
+
+import io.grpc.Status;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the latency and failures of the stub backend.
+ *
+ * <p>Latency follows a log-normal distribution fitted to the configured median and 99th percentile,
+ * which is a reasonable shape for the latency of a remote RPC. Failures are drawn independently
+ * with the configured probability, using one of the configured status codes.
+ */
+public class StubFaultInjector {
+
+  /** The 99th percentile of the standard normal distribution. */
+  private static final double Z_99 = 2.3263478740408408;
+
+  private final double mu;
+
+  private final double sigma;
+
+  private final double errorRate;
+
+  private final List<Status.Code> errorCodes;
+
+  public StubFaultInjector(
+      long medianLatencyMillis, long p99LatencyMillis, double errorRate, List<Status.Code> codes) {
+    if (medianLatencyMillis > 0) {
+      long p99 = Math.max(medianLatencyMillis, p99LatencyMillis);
+      this.mu = Math.log(TimeUnit.MILLISECONDS.toNanos(medianLatencyMillis));
+      this.sigma = (Math.log(TimeUnit.MILLISECONDS.toNanos(p99)) - mu) / Z_99;
+    } else {
+      this.mu = Double.NEGATIVE_INFINITY;
+      this.sigma = 0;
+    }
+    if (errorRate > 0 && codes.isEmpty()) {
+      throw new IllegalArgumentException("An error rate requires at least one error code.");
+    }
+    this.errorRate = errorRate;
+    this.errorCodes = List.copyOf(codes);
+  }
+
+  /** Returns the latency to add to the next response, in nanoseconds. */
+  public long nextLatencyNanos() {
+    if (mu == Double.NEGATIVE_INFINITY) {
+      return 0;
+    }
+    return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+  }
+
+  /** Returns the status the next response should fail with, or null if it should succeed. */
+  public Status nextError() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (errorRate <= 0 || random.nextDouble() >= errorRate) {
+      return null;
+    }
+    return Status.fromCode(errorCodes.get(random.nextInt(errorCodes.size())))
+        .withDescription("Failure injected by the stub reCAPTCHA backend.");
+  }
+}
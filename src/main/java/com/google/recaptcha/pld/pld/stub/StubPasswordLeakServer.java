@@ -0,0 +1,90 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.stub;
+
+import com.google.protobuf.ByteString;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.services.PasswordCheckEngine;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.BigIntegers;
+
+/**
+ * Server side of the private password leak protocol, for use without the reCAPTCHA API.
+ *
+ * <p>The server holds its own commutative EC key. It re-encrypts the client's encrypted credentials
+ * hash with that key, and answers with the match prefixes of every leaked credential that shares
+ * the request's lookup hash prefix. A match prefix is a prefix of the SHA-256 of the credentials
+ * hash encrypted under the server key alone, computed with the hashing steps of {@link
+ * PasswordCheckEngine} when the server is created.
+ */
+public class StubPasswordLeakServer {
+
+  static final int MATCH_PREFIX_LENGTH = 20;
+
+  private static final int COMPRESSED_POINT_LENGTH = 33;
+
+  private final X9ECParameters curve = PasswordCheckEngine.CURVE;
+
+  private final BigInteger serverKey;
+
+  private final Map<ByteString, List<ByteString>> matchPrefixesByLookupPrefix = new HashMap<>();
+
+  public StubPasswordLeakServer(Collection<PlaintextCredentials> leakedCredentials) {
+    this.serverKey =
+        BigIntegers.createRandomInRange(
+            BigInteger.ONE, curve.getN().subtract(BigInteger.ONE), new SecureRandom());
+
+    for (PlaintextCredentials credentials : leakedCredentials) {
+      ECPoint encrypted =
+          PasswordCheckEngine.credentialsPoint(credentials.getUsername(), credentials.getPassword())
+              .multiply(serverKey);
+      byte[] matchPrefix =
+          Arrays.copyOf(PasswordCheckEngine.matchDigest(encrypted), MATCH_PREFIX_LENGTH);
+      matchPrefixesByLookupPrefix
+          .computeIfAbsent(
+              ByteString.copyFrom(PasswordCheckEngine.lookupHashPrefix(credentials.getUsername())),
+              k -> new ArrayList<>())
+          .add(ByteString.copyFrom(matchPrefix));
+    }
+  }
+
+  /** Completes a request the way the reCAPTCHA API fills in the password leak fields. */
+  public PrivatePasswordLeakVerification answer(PrivatePasswordLeakVerification request) {
+    return request.toBuilder()
+        .setReencryptedUserCredentialsHash(
+            ByteString.copyFrom(reEncrypt(request.getEncryptedUserCredentialsHash().toByteArray())))
+        .addAllEncryptedLeakMatchPrefixes(
+            matchPrefixesByLookupPrefix.getOrDefault(request.getLookupHashPrefix(), List.of()))
+        .build();
+  }
+
+  /** Applies the server key to an encoded curve point, keeping the point's encoding. */
+  byte[] reEncrypt(byte[] encodedPoint) {
+    ECPoint point = curve.getCurve().decodePoint(encodedPoint);
+    return point
+        .multiply(serverKey)
+        .normalize()
+        .getEncoded(encodedPoint.length == COMPRESSED_POINT_LENGTH);
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.stub;
+
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-process stand-in for the reCAPTCHA Enterprise API, enabled with {@code pld.backend=stub}.
+ *
+ * <p>It implements the server side of the password leak protocol for the credentials listed in
+ * {@code pld.stub.leakedCredentials} and {@code pld.stub.leakedCredentialsFile}, and adds
+ * configurable latency and failures. This allows load tests and benchmarks without network access,
+ * a project or credentials, or billed assessments.
+ */
+@Component
+@ConditionalOnProperty(name = "pld.backend", havingValue = "stub")
+public class StubRecaptchaBackend {
+
+  private final String serverName = InProcessServerBuilder.generateName();
+
+  private final ExecutorService serverExecutor;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final Server server;
+
+  public StubRecaptchaBackend(PldEnvironment env) throws IOException {
+    StubPasswordLeakServer leakServer = new StubPasswordLeakServer(loadCredentials(env));
+    StubFaultInjector faultInjector =
+        new StubFaultInjector(
+            env.getStubLatencyMedianMillis(),
+            env.getStubLatencyP99Millis(),
+            env.getStubErrorRate(),
+            env.getStubErrorCodes().stream()
+                .map(Status.Code::valueOf)
+                .collect(Collectors.toList()));
+
+    this.serverExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    this.server =
+        InProcessServerBuilder.forName(serverName)
+            .executor(serverExecutor)
+            .addService(new StubRecaptchaService(leakServer, faultInjector, scheduler))
+            .build()
+            .start();
+  }
+
+  /** Returns a transport that connects a reCAPTCHA client to this backend. */
+  public TransportChannelProvider createTransportChannelProvider() {
+    return FixedTransportChannelProvider.create(
+        GrpcTransportChannel.create(
+            InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    server.shutdownNow();
+    scheduler.shutdownNow();
+    serverExecutor.shutdownNow();
+  }
+
+  /**
+   * Returns the credentials of {@code pld.stub.leakedCredentials} followed by those of {@code
+   * pld.stub.leakedCredentialsFile}. The property is split on commas, so passwords containing one
+   * have to come from the file, which holds one entry per line and skips lines starting with {@code
+   * #}.
+   */
+  private static List<PlaintextCredentials> loadCredentials(PldEnvironment env) throws IOException {
+    List<PlaintextCredentials> credentials =
+        new ArrayList<>(
+            parseCredentials(env.getStubLeakedCredentials(), "pld.stub.leakedCredentials"));
+    if (!env.getStubLeakedCredentialsFile().isEmpty()) {
+      List<String> lines =
+          Files.readAllLines(Path.of(env.getStubLeakedCredentialsFile())).stream()
+              .filter(line -> !line.startsWith("#"))
+              .collect(Collectors.toList());
+      credentials.addAll(parseCredentials(lines, "pld.stub.leakedCredentialsFile"));
+    }
+    return credentials;
+  }
+
+  /** Parses {@code username:password} entries. The password may itself contain colons. */
+  private static List<PlaintextCredentials> parseCredentials(List<String> entries, String source) {
+    return entries.stream()
+        .map(String::trim)
+        .filter(entry -> !entry.isEmpty())
+        .map(
+            entry -> {
+              int separator = entry.indexOf(':');
+              if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException(
+                    source + " entries must look like username:password.");
+              }
+              return new PlaintextCredentials(
+                  entry.substring(0, separator), entry.substring(separator + 1));
+            })
+        .collect(Collectors.toList());
+  }
+}
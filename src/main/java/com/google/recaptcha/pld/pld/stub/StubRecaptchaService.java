@@ -0,0 +1,102 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.stub;
+
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.CreateAssessmentRequest;
+import com.google.recaptchaenterprise.v1.ListKeysRequest;
+import com.google.recaptchaenterprise.v1.ListKeysResponse;
+import com.google.recaptchaenterprise.v1.RecaptchaEnterpriseServiceGrpc;
+import com.google.recaptchaenterprise.v1.RiskAnalysis;
+import com.google.recaptchaenterprise.v1.TokenProperties;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers {@code CreateAssessment} calls, and the {@code ListKeys} calls of the channel warm-up,
+ * without contacting the reCAPTCHA API.
+ */
+class StubRecaptchaService
+    extends RecaptchaEnterpriseServiceGrpc.RecaptchaEnterpriseServiceImplBase {
+
+  private final StubPasswordLeakServer leakServer;
+
+  private final StubFaultInjector faultInjector;
+
+  private final ScheduledExecutorService scheduler;
+
+  StubRecaptchaService(
+      StubPasswordLeakServer leakServer,
+      StubFaultInjector faultInjector,
+      ScheduledExecutorService scheduler) {
+    this.leakServer = leakServer;
+    this.faultInjector = faultInjector;
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public void createAssessment(
+      CreateAssessmentRequest request, StreamObserver<Assessment> responseObserver) {
+    Status error = faultInjector.nextError();
+    respond(error == null ? buildResponse(request) : null, error, responseObserver);
+  }
+
+  /** Answers with an empty page, after the same latency and failures as assessments. */
+  @Override
+  public void listKeys(ListKeysRequest request, StreamObserver<ListKeysResponse> responseObserver) {
+    Status error = faultInjector.nextError();
+    respond(ListKeysResponse.getDefaultInstance(), error, responseObserver);
+  }
+
+  private <T> void respond(T response, Status error, StreamObserver<T> responseObserver) {
+    Runnable respond =
+        () -> {
+          if (error != null) {
+            responseObserver.onError(error.asRuntimeException());
+            return;
+          }
+          responseObserver.onNext(response);
+          responseObserver.onCompleted();
+        };
+
+    long latencyNanos = faultInjector.nextLatencyNanos();
+    if (latencyNanos > 0) {
+      scheduler.schedule(respond, latencyNanos, TimeUnit.NANOSECONDS);
+    } else {
+      respond.run();
+    }
+  }
+
+  private Assessment buildResponse(CreateAssessmentRequest request) {
+    Assessment assessment = request.getAssessment();
+    Assessment.Builder response =
+        assessment.toBuilder().setName(request.getParent() + "/assessments/" + UUID.randomUUID());
+    if (assessment.hasPrivatePasswordLeakVerification()) {
+      response.setPrivatePasswordLeakVerification(
+          leakServer.answer(assessment.getPrivatePasswordLeakVerification()));
+    }
+    if (assessment.hasEvent()) {
+      response
+          .setTokenProperties(
+              TokenProperties.newBuilder()
+                  .setValid(true)
+                  .setAction(assessment.getEvent().getExpectedAction()))
+          .setRiskAnalysis(RiskAnalysis.newBuilder().setScore(0.9f));
+    }
+    return response.build();
+  }
+}
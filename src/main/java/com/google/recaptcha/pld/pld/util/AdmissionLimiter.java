@@ -0,0 +1,163 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Caps the number of requests in flight, so that overload is answered with an immediate rejection
+ * instead of a queue that callers give up on before it drains.
+ *
+ * <p>The cap is either fixed at {@code pld.admission.limit}, or adapted with AIMD when {@code
+ * pld.admission.adaptive} is set: it grows by about one for every limit's worth of requests that
+ * finish within {@code pld.admission.targetLatencyMillis}, and shrinks by a tenth, at most once per
+ * target latency, when one is slower or fails with an overload error. It never leaves the range
+ * from {@code pld.admission.minLimit} to {@code pld.admission.limit}.
+ */
+@Component
+public class AdmissionLimiter {
+
+  private static final double BACKOFF_RATIO = 0.9;
+
+  private final boolean enabled;
+
+  private final boolean adaptive;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final long targetLatencyNanos;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private volatile double limit;
+
+  private long lastBackoffNanos;
+
+  @Autowired
+  public AdmissionLimiter(PldEnvironment env, MeterRegistry meterRegistry) {
+    this(env, env.getAdmissionLimit(), PldMetrics.DEFAULT_TENANT, meterRegistry);
+  }
+
+  /**
+   * Creates the limiter of {@code tenant}, capped at {@code limit} rather than {@code
+   * pld.admission.limit}, and otherwise configured like the default tenant's.
+   */
+  public AdmissionLimiter(
+      PldEnvironment env, int limit, String tenant, MeterRegistry meterRegistry) {
+    this.enabled = limit > 0;
+    this.adaptive = env.isAdmissionAdaptive();
+    this.maxLimit = limit;
+    this.minLimit = Math.max(1, Math.min(env.getAdmissionMinLimit(), maxLimit));
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(env.getAdmissionTargetLatencyMillis());
+    this.limit = maxLimit;
+    this.lastBackoffNanos = System.nanoTime() - targetLatencyNanos;
+
+    if (enabled) {
+      Gauge.builder("pld.admission.limit", this, limiter -> limiter.limit)
+          .description("Current cap on requests in flight")
+          .tag(PldMetrics.TENANT_TAG, tenant)
+          .register(meterRegistry);
+      Gauge.builder("pld.admission.inflight", inFlight, AtomicInteger::get)
+          .description("Requests currently admitted and in flight")
+          .tag(PldMetrics.TENANT_TAG, tenant)
+          .register(meterRegistry);
+    }
+  }
+
+  /**
+   * Runs {@code call} if the service is below its limit, and counts it as in flight until the
+   * returned future completes.
+   *
+   * @throws ServiceOverloadedException if the service is at its limit
+   */
+  public <T> CompletableFuture<T> admit(Supplier<CompletableFuture<T>> call) {
+    if (!enabled) {
+      return call.get();
+    }
+    if (!tryAcquire()) {
+      throw new ServiceOverloadedException();
+    }
+    long startNanos = System.nanoTime();
+    CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      release(startNanos, e);
+      throw e;
+    }
+    future.whenComplete((value, t) -> release(startNanos, t));
+    return future;
+  }
+
+  /** Returns the current limit, rounded down. */
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  private boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= (int) limit) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void release(long startNanos, Throwable failure) {
+    inFlight.decrementAndGet();
+    if (!adaptive) {
+      return;
+    }
+    long nowNanos = System.nanoTime();
+    boolean congested = nowNanos - startNanos > targetLatencyNanos || isOverload(failure);
+    synchronized (this) {
+      if (!congested) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      } else if (nowNanos - lastBackoffNanos >= targetLatencyNanos) {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        lastBackoffNanos = nowNanos;
+      }
+    }
+  }
+
+  /** Whether {@code t} signals that this service or the reCAPTCHA API is overloaded. */
+  static boolean isOverload(Throwable t) {
+    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    if (cause instanceof RejectedExecutionException) {
+      return true;
+    }
+    if (cause instanceof ResponseStatusException) {
+      int status = ((ResponseStatusException) cause).getStatusCode().value();
+      return status == HttpStatus.TOO_MANY_REQUESTS.value()
+          || status == HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+    return false;
+  }
+}
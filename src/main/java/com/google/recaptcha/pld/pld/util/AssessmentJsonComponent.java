@@ -1,8 +1,9 @@
 package com.google.recaptcha.pld.pld.util;
 
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.util.JsonFormat;
 import com.google.recaptchaenterprise.v1.Assessment;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.boot.jackson.JacksonComponent;
 import tools.jackson.core.JacksonException;
 import tools.jackson.core.JsonGenerator;
@@ -12,16 +13,26 @@ import tools.jackson.databind.SerializationContext;
 import tools.jackson.databind.ValueDeserializer;
 import tools.jackson.databind.ValueSerializer;
 
+/**
+ * Maps protobuf Assessments to and from JSON objects in the protobuf JSON mapping, straight on
+ * Jackson's tokens with {@link ProtobufJsonCodec}. Jackson creates these outside the application
+ * context, so their timings go to the global registry, which Spring Boot backs with its own.
+ */
 @JacksonComponent
 public class AssessmentJsonComponent {
+
   public static class Serializer extends ValueSerializer<Assessment> {
     @Override
     public void serialize(
         Assessment assessment, JsonGenerator jsonGenerator, SerializationContext serializationContext)
         throws JacksonException {
+      Timer.Sample sample = Timer.start(Metrics.globalRegistry);
       try {
-        jsonGenerator.writeString(JsonFormat.printer().print(assessment));
+        ProtobufJsonCodec.write(assessment, jsonGenerator);
+        sample.stop(
+            PldMetrics.stageTimer(Metrics.globalRegistry, PldMetrics.SERIALIZE_STAGE, null));
       } catch (InvalidProtocolBufferException e) {
+        sample.stop(PldMetrics.stageTimer(Metrics.globalRegistry, PldMetrics.SERIALIZE_STAGE, e));
         throw new RuntimeException("Failed to serialize Assessment to JSON", e);
       }
     }
@@ -32,11 +43,15 @@ public class AssessmentJsonComponent {
     public Assessment deserialize(
         JsonParser jsonParser, DeserializationContext deserializationContext)
         throws JacksonException {
+      Timer.Sample sample = Timer.start(Metrics.globalRegistry);
       try {
         Assessment.Builder builder = Assessment.newBuilder();
-        JsonFormat.parser().merge(jsonParser.readValueAsTree().toString(), builder);
+        ProtobufJsonCodec.merge(jsonParser, builder);
+        sample.stop(
+            PldMetrics.stageTimer(Metrics.globalRegistry, PldMetrics.DESERIALIZE_STAGE, null));
         return builder.build();
       } catch (InvalidProtocolBufferException e) {
+        sample.stop(PldMetrics.stageTimer(Metrics.globalRegistry, PldMetrics.DESERIALIZE_STAGE, e));
         throw new RuntimeException("Failed to deserialize Assessment from JSON", e);
       }
     }
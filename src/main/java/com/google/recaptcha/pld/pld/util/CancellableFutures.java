@@ -0,0 +1,82 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Chains {@link CompletableFuture} stages so that cancelling the end of the chain cancels the stage
+ * that is still running. Plain {@code thenApply} and {@code thenCompose} only propagate completion
+ * downstream, so cancelling the future handed to a caller would otherwise leave queued hashing and
+ * in-flight RPCs running for nobody.
+ */
+public final class CancellableFutures {
+
+  private CancellableFutures() {}
+
+  /**
+   * Cancels {@code upstream} when {@code downstream} is cancelled, and returns {@code downstream}.
+   */
+  public static <T> CompletableFuture<T> propagateCancellation(
+      CompletableFuture<T> downstream, Future<?> upstream) {
+    downstream.whenComplete(
+        (value, t) -> {
+          if (downstream.isCancelled()) {
+            upstream.cancel(true);
+          }
+        });
+    return downstream;
+  }
+
+  /** Like {@link CompletableFuture#thenApply}, with cancellation carried back to {@code source}. */
+  public static <T, U> CompletableFuture<U> thenApply(
+      CompletableFuture<T> source, Function<? super T, ? extends U> fn) {
+    return propagateCancellation(source.thenApply(fn), source);
+  }
+
+  /**
+   * Like {@link CompletableFuture#thenCompose}, with cancellation carried back to {@code source}
+   * while it is running, and to the future returned by {@code fn} after that.
+   */
+  public static <T, U> CompletableFuture<U> thenCompose(
+      CompletableFuture<T> source, Function<? super T, ? extends CompletableFuture<U>> fn) {
+    CompletableFuture<U> result = new CompletableFuture<>();
+    source.whenComplete(
+        (value, t) -> {
+          if (t != null) {
+            result.completeExceptionally(t);
+            return;
+          }
+          CompletableFuture<U> next;
+          try {
+            next = fn.apply(value);
+          } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+          }
+          propagateCancellation(result, next);
+          next.whenComplete(
+              (nextValue, nextFailure) -> {
+                if (nextFailure == null) {
+                  result.complete(nextValue);
+                } else {
+                  result.completeExceptionally(nextFailure);
+                }
+              });
+        });
+    return propagateCancellation(result, source);
+  }
+}
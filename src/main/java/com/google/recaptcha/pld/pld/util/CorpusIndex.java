@@ -0,0 +1,213 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A read-only, memory-mapped index of breached password hashes, written by {@link
+ * CorpusIndexBuilder}. The file holds a header, the SHA-1 hashes of the passwords sorted and
+ * without duplicates, and a Bloom filter over them:
+ *
+ * <pre>
+ *   0  magic "PLDCORP1"
+ *   8  long  number of hashes
+ *  16  long  offset of the Bloom filter
+ *  24  long  Bloom filter size in bits, a multiple of 64
+ *  32  int   Bloom filter hash count
+ *  64  hashes, 20 bytes each
+ *      Bloom filter bits
+ * </pre>
+ *
+ * <p>A lookup hashes the password once, tests the Bloom filter, and only binary searches the hashes
+ * for the few passwords it lets through. The pages touched stay in the page cache rather than on
+ * the heap, so the index can be larger than the heap. Lookups are thread safe.
+ */
+public class CorpusIndex {
+
+  static final byte[] MAGIC = "PLDCORP1".getBytes(StandardCharsets.US_ASCII);
+
+  static final int HEADER_BYTES = 64;
+
+  static final int HASH_BYTES = 20;
+
+  // Mappings are limited to 2 GB, so the file is mapped in segments of whole hashes.
+  private static final int HASHES_PER_SEGMENT = (1 << 30) / HASH_BYTES;
+
+  private static final int BLOOM_SEGMENT_BITS = 33;
+
+  private static final ThreadLocal<MessageDigest> SHA1 =
+      ThreadLocal.withInitial(CorpusIndex::newSha1);
+
+  private final long entries;
+
+  private final long bloomBits;
+
+  private final int bloomHashes;
+
+  private final MappedByteBuffer[] hashSegments;
+
+  private final MappedByteBuffer[] bloomSegments;
+
+  private CorpusIndex(
+      long entries,
+      long bloomBits,
+      int bloomHashes,
+      MappedByteBuffer[] hashSegments,
+      MappedByteBuffer[] bloomSegments) {
+    this.entries = entries;
+    this.bloomBits = bloomBits;
+    this.bloomHashes = bloomHashes;
+    this.hashSegments = hashSegments;
+    this.bloomSegments = bloomSegments;
+  }
+
+  /**
+   * Maps the index at {@code path}. The mapping outlives the file, so a new index can be renamed
+   * over it while this one is still in use.
+   */
+  public static CorpusIndex open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && channel.read(header) >= 0) {}
+      header.flip();
+      byte[] magic = new byte[MAGIC.length];
+      if (header.remaining() < HEADER_BYTES || !Arrays.equals(get(header, magic), MAGIC)) {
+        throw new IOException(path + " is not a breached password corpus index");
+      }
+      long entries = header.getLong();
+      long bloomOffset = header.getLong();
+      long bloomBits = header.getLong();
+      int bloomHashes = header.getInt();
+      if (entries < 0
+          || bloomBits <= 0
+          || bloomBits % Long.SIZE != 0
+          || bloomHashes <= 0
+          || bloomOffset != HEADER_BYTES + entries * HASH_BYTES
+          || channel.size() != bloomOffset + bloomBits / Byte.SIZE) {
+        throw new IOException(path + " is truncated or has an invalid header");
+      }
+      return new CorpusIndex(
+          entries,
+          bloomBits,
+          bloomHashes,
+          map(channel, HEADER_BYTES, entries * HASH_BYTES, (long) HASHES_PER_SEGMENT * HASH_BYTES),
+          map(channel, bloomOffset, bloomBits / Byte.SIZE, 1L << (BLOOM_SEGMENT_BITS - 3)));
+    }
+  }
+
+  /** Returns the number of distinct password hashes in the index. */
+  public long entries() {
+    return entries;
+  }
+
+  /** Returns whether {@code password} is in the corpus. */
+  public boolean contains(String password) {
+    MessageDigest sha1 = SHA1.get();
+    return containsHash(sha1.digest(password.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /** Returns whether the 20-byte SHA-1 {@code hash} is in the corpus. */
+  public boolean containsHash(byte[] hash) {
+    ByteBuffer key = ByteBuffer.wrap(hash);
+    long high = key.getLong(0);
+    long middle = key.getLong(8);
+    int low = key.getInt(16);
+    return mightContain(high, middle) && search(high, middle, low);
+  }
+
+  private boolean mightContain(long high, long middle) {
+    for (int i = 0; i < bloomHashes; i++) {
+      long bit = bloomBit(high, middle, i, bloomBits);
+      ByteBuffer segment = bloomSegments[(int) (bit >>> BLOOM_SEGMENT_BITS)];
+      int word = (int) ((bit & ((1L << BLOOM_SEGMENT_BITS) - 1)) >>> 6);
+      if ((segment.getLong(word * Long.BYTES) & (1L << (bit & 63))) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean search(long high, long middle, int low) {
+    long from = 0;
+    long to = entries - 1;
+    while (from <= to) {
+      long mid = (from + to) >>> 1;
+      ByteBuffer segment = hashSegments[(int) (mid / HASHES_PER_SEGMENT)];
+      int offset = (int) (mid % HASHES_PER_SEGMENT) * HASH_BYTES;
+      int order = Long.compareUnsigned(segment.getLong(offset), high);
+      if (order == 0) {
+        order = Long.compareUnsigned(segment.getLong(offset + 8), middle);
+      }
+      if (order == 0) {
+        order = Integer.compareUnsigned(segment.getInt(offset + 16), low);
+      }
+      if (order == 0) {
+        return true;
+      }
+      if (order < 0) {
+        from = mid + 1;
+      } else {
+        to = mid - 1;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the {@code i}th Bloom filter bit of a hash whose first two longs are {@code high} and
+   * {@code middle}. SHA-1 bits are already uniform, so the filter's hashes are derived from them
+   * directly, by double hashing.
+   */
+  static long bloomBit(long high, long middle, int i, long bloomBits) {
+    return Math.floorMod(high + i * (middle | 1), bloomBits);
+  }
+
+  static MessageDigest newSha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+  }
+
+  private static byte[] get(ByteBuffer buffer, byte[] bytes) {
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static MappedByteBuffer[] map(
+      FileChannel channel, long offset, long length, long segmentBytes) throws IOException {
+    int segments = (int) ((length + segmentBytes - 1) / segmentBytes);
+    MappedByteBuffer[] mapped = new MappedByteBuffer[Math.max(1, segments)];
+    for (int i = 0; i < mapped.length; i++) {
+      long start = i * segmentBytes;
+      mapped[i] =
+          channel.map(
+              FileChannel.MapMode.READ_ONLY,
+              offset + start,
+              Math.min(segmentBytes, length - start));
+    }
+    return mapped;
+  }
+}
@@ -0,0 +1,306 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a {@link CorpusIndex} from a text file with one breached password per line, either as the
+ * SHA-1 hex digest, optionally followed by {@code :count} as in the Pwned Passwords downloads, or
+ * in plain text with {@code --plaintext}:
+ *
+ * <pre>
+ * java -cp pld.jar -Dloader.main=com.google.recaptcha.pld.pld.util.CorpusIndexBuilder \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher input.txt corpus.idx [--plaintext]
+ * </pre>
+ *
+ * <p>The input need not be sorted or free of duplicates. It is sorted in runs that fit in memory,
+ * which are merged into the index. The index is written next to {@code output} and renamed over it,
+ * so a service reloading {@code output} only ever sees a complete index.
+ */
+public class CorpusIndexBuilder {
+
+  /** Bloom filter bits per hash, for about 1% false positives. */
+  static final int BLOOM_BITS_PER_ENTRY = 10;
+
+  static final int BLOOM_HASHES = 7;
+
+  private static final int DEFAULT_RUN_ENTRIES = 1 << 22;
+
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2
+        || args.length > 3
+        || (args.length == 3 && !args[2].equals("--plaintext"))) {
+      System.err.println("Usage: CorpusIndexBuilder <input> <output> [--plaintext]");
+      System.exit(2);
+    }
+    long entries = build(Path.of(args[0]), Path.of(args[1]), args.length == 3, DEFAULT_RUN_ENTRIES);
+    System.out.println("Wrote " + entries + " password hashes to " + args[1]);
+  }
+
+  /**
+   * Builds the index of {@code input} at {@code output}, sorting at most {@code runEntries} hashes
+   * in memory at once, and returns how many distinct hashes it holds.
+   */
+  public static long build(Path input, Path output, boolean plaintext, int runEntries)
+      throws IOException {
+    Path directory = output.toAbsolutePath().getParent();
+    List<Path> runs = new ArrayList<>();
+    try {
+      long hashes = sortRuns(input, plaintext, runEntries, directory, runs);
+      Path temporary = Files.createTempFile(directory, output.getFileName().toString(), ".tmp");
+      try {
+        long entries = merge(runs, hashes, temporary);
+        Files.move(
+            temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries;
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } finally {
+      for (Path run : runs) {
+        Files.deleteIfExists(run);
+      }
+    }
+  }
+
+  /** Reads the input into sorted runs of distinct hashes, and returns how many hashes it read. */
+  private static long sortRuns(
+      Path input, boolean plaintext, int runEntries, Path directory, List<Path> runs)
+      throws IOException {
+    MessageDigest sha1 = CorpusIndex.newSha1();
+    Hash[] run = new Hash[runEntries];
+    int size = 0;
+    long hashes = 0;
+    try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+      LineReader reader = new LineReader(channel, 0, BUFFER_BYTES);
+      String line;
+      long number = 0;
+      while ((line = reader.next()) != null) {
+        number++;
+        if (line.isEmpty()) {
+          continue;
+        }
+        byte[] hash =
+            plaintext ? sha1.digest(line.getBytes(StandardCharsets.UTF_8)) : parseHex(line);
+        if (hash == null) {
+          throw new IOException("Line " + number + " of " + input + " is not a SHA-1 hash");
+        }
+        run[size++] = new Hash(hash);
+        hashes++;
+        if (size == runEntries) {
+          runs.add(writeRun(run, size, directory));
+          size = 0;
+        }
+      }
+    }
+    if (size > 0 || runs.isEmpty()) {
+      runs.add(writeRun(run, size, directory));
+    }
+    return hashes;
+  }
+
+  private static Path writeRun(Hash[] run, int size, Path directory) throws IOException {
+    Arrays.sort(run, 0, size);
+    Path path = Files.createTempFile(directory, "corpus-run", ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_BYTES))) {
+      Hash previous = null;
+      for (int i = 0; i < size; i++) {
+        if (previous == null || run[i].compareTo(previous) != 0) {
+          run[i].write(out);
+          previous = run[i];
+        }
+        run[i] = null;
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Merges the sorted runs into an index at {@code output}, dropping duplicates across runs, and
+   * returns how many hashes it holds. The Bloom filter is sized for {@code hashes}, the count
+   * before duplicates were dropped.
+   */
+  private static long merge(List<Path> runs, long hashes, Path output) throws IOException {
+    long bloomBits =
+        Math.max(
+            Long.SIZE, (hashes * BLOOM_BITS_PER_ENTRY + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+    long[] bloom = new long[Math.toIntExact(bloomBits / Long.SIZE)];
+    PriorityQueue<RunCursor> cursors = new PriorityQueue<>();
+    long entries = 0;
+    try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+      channel.position(CorpusIndex.HEADER_BYTES);
+      DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES));
+      try {
+        for (Path run : runs) {
+          RunCursor cursor = new RunCursor(run);
+          if (cursor.advance()) {
+            cursors.add(cursor);
+          } else {
+            cursor.close();
+          }
+        }
+        Hash previous = null;
+        while (!cursors.isEmpty()) {
+          RunCursor cursor = cursors.poll();
+          Hash hash = cursor.current;
+          if (previous == null || hash.compareTo(previous) != 0) {
+            hash.write(out);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+              long bit = CorpusIndex.bloomBit(hash.high, hash.middle, i, bloomBits);
+              bloom[(int) (bit >>> 6)] |= 1L << (bit & 63);
+            }
+            previous = hash;
+            entries++;
+          }
+          if (cursor.advance()) {
+            cursors.add(cursor);
+          } else {
+            cursor.close();
+          }
+        }
+        for (long word : bloom) {
+          out.writeLong(word);
+        }
+        out.flush();
+      } finally {
+        for (RunCursor cursor : cursors) {
+          cursor.close();
+        }
+      }
+      ByteBuffer header = ByteBuffer.allocate(CorpusIndex.HEADER_BYTES);
+      header.put(CorpusIndex.MAGIC);
+      header.putLong(entries);
+      header.putLong(CorpusIndex.HEADER_BYTES + entries * CorpusIndex.HASH_BYTES);
+      header.putLong(bloomBits);
+      header.putInt(BLOOM_HASHES);
+      header.clear();
+      channel.write(header, 0);
+      channel.force(true);
+    }
+    return entries;
+  }
+
+  /** Returns the 20 bytes of a SHA-1 hex digest, ignoring a {@code :count} suffix, or null. */
+  static byte[] parseHex(String line) {
+    int end = line.indexOf(':');
+    String hex = (end < 0 ? line : line.substring(0, end)).trim();
+    if (hex.length() != CorpusIndex.HASH_BYTES * 2) {
+      return null;
+    }
+    byte[] hash = new byte[CorpusIndex.HASH_BYTES];
+    for (int i = 0; i < hash.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      hash[i] = (byte) (high << 4 | low);
+    }
+    return hash;
+  }
+
+  /** A SHA-1 hash, ordered as unsigned bytes, which is how the index is sorted. */
+  private static final class Hash implements Comparable<Hash> {
+
+    private final long high;
+
+    private final long middle;
+
+    private final int low;
+
+    Hash(byte[] hash) {
+      ByteBuffer buffer = ByteBuffer.wrap(hash);
+      this.high = buffer.getLong();
+      this.middle = buffer.getLong();
+      this.low = buffer.getInt();
+    }
+
+    Hash(DataInputStream in) throws IOException {
+      this.high = in.readLong();
+      this.middle = in.readLong();
+      this.low = in.readInt();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeLong(high);
+      out.writeLong(middle);
+      out.writeInt(low);
+    }
+
+    @Override
+    public int compareTo(Hash other) {
+      int order = Long.compareUnsigned(high, other.high);
+      if (order == 0) {
+        order = Long.compareUnsigned(middle, other.middle);
+      }
+      return order != 0 ? order : Integer.compareUnsigned(low, other.low);
+    }
+  }
+
+  /** Reads a sorted run back one hash at a time. */
+  private static final class RunCursor implements Comparable<RunCursor> {
+
+    private final DataInputStream in;
+
+    private Hash current;
+
+    RunCursor(Path run) throws IOException {
+      InputStream stream = Files.newInputStream(run);
+      this.in = new DataInputStream(new BufferedInputStream(stream, BUFFER_BYTES));
+    }
+
+    boolean advance() throws IOException {
+      try {
+        current = new Hash(in);
+        return true;
+      } catch (EOFException e) {
+        return false;
+      }
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public int compareTo(RunCursor other) {
+      return current.compareTo(other.current);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.stereotype.Component;
+
+/**
+ * Derives stable in-memory keys from credentials with HMAC-SHA256 under a key that is generated at
+ * startup and never leaves the process. Digests can be compared and used as map keys, but cannot be
+ * reversed or matched against a precomputed table, and are meaningless after a restart.
+ */
+@Component
+public class CredentialDigest {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private static final int KEY_LENGTH = 32;
+
+  private final SecretKeySpec key;
+
+  private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+  public CredentialDigest() {
+    byte[] keyBytes = new byte[KEY_LENGTH];
+    new SecureRandom().nextBytes(keyBytes);
+    this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+  }
+
+  /** Returns the digest of a username and password pair. */
+  public ByteString digest(String username, String password) {
+    Mac mac = macs.get();
+    update(mac, username);
+    update(mac, password);
+    return ByteString.copyFrom(mac.doFinal());
+  }
+
+  /** Returns a 64-bit key for a username alone, which other processes cannot predict. */
+  public long usernameKey(String username) {
+    Mac mac = macs.get();
+    update(mac, username);
+    return ByteBuffer.wrap(mac.doFinal()).getLong();
+  }
+
+  /** Length-prefixes each field so that ("ab", "c") and ("a", "bc") digest differently. */
+  private static void update(Mac mac, String field) {
+    byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+    mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, bytes.length));
+    mac.update(bytes);
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to initialize " + ALGORITHM, e);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import io.grpc.Deadline;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Derives and enforces the deadline of a request. A {@code null} deadline means the request has
+ * none beyond the reCAPTCHA client's own RPC timeout.
+ */
+public final class Deadlines {
+
+  private Deadlines() {}
+
+  /**
+   * Returns the deadline for a request that asked for {@code timeoutMillis}, or for {@code
+   * pld.deadline.defaultMillis} when it did not ask. Without either the request has no deadline,
+   * and null is returned. Requested timeouts are capped at {@code pld.deadline.maxMillis}.
+   */
+  public static Deadline fromTimeout(Long timeoutMillis, PldEnvironment env) {
+    if (timeoutMillis == null && env.getDefaultTimeoutMillis() <= 0) {
+      return null;
+    }
+    long millis = timeoutMillis == null ? env.getDefaultTimeoutMillis() : timeoutMillis;
+    return Deadline.after(
+        Math.max(1, Math.min(millis, env.getMaxTimeoutMillis())), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the deadline of one entry of a batch bounded by {@code batchDeadline}: the earlier of
+   * that and the entry's own deadline from now, when it has one.
+   */
+  public static Deadline forEntry(Long timeoutMillis, Deadline batchDeadline, PldEnvironment env) {
+    Deadline entryDeadline = fromTimeout(timeoutMillis, env);
+    return entryDeadline == null ? batchDeadline : entryDeadline.minimum(batchDeadline);
+  }
+
+  /** Returns the time left before {@code deadline}, or zero if it has passed. */
+  public static Duration remaining(Deadline deadline) {
+    return Duration.ofNanos(Math.max(0, deadline.timeRemaining(TimeUnit.NANOSECONDS)));
+  }
+
+  /**
+   * Fails {@code future} with {@link #exceeded()} if it is still pending when {@code deadline}
+   * passes, and returns it. Work queued with {@link CompletableFuture#supplyAsync} for a future
+   * that is already done is skipped when a worker picks it up, so this also drops hashing that has
+   * not started in time. The failure, and whatever depends on it, runs on {@code executor}. The
+   * timer is cancelled once {@code future} completes.
+   */
+  public static <T> CompletableFuture<T> bound(
+      CompletableFuture<T> future, Deadline deadline, Executor executor) {
+    if (deadline == null || future.isDone()) {
+      return future;
+    }
+    Timers.runUnlessDone(
+        future,
+        deadline.timeRemaining(TimeUnit.NANOSECONDS),
+        executor,
+        () -> future.completeExceptionally(exceeded()));
+    return future;
+  }
+
+  /** Returns the error a request fails with once its deadline has passed. */
+  public static ResponseStatusException exceeded() {
+    return new ResponseStatusException(
+        HttpStatus.GATEWAY_TIMEOUT, Messages.DEADLINE_EXCEEDED_MESSAGE);
+  }
+}
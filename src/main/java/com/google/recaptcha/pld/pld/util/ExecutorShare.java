@@ -0,0 +1,109 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tenant's share of a pool shared by every tenant: at most {@code permits} of its tasks are
+ * queued or running at once, and more are rejected as if the pool itself were full. This keeps a
+ * tenant's burst from filling the pool's queue and shedding the other tenants' requests.
+ *
+ * <p>The share does not own the pool: shutting it down leaves the pool running.
+ */
+public class ExecutorShare extends AbstractExecutorService {
+
+  private final ExecutorService pool;
+
+  private final int permits;
+
+  private final Semaphore available;
+
+  public ExecutorShare(ExecutorService pool, int permits, String tenant, MeterRegistry registry) {
+    this.pool = pool;
+    this.permits = permits;
+    this.available = new Semaphore(permits);
+
+    Gauge.builder("pld.executor.share.inflight", this, ExecutorShare::inFlight)
+        .description("Tasks of the tenant queued or running on the password check pool")
+        .tag(PldMetrics.TENANT_TAG, tenant)
+        .register(registry);
+    Gauge.builder("pld.executor.share.permits", this, share -> share.permits)
+        .description("Most tasks of the tenant the password check pool takes at once")
+        .tag(PldMetrics.TENANT_TAG, tenant)
+        .register(registry);
+  }
+
+  /**
+   * Returns how many of a pool's {@code threads} and {@code queueSize} slots a tenant with {@code
+   * share} of them may hold, at least one.
+   */
+  public static int permits(double share, int threads, int queueSize) {
+    return Math.max(1, (int) Math.ceil(share * (threads + queueSize)));
+  }
+
+  public int inFlight() {
+    return permits - available.availablePermits();
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (!available.tryAcquire()) {
+      throw new RejectedExecutionException("Tenant share of the password check pool is full");
+    }
+    try {
+      pool.execute(
+          () -> {
+            try {
+              command.run();
+            } finally {
+              available.release();
+            }
+          });
+    } catch (RuntimeException e) {
+      available.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public void shutdown() {}
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return List.of();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return pool.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return pool.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return pool.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Reads the elements of a JSON array one at a time as they are needed, so a large array is never
+ * held in memory at once. Malformed input fails {@link #hasNext()} with a {@link JacksonException}.
+ * Not thread safe.
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, AutoCloseable {
+
+  private final ObjectReader reader;
+
+  private final JsonParser parser;
+
+  private Boolean hasNext;
+
+  private JsonArrayIterator(JsonMapper mapper, JsonParser parser, Class<T> type) {
+    // The rest of the array follows each element, so it is not a trailing token.
+    this.reader = mapper.readerFor(type).without(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    this.parser = parser;
+  }
+
+  /**
+   * Starts reading the array in {@code in}, throwing {@link IllegalArgumentException} if it does
+   * not start with one.
+   */
+  public static <T> JsonArrayIterator<T> open(JsonMapper mapper, InputStream in, Class<T> type) {
+    JsonParser parser = mapper.createParser(in);
+    try {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IllegalArgumentException("Expected a JSON array");
+      }
+    } catch (JacksonException | IllegalArgumentException e) {
+      parser.close();
+      throw e instanceof IllegalArgumentException
+          ? (IllegalArgumentException) e
+          : new IllegalArgumentException("Expected a JSON array", e);
+    }
+    return new JsonArrayIterator<>(mapper, parser, type);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (hasNext == null) {
+      JsonToken token = parser.nextToken();
+      if (token == null) {
+        throw new IllegalArgumentException("JSON array is not closed");
+      }
+      hasNext = token != JsonToken.END_ARRAY;
+    }
+    return hasNext;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    hasNext = null;
+    return reader.readValue(parser);
+  }
+
+  @Override
+  public void close() {
+    parser.close();
+  }
+}
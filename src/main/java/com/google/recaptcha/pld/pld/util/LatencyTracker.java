@@ -0,0 +1,69 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the most recent latencies in a ring and estimates a percentile over them. The estimate is
+ * recomputed every eighth of a ring's worth of samples, so reading it costs a volatile read and
+ * recording a sample is usually a single array write.
+ */
+public class LatencyTracker {
+
+  private final AtomicLongArray samples;
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final double percentile;
+
+  private final int recomputeEvery;
+
+  private volatile long estimateNanos = -1;
+
+  /**
+   * @param windowSize the number of recent samples the estimate is taken over
+   * @param percentile the percentile to estimate, between 0 and 1
+   */
+  public LatencyTracker(int windowSize, double percentile) {
+    this.samples = new AtomicLongArray(windowSize);
+    this.percentile = percentile;
+    this.recomputeEvery = Math.max(1, windowSize / 8);
+  }
+
+  public void record(long latencyNanos) {
+    long n = count.getAndIncrement();
+    samples.set((int) (n % samples.length()), latencyNanos);
+    if ((n + 1) % recomputeEvery == 0) {
+      recompute(Math.min(n + 1, samples.length()));
+    }
+  }
+
+  /** Returns the estimated percentile in nanoseconds, or -1 until a full window is recorded. */
+  public long percentileNanos() {
+    return count.get() >= samples.length() ? estimateNanos : -1;
+  }
+
+  private void recompute(long filled) {
+    long[] sorted = new long[(int) filled];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = samples.get(i);
+    }
+    Arrays.sort(sorted);
+    int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+    estimateNanos = sorted[Math.max(0, index)];
+  }
+}
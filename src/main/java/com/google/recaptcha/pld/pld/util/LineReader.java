@@ -0,0 +1,105 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads UTF-8 lines from a file channel one buffer at a time, so a file of any size is read in
+ * constant memory. It keeps the byte offset just past the last line returned, from which a later
+ * reader can resume.
+ */
+public class LineReader {
+
+  /** Longest line accepted; longer ones fail the read rather than grow the buffer without bound. */
+  static final int MAX_LINE_BYTES = 1 << 20;
+
+  private final FileChannel channel;
+
+  private final ByteBuffer buffer;
+
+  private byte[] line = new byte[256];
+
+  private long position;
+
+  /** Reads {@code channel} from byte {@code position} on, {@code bufferSize} bytes at a time. */
+  public LineReader(FileChannel channel, long position, int bufferSize) throws IOException {
+    this.channel = channel;
+    this.position = position;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+    this.buffer.flip();
+    channel.position(position);
+  }
+
+  /**
+   * Returns the next line without its {@code \n} or {@code \r\n} terminator, or null at the end of
+   * the file. A last line without a terminator is returned too.
+   */
+  public String next() throws IOException {
+    int length = 0;
+    while (true) {
+      if (!buffer.hasRemaining()) {
+        buffer.clear();
+        int read = channel.read(buffer);
+        buffer.flip();
+        if (read < 0) {
+          return length == 0 ? null : decode(length);
+        }
+        continue;
+      }
+      byte[] bytes = buffer.array();
+      int start = buffer.position();
+      int end = buffer.limit();
+      int newline = start;
+      while (newline < end && bytes[newline] != '\n') {
+        newline++;
+      }
+      length = append(bytes, start, newline - start, length);
+      if (newline < end) {
+        buffer.position(newline + 1);
+        position += newline + 1 - start;
+        return decode(length);
+      }
+      buffer.position(end);
+      position += end - start;
+    }
+  }
+
+  /** Returns the offset just past the last line returned by {@link #next()}. */
+  public long position() {
+    return position;
+  }
+
+  private int append(byte[] bytes, int offset, int count, int length) throws IOException {
+    if (length + count > MAX_LINE_BYTES) {
+      throw new IOException("Line at offset " + position + " is longer than " + MAX_LINE_BYTES);
+    }
+    if (length + count > line.length) {
+      line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+    }
+    System.arraycopy(bytes, offset, line, length, count);
+    return length + count;
+  }
+
+  private String decode(int length) {
+    if (length > 0 && line[length - 1] == '\r') {
+      length--;
+    }
+    return new String(line, 0, length, StandardCharsets.UTF_8);
+  }
+}
@@ -14,19 +14,36 @@
 package com.google.recaptcha.pld.pld.util;
 
 import com.google.recaptcha.pld.pld.model.Messages;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
+/**
+ * Rejects requests from other hosts unless HTTPS is enabled, on both the HTTP and the gRPC server.
+ * {@link LocalhostWebFilter} applies the same rule on the reactive stack.
+ */
 @Component
-public class LocalhostPolicy implements HandlerInterceptor {
+@GrpcGlobalServerInterceptor
+public class LocalhostPolicy implements HandlerInterceptor, ServerInterceptor {
 
   @Autowired private PldEnvironment env;
 
   private boolean isLocalhostOrigin(HttpServletRequest request) {
-    String remoteAddr = request.getRemoteAddr();
+    return isLocalhostAddress(request.getRemoteAddr());
+  }
+
+  static boolean isLocalhostAddress(String remoteAddr) {
     return remoteAddr.equals("127.0.0.1")
         || remoteAddr.equals("0:0:0:0:0:0:0:1")
         || remoteAddr.equals("::1")
@@ -45,4 +62,27 @@ public class LocalhostPolicy implements HandlerInterceptor {
     response.sendError(HttpServletResponse.SC_FORBIDDEN, Messages.LOCALHOST_OR_HTTPS_ONLY_MESSAGE);
     return false;
   }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+      ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    if (env.shouldAcceptRemoteConnections() || isLocalhostOrigin(call)) {
+      return next.startCall(call, headers);
+    }
+    call.close(
+        Status.PERMISSION_DENIED.withDescription(Messages.LOCALHOST_OR_HTTPS_ONLY_MESSAGE),
+        new Metadata());
+    return new ServerCall.Listener<>() {};
+  }
+
+  /** In-process calls, which have no socket address, count as local. */
+  private boolean isLocalhostOrigin(ServerCall<?, ?> call) {
+    SocketAddress remoteAddr = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+    if (!(remoteAddr instanceof InetSocketAddress)) {
+      return true;
+    }
+    InetSocketAddress address = (InetSocketAddress) remoteAddr;
+    return address.getAddress() != null
+        && isLocalhostAddress(address.getAddress().getHostAddress());
+  }
 }
@@ -0,0 +1,70 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import java.net.InetSocketAddress;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link LocalhostPolicy} for the reactive stack. A web filter sees every request, so actuator
+ * endpoints are let through explicitly, for health probes from the cluster to reach them.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class LocalhostWebFilter implements WebFilter {
+
+  private final PldEnvironment env;
+
+  private final String managementBasePath;
+
+  public LocalhostWebFilter(
+      PldEnvironment env,
+      @Value("${management.endpoints.web.base-path:/actuator}") String managementBasePath) {
+    this.env = env;
+    this.managementBasePath = managementBasePath;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    if (env.shouldAcceptRemoteConnections()
+        || isLocalhostOrigin(exchange)
+        || isManagementRequest(exchange)) {
+      return chain.filter(exchange);
+    }
+    return Mono.error(
+        new ResponseStatusException(
+            HttpStatus.FORBIDDEN, Messages.LOCALHOST_OR_HTTPS_ONLY_MESSAGE));
+  }
+
+  private boolean isLocalhostOrigin(ServerWebExchange exchange) {
+    InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+    return remoteAddress != null
+        && remoteAddress.getAddress() != null
+        && LocalhostPolicy.isLocalhostAddress(remoteAddress.getAddress().getHostAddress());
+  }
+
+  private boolean isManagementRequest(ServerWebExchange exchange) {
+    String path = exchange.getRequest().getPath().pathWithinApplication().value();
+    return path.equals(managementBasePath) || path.startsWith(managementBasePath + "/");
+  }
+}
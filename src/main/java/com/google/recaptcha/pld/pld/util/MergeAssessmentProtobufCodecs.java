@@ -0,0 +1,120 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+/**
+ * The reactive stack's counterpart of {@link MergeAssessmentProtobufConverter}: reads {@link
+ * MergeAssessmentRequest}s from and writes {@link MergeAssessmentResponse}s to {@code
+ * application/x-protobuf} bodies.
+ */
+public final class MergeAssessmentProtobufCodecs {
+
+  private MergeAssessmentProtobufCodecs() {}
+
+  public static class Decoder extends AbstractDataBufferDecoder<Object> {
+
+    private final MeterRegistry registry;
+
+    public Decoder(MeterRegistry registry) {
+      super(ProtobufHttpMessageConverter.PROTOBUF);
+      this.registry = registry;
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+      return elementType.toClass() == MergeAssessmentRequest.class
+          && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public Object decode(
+        DataBuffer buffer,
+        ResolvableType targetType,
+        MimeType mimeType,
+        Map<String, Object> hints) {
+      Timer.Sample sample = Timer.start(registry);
+      try {
+        MergeAssessmentRequest request =
+            PldProtos.fromProto(
+                com.google.recaptcha.pld.v1.MergeAssessmentRequest.parseFrom(
+                    buffer.asInputStream()));
+        sample.stop(PldMetrics.stageTimer(registry, PldMetrics.DESERIALIZE_STAGE, null));
+        return request;
+      } catch (IOException e) {
+        sample.stop(PldMetrics.stageTimer(registry, PldMetrics.DESERIALIZE_STAGE, e));
+        throw new DecodingException("Failed to read MergeAssessmentRequest: " + e.getMessage(), e);
+      } finally {
+        DataBufferUtils.release(buffer);
+      }
+    }
+  }
+
+  public static class Encoder extends AbstractEncoder<Object> {
+
+    private final MeterRegistry registry;
+
+    public Encoder(MeterRegistry registry) {
+      super(ProtobufHttpMessageConverter.PROTOBUF);
+      this.registry = registry;
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+      return elementType.toClass() == MergeAssessmentResponse.class
+          && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(
+        Publisher<?> inputStream,
+        DataBufferFactory bufferFactory,
+        ResolvableType elementType,
+        MimeType mimeType,
+        Map<String, Object> hints) {
+      return Flux.from(inputStream)
+          .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(
+        Object value,
+        DataBufferFactory bufferFactory,
+        ResolvableType valueType,
+        MimeType mimeType,
+        Map<String, Object> hints) {
+      Timer.Sample sample = Timer.start(registry);
+      byte[] bytes = PldProtos.toProto((MergeAssessmentResponse) value).toByteArray();
+      sample.stop(PldMetrics.stageTimer(registry, PldMetrics.SERIALIZE_STAGE, null));
+      return bufferFactory.wrap(bytes);
+    }
+  }
+}
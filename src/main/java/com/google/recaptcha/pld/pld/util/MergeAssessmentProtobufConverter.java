@@ -0,0 +1,86 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptchaenterprise.v1.Assessment;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+
+/**
+ * Reads {@link MergeAssessmentRequest}s from and writes {@link MergeAssessmentResponse}s to {@code
+ * application/x-protobuf} bodies, in the messages of {@code src/main/proto/pld.proto}, so callers
+ * that already hold the {@link Assessment} as a protobuf skip the JSON mapping on both sides.
+ */
+public class MergeAssessmentProtobufConverter extends AbstractHttpMessageConverter<Object> {
+
+  private final MeterRegistry registry;
+
+  public MergeAssessmentProtobufConverter(MeterRegistry registry) {
+    super(ProtobufHttpMessageConverter.PROTOBUF);
+    this.registry = registry;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return clazz == MergeAssessmentRequest.class || clazz == MergeAssessmentResponse.class;
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return clazz == MergeAssessmentRequest.class && canRead(mediaType);
+  }
+
+  @Override
+  public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+    return clazz == MergeAssessmentResponse.class && canWrite(mediaType);
+  }
+
+  @Override
+  protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+    Timer.Sample sample = Timer.start(registry);
+    try {
+      MergeAssessmentRequest request =
+          PldProtos.fromProto(
+              com.google.recaptcha.pld.v1.MergeAssessmentRequest.parseFrom(inputMessage.getBody()));
+      sample.stop(PldMetrics.stageTimer(registry, PldMetrics.DESERIALIZE_STAGE, null));
+      return request;
+    } catch (IOException e) {
+      sample.stop(PldMetrics.stageTimer(registry, PldMetrics.DESERIALIZE_STAGE, e));
+      throw new HttpMessageNotReadableException(
+          "Failed to read MergeAssessmentRequest: " + e.getMessage(), e, inputMessage);
+    }
+  }
+
+  @Override
+  protected void writeInternal(Object response, HttpOutputMessage outputMessage)
+      throws IOException {
+    Timer.Sample sample = Timer.start(registry);
+    PldProtos.toProto((MergeAssessmentResponse) response).writeTo(outputMessage.getBody());
+    sample.stop(PldMetrics.stageTimer(registry, PldMetrics.SERIALIZE_STAGE, null));
+  }
+
+  @Override
+  protected Long getContentLength(Object response, MediaType contentType) {
+    return (long) PldProtos.toProto((MergeAssessmentResponse) response).getSerializedSize();
+  }
+}
@@ -13,7 +13,10 @@
 // limitations under the License.
 package com.google.recaptcha.pld.pld.util;
 
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -25,19 +28,316 @@ public class PldEnvironment {
   @Value("${GOOGLE_CLOUD_API_KEY:#{null}}")
   private String apiKey;
 
-  @Value("${PASSWORD_CHECK_THREAD_POOL:10}")
+  @Value("${PASSWORD_CHECK_THREAD_POOL:0}")
   private int passwordCheckThreadPoolSize;
 
+  @Value("${PASSWORD_CHECK_QUEUE_SIZE:200}")
+  private int passwordCheckQueueSize;
+
+  @Value("${RECAPTCHA_COMPLETION_THREAD_POOL:4}")
+  private int recaptchaCompletionThreadPoolSize;
+
+  @Value("${pld.admission.limit:0}")
+  private int admissionLimit;
+
+  @Value("${pld.admission.adaptive:false}")
+  private boolean admissionAdaptive;
+
+  @Value("${pld.admission.minLimit:4}")
+  private int admissionMinLimit;
+
+  @Value("${pld.admission.targetLatencyMillis:1000}")
+  private long admissionTargetLatencyMillis;
+
+  @Value("${pld.admission.retryAfterSeconds:1}")
+  private long admissionRetryAfterSeconds;
+
+  @Value("${pld.deadline.defaultMillis:0}")
+  private long defaultTimeoutMillis;
+
+  @Value("${pld.deadline.maxMillis:30000}")
+  private long maxTimeoutMillis;
+
+  @Value("${pld.recaptcha.timeoutMillis:10000}")
+  private long recaptchaTimeoutMillis;
+
+  @Value("${pld.recaptcha.maxAttempts:1}")
+  private int recaptchaMaxAttempts;
+
+  @Value("${pld.hedge.enabled:false}")
+  private boolean hedgeEnabled;
+
+  @Value("${pld.hedge.percentile:0.95}")
+  private double hedgePercentile;
+
+  @Value("${pld.hedge.minDelayMillis:10}")
+  private long hedgeMinDelayMillis;
+
+  @Value("${pld.hedge.budgetRatio:0.05}")
+  private double hedgeBudgetRatio;
+
+  @Value("${pld.hedge.budgetMaxTokens:20}")
+  private int hedgeBudgetMaxTokens;
+
+  @Value("${pld.grpc.minChannels:0}")
+  private int grpcMinChannels;
+
+  @Value("${pld.grpc.maxChannels:16}")
+  private int grpcMaxChannels;
+
+  @Value("${pld.grpc.maxRpcsPerChannel:80}")
+  private int grpcMaxRpcsPerChannel;
+
+  @Value("${pld.grpc.keepAliveTimeSeconds:60}")
+  private long grpcKeepAliveTimeSeconds;
+
+  @Value("${pld.grpc.keepAliveTimeoutSeconds:20}")
+  private long grpcKeepAliveTimeoutSeconds;
+
+  @Value("${pld.grpc.keepAliveWithoutCalls:false}")
+  private boolean grpcKeepAliveWithoutCalls;
+
+  @Value("${pld.grpc.warmup:true}")
+  private boolean grpcWarmup;
+
+  @Value("${pld.grpc.warmupTimeoutMillis:5000}")
+  private long grpcWarmupTimeoutMillis;
+
+  @Value("${pld.grpc.server.streamWindow:16}")
+  private int grpcServerStreamWindow;
+
+  @Value("${pld.warmup.rounds:20}")
+  private int warmupRounds;
+
+  @Value("${pld.batch.maxConcurrency:16}")
+  private int batchMaxConcurrency;
+
+  @Value("${pld.batch.timeoutMillis:600000}")
+  private long batchTimeoutMillis;
+
+  @Value("${pld.batch.maxBatches:8}")
+  private int batchMaxBatches;
+
+  @Value("${pld.cache.enabled:false}")
+  private boolean cacheEnabled;
+
+  @Value("${pld.cache.maximumSize:100000}")
+  private long cacheMaximumSize;
+
+  @Value("${pld.cache.ttlSeconds:3600}")
+  private long cacheTtlSeconds;
+
   @Value("${pld.recaptchacontext.runinit:true}")
   private boolean recaptchaContextRunInit;
 
   @Value("${pld.useHttps:false}")
   private boolean useHttps;
 
+  @Value("${pld.backend:google}")
+  private String backend;
+
+  @Value("${pld.stub.leakedCredentials:leakedusername:leakedpassword}")
+  private List<String> stubLeakedCredentials;
+
+  @Value("${pld.stub.leakedCredentialsFile:}")
+  private String stubLeakedCredentialsFile;
+
+  @Value("${pld.stub.latency.medianMillis:0}")
+  private long stubLatencyMedianMillis;
+
+  @Value("${pld.stub.latency.p99Millis:0}")
+  private long stubLatencyP99Millis;
+
+  @Value("${pld.stub.errorRate:0}")
+  private double stubErrorRate;
+
+  @Value("${pld.stub.errorCodes:UNAVAILABLE}")
+  private List<String> stubErrorCodes;
+
+  @Value("${pld.tenants:}")
+  private List<String> tenants;
+
+  @Value("${pld.ratelimit.slots:65536}")
+  private int rateLimitSlots;
+
+  @Value("${pld.ratelimit.source.key:address}")
+  private String rateLimitSourceKey;
+
+  @Value("${pld.ratelimit.source.trustedProxies:1}")
+  private int rateLimitTrustedProxies;
+
+  @Value("${pld.scan.input:}")
+  private String scanInput;
+
+  @Value("${pld.scan.output:}")
+  private String scanOutput;
+
+  @Value("${pld.scan.checkpoint:}")
+  private String scanCheckpoint;
+
+  @Value("${pld.scan.tenant:default}")
+  private String scanTenant;
+
+  @Value("${pld.scan.concurrency:64}")
+  private int scanConcurrency;
+
+  @Value("${pld.scan.ratePerSecond:0}")
+  private double scanRatePerSecond;
+
+  @Value("${pld.scan.checkpointSeconds:10}")
+  private long scanCheckpointSeconds;
+
+  @Value("${pld.scan.maxAttempts:8}")
+  private int scanMaxAttempts;
+
+  @Value("${pld.scan.retryBackoffMillis:1000}")
+  private long scanRetryBackoffMillis;
+
+  @Value("${pld.corpus.path:}")
+  private String corpusPath;
+
+  @Value("${pld.corpus.reloadSeconds:60}")
+  private long corpusReloadSeconds;
+
+  @Autowired private Environment environment;
+
   public boolean shouldAcceptRemoteConnections() {
     return useHttps;
   }
 
+  /** Whether reCAPTCHA calls go to the in-process stub backend instead of the real API. */
+  public boolean useStubBackend() {
+    return "stub".equals(backend);
+  }
+
+  public List<String> getStubLeakedCredentials() {
+    return stubLeakedCredentials;
+  }
+
+  /**
+   * Returns {@code pld.stub.leakedCredentialsFile}, a file of {@code username:password} lines the
+   * stub also reports as leaked, or an empty string when there is none.
+   */
+  public String getStubLeakedCredentialsFile() {
+    return stubLeakedCredentialsFile;
+  }
+
+  public long getStubLatencyMedianMillis() {
+    return stubLatencyMedianMillis;
+  }
+
+  public long getStubLatencyP99Millis() {
+    return stubLatencyP99Millis;
+  }
+
+  public double getStubErrorRate() {
+    return stubErrorRate;
+  }
+
+  public List<String> getStubErrorCodes() {
+    return stubErrorCodes;
+  }
+
+  /**
+   * Returns the tenants served besides the default one, each configured by {@code pld.tenant.*}.
+   */
+  public List<String> getTenants() {
+    return tenants;
+  }
+
+  /** Returns {@code pld.tenant.<tenant>.<key>}, or {@code defaultValue} when it is not set. */
+  public <T> T getTenantProperty(String tenant, String key, Class<T> type, T defaultValue) {
+    return environment.getProperty("pld.tenant." + tenant + "." + key, type, defaultValue);
+  }
+
+  /**
+   * Returns the fraction of the password check pool {@code tenant} may hold. Unless set, each
+   * tenant, the default one included, gets an equal share.
+   */
+  public double getTenantCpuShare(String tenant) {
+    return getTenantProperty(tenant, "cpuShare", Double.class, 1.0 / (tenants.size() + 1));
+  }
+
+  /**
+   * Returns {@code pld.ratelimit.<limit>.perSecond}, the average rate each key of {@code limit} is
+   * allowed. 0, the default, disables the limit.
+   */
+  public double getRateLimitPerSecond(String limit) {
+    return environment.getProperty("pld.ratelimit." + limit + ".perSecond", Double.class, 0.0);
+  }
+
+  /** Returns {@code pld.ratelimit.<limit>.burst}, how many requests a key may make at once. */
+  public int getRateLimitBurst(String limit) {
+    return environment.getProperty("pld.ratelimit." + limit + ".burst", Integer.class, 10);
+  }
+
+  public int getRateLimitSlots() {
+    return rateLimitSlots;
+  }
+
+  /**
+   * Returns {@code pld.ratelimit.source.key}: {@code address}, the default, keys the source limit
+   * by the connection's peer address, and {@code x-forwarded-for} by the address the outermost
+   * trusted proxy saw.
+   */
+  public String getRateLimitSourceKey() {
+    return rateLimitSourceKey;
+  }
+
+  /** Returns how many proxies in front of the service append to {@code X-Forwarded-For}. */
+  public int getRateLimitTrustedProxies() {
+    return rateLimitTrustedProxies;
+  }
+
+  public String getScanInput() {
+    return scanInput;
+  }
+
+  /** Returns {@code pld.scan.output}, by default the input path with {@code .verdicts.ndjson}. */
+  public String getScanOutput() {
+    return scanOutput.isEmpty() ? scanInput + ".verdicts.ndjson" : scanOutput;
+  }
+
+  /** Returns {@code pld.scan.checkpoint}, by default the output path with {@code .checkpoint}. */
+  public String getScanCheckpoint() {
+    return scanCheckpoint.isEmpty() ? getScanOutput() + ".checkpoint" : scanCheckpoint;
+  }
+
+  public String getScanTenant() {
+    return scanTenant;
+  }
+
+  public int getScanConcurrency() {
+    return scanConcurrency;
+  }
+
+  public double getScanRatePerSecond() {
+    return scanRatePerSecond;
+  }
+
+  public long getScanCheckpointSeconds() {
+    return scanCheckpointSeconds;
+  }
+
+  /** Returns how many times a line that fails transiently is checked before the scan stops. */
+  public int getScanMaxAttempts() {
+    return scanMaxAttempts;
+  }
+
+  /** Returns the wait before a line's first retry, doubled for each retry after it. */
+  public long getScanRetryBackoffMillis() {
+    return scanRetryBackoffMillis;
+  }
+
+  /** Returns {@code pld.corpus.path}, or an empty string when there is no local corpus. */
+  public String getCorpusPath() {
+    return corpusPath;
+  }
+
+  public long getCorpusReloadSeconds() {
+    return corpusReloadSeconds;
+  }
+
   public boolean shouldRecaptchaContextRunInit() {
     return recaptchaContextRunInit;
   }
@@ -50,8 +350,148 @@ public class PldEnvironment {
     return apiKey;
   }
 
+  /**
+   * Returns the number of threads that hash and verify credentials. Unless set, it is the number of
+   * processors the JVM reports, which already reflects the container's CPU limit.
+   */
   public int getPasswordCheckThreadPoolSize() {
-    return passwordCheckThreadPoolSize;
+    return passwordCheckThreadPoolSize > 0
+        ? passwordCheckThreadPoolSize
+        : Runtime.getRuntime().availableProcessors();
+  }
+
+  public int getPasswordCheckQueueSize() {
+    return passwordCheckQueueSize;
+  }
+
+  public int getRecaptchaCompletionThreadPoolSize() {
+    return recaptchaCompletionThreadPoolSize;
+  }
+
+  public int getAdmissionLimit() {
+    return admissionLimit;
+  }
+
+  public boolean isAdmissionAdaptive() {
+    return admissionAdaptive;
+  }
+
+  public int getAdmissionMinLimit() {
+    return admissionMinLimit;
+  }
+
+  public long getAdmissionTargetLatencyMillis() {
+    return admissionTargetLatencyMillis;
+  }
+
+  public long getAdmissionRetryAfterSeconds() {
+    return admissionRetryAfterSeconds;
+  }
+
+  public long getDefaultTimeoutMillis() {
+    return defaultTimeoutMillis;
+  }
+
+  public long getMaxTimeoutMillis() {
+    return maxTimeoutMillis;
+  }
+
+  public long getRecaptchaTimeoutMillis() {
+    return recaptchaTimeoutMillis;
+  }
+
+  public int getRecaptchaMaxAttempts() {
+    return recaptchaMaxAttempts;
+  }
+
+  public boolean isHedgeEnabled() {
+    return hedgeEnabled;
+  }
+
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public long getHedgeMinDelayMillis() {
+    return hedgeMinDelayMillis;
+  }
+
+  public double getHedgeBudgetRatio() {
+    return hedgeBudgetRatio;
+  }
+
+  public int getHedgeBudgetMaxTokens() {
+    return hedgeBudgetMaxTokens;
+  }
+
+  /**
+   * Returns the number of channels to the reCAPTCHA API kept open at all times: {@code
+   * pld.grpc.minChannels}, or one per 8 available CPUs when it is not set.
+   */
+  public int getGrpcMinChannels() {
+    return grpcMinChannels > 0
+        ? grpcMinChannels
+        : Math.max(1, Runtime.getRuntime().availableProcessors() / 8);
+  }
+
+  public int getGrpcMaxChannels() {
+    return grpcMaxChannels;
+  }
+
+  public int getGrpcMaxRpcsPerChannel() {
+    return grpcMaxRpcsPerChannel;
+  }
+
+  public long getGrpcKeepAliveTimeSeconds() {
+    return grpcKeepAliveTimeSeconds;
+  }
+
+  public long getGrpcKeepAliveTimeoutSeconds() {
+    return grpcKeepAliveTimeoutSeconds;
+  }
+
+  public boolean isGrpcKeepAliveWithoutCalls() {
+    return grpcKeepAliveWithoutCalls;
+  }
+
+  public boolean shouldWarmUpGrpc() {
+    return grpcWarmup;
+  }
+
+  public long getGrpcWarmupTimeoutMillis() {
+    return grpcWarmupTimeoutMillis;
+  }
+
+  public int getGrpcServerStreamWindow() {
+    return grpcServerStreamWindow;
+  }
+
+  public int getWarmupRounds() {
+    return warmupRounds;
+  }
+
+  public int getBatchMaxConcurrency() {
+    return batchMaxConcurrency;
+  }
+
+  public long getBatchTimeoutMillis() {
+    return batchTimeoutMillis;
+  }
+
+  public int getBatchMaxBatches() {
+    return batchMaxBatches;
+  }
+
+  public boolean isCacheEnabled() {
+    return cacheEnabled;
+  }
+
+  public long getCacheMaximumSize() {
+    return cacheMaximumSize;
+  }
+
+  public long getCacheTtlSeconds() {
+    return cacheTtlSeconds;
   }
 
   public Boolean defaultCredentialsAreSet() {
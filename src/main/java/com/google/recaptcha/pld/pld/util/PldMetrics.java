@@ -0,0 +1,189 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records how long each stage of a leak check takes and what it returned, so a slow request can be
+ * attributed to local hashing, the reCAPTCHA API or local verification.
+ */
+@Component
+public class PldMetrics {
+
+  public static final String STAGE_TIMER = "pld.stage";
+
+  public static final String HASH_STAGE = "hash";
+
+  public static final String ASSESSMENT_STAGE = "assessment";
+
+  public static final String VERIFY_STAGE = "verify";
+
+  public static final String SERIALIZE_STAGE = "serialize";
+
+  public static final String DESERIALIZE_STAGE = "deserialize";
+
+  public static final String LEAKED_STATUS_COUNTER = "pld.leaked.status";
+
+  public static final String RECAPTCHA_CALLS_COUNTER = "pld.recaptcha.calls";
+
+  public static final String REJECTED_COUNTER = "pld.rejected";
+
+  public static final String RATE_LIMITED_COUNTER = "pld.ratelimited";
+
+  public static final String HEDGES_COUNTER = "pld.hedges";
+
+  public static final String CORPUS_LOOKUPS_COUNTER = "pld.corpus.lookups";
+
+  public static final String HEDGE_SENT = "sent";
+
+  public static final String HEDGE_WON = "won";
+
+  public static final String HEDGE_THROTTLED = "throttled";
+
+  /** Tag naming the tenant a meter belongs to, on every meter this class registers. */
+  public static final String TENANT_TAG = "tenant";
+
+  /** The tenant configured by {@code RECAPTCHA_PROJECT_ID}, which serves unrouted requests. */
+  public static final String DEFAULT_TENANT = "default";
+
+  private final MeterRegistry registry;
+
+  private final String tenant;
+
+  @Autowired
+  public PldMetrics(MeterRegistry registry) {
+    this(registry, DEFAULT_TENANT);
+  }
+
+  public PldMetrics(MeterRegistry registry, String tenant) {
+    this.registry = registry;
+    this.tenant = tenant;
+  }
+
+  public String getTenant() {
+    return tenant;
+  }
+
+  /**
+   * Times {@code stage} from now until the future returned by {@code call} completes, and returns
+   * that same future.
+   */
+  public <T> CompletableFuture<T> timeStage(String stage, Supplier<CompletableFuture<T>> call) {
+    Timer.Sample sample = Timer.start(registry);
+    CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      sample.stop(stageTimer(registry, tenant, stage, e));
+      throw e;
+    }
+    future.whenComplete((value, t) -> sample.stop(stageTimer(registry, tenant, stage, t)));
+    return future;
+  }
+
+  public void countLeakedStatus(PldLeakedStatus status) {
+    Counter.builder(LEAKED_STATUS_COUNTER)
+        .description("Leak check verdicts returned to callers")
+        .tag("status", status.name())
+        .tag(TENANT_TAG, tenant)
+        .register(registry)
+        .increment();
+  }
+
+  /** Counts a finished createAssessment call by its gRPC status code, {@code OK} on success. */
+  public void countRecaptchaCall(String code) {
+    Counter.builder(RECAPTCHA_CALLS_COUNTER)
+        .description("createAssessment calls to the reCAPTCHA API by gRPC status code")
+        .tag("code", code)
+        .tag(TENANT_TAG, tenant)
+        .register(registry)
+        .increment();
+  }
+
+  /**
+   * Counts a request shed with a 503, by {@code reason}: {@code admission} for the admission limit
+   * or {@code queue} for a full hashing queue.
+   */
+  public void countRejection(String reason) {
+    Counter.builder(REJECTED_COUNTER)
+        .description("Requests rejected because the service was overloaded")
+        .tag("reason", reason)
+        .tag(TENANT_TAG, tenant)
+        .register(registry)
+        .increment();
+  }
+
+  /**
+   * Counts a request answered with a 429 by the {@code limit} it was over: {@code source}, {@code
+   * consumer} or {@code username}.
+   */
+  public void countRateLimited(String limit) {
+    Counter.builder(RATE_LIMITED_COUNTER)
+        .description("Requests rejected because they were over a rate limit")
+        .tag("limit", limit)
+        .tag(TENANT_TAG, tenant)
+        .register(registry)
+        .increment();
+  }
+
+  /**
+   * Counts a hedged createAssessment attempt by {@code outcome}: {@code sent}, {@code won} when it
+   * answered before the first attempt, or {@code throttled} when the retry budget held it back.
+   */
+  public void countHedge(String outcome) {
+    Counter.builder(HEDGES_COUNTER)
+        .description("Hedged createAssessment attempts")
+        .tag("outcome", outcome)
+        .tag(TENANT_TAG, tenant)
+        .register(registry)
+        .increment();
+  }
+
+  /** Counts a lookup in the local breach corpus by whether the password was in it. */
+  public void countCorpusLookup(boolean hit) {
+    Counter.builder(CORPUS_LOOKUPS_COUNTER)
+        .description("Passwords looked up in the local breach corpus")
+        .tag("result", hit ? "hit" : "miss")
+        .tag(TENANT_TAG, tenant)
+        .register(registry)
+        .increment();
+  }
+
+  /**
+   * Returns the timer for one outcome of {@code stage} of the default tenant; {@code failure} is
+   * null on success. Body (de)serialization is timed here, before a request is routed.
+   */
+  public static Timer stageTimer(MeterRegistry registry, String stage, Throwable failure) {
+    return stageTimer(registry, DEFAULT_TENANT, stage, failure);
+  }
+
+  private static Timer stageTimer(
+      MeterRegistry registry, String tenant, String stage, Throwable failure) {
+    return Timer.builder(STAGE_TIMER)
+        .description("Time spent in each stage of a leak check")
+        .tag("stage", stage)
+        .tag("outcome", failure == null ? "success" : "error")
+        .tag(TENANT_TAG, tenant)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.v1.CheckResponse;
+import com.google.recaptcha.pld.v1.Credentials;
+
+/**
+ * Maps between the messages generated from {@code src/main/proto/pld.proto} and the model the
+ * pipeline works on. Leaked statuses are mapped by name, and a status this build does not know
+ * reads as {@link PldLeakedStatus#NO_STATUS}. Empty proto3 strings read as null, as if the field
+ * had been left out of a JSON body.
+ */
+public final class PldProtos {
+
+  private PldProtos() {}
+
+  public static PlaintextCredentials fromProto(Credentials credentials) {
+    PlaintextCredentials plaintext =
+        new PlaintextCredentials(
+            emptyToNull(credentials.getUsername()), emptyToNull(credentials.getPassword()));
+    plaintext.setId(emptyToNull(credentials.getId()));
+    return plaintext;
+  }
+
+  public static MergeAssessmentRequest fromProto(
+      com.google.recaptcha.pld.v1.MergeAssessmentRequest request) {
+    return new MergeAssessmentRequest(
+        request.hasCredentials() ? fromProto(request.getCredentials()) : null,
+        request.hasAssessment() ? request.getAssessment() : null);
+  }
+
+  public static com.google.recaptcha.pld.v1.MergeAssessmentResponse toProto(
+      MergeAssessmentResponse response) {
+    com.google.recaptcha.pld.v1.MergeAssessmentResponse.Builder builder =
+        com.google.recaptcha.pld.v1.MergeAssessmentResponse.newBuilder()
+            .setPldLeakedStatus(toProto(response.getPldLeakedStatus()));
+    if (response.getAssessment() != null) {
+      builder.setAssessment(response.getAssessment());
+    }
+    return builder.build();
+  }
+
+  public static CheckResponse toProto(BatchAssessmentResult result) {
+    CheckResponse.Builder builder =
+        CheckResponse.newBuilder().setPldLeakedStatus(toProto(result.getLeakedStatus()));
+    if (result.getId() != null) {
+      builder.setId(result.getId());
+    }
+    if (result.getError() != null) {
+      builder.setError(result.getError());
+    }
+    return builder.build();
+  }
+
+  public static PldLeakedStatus fromProto(com.google.recaptcha.pld.v1.PldLeakedStatus status) {
+    return status == com.google.recaptcha.pld.v1.PldLeakedStatus.UNRECOGNIZED
+        ? PldLeakedStatus.NO_STATUS
+        : PldLeakedStatus.valueOf(status.name());
+  }
+
+  public static com.google.recaptcha.pld.v1.PldLeakedStatus toProto(PldLeakedStatus status) {
+    return status == null
+        ? com.google.recaptcha.pld.v1.PldLeakedStatus.NO_STATUS
+        : com.google.recaptcha.pld.v1.PldLeakedStatus.valueOf(status.name());
+  }
+
+  private static String emptyToNull(String value) {
+    return value.isEmpty() ? null : value;
+  }
+}
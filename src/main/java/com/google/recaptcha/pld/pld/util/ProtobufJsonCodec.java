@@ -0,0 +1,446 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.util.JsonFormat;
+import com.google.protobuf.util.Timestamps;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import tools.jackson.core.Base64Variants;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.io.SerializedString;
+import tools.jackson.core.json.JsonFactory;
+
+/**
+ * Writes protobuf messages to a Jackson {@link JsonGenerator} and reads them from a Jackson {@link
+ * JsonParser} in the protobuf JSON mapping, one token at a time, with no String or tree in between.
+ *
+ * <p>Output matches {@link JsonFormat#printer()} with insignificant whitespace omitted, and input
+ * is read as {@link JsonFormat#parser()} reads it: fields by JSON or proto name, 64-bit integers as
+ * strings or numbers, bytes in either base64 alphabet, enums by name or number, and nulls as unset
+ * fields. Timestamps are mapped here. Other well-known types, of which an Assessment only holds
+ * {@code Any}, still go through JsonFormat for their own subtree.
+ */
+final class ProtobufJsonCodec {
+
+  private static final JsonFormat.Printer PRINTER =
+      JsonFormat.printer().omittingInsignificantWhitespace();
+
+  private static final JsonFormat.Parser PARSER = JsonFormat.parser();
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final BigInteger MAX_UINT64 =
+      BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+  private static final ConcurrentMap<Descriptor, Fields> FIELDS = new ConcurrentHashMap<>();
+
+  private ProtobufJsonCodec() {}
+
+  /** Writes {@code message} as a JSON value. */
+  static void write(MessageOrBuilder message, JsonGenerator generator)
+      throws InvalidProtocolBufferException {
+    if (message instanceof Timestamp) {
+      writeTimestamp((Timestamp) message, generator);
+      return;
+    }
+    Descriptor descriptor = message.getDescriptorForType();
+    if (isWellKnown(descriptor)) {
+      generator.writeRawValue(PRINTER.print(message));
+      return;
+    }
+    Fields fields = fields(descriptor);
+    generator.writeStartObject();
+    for (int i = 0; i < fields.byNumber.length; i++) {
+      FieldDescriptor field = fields.byNumber[i];
+      if (field.isRepeated()) {
+        int count = message.getRepeatedFieldCount(field);
+        if (count == 0) {
+          continue;
+        }
+        generator.writeName(fields.jsonNames[i]);
+        if (field.isMapField()) {
+          writeMap(message, field, count, generator);
+        } else {
+          generator.writeStartArray();
+          for (int j = 0; j < count; j++) {
+            writeValue(field, message.getRepeatedField(field, j), generator);
+          }
+          generator.writeEndArray();
+        }
+      } else if (message.hasField(field)) {
+        generator.writeName(fields.jsonNames[i]);
+        writeValue(field, message.getField(field), generator);
+      }
+    }
+    generator.writeEndObject();
+  }
+
+  /**
+   * Merges the JSON value at the parser's current token into {@code builder}, and leaves the parser
+   * on the value's last token.
+   */
+  static void merge(JsonParser parser, Message.Builder builder)
+      throws InvalidProtocolBufferException {
+    Descriptor descriptor = builder.getDescriptorForType();
+    if (descriptor == Timestamp.getDescriptor()) {
+      builder.mergeFrom(readTimestamp(parser));
+      return;
+    }
+    if (isWellKnown(descriptor)) {
+      StringWriter json = new StringWriter();
+      try (JsonGenerator copy = JSON_FACTORY.createGenerator(ObjectWriteContext.empty(), json)) {
+        copy.copyCurrentStructure(parser);
+      }
+      PARSER.merge(json.toString(), builder);
+      return;
+    }
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw new InvalidProtocolBufferException(
+          "Expect message object for " + descriptor.getFullName() + " but got: " + text(parser));
+    }
+    Fields fields = fields(descriptor);
+    for (String name = parser.nextName(); name != null; name = parser.nextName()) {
+      FieldDescriptor field = fields.byName.get(name);
+      if (field == null) {
+        throw new InvalidProtocolBufferException(
+            "Cannot find field: " + name + " in message " + descriptor.getFullName());
+      }
+      if (parser.nextToken() == JsonToken.VALUE_NULL) {
+        continue;
+      }
+      if (field.isMapField()) {
+        mergeMap(parser, field, builder);
+      } else if (field.isRepeated()) {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+          throw new InvalidProtocolBufferException(
+              "Expect an array for " + field.getFullName() + " but got: " + text(parser));
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          builder.addRepeatedField(field, readValue(parser, field, builder));
+        }
+      } else if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+        merge(parser, builder.getFieldBuilder(field));
+      } else {
+        builder.setField(field, readValue(parser, field, builder));
+      }
+    }
+  }
+
+  private static void writeMap(
+      MessageOrBuilder message, FieldDescriptor field, int count, JsonGenerator generator)
+      throws InvalidProtocolBufferException {
+    FieldDescriptor keyField = field.getMessageType().findFieldByNumber(1);
+    FieldDescriptor valueField = field.getMessageType().findFieldByNumber(2);
+    generator.writeStartObject();
+    for (int i = 0; i < count; i++) {
+      Message entry = (Message) message.getRepeatedField(field, i);
+      Object key = entry.getField(keyField);
+      generator.writeName(
+          switch (keyField.getType()) {
+            case UINT32, FIXED32 -> Integer.toUnsignedString((Integer) key);
+            case UINT64, FIXED64 -> Long.toUnsignedString((Long) key);
+            default -> key.toString();
+          });
+      writeValue(valueField, entry.getField(valueField), generator);
+    }
+    generator.writeEndObject();
+  }
+
+  private static void mergeMap(JsonParser parser, FieldDescriptor field, Message.Builder builder)
+      throws InvalidProtocolBufferException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw new InvalidProtocolBufferException(
+          "Expect a map object for " + field.getFullName() + " but got: " + text(parser));
+    }
+    FieldDescriptor keyField = field.getMessageType().findFieldByNumber(1);
+    FieldDescriptor valueField = field.getMessageType().findFieldByNumber(2);
+    for (String key = parser.nextName(); key != null; key = parser.nextName()) {
+      Message.Builder entry = builder.newBuilderForField(field);
+      entry.setField(keyField, readMapKey(key, keyField));
+      if (parser.nextToken() == JsonToken.VALUE_NULL) {
+        throw new InvalidProtocolBufferException("Map value cannot be null.");
+      }
+      entry.setField(valueField, readValue(parser, valueField, entry));
+      builder.addRepeatedField(field, entry.build());
+    }
+  }
+
+  private static void writeValue(FieldDescriptor field, Object value, JsonGenerator generator)
+      throws InvalidProtocolBufferException {
+    switch (field.getType()) {
+      case INT32, SINT32, SFIXED32 -> generator.writeNumber((int) (Integer) value);
+      case UINT32, FIXED32 -> generator.writeNumber(Integer.toUnsignedLong((Integer) value));
+        // 64-bit integers are strings, as JavaScript cannot hold them in a number.
+      case INT64, SINT64, SFIXED64 -> generator.writeString(Long.toString((Long) value));
+      case UINT64, FIXED64 -> generator.writeString(Long.toUnsignedString((Long) value));
+      case BOOL -> generator.writeBoolean((Boolean) value);
+      case FLOAT -> writeFloatingPoint((Float) value, generator);
+      case DOUBLE -> writeFloatingPoint((Double) value, generator);
+      case STRING -> generator.writeString((String) value);
+      case BYTES -> {
+        ByteString bytes = (ByteString) value;
+        generator.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, bytes.newInput(), bytes.size());
+      }
+      case ENUM -> {
+        EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+        if (enumValue.getType().getFullName().equals("google.protobuf.NullValue")) {
+          generator.writeNull();
+        } else if (enumValue.getIndex() == -1) {
+          // A number this build's descriptor does not know.
+          generator.writeNumber(enumValue.getNumber());
+        } else {
+          generator.writeString(enumValue.getName());
+        }
+      }
+      case MESSAGE, GROUP -> write((Message) value, generator);
+    }
+  }
+
+  private static void writeFloatingPoint(double value, JsonGenerator generator) {
+    if (Double.isNaN(value)) {
+      generator.writeString("NaN");
+    } else if (Double.isInfinite(value)) {
+      generator.writeString(value > 0 ? "Infinity" : "-Infinity");
+    } else {
+      generator.writeNumber(value);
+    }
+  }
+
+  private static void writeFloatingPoint(float value, JsonGenerator generator) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      writeFloatingPoint((double) value, generator);
+    } else {
+      generator.writeNumber(value);
+    }
+  }
+
+  private static void writeTimestamp(Timestamp timestamp, JsonGenerator generator)
+      throws InvalidProtocolBufferException {
+    try {
+      generator.writeString(Timestamps.toString(timestamp));
+    } catch (IllegalArgumentException e) {
+      throw new InvalidProtocolBufferException("Invalid timestamp: " + e.getMessage());
+    }
+  }
+
+  private static Timestamp readTimestamp(JsonParser parser) throws InvalidProtocolBufferException {
+    if (parser.currentToken() != JsonToken.VALUE_STRING) {
+      throw new InvalidProtocolBufferException(
+          "Expect a timestamp string but got: " + text(parser));
+    }
+    try {
+      return Timestamps.parse(parser.getString());
+    } catch (ParseException e) {
+      throw new InvalidProtocolBufferException("Failed to parse timestamp: " + parser.getString());
+    }
+  }
+
+  /** Reads the scalar or message at the parser's current token as a value of {@code field}. */
+  private static Object readValue(JsonParser parser, FieldDescriptor field, Message.Builder owner)
+      throws InvalidProtocolBufferException {
+    if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+      Message.Builder value = owner.newBuilderForField(field);
+      merge(parser, value);
+      return value.build();
+    }
+    if (!parser.currentToken().isScalarValue()) {
+      throw new InvalidProtocolBufferException(
+          "Expect a scalar for " + field.getFullName() + " but got: " + text(parser));
+    }
+    try {
+      return switch (field.getType()) {
+        case INT32, SINT32, SFIXED32 ->
+            parser.currentToken() == JsonToken.VALUE_NUMBER_INT
+                ? parser.getIntValue()
+                : new BigDecimal(parser.getString()).intValueExact();
+        case UINT32, FIXED32 -> (int) readUnsigned(parser, 0xFFFFFFFFL);
+        case INT64, SINT64, SFIXED64 ->
+            parser.currentToken() == JsonToken.VALUE_NUMBER_INT
+                ? parser.getLongValue()
+                : new BigDecimal(parser.getString()).longValueExact();
+        case UINT64, FIXED64 -> readUnsigned64(parser);
+        case BOOL -> readBool(parser);
+        case FLOAT -> (float) readFloatingPoint(parser);
+        case DOUBLE -> readFloatingPoint(parser);
+        case STRING -> parser.getString();
+        case BYTES -> readBytes(parser);
+        case ENUM -> readEnum(parser, field.getEnumType());
+        case MESSAGE, GROUP -> throw new AssertionError(field.getType());
+      };
+    } catch (IllegalArgumentException | ArithmeticException | JacksonException e) {
+      throw new InvalidProtocolBufferException(
+          "Not a valid "
+              + field.getType()
+              + " value for "
+              + field.getFullName()
+              + ": "
+              + text(parser));
+    }
+  }
+
+  private static long readUnsigned(JsonParser parser, long max) {
+    long value = new BigDecimal(parser.getString()).longValueExact();
+    if (value < 0 || value > max) {
+      throw new ArithmeticException("Out of range: " + value);
+    }
+    return value;
+  }
+
+  private static long readUnsigned64(JsonParser parser) {
+    BigInteger value = new BigDecimal(parser.getString()).toBigIntegerExact();
+    if (value.signum() < 0 || value.compareTo(MAX_UINT64) > 0) {
+      throw new ArithmeticException("Out of range: " + value);
+    }
+    return value.longValue();
+  }
+
+  private static boolean readBool(JsonParser parser) {
+    return switch (parser.currentToken()) {
+      case VALUE_TRUE -> true;
+      case VALUE_FALSE -> false;
+      default -> {
+        String text = parser.getString();
+        if (text.equals("true") || text.equals("false")) {
+          yield Boolean.parseBoolean(text);
+        }
+        throw new NumberFormatException(text);
+      }
+    };
+  }
+
+  private static double readFloatingPoint(JsonParser parser) {
+    if (parser.currentToken().isNumeric()) {
+      return parser.getDoubleValue();
+    }
+    return switch (parser.getString()) {
+      case "NaN" -> Double.NaN;
+      case "Infinity" -> Double.POSITIVE_INFINITY;
+      case "-Infinity" -> Double.NEGATIVE_INFINITY;
+      default -> Double.parseDouble(parser.getString());
+    };
+  }
+
+  private static ByteString readBytes(JsonParser parser) {
+    String text = parser.getString();
+    byte[] bytes;
+    try {
+      bytes = Base64.getDecoder().decode(text);
+    } catch (IllegalArgumentException e) {
+      // The mapping allows the URL-safe alphabet too.
+      bytes = Base64.getUrlDecoder().decode(text);
+    }
+    // The array is freshly decoded and not shared, so the ByteString can wrap it without a copy.
+    return UnsafeByteOperations.unsafeWrap(bytes);
+  }
+
+  private static EnumValueDescriptor readEnum(JsonParser parser, EnumDescriptor type)
+      throws InvalidProtocolBufferException {
+    EnumValueDescriptor value;
+    if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+      int number = parser.getIntValue();
+      value =
+          type.isClosed()
+              ? type.findValueByNumber(number)
+              : type.findValueByNumberCreatingIfUnknown(number);
+    } else {
+      value = type.findValueByName(parser.getString());
+    }
+    if (value == null) {
+      throw new InvalidProtocolBufferException(
+          "Invalid enum value: " + text(parser) + " for enum type: " + type.getFullName());
+    }
+    return value;
+  }
+
+  private static Object readMapKey(String key, FieldDescriptor keyField)
+      throws InvalidProtocolBufferException {
+    try {
+      return switch (keyField.getType()) {
+        case INT32, SINT32, SFIXED32 -> Integer.parseInt(key);
+        case UINT32, FIXED32 -> Integer.parseUnsignedInt(key);
+        case INT64, SINT64, SFIXED64 -> Long.parseLong(key);
+        case UINT64, FIXED64 -> Long.parseUnsignedLong(key);
+        case BOOL -> {
+          if (key.equals("true") || key.equals("false")) {
+            yield Boolean.parseBoolean(key);
+          }
+          throw new NumberFormatException(key);
+        }
+        default -> key;
+      };
+    } catch (NumberFormatException e) {
+      throw new InvalidProtocolBufferException(
+          "Invalid map key for " + keyField.getContainingType().getFullName() + ": " + key);
+    }
+  }
+
+  private static String text(JsonParser parser) {
+    JsonToken token = parser.currentToken();
+    return token != null && token.isScalarValue() ? parser.getString() : String.valueOf(token);
+  }
+
+  private static boolean isWellKnown(Descriptor descriptor) {
+    return descriptor.getFile().getPackage().equals("google.protobuf");
+  }
+
+  private static Fields fields(Descriptor descriptor) {
+    return FIELDS.computeIfAbsent(descriptor, Fields::new);
+  }
+
+  /** A message type's fields in field number order, as JsonFormat prints them, and by name. */
+  private static final class Fields {
+
+    private final FieldDescriptor[] byNumber;
+
+    private final SerializedString[] jsonNames;
+
+    private final Map<String, FieldDescriptor> byName = new HashMap<>();
+
+    Fields(Descriptor descriptor) {
+      byNumber =
+          descriptor.getFields().stream()
+              .sorted(Comparator.comparingInt(FieldDescriptor::getNumber))
+              .toArray(FieldDescriptor[]::new);
+      jsonNames = new SerializedString[byNumber.length];
+      for (int i = 0; i < byNumber.length; i++) {
+        jsonNames[i] = new SerializedString(byNumber[i].getJsonName());
+        byName.put(byNumber[i].getJsonName(), byNumber[i]);
+        byName.put(byNumber[i].getName(), byNumber[i]);
+      }
+    }
+  }
+}
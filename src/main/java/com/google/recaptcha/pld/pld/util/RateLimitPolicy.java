@@ -0,0 +1,77 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.services.Tenant;
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Answers with a 429 when the client address or the tenant of a request is over its {@link
+ * RateLimits}, before the request body is read. {@link RateLimitWebFilter} applies the same limits
+ * on the reactive stack.
+ */
+@Component
+public class RateLimitPolicy implements HandlerInterceptor {
+
+  private final RateLimits rateLimits;
+
+  private final TenantRegistry tenants;
+
+  public RateLimitPolicy(RateLimits rateLimits, TenantRegistry tenants) {
+    this.rateLimits = rateLimits;
+    this.tenants = tenants;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+      throws Exception {
+    if (!rateLimits.limitsRequests()) {
+      return true;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, String> pathVariables =
+        (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+    Tenant tenant;
+    try {
+      tenant =
+          tenants.resolve(
+              pathVariables == null ? null : pathVariables.get(TenantRegistry.TENANT_PATH_VARIABLE),
+              request.getHeader(TenantRegistry.TENANT_HEADER));
+    } catch (ResponseStatusException e) {
+      // The controller answers unknown tenants with a 404.
+      return true;
+    }
+    try {
+      rateLimits.checkSource(
+          request.getRemoteAddr(),
+          Collections.list(request.getHeaders(RateLimits.FORWARDED_FOR_HEADER)));
+      rateLimits.checkConsumer(tenant.getName());
+      return true;
+    } catch (RateLimitedException e) {
+      tenant.getMetrics().countRateLimited(e.getLimit());
+      response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+      response.sendError(e.getStatusCode().value(), e.getReason());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.services.Tenant;
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import java.net.InetSocketAddress;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link RateLimitPolicy} for the reactive stack. A web filter runs before routing, so the tenant
+ * is read from the path prefix here, and only the leak check endpoints are limited.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class RateLimitWebFilter implements WebFilter {
+
+  private static final String TENANTS_PREFIX = "/tenants/";
+
+  private final RateLimits rateLimits;
+
+  private final TenantRegistry tenants;
+
+  public RateLimitWebFilter(RateLimits rateLimits, TenantRegistry tenants) {
+    this.rateLimits = rateLimits;
+    this.tenants = tenants;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    if (!rateLimits.limitsRequests()) {
+      return chain.filter(exchange);
+    }
+    String path = exchange.getRequest().getPath().pathWithinApplication().value();
+    String pathTenant = null;
+    if (path.startsWith(TENANTS_PREFIX)) {
+      int end = path.indexOf('/', TENANTS_PREFIX.length());
+      pathTenant = path.substring(TENANTS_PREFIX.length(), end < 0 ? path.length() : end);
+    } else if (!isLeakCheckPath(path)) {
+      return chain.filter(exchange);
+    }
+    Tenant tenant;
+    try {
+      tenant =
+          tenants.resolve(
+              pathTenant,
+              exchange.getRequest().getHeaders().getFirst(TenantRegistry.TENANT_HEADER));
+    } catch (ResponseStatusException e) {
+      // The controller answers unknown tenants with a 404.
+      return chain.filter(exchange);
+    }
+    try {
+      InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+      rateLimits.checkSource(
+          remoteAddress == null || remoteAddress.getAddress() == null
+              ? null
+              : remoteAddress.getAddress().getHostAddress(),
+          exchange.getRequest().getHeaders().get(RateLimits.FORWARDED_FOR_HEADER));
+      rateLimits.checkConsumer(tenant.getName());
+      return chain.filter(exchange);
+    } catch (RateLimitedException e) {
+      tenant.getMetrics().countRateLimited(e.getLimit());
+      return Mono.error(e);
+    }
+  }
+
+  private static boolean isLeakCheckPath(String path) {
+    return path.equals("/createAssessment")
+        || path.equals("/mergeAssessment")
+        || path.equals("/createAssessments");
+  }
+}
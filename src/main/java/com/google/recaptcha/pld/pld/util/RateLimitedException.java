@@ -0,0 +1,60 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Thrown when a request is over one of the {@link RateLimits}. It answers with a 429 and a {@code
+ * Retry-After} header on either web stack, and with {@code RESOURCE_EXHAUSTED} over gRPC.
+ */
+public class RateLimitedException extends ResponseStatusException {
+
+  private final String limit;
+
+  private final long retryAfterSeconds;
+
+  public RateLimitedException(String limit, long retryAfterSeconds) {
+    super(HttpStatus.TOO_MANY_REQUESTS, Messages.RATE_LIMITED_MESSAGE);
+    this.limit = limit;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * Returns the limit the request was over: {@code source}, {@code consumer} or {@code username}.
+   */
+  public String getLimit() {
+    return limit;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  @Override
+  public HttpHeaders getHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+    return headers;
+  }
+
+  /** Rejections are expected under attack, so they skip the cost of capturing a stack trace. */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
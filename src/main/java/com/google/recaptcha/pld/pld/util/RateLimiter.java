@@ -0,0 +1,103 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets for any number of keys in a fixed amount of memory, without locks. Each key hashes
+ * to one slot of an array holding its theoretical arrival time in the generic cell rate algorithm
+ * (GCRA): the time at which its bucket will be full again. A request is let through when that time
+ * is at most {@code burst - 1} intervals ahead of now, and pushes it one interval further with a
+ * single compare-and-set.
+ *
+ * <p>The array is sized once, so millions of distinct keys cost no more memory than a few. The
+ * price is that keys hashing to the same slot share a bucket. A collision never lets a key through
+ * more often, but it does let a busy key use up a quiet key's tokens, so a well-behaved client can
+ * be answered with a 429 because of a stranger. With {@code n} keys active within one refill of the
+ * bucket, a given key shares its slot with about {@code n / slots} of them. The slots should
+ * therefore be several times the number of keys expected to be active at once. A client that
+ * controls many keys, such as many usernames, can also spread load over many slots. That raises the
+ * chance of collisions for everyone else, though it cannot choose which keys it collides with.
+ */
+public class RateLimiter {
+
+  private static final long SEED = 0x9E3779B97F4A7C15L;
+
+  private final AtomicLongArray slots;
+
+  private final int shift;
+
+  private final long intervalNanos;
+
+  private final long toleranceNanos;
+
+  private final LongSupplier nanoClock;
+
+  private final long origin;
+
+  /**
+   * Lets each key through {@code perSecond} times a second on average, and up to {@code burst}
+   * times at once. {@code slots} is rounded up to a power of two.
+   */
+  public RateLimiter(double perSecond, int burst, int slots, LongSupplier nanoClock) {
+    if (perSecond <= 0 || burst < 1 || slots < 1) {
+      throw new IllegalArgumentException("Rate, burst and slots must be positive");
+    }
+    int size = Integer.highestOneBit(Math.min(Math.max(2, slots), 1 << 30) * 2 - 1);
+    this.slots = new AtomicLongArray(size);
+    this.shift = Long.numberOfLeadingZeros(size - 1);
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+    this.toleranceNanos = intervalNanos * (burst - 1);
+    this.nanoClock = nanoClock;
+    // Arrival times are kept relative to this, so that an empty slot reads as long past.
+    this.origin = nanoClock.getAsLong() - intervalNanos * burst;
+  }
+
+  public RateLimiter(double perSecond, int burst, int slots) {
+    this(perSecond, burst, slots, System::nanoTime);
+  }
+
+  /**
+   * Takes a token for {@code key} and returns 0, or returns how many nanoseconds remain until one
+   * is available, without taking it.
+   */
+  public long acquire(long key) {
+    int slot = slot(key);
+    long now = nanoClock.getAsLong() - origin;
+    while (true) {
+      long arrival = slots.get(slot);
+      long start = Math.max(arrival, now);
+      long wait = start - toleranceNanos - now;
+      if (wait > 0) {
+        return wait;
+      }
+      if (slots.compareAndSet(slot, arrival, start + intervalNanos)) {
+        return 0;
+      }
+    }
+  }
+
+  /** Returns the size of the slot array. */
+  public int slots() {
+    return slots.length();
+  }
+
+  /** Spreads the key's bits with a Fibonacci hash and keeps the top ones. */
+  private int slot(long key) {
+    return (int) ((key * SEED) >>> shift);
+  }
+}
@@ -0,0 +1,204 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The inbound rate limits, each a {@link RateLimiter} keyed by one property of a request: the
+ * client address ({@code source}), the tenant it is served by ({@code consumer}), or the username
+ * it checks. A limit whose {@code pld.ratelimit.<limit>.perSecond} is 0 lets everything through.
+ *
+ * <p>The address and tenant limits are applied by {@link RateLimitPolicy} and {@link
+ * RateLimitWebFilter} before a request body is read. The username limit is applied once the
+ * credentials are known and not already in the verdict cache, before they are hashed.
+ *
+ * <p>The source limit is keyed by the connection's peer address unless {@code
+ * pld.ratelimit.source.key} is {@code x-forwarded-for}. Behind a load balancer or proxy every
+ * request comes from the proxy's few addresses, so a peer address key makes the source limit one
+ * limit shared by all clients. With {@code x-forwarded-for}, the key is the entry {@code
+ * pld.ratelimit.source.trustedProxies} from the right of the {@code X-Forwarded-For} header: each
+ * trusted proxy appends the address it saw, so that entry was written by the outermost one, and the
+ * entries left of it are whatever the client sent. Only enable it when every request passes through
+ * those proxies, since a client that reaches the service directly chooses its own key.
+ */
+@Component
+public class RateLimits {
+
+  public static final String SOURCE = "source";
+
+  public static final String CONSUMER = "consumer";
+
+  public static final String USERNAME = "username";
+
+  /** The header proxies append client addresses to, lower case as gRPC metadata keys must be. */
+  public static final String FORWARDED_FOR_HEADER = "x-forwarded-for";
+
+  static final String ADDRESS_SOURCE_KEY = "address";
+
+  private static final long SEED = new SecureRandom().nextLong();
+
+  private final RateLimiter source;
+
+  private final RateLimiter consumer;
+
+  private final RateLimiter username;
+
+  private final CredentialDigest credentialDigest;
+
+  // 0 keys the source limit by peer address.
+  private final int trustedProxies;
+
+  @Autowired
+  public RateLimits(PldEnvironment env, CredentialDigest credentialDigest) {
+    this(
+        limiter(env, SOURCE),
+        limiter(env, CONSUMER),
+        limiter(env, USERNAME),
+        credentialDigest,
+        trustedProxies(env));
+  }
+
+  public RateLimits(
+      RateLimiter source,
+      RateLimiter consumer,
+      RateLimiter username,
+      CredentialDigest credentialDigest) {
+    this(source, consumer, username, credentialDigest, 0);
+  }
+
+  /**
+   * Keys the source limit by the {@code X-Forwarded-For} entry {@code trustedProxies} from the
+   * right, or by peer address when {@code trustedProxies} is 0.
+   */
+  public RateLimits(
+      RateLimiter source,
+      RateLimiter consumer,
+      RateLimiter username,
+      CredentialDigest credentialDigest,
+      int trustedProxies) {
+    this.source = source;
+    this.consumer = consumer;
+    this.username = username;
+    this.credentialDigest = credentialDigest;
+    this.trustedProxies = trustedProxies;
+  }
+
+  /** Returns limits that let every request through. */
+  public static RateLimits unlimited() {
+    return new RateLimits(null, null, null, null);
+  }
+
+  private static int trustedProxies(PldEnvironment env) {
+    String sourceKey = env.getRateLimitSourceKey();
+    if (ADDRESS_SOURCE_KEY.equals(sourceKey)) {
+      return 0;
+    }
+    if (!FORWARDED_FOR_HEADER.equals(sourceKey)) {
+      throw new IllegalArgumentException(
+          "pld.ratelimit.source.key must be address or x-forwarded-for, not " + sourceKey);
+    }
+    if (env.getRateLimitTrustedProxies() < 1) {
+      throw new IllegalArgumentException("pld.ratelimit.source.trustedProxies must be positive");
+    }
+    return env.getRateLimitTrustedProxies();
+  }
+
+  private static RateLimiter limiter(PldEnvironment env, String limit) {
+    double perSecond = env.getRateLimitPerSecond(limit);
+    return perSecond > 0
+        ? new RateLimiter(perSecond, env.getRateLimitBurst(limit), env.getRateLimitSlots())
+        : null;
+  }
+
+  /** Returns whether the address or tenant limit is enabled. */
+  public boolean limitsRequests() {
+    return source != null || consumer != null;
+  }
+
+  /**
+   * Throws a {@link RateLimitedException} when the client is over its limit. The client is {@code
+   * peerAddress}, or an entry of the {@code forwardedFor} header values when the limit is keyed by
+   * {@code X-Forwarded-For}. Either may be null.
+   */
+  public void checkSource(String peerAddress, Iterable<String> forwardedFor) {
+    if (source != null) {
+      check(source, SOURCE, sourceKey(peerAddress, forwardedFor));
+    }
+  }
+
+  /**
+   * Returns the entry {@code trustedProxies} from the right of the {@code X-Forwarded-For} values,
+   * or {@code peerAddress} when keyed by address or when fewer proxies added an entry.
+   */
+  String sourceKey(String peerAddress, Iterable<String> forwardedFor) {
+    if (trustedProxies == 0 || forwardedFor == null) {
+      return peerAddress;
+    }
+    List<String> hops = new ArrayList<>();
+    for (String value : forwardedFor) {
+      for (String hop : value.split(",")) {
+        if (!hop.isBlank()) {
+          hops.add(hop.trim());
+        }
+      }
+    }
+    return hops.size() >= trustedProxies ? hops.get(hops.size() - trustedProxies) : peerAddress;
+  }
+
+  /** Throws a {@link RateLimitedException} when {@code tenant} is over its limit. */
+  public void checkConsumer(String tenant) {
+    check(consumer, CONSUMER, tenant);
+  }
+
+  /** Throws a {@link RateLimitedException} when {@code username} is over its limit. */
+  public void checkUsername(String username) {
+    if (this.username != null) {
+      acquire(this.username, USERNAME, credentialDigest.usernameKey(username));
+    }
+  }
+
+  private static void check(RateLimiter limiter, String limit, String key) {
+    if (limiter != null && key != null) {
+      acquire(limiter, limit, mix(key));
+    }
+  }
+
+  private static void acquire(RateLimiter limiter, String limit, long key) {
+    long waitNanos = limiter.acquire(key);
+    if (waitNanos > 0) {
+      throw new RateLimitedException(
+          limit, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+    }
+  }
+
+  /**
+   * Hashes an address or tenant name to 64 bits under a per-process seed. These keys are not
+   * secret, so a keyed MAC is not needed, but the seed makes colliding keys harder to plan.
+   */
+  private static long mix(String key) {
+    long h = SEED;
+    for (int i = 0; i < key.length(); i++) {
+      h = (h ^ key.charAt(i)) * 0x100000001B3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    return h ^ (h >>> 33);
+  }
+}
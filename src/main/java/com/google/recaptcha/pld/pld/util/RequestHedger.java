@@ -0,0 +1,152 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hedges calls that are safe to repeat: if the first attempt has not answered within {@code
+ * pld.hedge.percentile} of recent latencies, a second attempt is sent and the first success wins.
+ * The loser is cancelled. Hedges are paid for from a {@link RetryBudget} so that, when the backend
+ * is slow across the board, they stop instead of doubling its load.
+ */
+@Component
+public class RequestHedger {
+
+  /** Latency samples the hedge delay is estimated over. */
+  static final int WINDOW_SIZE = 1024;
+
+  private final boolean enabled;
+
+  private final long minDelayNanos;
+
+  private final LatencyTracker latencies;
+
+  private final RetryBudget budget;
+
+  private final PldMetrics metrics;
+
+  private final Executor hedgeExecutor;
+
+  /** Hedges are sent from {@code hedgeExecutor}, the reCAPTCHA completion pool in the app. */
+  public RequestHedger(
+      PldEnvironment env,
+      PldMetrics metrics,
+      MeterRegistry meterRegistry,
+      @Qualifier("recaptchaCompletionExecutorService") Executor hedgeExecutor) {
+    this.enabled = env.isHedgeEnabled();
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(env.getHedgeMinDelayMillis());
+    this.latencies = new LatencyTracker(WINDOW_SIZE, env.getHedgePercentile());
+    this.budget = new RetryBudget(env.getHedgeBudgetRatio(), env.getHedgeBudgetMaxTokens());
+    this.metrics = metrics;
+    this.hedgeExecutor = hedgeExecutor;
+
+    if (enabled) {
+      Gauge.builder("pld.hedge.budget", budget, RetryBudget::available)
+          .description("Hedged attempts the retry budget currently allows")
+          .tag(PldMetrics.TENANT_TAG, metrics.getTenant())
+          .register(meterRegistry);
+    }
+  }
+
+  /**
+   * Runs {@code attempt}, and once more if the first run is slow and the budget allows. Cancelling
+   * the returned future cancels every attempt in flight.
+   */
+  public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> attempt) {
+    if (!enabled) {
+      return attempt.get();
+    }
+    budget.deposit();
+    long startNanos = System.nanoTime();
+    CompletableFuture<T> primary = attempt.get();
+    primary.whenComplete(
+        (value, t) -> {
+          if (t == null) {
+            latencies.record(System.nanoTime() - startNanos);
+          }
+        });
+    long delayNanos = latencies.percentileNanos();
+    if (delayNanos < 0 || primary.isDone()) {
+      return primary;
+    }
+
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger outstanding = new AtomicInteger(1);
+    settleOnCompletion(primary, result, outstanding, false);
+    result.whenComplete((value, t) -> primary.cancel(true));
+
+    Timers.runUnlessDone(
+        result,
+        Math.max(delayNanos, minDelayNanos),
+        hedgeExecutor,
+        () -> sendHedge(attempt, result, outstanding));
+    return result;
+  }
+
+  private <T> void sendHedge(
+      Supplier<CompletableFuture<T>> attempt,
+      CompletableFuture<T> result,
+      AtomicInteger outstanding) {
+    if (result.isDone()) {
+      return;
+    }
+    if (!budget.tryWithdraw()) {
+      metrics.countHedge(PldMetrics.HEDGE_THROTTLED);
+      return;
+    }
+    if (outstanding.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+      return;
+    }
+    metrics.countHedge(PldMetrics.HEDGE_SENT);
+    CompletableFuture<T> hedge;
+    try {
+      hedge = attempt.get();
+    } catch (RuntimeException e) {
+      hedge = CompletableFuture.failedFuture(e);
+    }
+    settleOnCompletion(hedge, result, outstanding, true);
+    CompletableFuture<T> sent = hedge;
+    result.whenComplete((value, t) -> sent.cancel(true));
+  }
+
+  /**
+   * Completes {@code result} with the first success, or with the last failure once every attempt
+   * has failed.
+   */
+  private <T> void settleOnCompletion(
+      CompletableFuture<T> attempt,
+      CompletableFuture<T> result,
+      AtomicInteger outstanding,
+      boolean isHedge) {
+    attempt.whenComplete(
+        (value, t) -> {
+          if (t == null) {
+            if (result.complete(value) && isHedge) {
+              metrics.countHedge(PldMetrics.HEDGE_WON);
+            }
+          } else if (outstanding.decrementAndGet() == 0) {
+            result.completeExceptionally(t);
+          }
+        });
+  }
+}
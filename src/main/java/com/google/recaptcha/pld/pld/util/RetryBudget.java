@@ -0,0 +1,62 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that limits extra attempts to a fraction of original ones. Every original call
+ * deposits {@code ratio} of a token, up to {@code maxTokens}, and every extra attempt withdraws a
+ * whole token, so over time extra attempts cannot exceed {@code ratio} of the calls, and a burst of
+ * them cannot exceed {@code maxTokens}.
+ */
+public class RetryBudget {
+
+  private static final long SCALE = 1000;
+
+  private final AtomicLong milliTokens;
+
+  private final long depositMilliTokens;
+
+  private final long maxMilliTokens;
+
+  public RetryBudget(double ratio, int maxTokens) {
+    this.depositMilliTokens = Math.round(ratio * SCALE);
+    this.maxMilliTokens = maxTokens * SCALE;
+    this.milliTokens = new AtomicLong(maxMilliTokens);
+  }
+
+  /** Credits the budget for an original call. */
+  public void deposit() {
+    milliTokens.getAndUpdate(balance -> Math.min(maxMilliTokens, balance + depositMilliTokens));
+  }
+
+  /** Takes a token for an extra attempt, returning false if the budget is spent. */
+  public boolean tryWithdraw() {
+    while (true) {
+      long balance = milliTokens.get();
+      if (balance < SCALE) {
+        return false;
+      }
+      if (milliTokens.compareAndSet(balance, balance - SCALE)) {
+        return true;
+      }
+    }
+  }
+
+  /** Returns the number of whole extra attempts currently allowed. */
+  public long available() {
+    return milliTokens.get() / SCALE;
+  }
+}
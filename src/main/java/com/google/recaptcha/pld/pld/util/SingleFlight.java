@@ -0,0 +1,136 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with equal keys: while a call for a key is in flight, further calls
+ * for that key wait for its result instead of starting their own.
+ *
+ * <p>Each caller gets its own copy of the shared future, so cancelling or completing one caller's
+ * future does not affect the others. A caller bounds its own copy, for instance with {@link
+ * Deadlines#bound}, so a later caller with a longer deadline is not failed by an earlier caller's
+ * timeout. Once every caller's copy has completed before the call, whether cancelled or failed at
+ * its deadline, the call itself is cancelled, and the next caller for its key starts a new one. A
+ * key is forgotten as soon as its call completes, whether normally, exceptionally or by
+ * cancellation, so failures are retried by the next caller and the map never outgrows the number of
+ * calls in flight.
+ *
+ * <p>Nothing here takes a lock. Callers are counted with a compare-and-set loop that refuses to
+ * join a call once its count has dropped to zero, and a finished call only removes its own entry,
+ * with {@link ConcurrentMap#remove(Object, Object)}.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Returns a copy of the result of the call in flight for {@code key}, starting {@code call} if
+   * there is none.
+   */
+  public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+    while (true) {
+      Flight<V> existing = inFlight.get(key);
+      if (existing == null) {
+        Flight<V> flight = new Flight<>();
+        existing = inFlight.putIfAbsent(key, flight);
+        if (existing == null) {
+          return start(key, flight, call);
+        }
+      }
+      CompletableFuture<V> joined = existing.join();
+      if (joined != null) {
+        return joined;
+      }
+      inFlight.remove(key, existing);
+    }
+  }
+
+  private CompletableFuture<V> start(K key, Flight<V> flight, Supplier<CompletableFuture<V>> call) {
+    CompletableFuture<V> shared = flight.shared;
+    shared.whenComplete((value, t) -> inFlight.remove(key, flight));
+    CompletableFuture<V> caller = flight.copy();
+
+    CompletableFuture<V> result;
+    try {
+      result = call.get();
+    } catch (RuntimeException e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    CancellableFutures.propagateCancellation(shared, result);
+    result.whenComplete(
+        (value, t) -> {
+          if (t == null) {
+            shared.complete(value);
+          } else {
+            shared.completeExceptionally(t);
+          }
+        });
+    return caller;
+  }
+
+  /** Returns the number of keys with a call in flight. */
+  public int size() {
+    return inFlight.size();
+  }
+
+  private static final class Flight<V> {
+
+    private final CompletableFuture<V> shared = new CompletableFuture<>();
+
+    /** Callers whose copy is still waiting on the shared future. The starting caller is counted. */
+    private final AtomicInteger waiters = new AtomicInteger(1);
+
+    /**
+     * Returns a new caller's copy of the shared future, or null if every earlier caller has given
+     * up and the shared future is being cancelled.
+     */
+    CompletableFuture<V> join() {
+      while (true) {
+        int current = waiters.get();
+        if (current == 0) {
+          return null;
+        }
+        if (waiters.compareAndSet(current, current + 1)) {
+          return copy();
+        }
+      }
+    }
+
+    /** Returns a copy for a caller that has already been counted. */
+    private CompletableFuture<V> copy() {
+      CompletableFuture<V> copy = shared.copy();
+      copy.whenComplete(
+          (value, t) -> {
+            // A copy completed by the shared future sees it done. One completed first was
+            // cancelled or failed by its caller, who no longer waits.
+            if (!shared.isDone()) {
+              leave();
+            }
+          });
+      return copy;
+    }
+
+    private void leave() {
+      if (waiters.decrementAndGet() == 0) {
+        shared.cancel(true);
+      }
+    }
+  }
+}
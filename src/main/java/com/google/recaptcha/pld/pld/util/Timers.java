@@ -0,0 +1,62 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for work that only matters while a future is pending, such as deadlines and hedges. One
+ * daemon thread fires every timer and hands its task to another executor. A timer is cancelled, and
+ * removed from the queue, as soon as its future completes, so requests that finish well within
+ * their deadline do not leave timers behind until it passes.
+ */
+final class Timers {
+
+  private static final ScheduledThreadPoolExecutor SCHEDULER = newScheduler();
+
+  private Timers() {}
+
+  /**
+   * Runs {@code task} on {@code executor} once {@code delayNanos} have passed, unless {@code
+   * future} completes first.
+   */
+  static void runUnlessDone(
+      CompletableFuture<?> future, long delayNanos, Executor executor, Runnable task) {
+    ScheduledFuture<?> timer =
+        SCHEDULER.schedule(() -> executor.execute(task), delayNanos, TimeUnit.NANOSECONDS);
+    future.whenComplete((value, t) -> timer.cancel(false));
+  }
+
+  /** Returns the number of timers waiting to fire. */
+  static int pending() {
+    return SCHEDULER.getQueue().size();
+  }
+
+  private static ScheduledThreadPoolExecutor newScheduler() {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            task -> {
+              Thread thread = new Thread(task, "pld-timer");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+}
@@ -14,7 +14,10 @@
 package com.google.recaptcha.pld.pld;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.concurrent.ExecutorService;
@@ -25,6 +28,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -34,6 +38,7 @@ import org.springframework.test.web.servlet.MockMvc;
       "RECAPTCHA_PROJECT_ID=test-proj-id",
       "GOOGLE_CLOUD_API_KEY=test-api-key",
       "pld.recaptchacontext.runinit=true",
+      "pld.grpc.warmup=false",
     })
 class PldApplicationTests {
 
@@ -122,4 +127,72 @@ class PldApplicationTests {
                     """))
         .andExpect(status().isOk());
   }
+
+  @Test
+  void createAssessmentsStreamsPerEntryErrors() throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/createAssessments")
+                    .contentType("application/json")
+                    .content(
+                        """
+                        [
+                          {"id": "no-password", "username": "usernameABC"},
+                          {"id": "no-username", "password": "password123"}
+                        ]
+                        """))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+        .andExpect(
+            content()
+                .string(
+                    """
+                    {"id":"no-password","error":"password is required"}
+                    {"id":"no-username","error":"username is required"}
+                    """));
+  }
+
+  @Test
+  void createAssessmentsReportsMalformedArrayAfterEarlierEntries() throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/createAssessments")
+                    .contentType("application/json")
+                    .content(
+                        """
+                        [
+                          {"id": "no-password", "username": "usernameABC"},
+                          {"id": "broken",
+                        """))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(
+            content()
+                .string(
+                    """
+                    {"id":"no-password","error":"password is required"}
+                    {"error":"Malformed JSON array of credentials"}
+                    """));
+  }
+
+  @Test
+  void createAssessmentsRejectsNonArray() throws Exception {
+    mockMvc
+        .perform(
+            post("/createAssessments")
+                .contentType("application/json")
+                .content("{\"username\": \"usernameABC\"}"))
+        .andExpect(status().isBadRequest());
+  }
 }
@@ -0,0 +1,62 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.recaptcha.pld.pld.services.EncryptedCredentials;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import com.google.recaptchaenterprise.v1.RiskAnalysis;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+public class PldRuntimeHintsTests {
+
+  private final RuntimeHints hints = new RuntimeHints();
+
+  PldRuntimeHintsTests() {
+    new PldRuntimeHints().registerHints(hints, getClass().getClassLoader());
+  }
+
+  @Test
+  void shouldRegisterReachableMessages() {
+    assertTrue(
+        RuntimeHintsPredicates.reflection()
+            .onMethodInvocation(Assessment.class, "getPrivatePasswordLeakVerification")
+            .test(hints));
+    assertTrue(
+        RuntimeHintsPredicates.reflection()
+            .onMethodInvocation(
+                PrivatePasswordLeakVerification.Builder.class, "setLookupHashPrefix")
+            .test(hints));
+  }
+
+  @Test
+  void shouldRegisterEnums() {
+    assertTrue(
+        RuntimeHintsPredicates.reflection()
+            .onMethodInvocation(RiskAnalysis.ClassificationReason.class, "getValueDescriptor")
+            .test(hints));
+  }
+
+  @Test
+  void shouldRegisterBindingTypes() {
+    assertTrue(
+        RuntimeHintsPredicates.reflection()
+            .onMethodInvocation(EncryptedCredentials.class, "getLookupHashPrefix")
+            .test(hints));
+  }
+}
@@ -0,0 +1,84 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.recaptcha.pld.pld.services.RecaptchaContext;
+import com.google.recaptcha.pld.pld.services.TenantFactory;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.stub.latency.medianMillis=300",
+      "pld.stub.latency.p99Millis=300",
+      "pld.grpc.minChannels=2",
+      "pld.grpc.warmupTimeoutMillis=5000",
+      "pld.warmup.rounds=0",
+      "pld.tenants=checkout",
+    })
+public class TenantWarmupTests {
+
+  @Autowired private RecaptchaContext recaptchaContext;
+
+  @Autowired private TenantFactory tenantFactory;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldWaitOnEveryTenantsWarmUp() {
+    List<RecaptchaContext> contexts = new ArrayList<>();
+    contexts.add(recaptchaContext);
+    contexts.addAll(tenantFactory.getRecaptchaContexts());
+    assertEquals(2, contexts.size());
+
+    for (RecaptchaContext context : contexts) {
+      String tenant = context.getTenantName();
+      CompletableFuture<Integer> warmup = context.getWarmup();
+      assertNotNull(warmup, tenant);
+      assertTrue(warmup.isDone(), tenant);
+      assertEquals(2, warmup.join(), tenant);
+      // The stub answers after 300 ms, so the gauge only holds the count if the runner waited.
+      assertEquals(
+          2.0,
+          meterRegistry
+              .get(WarmupRunner.CONNECTIONS_GAUGE)
+              .tag(PldMetrics.TENANT_TAG, tenant)
+              .gauge()
+              .value(),
+          tenant);
+    }
+    assertEquals(
+        1,
+        meterRegistry
+            .get(WarmupRunner.WARMUP_TIMER)
+            .tag("phase", WarmupRunner.CONNECTION_PHASE)
+            .timer()
+            .count());
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.test.context.TestPropertySource;
+
+@EnabledForJreRange(min = JRE.JAVA_21)
+@SpringBootTest
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.grpc.warmup=false",
+      "spring.threads.virtual.enabled=true",
+    })
+public class ThreadingConfigTests {
+
+  @Autowired private Executor recaptchaCompletionExecutorService;
+
+  @Autowired private ExecutorService passwordCheckExecutorService;
+
+  @Test
+  void shouldUseVirtualThreadsForIoStages() {
+    assertInstanceOf(VirtualThreadTaskExecutor.class, recaptchaCompletionExecutorService);
+  }
+
+  @Test
+  void shouldKeepPasswordCheckPoolBounded() {
+    assertInstanceOf(ThreadPoolExecutor.class, passwordCheckExecutorService);
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=false",
+      "pld.warmup.rounds=3",
+    })
+public class WarmupRunnerTests {
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired private ApplicationAvailability availability;
+
+  @Autowired private MockMvc mockMvc;
+
+  @Test
+  void shouldRecordLocalWarmupPhases() {
+    for (String phase : new String[] {WarmupRunner.VERIFIER_PHASE, WarmupRunner.JSON_PHASE}) {
+      assertEquals(
+          1, meterRegistry.get(WarmupRunner.WARMUP_TIMER).tag("phase", phase).timer().count());
+      assertTrue(
+          meterRegistry.get(WarmupRunner.SPEEDUP_GAUGE).tag("phase", phase).gauge().value() > 0);
+    }
+  }
+
+  @Test
+  void shouldAcceptTrafficOnceWarm() throws Exception {
+    assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+    mockMvc
+        .perform(get("/actuator/health/readiness"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("UP"));
+  }
+}
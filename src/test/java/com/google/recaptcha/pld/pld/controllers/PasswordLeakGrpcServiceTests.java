@@ -0,0 +1,196 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.v1.CheckResponse;
+import com.google.recaptcha.pld.v1.Credentials;
+import com.google.recaptcha.pld.v1.MergeAssessmentRequest;
+import com.google.recaptcha.pld.v1.MergeAssessmentResponse;
+import com.google.recaptcha.pld.v1.PasswordLeakServiceGrpc;
+import com.google.recaptcha.pld.v1.PldLeakedStatus;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.stub.MetadataUtils;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.grpc.server.streamWindow=2",
+      "grpc.server.port=-1",
+      "grpc.server.inProcessName=pld-grpc-tests",
+    })
+public class PasswordLeakGrpcServiceTests {
+
+  private ManagedChannel channel;
+
+  private PasswordLeakServiceGrpc.PasswordLeakServiceBlockingStub stub;
+
+  @BeforeEach
+  void openChannel() {
+    channel = InProcessChannelBuilder.forName("pld-grpc-tests").directExecutor().build();
+    stub = PasswordLeakServiceGrpc.newBlockingStub(channel);
+  }
+
+  @AfterEach
+  void closeChannel() throws InterruptedException {
+    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void shouldCheckCredentials() {
+    CheckResponse result = stub.check(credentials("leakedusername", "leakedpassword", "first"));
+
+    assertEquals("first", result.getId());
+    assertEquals(PldLeakedStatus.LEAKED, result.getPldLeakedStatus());
+  }
+
+  @Test
+  void shouldRejectInvalidCredentials() {
+    StatusRuntimeException e =
+        assertThrows(
+            StatusRuntimeException.class, () -> stub.check(credentials("leakedusername", "", "")));
+
+    assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+    assertEquals("password is required", e.getStatus().getDescription());
+  }
+
+  @Test
+  void shouldRejectUnknownTenant() {
+    Metadata headers = new Metadata();
+    headers.put(PasswordLeakGrpcService.TENANT_KEY, "unknown");
+
+    StatusRuntimeException e =
+        assertThrows(
+            StatusRuntimeException.class,
+            () ->
+                stub.withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers))
+                    .check(credentials("leakedusername", "leakedpassword", "")));
+
+    assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+    assertEquals(Messages.UNKNOWN_TENANT_MESSAGE, e.getStatus().getDescription());
+  }
+
+  @Test
+  void shouldMergeAssessment() {
+    Assessment assessment =
+        Assessment.newBuilder()
+            .setEvent(Event.newBuilder().setSiteKey("fake-site-key").setToken("fake-token"))
+            .build();
+
+    MergeAssessmentResponse response =
+        stub.mergeAssessment(
+            MergeAssessmentRequest.newBuilder()
+                .setCredentials(credentials("leakedusername", "leakedpassword", ""))
+                .setAssessment(assessment)
+                .build());
+
+    assertEquals(PldLeakedStatus.LEAKED, response.getPldLeakedStatus());
+    assertTrue(response.hasAssessment());
+  }
+
+  @Test
+  void shouldStreamChecksWithinWindow() throws Exception {
+    ClientCall<Credentials, CheckResponse> call =
+        channel.newCall(PasswordLeakServiceGrpc.getCheckStreamMethod(), CallOptions.DEFAULT);
+    Map<String, CheckResponse> results = new ConcurrentHashMap<>();
+    CompletableFuture<Status> closed = new CompletableFuture<>();
+    call.start(
+        new ClientCall.Listener<>() {
+          @Override
+          public void onMessage(CheckResponse result) {
+            results.put(result.getId(), result);
+          }
+
+          @Override
+          public void onClose(Status status, Metadata trailers) {
+            closed.complete(status);
+          }
+        },
+        new Metadata());
+
+    // Nothing reads the results yet, so the server asks for its window of two credentials and
+    // then stops, with both results waiting to be sent.
+    awaitReady(call);
+    int sent = 0;
+    while (call.isReady() && sent < 12) {
+      send(call, sent++);
+    }
+    assertEquals(2, sent);
+    Thread.sleep(200);
+    assertFalse(call.isReady());
+
+    call.request(Integer.MAX_VALUE);
+    while (sent < 12) {
+      send(call, sent++);
+    }
+    call.halfClose();
+
+    assertEquals(Status.Code.OK, closed.get(10, TimeUnit.SECONDS).getCode());
+    assertEquals(12, results.size());
+    for (int i = 0; i < 12; i++) {
+      CheckResponse result = results.get(String.valueOf(i));
+      if (i % 3 == 2) {
+        assertEquals("password is required", result.getError());
+      } else {
+        assertEquals(
+            i % 3 == 0 ? PldLeakedStatus.LEAKED : PldLeakedStatus.NO_STATUS,
+            result.getPldLeakedStatus());
+      }
+    }
+  }
+
+  private static void awaitReady(ClientCall<?, ?> call) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!call.isReady() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  /** Sends leaked, fresh or invalid credentials, depending on {@code id} modulo three. */
+  private static void send(ClientCall<Credentials, CheckResponse> call, int id) {
+    String[] passwords = {"leakedpassword", "freshpassword", ""};
+    call.sendMessage(credentials("leakedusername", passwords[id % 3], String.valueOf(id)));
+  }
+
+  private static Credentials credentials(String username, String password, String id) {
+    return Credentials.newBuilder().setUsername(username).setPassword(password).setId(id).build();
+  }
+}
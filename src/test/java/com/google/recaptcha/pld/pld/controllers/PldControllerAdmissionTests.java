@@ -0,0 +1,131 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.stub.latency.medianMillis=500",
+      "pld.stub.latency.p99Millis=500",
+      "pld.admission.limit=1",
+      "pld.admission.retryAfterSeconds=3",
+    })
+public class PldControllerAdmissionTests {
+
+  @Autowired private MockMvc mockMvc;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldShedRequestsBeyondAdmissionLimit() throws Exception {
+    double rejected = rejectedCount();
+    MvcResult admitted =
+        mockMvc
+            .perform(createAssessment("firstusername"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(createAssessment("secondusername"))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().string("Retry-After", "3"))
+        .andExpect(jsonPath("$.error").value(Messages.SERVICE_OVERLOADED_MESSAGE));
+
+    mockMvc
+        .perform(asyncDispatch(admitted))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.leakedStatus").value("NO_STATUS"));
+    assertEquals(rejected + 1, rejectedCount());
+  }
+
+  @Test
+  void shouldShedBatchEntriesBeyondAdmissionLimit() throws Exception {
+    double rejected = rejectedCount();
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/createAssessments")
+                    .contentType("application/json")
+                    .content(
+                        """
+                        [
+                          {"id": "first", "username": "firstbatchuser", "password": "password"},
+                          {"id": "second", "username": "secondbatchuser", "password": "password"}
+                        ]
+                        """))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(
+            content()
+                .string(
+                    """
+                    {"id":"second","error":"%s"}
+                    {"id":"first","leakedStatus":"NO_STATUS"}
+                    """
+                        .formatted(Messages.SERVICE_OVERLOADED_MESSAGE)));
+    assertEquals(rejected + 1, rejectedCount());
+  }
+
+  private double rejectedCount() {
+    return meterRegistry
+        .find(PldMetrics.REJECTED_COUNTER)
+        .tag("reason", "admission")
+        .counters()
+        .stream()
+        .mapToDouble(Counter::count)
+        .sum();
+  }
+
+  private static MockHttpServletRequestBuilder createAssessment(String username) {
+    return post("/createAssessment")
+        .contentType("application/json")
+        .content(
+            """
+            {"username": "%s", "password": "password"}
+            """
+                .formatted(username));
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import static org.hamcrest.Matchers.containsStringIgnoringCase;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.stub.latency.medianMillis=1000",
+      "pld.stub.latency.p99Millis=1000",
+    })
+public class PldControllerDeadlineTests {
+
+  @Autowired private MockMvc mockMvc;
+
+  @Test
+  void shouldTimeOutPastRequestedDeadline() throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(createAssessment().header(PldController.TIMEOUT_HEADER, "200"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    // MockMvc does not fire async timeouts, so wait for the RPC deadline to fail the call.
+    result.getAsyncResult(5_000);
+    mockMvc.perform(asyncDispatch(result)).andExpect(status().isGatewayTimeout());
+  }
+
+  @Test
+  void shouldCompleteWithinDefaultDeadline() throws Exception {
+    MvcResult result =
+        mockMvc.perform(createAssessment()).andExpect(request().asyncStarted()).andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.leakedStatus").value("NO_STATUS"));
+  }
+
+  @Test
+  void shouldTimeOutBatchEntriesPastRequestedDeadline() throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/createAssessments")
+                    .header(PldController.TIMEOUT_HEADER, "200")
+                    .contentType("application/json")
+                    .content(
+                        """
+                        [{"id": "slow", "username": "batchusername", "password": "password"}]
+                        """))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    result.getAsyncResult(5_000);
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.id").value("slow"))
+        // Either this service's deadline or the RPC's, which is set from it, may fire first.
+        .andExpect(jsonPath("$.error", containsStringIgnoringCase("deadline")));
+  }
+
+  private static MockHttpServletRequestBuilder createAssessment() {
+    return post("/createAssessment")
+        .contentType("application/json")
+        .content(
+            """
+            {"username": "username", "password": "password"}
+            """);
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import com.google.recaptcha.pld.v1.Credentials;
+import com.google.recaptcha.pld.v1.MergeAssessmentRequest;
+import com.google.recaptcha.pld.v1.MergeAssessmentResponse;
+import com.google.recaptcha.pld.v1.PldLeakedStatus;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import java.io.IOException;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.reactor.netty.NettyWebServer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.boot.webtestclient.autoconfigure.AutoConfigureWebTestClient;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.stub.latency.medianMillis=300",
+      "pld.stub.latency.p99Millis=300",
+      "spring.main.web-application-type=reactive",
+      "grpc.server.port=-1",
+    })
+public class ReactivePldControllerTests {
+
+  @Autowired private WebTestClient webTestClient;
+
+  @Autowired private ReactiveWebServerApplicationContext context;
+
+  @Test
+  void shouldRunOnNetty() {
+    assertInstanceOf(NettyWebServer.class, context.getWebServer());
+  }
+
+  @Test
+  void shouldCreateAssessment() {
+    webTestClient
+        .post()
+        .uri("/createAssessment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"username\":\"leakedusername\",\"password\":\"leakedpassword\"}")
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectBody()
+        .jsonPath("$.leakedStatus")
+        .isEqualTo("LEAKED");
+  }
+
+  @Test
+  void shouldTimeOutPastRequestedDeadline() {
+    webTestClient
+        .post()
+        .uri("/createAssessment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(PldController.TIMEOUT_HEADER, "50")
+        .bodyValue("{\"username\":\"freshusername\",\"password\":\"freshpassword\"}")
+        .exchange()
+        .expectStatus()
+        .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+  }
+
+  @Test
+  void shouldRejectInvalidCredentials() {
+    webTestClient
+        .post()
+        .uri("/createAssessment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"username\":\"leakedusername\"}")
+        .exchange()
+        .expectStatus()
+        .isBadRequest()
+        .expectBody()
+        .jsonPath("$.password")
+        .isEqualTo("password is required");
+  }
+
+  @Test
+  void shouldMergeAssessment() {
+    webTestClient
+        .post()
+        .uri("/mergeAssessment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(
+            """
+            {
+              "credentials": {"username": "leakedusername", "password": "leakedpassword"},
+              "assessment": {"event": {"siteKey": "fake-site-key", "token": "fake-token"}}
+            }
+            """)
+        .exchange()
+        .expectStatus()
+        .isOk()
+        .expectHeader()
+        .contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+        .expectBody()
+        .jsonPath("$.pldLeakedStatus")
+        .isEqualTo("LEAKED");
+  }
+
+  @Test
+  void shouldMergeAssessmentAsProtobuf() throws IOException {
+    MergeAssessmentRequest request =
+        MergeAssessmentRequest.newBuilder()
+            .setCredentials(
+                Credentials.newBuilder()
+                    .setUsername("leakedusername")
+                    .setPassword("leakedpassword"))
+            .setAssessment(
+                Assessment.newBuilder()
+                    .setEvent(
+                        Event.newBuilder().setSiteKey("fake-site-key").setToken("fake-token")))
+            .build();
+
+    byte[] response =
+        webTestClient
+            .post()
+            .uri("/mergeAssessment")
+            .contentType(ProtobufHttpMessageConverter.PROTOBUF)
+            .accept(ProtobufHttpMessageConverter.PROTOBUF)
+            .bodyValue(request.toByteArray())
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(ProtobufHttpMessageConverter.PROTOBUF)
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+
+    MergeAssessmentResponse merged = MergeAssessmentResponse.parseFrom(response);
+    assertEquals(PldLeakedStatus.LEAKED, merged.getPldLeakedStatus());
+  }
+
+  @Test
+  void shouldStreamBatchResults() {
+    String body =
+        webTestClient
+            .post()
+            .uri("/createAssessments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(
+                """
+                [{"id":"1","username":"leakedusername","password":"leakedpassword"},
+                 {"id":"2","username":"leakedusername"}]
+                """)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .expectBody(String.class)
+            .returnResult()
+            .getResponseBody();
+
+    assertEquals(
+        Set.of(
+            "{\"id\":\"1\",\"leakedStatus\":\"LEAKED\"}",
+            "{\"id\":\"2\",\"error\":\"password is required\"}"),
+        Set.of(body.strip().split("\n")));
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.stub.latency.medianMillis=300",
+      "pld.stub.latency.p99Millis=300",
+      "pld.tenants=checkout",
+      "pld.tenant.checkout.projectId=checkout-proj-id",
+      "pld.tenant.checkout.apiKey=checkout-api-key",
+      "pld.tenant.checkout.admissionLimit=1",
+    })
+public class TenantRoutingTests {
+
+  @Autowired private MockMvc mockMvc;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldRouteByHeader() throws Exception {
+    double checkout = checks("checkout");
+    double byDefault = checks(PldMetrics.DEFAULT_TENANT);
+
+    check(
+        createAssessment("/createAssessment", "headerusername")
+            .header(TenantRegistry.TENANT_HEADER, "checkout"));
+
+    assertEquals(checkout + 1, checks("checkout"));
+    assertEquals(byDefault, checks(PldMetrics.DEFAULT_TENANT));
+  }
+
+  @Test
+  void shouldRouteByPathOverHeader() throws Exception {
+    double checkout = checks("checkout");
+    double byDefault = checks(PldMetrics.DEFAULT_TENANT);
+
+    check(
+        createAssessment("/tenants/checkout/createAssessment", "pathusername")
+            .header(TenantRegistry.TENANT_HEADER, PldMetrics.DEFAULT_TENANT));
+
+    assertEquals(checkout + 1, checks("checkout"));
+    assertEquals(byDefault, checks(PldMetrics.DEFAULT_TENANT));
+  }
+
+  @Test
+  void shouldServeDefaultTenantWithoutHeaderOrPath() throws Exception {
+    double checkout = checks("checkout");
+    double byDefault = checks(PldMetrics.DEFAULT_TENANT);
+
+    check(createAssessment("/createAssessment", "defaultusername"));
+
+    assertEquals(checkout, checks("checkout"));
+    assertEquals(byDefault + 1, checks(PldMetrics.DEFAULT_TENANT));
+  }
+
+  @Test
+  void shouldRejectUnknownTenant() throws Exception {
+    mockMvc
+        .perform(createAssessment("/tenants/unknown/createAssessment", "unknownusername"))
+        .andExpect(status().isNotFound());
+    mockMvc
+        .perform(
+            createAssessment("/createAssessment", "unknownusername")
+                .header(TenantRegistry.TENANT_HEADER, "unknown"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void shouldShedOneTenantWithoutSheddingOthers() throws Exception {
+    MvcResult admitted =
+        mockMvc
+            .perform(createAssessment("/tenants/checkout/createAssessment", "firstusername"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(createAssessment("/tenants/checkout/createAssessment", "secondusername"))
+        .andExpect(status().isServiceUnavailable());
+    check(createAssessment("/createAssessment", "thirdusername"));
+
+    mockMvc.perform(asyncDispatch(admitted)).andExpect(status().isOk());
+    assertEquals(
+        1.0,
+        meterRegistry
+            .get(PldMetrics.REJECTED_COUNTER)
+            .tags("reason", "admission", PldMetrics.TENANT_TAG, "checkout")
+            .counter()
+            .count());
+  }
+
+  private void check(MockHttpServletRequestBuilder builder) throws Exception {
+    MvcResult result = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.leakedStatus").value("NO_STATUS"));
+  }
+
+  private double checks(String tenant) {
+    return meterRegistry
+        .find(PldMetrics.LEAKED_STATUS_COUNTER)
+        .tag(PldMetrics.TENANT_TAG, tenant)
+        .counters()
+        .stream()
+        .mapToDouble(Counter::count)
+        .sum();
+  }
+
+  private static MockHttpServletRequestBuilder createAssessment(String path, String username) {
+    return post(path)
+        .contentType("application/json")
+        .content(
+            """
+            {"username": "%s", "password": "password"}
+            """
+                .formatted(username));
+  }
+}
@@ -27,6 +27,7 @@ import org.springframework.test.context.TestPropertySource;
       "RECAPTCHA_PROJECT_ID=test-proj-id",
       "GOOGLE_CLOUD_API_KEY=test-api-key",
       "pld.recaptchacontext.runinit=true",
+      "pld.grpc.warmup=false",
     })
 public class RecaptchaConfigTests {
 
@@ -0,0 +1,71 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.recaptcha.pld.pld.util.CorpusIndexBuilder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BreachedPasswordCorpusTests {
+
+  @TempDir private Path directory;
+
+  @Test
+  void shouldSwapInReplacedIndex() throws Exception {
+    Path corpusPath = directory.resolve("corpus.idx");
+    build("first", corpusPath);
+    BreachedPasswordCorpus corpus = new BreachedPasswordCorpus(corpusPath, 0);
+    assertTrue(corpus.contains("first"));
+
+    Path replacement = directory.resolve("replacement.idx");
+    build("second", replacement);
+    Files.move(replacement, corpusPath, StandardCopyOption.REPLACE_EXISTING);
+    corpus.reloadIfChanged();
+
+    assertFalse(corpus.contains("first"));
+    assertTrue(corpus.contains("second"));
+  }
+
+  @Test
+  void shouldKeepCurrentIndexWhenReplacementIsInvalid() throws Exception {
+    Path corpusPath = directory.resolve("corpus.idx");
+    build("first", corpusPath);
+    BreachedPasswordCorpus corpus = new BreachedPasswordCorpus(corpusPath, 0);
+
+    Path replacement = Files.writeString(directory.resolve("replacement.idx"), "not an index");
+    Files.move(replacement, corpusPath, StandardCopyOption.REPLACE_EXISTING);
+    corpus.reloadIfChanged();
+
+    assertTrue(corpus.contains("first"));
+  }
+
+  @Test
+  void shouldContainNothingWithoutPath() {
+    BreachedPasswordCorpus corpus = new BreachedPasswordCorpus(null, 0);
+
+    assertFalse(corpus.isLoaded());
+    assertFalse(corpus.contains("first"));
+  }
+
+  private void build(String password, Path output) throws Exception {
+    Path input = Files.writeString(directory.resolve(password + ".txt"), password + "\n");
+    CorpusIndexBuilder.build(input, output, true, 16);
+  }
+}
@@ -0,0 +1,237 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.ServiceOverloadedException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+import tools.jackson.databind.json.JsonMapper;
+
+@SpringBootTest
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.scan.concurrency=2",
+      "pld.scan.maxAttempts=3",
+      "pld.scan.retryBackoffMillis=1",
+    })
+public class BulkScannerTests {
+
+  private static final String INPUT =
+      "leakedusername:leakedpassword\n"
+          + "username:password\r\n"
+          + "not a credential\n"
+          + "otherusername:pass:word\n"
+          + "leakedusername:leakedpassword";
+
+  @Autowired private BulkScanner bulkScanner;
+
+  @Autowired private PldEnvironment env;
+
+  @Autowired private JsonMapper jsonMapper;
+
+  @TempDir private Path directory;
+
+  @Test
+  void shouldWriteVerdictsInInputOrder() throws Exception {
+    Path input = write("credentials.txt", INPUT);
+    Path output = directory.resolve("verdicts.ndjson");
+    Path checkpoint = directory.resolve("verdicts.checkpoint");
+
+    BulkScanner.Summary summary = bulkScanner.scan(input, output, checkpoint);
+
+    assertEquals(
+        List.of(
+            "{\"id\":\"1\",\"leakedStatus\":\"LEAKED\"}",
+            "{\"id\":\"2\",\"leakedStatus\":\"NO_STATUS\"}",
+            "{\"id\":\"3\",\"error\":\"" + BulkScanner.MALFORMED_LINE_MESSAGE + "\"}",
+            "{\"id\":\"4\",\"leakedStatus\":\"NO_STATUS\"}",
+            "{\"id\":\"5\",\"leakedStatus\":\"LEAKED\"}"),
+        Files.readAllLines(output));
+    assertEquals(5, summary.getLines());
+    assertEquals(2, summary.getLeaked());
+    assertEquals(1, summary.getFailed());
+    assertFalse(Files.exists(checkpoint));
+  }
+
+  @Test
+  void shouldResumeFromCheckpoint() throws Exception {
+    Path input = write("credentials.txt", INPUT);
+    String firstLine = "{\"id\":\"1\",\"leakedStatus\":\"LEAKED\"}\n";
+    // Output written after the checkpoint, which a resumed scan must replace.
+    Path output = write("verdicts.ndjson", firstLine + "{\"id\":\"2\",\"leaked");
+    Path checkpoint = directory.resolve("verdicts.checkpoint");
+    new BulkScanner.Checkpoint(
+            "leakedusername:leakedpassword\n".length(),
+            1,
+            firstLine.getBytes(StandardCharsets.UTF_8).length)
+        .write(checkpoint, input, Files.size(input));
+
+    BulkScanner.Summary summary = bulkScanner.scan(input, output, checkpoint);
+
+    List<String> lines = Files.readAllLines(output);
+    assertEquals(5, lines.size());
+    assertEquals("{\"id\":\"2\",\"leakedStatus\":\"NO_STATUS\"}", lines.get(1));
+    assertEquals(5, summary.getLines());
+    assertEquals(1, summary.getLeaked());
+  }
+
+  @Test
+  void shouldRefuseCheckpointOfAnotherInput() throws Exception {
+    Path input = write("credentials.txt", INPUT);
+    Path checkpoint = directory.resolve("verdicts.checkpoint");
+    new BulkScanner.Checkpoint(0, 0, 0).write(checkpoint, input, Files.size(input) + 1);
+
+    assertThrows(
+        IOException.class,
+        () -> bulkScanner.scan(input, directory.resolve("verdicts.ndjson"), checkpoint));
+  }
+
+  @Test
+  void shouldRetryTransientFailures() throws Exception {
+    Path input = write("credentials.txt", "username:password\nother:password\n");
+    LeakCheckService leakCheckService = mock(LeakCheckService.class);
+    AtomicInteger attempts = new AtomicInteger();
+    when(leakCheckService.checkCredentials(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              PlaintextCredentials credentials = invocation.getArgument(0);
+              if (credentials.getUsername().equals("other")) {
+                return CompletableFuture.completedFuture(PldLeakedStatus.NO_STATUS);
+              }
+              switch (attempts.incrementAndGet()) {
+                case 1:
+                  return CompletableFuture.failedFuture(new ServiceOverloadedException());
+                case 2:
+                  return CompletableFuture.failedFuture(
+                      new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT));
+                default:
+                  return CompletableFuture.completedFuture(PldLeakedStatus.LEAKED);
+              }
+            });
+    Path output = directory.resolve("verdicts.ndjson");
+
+    BulkScanner.Summary summary =
+        scanner(leakCheckService).scan(input, output, directory.resolve("verdicts.checkpoint"));
+
+    assertEquals(
+        List.of(
+            "{\"id\":\"1\",\"leakedStatus\":\"LEAKED\"}",
+            "{\"id\":\"2\",\"leakedStatus\":\"NO_STATUS\"}"),
+        Files.readAllLines(output));
+    assertEquals(0, summary.getFailed());
+  }
+
+  @Test
+  void shouldStopBelowLineThatKeepsFailingAndResume() throws Exception {
+    Path input = write("credentials.txt", INPUT);
+    LeakCheckService leakCheckService = mock(LeakCheckService.class);
+    when(leakCheckService.checkCredentials(any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(PldLeakedStatus.LEAKED))
+        .thenReturn(
+            CompletableFuture.failedFuture(
+                new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE)));
+    Path output = directory.resolve("verdicts.ndjson");
+    Path checkpoint = directory.resolve("verdicts.checkpoint");
+
+    assertThrows(
+        IOException.class, () -> scanner(leakCheckService).scan(input, output, checkpoint));
+
+    // Line 2 was tried maxAttempts times and never written as failed.
+    verify(leakCheckService, times(3)).checkCredentials(argThat(c -> c.getId().equals("2")), any());
+    assertEquals(List.of("{\"id\":\"1\",\"leakedStatus\":\"LEAKED\"}"), Files.readAllLines(output));
+    assertTrue(Files.exists(checkpoint));
+
+    BulkScanner.Summary summary = bulkScanner.scan(input, output, checkpoint);
+
+    assertEquals(5, Files.readAllLines(output).size());
+    assertEquals(1, summary.getFailed());
+  }
+
+  @Test
+  void shouldStopOnPermanentFailureWithoutRetrying() throws Exception {
+    Path input = write("credentials.txt", "username:password\n");
+    LeakCheckService leakCheckService = mock(LeakCheckService.class);
+    when(leakCheckService.checkCredentials(any(), any()))
+        .thenReturn(
+            CompletableFuture.failedFuture(new ResponseStatusException(HttpStatus.FORBIDDEN)));
+
+    assertThrows(
+        IOException.class,
+        () ->
+            scanner(leakCheckService)
+                .scan(
+                    input,
+                    directory.resolve("verdicts.ndjson"),
+                    directory.resolve("verdicts.checkpoint")));
+
+    verify(leakCheckService, times(1)).checkCredentials(any(), any());
+  }
+
+  @Test
+  void shouldReplaceCheckpointAtomically() throws Exception {
+    Path input = write("credentials.txt", INPUT);
+    Path checkpoint = directory.resolve("verdicts.checkpoint");
+
+    new BulkScanner.Checkpoint(10, 1, 20).write(checkpoint, input, Files.size(input));
+    new BulkScanner.Checkpoint(30, 2, 40).write(checkpoint, input, Files.size(input));
+
+    BulkScanner.Checkpoint read = BulkScanner.Checkpoint.read(checkpoint, input, Files.size(input));
+    assertEquals(2, read.lines);
+    assertEquals(40, read.outputLength);
+    assertFalse(Files.exists(directory.resolve("verdicts.checkpoint.tmp")));
+  }
+
+  private BulkScanner scanner(LeakCheckService leakCheckService) {
+    Tenant tenant = mock(Tenant.class);
+    when(tenant.getLeakCheckService()).thenReturn(leakCheckService);
+    TenantRegistry tenants = mock(TenantRegistry.class);
+    when(tenants.resolve(any())).thenReturn(tenant);
+    return new BulkScanner(tenants, env, jsonMapper);
+  }
+
+  private Path write(String name, String content) throws IOException {
+    return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,408 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.recaptcha.pld.pld.model.BatchAssessmentResult;
+import com.google.recaptcha.pld.pld.model.Messages;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.pld.util.AdmissionLimiter;
+import com.google.recaptcha.pld.pld.util.CorpusIndexBuilder;
+import com.google.recaptcha.pld.pld.util.CredentialDigest;
+import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.pld.util.RateLimitedException;
+import com.google.recaptcha.pld.pld.util.RateLimiter;
+import com.google.recaptcha.pld.pld.util.RateLimits;
+import io.grpc.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+@ExtendWith(MockitoExtension.class)
+public class LeakCheckServiceTests {
+
+  @Mock private PldService pldService;
+
+  @Mock private RecaptchaContext recaptchaContext;
+
+  @Mock private PldEnvironment env;
+
+  private LeakCheckService leakCheckService;
+
+  private AdmissionLimiter unlimited;
+
+  private final List<CompletableFuture<EncryptedCredentials>> pendingHashes =
+      new CopyOnWriteArrayList<>();
+
+  private final List<BatchAssessmentResult> results = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setupTest() throws Exception {
+    leakCheckService = newLeakCheckService(RateLimits.unlimited());
+    unlimited = new AdmissionLimiter(env, 0, PldMetrics.DEFAULT_TENANT, new SimpleMeterRegistry());
+  }
+
+  @Test
+  void shouldBoundConcurrencyAndReportInCompletionOrder() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+
+    CompletableFuture<Void> batch =
+        CompletableFuture.runAsync(
+            () -> checkAllUninterruptibly(credentials("a", "b", "c").iterator(), 2));
+    await(() -> pendingHashes.size() == 2);
+
+    pendingHashes.get(1).completeExceptionally(new IllegalStateException("b failed"));
+    await(() -> pendingHashes.size() == 3);
+    pendingHashes.get(2).completeExceptionally(new IllegalStateException("c failed"));
+    await(() -> results.size() == 2);
+    assertFalse(batch.isDone());
+    pendingHashes.get(0).completeExceptionally(new IllegalStateException("a failed"));
+
+    batch.get(5, TimeUnit.SECONDS);
+    assertEquals(
+        List.of("b", "c", "a"), results.stream().map(BatchAssessmentResult::getId).toList());
+    assertEquals("b failed", results.get(0).getError());
+    assertNull(results.get(0).getLeakedStatus());
+  }
+
+  @Test
+  void shouldReportInvalidEntriesWithoutHashing() throws Exception {
+    PlaintextCredentials missingPassword = new PlaintextCredentials("usernameABC", null);
+    missingPassword.setId("invalid");
+
+    leakCheckService.checkAll(
+        List.of(missingPassword).iterator(), 4, unlimited, () -> null, results::add);
+
+    assertEquals(1, results.size());
+    assertEquals("invalid", results.get(0).getId());
+    assertEquals("password is required", results.get(0).getError());
+    verify(pldService, never()).newPasswordCheckVerification(any());
+  }
+
+  @Test
+  void shouldShedEntriesOverAdmissionLimit() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+    AdmissionLimiter admissionLimiter =
+        new AdmissionLimiter(env, 1, PldMetrics.DEFAULT_TENANT, new SimpleMeterRegistry());
+
+    CompletableFuture<Void> batch =
+        CompletableFuture.runAsync(
+            () -> {
+              try {
+                leakCheckService.checkAll(
+                    credentials("a", "b").iterator(),
+                    2,
+                    admissionLimiter,
+                    () -> null,
+                    results::add);
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    await(() -> results.size() == 1);
+    pendingHashes.get(0).completeExceptionally(new IllegalStateException("a failed"));
+
+    batch.get(5, TimeUnit.SECONDS);
+    assertEquals(1, pendingHashes.size());
+    assertEquals("b", results.get(0).getId());
+    assertEquals(Messages.SERVICE_OVERLOADED_MESSAGE, results.get(0).getError());
+    assertEquals("a", results.get(1).getId());
+  }
+
+  @Test
+  void shouldCancelChecksInFlightWhenInterrupted() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+    CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+    Thread caller =
+        new Thread(
+            () -> {
+              try {
+                leakCheckService.checkAll(
+                    credentials("a", "b", "c").iterator(), 1, unlimited, () -> null, results::add);
+                interrupted.complete(false);
+              } catch (InterruptedException e) {
+                interrupted.complete(true);
+              }
+            });
+
+    caller.start();
+    await(() -> pendingHashes.size() == 1);
+    caller.interrupt();
+
+    assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+    assertTrue(pendingHashes.get(0).isCancelled());
+    assertEquals(1, pendingHashes.size());
+    assertTrue(results.isEmpty());
+  }
+
+  @Test
+  void shouldFinishChecksInFlightWhenEntriesFail() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+    Iterator<PlaintextCredentials> valid = credentials("a").iterator();
+    Iterator<PlaintextCredentials> entries =
+        new Iterator<>() {
+          @Override
+          public boolean hasNext() {
+            if (!valid.hasNext()) {
+              pendingHashes.get(0).completeExceptionally(new IllegalStateException("a failed"));
+              throw new IllegalArgumentException("malformed");
+            }
+            return true;
+          }
+
+          @Override
+          public PlaintextCredentials next() {
+            return valid.next();
+          }
+        };
+
+    IllegalArgumentException ex =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> leakCheckService.checkAll(entries, 4, unlimited, () -> null, results::add));
+
+    assertEquals("malformed", ex.getMessage());
+    assertEquals(List.of("a"), results.stream().map(BatchAssessmentResult::getId).toList());
+  }
+
+  @Test
+  void shouldCoalesceConcurrentChecksOfSameCredentials() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+
+    CompletableFuture<PldLeakedStatus> first =
+        leakCheckService.checkCredentials(new PlaintextCredentials("username", "password"));
+    CompletableFuture<PldLeakedStatus> second =
+        leakCheckService.checkCredentials(new PlaintextCredentials("username", "password"));
+    leakCheckService.checkCredentials(new PlaintextCredentials("username", "other-password"));
+    assertEquals(2, pendingHashes.size());
+
+    pendingHashes.get(0).completeExceptionally(new IllegalStateException("failed"));
+    assertTrue(first.isCompletedExceptionally());
+    assertTrue(second.isCompletedExceptionally());
+
+    leakCheckService.checkCredentials(new PlaintextCredentials("username", "password"));
+    assertEquals(3, pendingHashes.size());
+  }
+
+  @Test
+  void shouldCancelQueuedHashWhenCallerCancels() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+
+    leakCheckService
+        .checkCredentials(
+            new PlaintextCredentials("username", "password"), Deadline.after(1, TimeUnit.MINUTES))
+        .cancel(true);
+
+    assertTrue(pendingHashes.get(0).isCancelled());
+  }
+
+  @Test
+  void shouldFailWithGatewayTimeoutOncePastDeadline() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+
+    CompletableFuture<PldLeakedStatus> status =
+        leakCheckService.checkCredentials(
+            new PlaintextCredentials("username", "password"),
+            Deadline.after(10, TimeUnit.MILLISECONDS));
+
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> status.get());
+    ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, ex.getCause());
+    assertEquals(HttpStatus.GATEWAY_TIMEOUT, cause.getStatusCode());
+    assertTrue(pendingHashes.get(0).isCompletedExceptionally());
+    verify(recaptchaContext, never())
+        .createAssessmentAsync(any(EncryptedCredentials.class), any(Deadline.class));
+  }
+
+  @Test
+  void shouldBoundEachCoalescedCheckByItsOwnDeadline() throws Exception {
+    when(pldService.newPasswordCheckVerification(any()))
+        .thenAnswer(
+            invocation -> {
+              CompletableFuture<EncryptedCredentials> hash = new CompletableFuture<>();
+              pendingHashes.add(hash);
+              return hash;
+            });
+    PlaintextCredentials credentials = new PlaintextCredentials("username", "password");
+
+    CompletableFuture<PldLeakedStatus> shortDeadline =
+        leakCheckService.checkCredentials(credentials, Deadline.after(10, TimeUnit.MILLISECONDS));
+    CompletableFuture<PldLeakedStatus> longDeadline =
+        leakCheckService.checkCredentials(credentials, Deadline.after(1, TimeUnit.MINUTES));
+
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> shortDeadline.get());
+    assertEquals(
+        HttpStatus.GATEWAY_TIMEOUT,
+        assertInstanceOf(ResponseStatusException.class, ex.getCause()).getStatusCode());
+    assertEquals(1, pendingHashes.size());
+    assertFalse(pendingHashes.get(0).isDone());
+    assertFalse(longDeadline.isDone());
+
+    // The short caller leaves the flight just after its future fails, so the shared check may
+    // only be cancelled a moment after the last caller goes.
+    longDeadline.cancel(true);
+    assertThrows(CancellationException.class, () -> pendingHashes.get(0).get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void shouldRejectUsernameOverRateLimitWithoutHashing() throws Exception {
+    when(pldService.newPasswordCheckVerification(any())).thenReturn(new CompletableFuture<>());
+    leakCheckService =
+        newLeakCheckService(
+            new RateLimits(
+                null, null, new RateLimiter(1, 1, 16, () -> 0L), new CredentialDigest()));
+
+    leakCheckService.checkCredentials(new PlaintextCredentials("username", "first"));
+    CompletableFuture<PldLeakedStatus> second =
+        leakCheckService.checkCredentials(new PlaintextCredentials("username", "second"));
+    leakCheckService.checkCredentials(new PlaintextCredentials("otherusername", "first"));
+
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> second.get());
+    RateLimitedException cause = assertInstanceOf(RateLimitedException.class, ex.getCause());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, cause.getStatusCode());
+    assertEquals(RateLimits.USERNAME, cause.getLimit());
+    verify(pldService, times(2)).newPasswordCheckVerification(any());
+  }
+
+  @Test
+  void shouldReportCorpusPasswordLeakedWithoutHashing(@TempDir Path directory) throws Exception {
+    Path input = Files.writeString(directory.resolve("passwords.txt"), "hunter2\n");
+    Path corpus = directory.resolve("corpus.idx");
+    CorpusIndexBuilder.build(input, corpus, true, 16);
+    leakCheckService =
+        newLeakCheckService(RateLimits.unlimited(), new BreachedPasswordCorpus(corpus, 0));
+
+    PldLeakedStatus status =
+        leakCheckService.checkCredentials(new PlaintextCredentials("username", "hunter2")).get();
+
+    assertEquals(PldLeakedStatus.LEAKED, status);
+    verify(pldService, never()).newPasswordCheckVerification(any());
+  }
+
+  private LeakCheckService newLeakCheckService(RateLimits rateLimits) {
+    return newLeakCheckService(rateLimits, new BreachedPasswordCorpus(null, 0));
+  }
+
+  private LeakCheckService newLeakCheckService(
+      RateLimits rateLimits, BreachedPasswordCorpus breachedPasswordCorpus) {
+    return new LeakCheckService(
+        pldService,
+        recaptchaContext,
+        Validation.buildDefaultValidatorFactory().getValidator(),
+        new VerdictCache(env, new SimpleMeterRegistry()),
+        breachedPasswordCorpus,
+        new CredentialDigest(),
+        rateLimits,
+        new PldMetrics(new SimpleMeterRegistry()),
+        Runnable::run);
+  }
+
+  private void checkAllUninterruptibly(Iterator<PlaintextCredentials> entries, int maxConcurrency) {
+    try {
+      leakCheckService.checkAll(entries, maxConcurrency, unlimited, () -> null, results::add);
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() - deadline < 0, "Timed out waiting for condition");
+      Thread.sleep(1);
+    }
+  }
+
+  private List<PlaintextCredentials> credentials(String... ids) {
+    List<PlaintextCredentials> batch = new ArrayList<>();
+    for (String id : ids) {
+      PlaintextCredentials credentials = new PlaintextCredentials("user-" + id, "password-" + id);
+      credentials.setId(id);
+      batch.add(credentials);
+    }
+    return batch;
+  }
+}
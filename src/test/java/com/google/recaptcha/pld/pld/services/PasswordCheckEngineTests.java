@@ -0,0 +1,245 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerification;
+import com.google.cloud.recaptcha.passwordcheck.PasswordCheckVerifier;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.recaptcha.pld.pld.model.PlaintextCredentials;
+import com.google.recaptcha.pld.pld.stub.StubPasswordLeakServer;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import org.bouncycastle.math.ec.ECPoint;
+import org.junit.jupiter.api.Test;
+
+/** Checks {@link PasswordCheckEngine} against {@link PasswordCheckVerifier}, byte for byte. */
+public class PasswordCheckEngineTests {
+
+  private static final List<PlaintextCredentials> CREDENTIALS =
+      List.of(
+          new PlaintextCredentials("leakedusername", "leakedpassword"),
+          new PlaintextCredentials("Mixed.Case@Example.COM", "p4ssw0rd!"),
+          new PlaintextCredentials("ÜBERNUTZER", "pässwörd"),
+          new PlaintextCredentials("用户名", "密码"),
+          new PlaintextCredentials("", ""));
+
+  private final PasswordCheckVerifier verifier =
+      new PasswordCheckVerifier(MoreExecutors.newDirectExecutorService());
+
+  private final PasswordCheckEngine engine =
+      new PasswordCheckEngine(MoreExecutors.directExecutor());
+
+  @Test
+  void shouldSendWhatTheHelperLibrarySends() throws Exception {
+    for (PlaintextCredentials credentials : CREDENTIALS) {
+      PasswordCheckVerification expected =
+          verifier.createVerification(credentials.getUsername(), credentials.getPassword()).get();
+      EncryptedCredentials actual =
+          engine.createVerification(credentials.getUsername(), credentials.getPassword()).get();
+
+      assertEquals(expected.getUsername(), actual.getUsername());
+      assertArrayEquals(expected.getLookupHashPrefix(), actual.getLookupHashPrefix().toByteArray());
+      assertEquals(
+          expected.getEncryptedUserCredentialsHash().length,
+          actual.getEncryptedUserCredentialsHash().size());
+    }
+  }
+
+  @Test
+  void shouldReachTheHelperLibrarysVerdictsOnServerAnswers() throws Exception {
+    List<PlaintextCredentials> leaked = CREDENTIALS.subList(0, 3);
+    StubPasswordLeakServer server = new StubPasswordLeakServer(leaked);
+    List<PlaintextCredentials> candidates = new ArrayList<>(CREDENTIALS);
+    candidates.add(new PlaintextCredentials("LeakedUserName", "leakedpassword"));
+    candidates.add(new PlaintextCredentials("leakedusername", "leakedpassword2"));
+
+    for (PlaintextCredentials credentials : candidates) {
+      PasswordCheckVerification expected =
+          verifier.createVerification(credentials.getUsername(), credentials.getPassword()).get();
+      PrivatePasswordLeakVerification expectedAnswer =
+          server.answer(
+              PrivatePasswordLeakVerification.newBuilder()
+                  .setLookupHashPrefix(ByteString.copyFrom(expected.getLookupHashPrefix()))
+                  .setEncryptedUserCredentialsHash(
+                      ByteString.copyFrom(expected.getEncryptedUserCredentialsHash()))
+                  .build());
+      EncryptedCredentials actual =
+          engine.createVerification(credentials.getUsername(), credentials.getPassword()).get();
+      PrivatePasswordLeakVerification actualAnswer =
+          server.answer(
+              PrivatePasswordLeakVerification.newBuilder()
+                  .setLookupHashPrefix(actual.getLookupHashPrefix())
+                  .setEncryptedUserCredentialsHash(actual.getEncryptedUserCredentialsHash())
+                  .build());
+
+      boolean expectedLeaked = verify(expected, expectedAnswer);
+      assertEquals(isLeaked(credentials, leaked), expectedLeaked, credentials.getUsername());
+      assertEquals(expectedLeaked, engine.verify(actual, actualAnswer).get());
+    }
+  }
+
+  @Test
+  void shouldMatchTheHelperLibraryOnArbitraryMatchPrefixes() throws Exception {
+    PlaintextCredentials credentials = CREDENTIALS.get(0);
+    BigInteger serverKey = BigInteger.valueOf(0x5eed);
+    byte[] digest =
+        PasswordCheckEngine.matchDigest(
+            PasswordCheckEngine.credentialsPoint(
+                    credentials.getUsername(), credentials.getPassword())
+                .multiply(serverKey));
+    PasswordCheckVerification expected =
+        verifier.createVerification(credentials.getUsername(), credentials.getPassword()).get();
+    byte[] expectedReEncrypted = reEncrypt(expected.getEncryptedUserCredentialsHash(), serverKey);
+    EncryptedCredentials actual =
+        engine.createVerification(credentials.getUsername(), credentials.getPassword()).get();
+    ByteString actualReEncrypted =
+        ByteString.copyFrom(
+            reEncrypt(actual.getEncryptedUserCredentialsHash().toByteArray(), serverKey));
+
+    Random random = new Random(42);
+    int leakedCount = 0;
+    for (int i = 0; i < 2000; i++) {
+      List<ByteString> prefixes = randomPrefixes(digest, random);
+      boolean expectedLeaked =
+          verifier
+              .verify(
+                  expected,
+                  expectedReEncrypted,
+                  prefixes.stream().map(ByteString::toByteArray).toList())
+              .get()
+              .areCredentialsLeaked();
+      PrivatePasswordLeakVerification answer =
+          PrivatePasswordLeakVerification.newBuilder()
+              .setReencryptedUserCredentialsHash(actualReEncrypted)
+              .addAllEncryptedLeakMatchPrefixes(prefixes)
+              .build();
+
+      assertEquals(expectedLeaked, engine.verify(actual, answer).get(), "prefixes " + prefixes);
+      leakedCount += expectedLeaked ? 1 : 0;
+    }
+    assertTrue(leakedCount > 100 && leakedCount < 1900, "leaked in " + leakedCount + " of 2000");
+  }
+
+  @Test
+  void shouldFailOnAnAnswerThatIsNotACurvePoint() throws Exception {
+    byte[] notAPoint = new byte[33];
+    Arrays.fill(notAPoint, (byte) 0xFF);
+    notAPoint[0] = 0x02;
+    PasswordCheckVerification expected = verifier.createVerification("user", "password").get();
+    EncryptedCredentials actual = engine.createVerification("user", "password").get();
+
+    assertThrows(
+        ExecutionException.class,
+        () -> verifier.verify(expected, notAPoint, List.of(new byte[0])).get());
+    assertThrows(
+        ExecutionException.class,
+        () ->
+            engine
+                .verify(
+                    actual,
+                    PrivatePasswordLeakVerification.newBuilder()
+                        .setReencryptedUserCredentialsHash(ByteString.copyFrom(notAPoint))
+                        .addEncryptedLeakMatchPrefixes(ByteString.EMPTY)
+                        .build())
+                .get());
+  }
+
+  /** Usernames are compared case-insensitively, so a differently cased username is leaked too. */
+  private static boolean isLeaked(
+      PlaintextCredentials credentials, List<PlaintextCredentials> leaked) {
+    return leaked.stream()
+        .anyMatch(
+            l ->
+                l.getUsername().equalsIgnoreCase(credentials.getUsername())
+                    && l.getPassword().equals(credentials.getPassword()));
+  }
+
+  private boolean verify(
+      PasswordCheckVerification verification, PrivatePasswordLeakVerification answer)
+      throws Exception {
+    return verifier
+        .verify(
+            verification,
+            answer.getReencryptedUserCredentialsHash().toByteArray(),
+            answer.getEncryptedLeakMatchPrefixesList().stream()
+                .map(ByteString::toByteArray)
+                .toList())
+        .get()
+        .areCredentialsLeaked();
+  }
+
+  private static byte[] reEncrypt(byte[] encodedPoint, BigInteger key) {
+    ECPoint point = PasswordCheckEngine.CURVE.getCurve().decodePoint(encodedPoint);
+    return point.multiply(key).normalize().getEncoded(true);
+  }
+
+  /**
+   * Returns up to 16 prefixes, mixing random bytes, prefixes of {@code digest}, near misses of
+   * them, prefixes longer than the digest, duplicates and views into larger buffers.
+   */
+  private static List<ByteString> randomPrefixes(byte[] digest, Random random) {
+    int count = random.nextInt(17);
+    List<ByteString> prefixes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      switch (random.nextInt(7)) {
+        case 0 -> {
+          byte[] bytes = new byte[random.nextInt(24)];
+          random.nextBytes(bytes);
+          prefixes.add(ByteString.copyFrom(bytes));
+        }
+        case 1 -> prefixes.add(ByteString.copyFrom(digest, 0, 1 + random.nextInt(digest.length)));
+        case 2 -> {
+          byte[] nearMiss = Arrays.copyOf(digest, 1 + random.nextInt(digest.length));
+          nearMiss[random.nextInt(nearMiss.length)] ^= (byte) (1 << random.nextInt(8));
+          prefixes.add(ByteString.copyFrom(nearMiss));
+        }
+        case 3 -> {
+          byte[] overLong = Arrays.copyOf(digest, digest.length + 1 + random.nextInt(8));
+          prefixes.add(ByteString.copyFrom(overLong));
+        }
+        case 4 -> {
+          if (!prefixes.isEmpty()) {
+            prefixes.add(prefixes.get(random.nextInt(prefixes.size())));
+          }
+        }
+        case 5 -> {
+          int offset = random.nextInt(8);
+          byte[] buffer = new byte[offset + digest.length + 8];
+          random.nextBytes(buffer);
+          int length = 1 + random.nextInt(digest.length);
+          System.arraycopy(digest, 0, buffer, offset, length);
+          prefixes.add(ByteString.copyFrom(buffer).substring(offset, offset + length));
+        }
+        default -> {
+          byte[] bytes = new byte[1 + random.nextInt(3)];
+          random.nextBytes(bytes);
+          bytes[0] = (byte) (digest[0] + 1);
+          prefixes.add(ByteString.copyFrom(bytes));
+        }
+      }
+    }
+    return prefixes;
+  }
+}
@@ -14,23 +14,63 @@
 package com.google.recaptcha.pld.pld.services;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.api.gax.rpc.UnaryCallable;
 import com.google.cloud.recaptchaenterprise.v1.RecaptchaEnterpriseServiceClient;
 import com.google.cloud.recaptchaenterprise.v1.RecaptchaEnterpriseServiceSettings;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
 import com.google.recaptcha.pld.pld.model.Messages;
 import com.google.recaptcha.pld.pld.model.RecaptchaAuthMethod;
 import com.google.recaptcha.pld.pld.model.RecaptchaConfig;
+import com.google.recaptcha.pld.pld.model.VerificationResponse;
 import com.google.recaptcha.pld.pld.util.PldEnvironment;
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.pld.util.RequestHedger;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.CreateAssessmentRequest;
+import com.google.recaptchaenterprise.v1.ListKeysRequest;
+import com.google.recaptchaenterprise.v1.ListKeysResponse;
+import com.google.recaptchaenterprise.v1.RiskAnalysis;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.server.ResponseStatusException;
 
-@SpringBootTest(classes = {RecaptchaContext.class, PldEnvironment.class})
+@SpringBootTest(
+    classes = {
+      RecaptchaContext.class,
+      PldEnvironment.class,
+      PldMetrics.class,
+      RequestHedger.class,
+      RecaptchaContextTests.CompletionExecutorConfig.class
+    })
 @TestPropertySource(
     properties = {
       "PASSWORD_CHECK_THREAD_POOL=5",
@@ -40,14 +80,34 @@ import org.springframework.test.context.TestPropertySource;
     })
 public class RecaptchaContextTests {
 
+  @TestConfiguration
+  static class CompletionExecutorConfig {
+    @Bean
+    ExecutorService recaptchaCompletionExecutorService() {
+      return MoreExecutors.newDirectExecutorService();
+    }
+
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
   @MockitoBean private PldEnvironment env;
   @Autowired private RecaptchaContext recaptchaContext;
+  @Autowired private MeterRegistry meterRegistry;
 
   @BeforeEach
   void setupTest() {
     when(env.getProjectId()).thenReturn("test-project-id-mock");
   }
 
+  /** Shuts down the channels of the client a test initialized. */
+  @AfterEach
+  void closeClient() {
+    recaptchaContext.cleanup();
+  }
+
   @Test
   void shouldLoadApiCredentials() throws IllegalArgumentException, IOException {
     when(env.defaultCredentialsAreSet()).thenReturn(false);
@@ -95,4 +155,182 @@ public class RecaptchaContextTests {
         assertThrows(IllegalArgumentException.class, () -> recaptchaContext.initializeInternal());
     assertEquals(Messages.EMPTY_API_KEY_MESSAGE, ex.getMessage());
   }
+
+  @Test
+  void shouldCreateAssessmentThroughAsyncCallable() throws Exception {
+    when(env.defaultCredentialsAreSet()).thenReturn(false);
+    when(env.getApiKey()).thenReturn("test-api-key-mock");
+    recaptchaContext.initializeInternal();
+
+    Assessment response =
+        Assessment.newBuilder().setRiskAnalysis(RiskAnalysis.newBuilder().setScore(0.9f)).build();
+    UnaryCallable<CreateAssessmentRequest, Assessment> callable = mockCreateAssessmentCallable();
+    when(callable.futureCall(any(CreateAssessmentRequest.class)))
+        .thenReturn(ApiFutures.immediateFuture(response));
+
+    EncryptedCredentials verification = newVerification();
+    VerificationResponse result =
+        recaptchaContext.createAssessmentAsync(verification, Assessment.getDefaultInstance()).get();
+
+    assertEquals(response, result.getAssessment());
+    assertSame(verification, result.getPasswordCheckVerification());
+
+    ArgumentCaptor<CreateAssessmentRequest> request =
+        ArgumentCaptor.forClass(CreateAssessmentRequest.class);
+    verify(callable).futureCall(request.capture());
+    assertEquals("projects/test-project-id-mock", request.getValue().getParent());
+    assertEquals(
+        verification.getLookupHashPrefix(),
+        request
+            .getValue()
+            .getAssessment()
+            .getPrivatePasswordLeakVerification()
+            .getLookupHashPrefix());
+  }
+
+  @Test
+  void shouldConvertGrpcFailureToResponseStatus() throws Exception {
+    when(env.defaultCredentialsAreSet()).thenReturn(false);
+    when(env.getApiKey()).thenReturn("test-api-key-mock");
+    recaptchaContext.initializeInternal();
+
+    UnaryCallable<CreateAssessmentRequest, Assessment> callable = mockCreateAssessmentCallable();
+    when(callable.futureCall(any(CreateAssessmentRequest.class)))
+        .thenReturn(
+            ApiFutures.immediateFailedFuture(
+                ApiExceptionFactory.createException(
+                    new RuntimeException("unavailable"),
+                    GrpcStatusCode.of(Status.Code.UNAVAILABLE),
+                    true)));
+
+    CompletionException ex =
+        assertThrows(
+            CompletionException.class,
+            () -> recaptchaContext.createAssessmentAsync(newVerification()).join());
+    ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, ex.getCause());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, cause.getStatusCode());
+    assertEquals(
+        1,
+        meterRegistry
+            .get(PldMetrics.RECAPTCHA_CALLS_COUNTER)
+            .tag("code", "UNAVAILABLE")
+            .counter()
+            .count());
+  }
+
+  @Test
+  void shouldPassRemainingTimeToRpc() throws Exception {
+    when(env.defaultCredentialsAreSet()).thenReturn(false);
+    when(env.getApiKey()).thenReturn("test-api-key-mock");
+    recaptchaContext.initializeInternal();
+
+    UnaryCallable<CreateAssessmentRequest, Assessment> callable = mockCreateAssessmentCallable();
+    when(callable.futureCall(any(CreateAssessmentRequest.class), any(ApiCallContext.class)))
+        .thenReturn(ApiFutures.immediateFuture(Assessment.getDefaultInstance()));
+
+    recaptchaContext
+        .createAssessmentAsync(newVerification(), Deadline.after(2, TimeUnit.SECONDS))
+        .join();
+
+    ArgumentCaptor<ApiCallContext> context = ArgumentCaptor.forClass(ApiCallContext.class);
+    verify(callable).futureCall(any(CreateAssessmentRequest.class), context.capture());
+    Duration timeout = context.getValue().getTimeoutDuration();
+    assertTrue(timeout.compareTo(Duration.ofSeconds(2)) <= 0);
+    assertTrue(timeout.compareTo(Duration.ZERO) > 0);
+  }
+
+  @Test
+  void shouldNotCallApiPastDeadline() throws Exception {
+    when(env.defaultCredentialsAreSet()).thenReturn(false);
+    when(env.getApiKey()).thenReturn("test-api-key-mock");
+    recaptchaContext.initializeInternal();
+    UnaryCallable<CreateAssessmentRequest, Assessment> callable = mockCreateAssessmentCallable();
+
+    CompletionException ex =
+        assertThrows(
+            CompletionException.class,
+            () ->
+                recaptchaContext
+                    .createAssessmentAsync(
+                        newVerification(), Deadline.after(-1, TimeUnit.MILLISECONDS))
+                    .join());
+    ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, ex.getCause());
+    assertEquals(HttpStatus.GATEWAY_TIMEOUT, cause.getStatusCode());
+    verifyNoInteractions(callable);
+  }
+
+  @Test
+  void shouldPoolChannels() throws Exception {
+    when(env.defaultCredentialsAreSet()).thenReturn(false);
+    when(env.getApiKey()).thenReturn("test-api-key-mock");
+    when(env.getGrpcMinChannels()).thenReturn(2);
+    when(env.getGrpcMaxChannels()).thenReturn(6);
+    when(env.getGrpcMaxRpcsPerChannel()).thenReturn(50);
+    recaptchaContext.initializeInternal();
+
+    InstantiatingGrpcChannelProvider provider =
+        assertInstanceOf(
+            InstantiatingGrpcChannelProvider.class,
+            recaptchaContext.getRecaptchaClient().getSettings().getTransportChannelProvider());
+    ChannelPoolSettings pool = provider.getChannelPoolSettings();
+    assertEquals(2, pool.getInitialChannelCount());
+    assertEquals(2, pool.getMinChannelCount());
+    assertEquals(6, pool.getMaxChannelCount());
+    assertEquals(50, pool.getMaxRpcsPerChannel());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldCountWarmupCallsThatReachApi() throws Exception {
+    when(env.defaultCredentialsAreSet()).thenReturn(false);
+    when(env.getApiKey()).thenReturn("test-api-key-mock");
+    when(env.getGrpcMinChannels()).thenReturn(3);
+    when(env.getGrpcWarmupTimeoutMillis()).thenReturn(1_000L);
+    recaptchaContext.initializeInternal();
+
+    UnaryCallable<ListKeysRequest, ListKeysResponse> callable = mock(UnaryCallable.class);
+    RecaptchaEnterpriseServiceClient client = mock(RecaptchaEnterpriseServiceClient.class);
+    when(client.listKeysCallable()).thenReturn(callable);
+    replaceClient(client);
+    when(callable.futureCall(any(ListKeysRequest.class), any(ApiCallContext.class)))
+        .thenReturn(ApiFutures.immediateFuture(ListKeysResponse.getDefaultInstance()))
+        .thenReturn(
+            ApiFutures.immediateFailedFuture(
+                ApiExceptionFactory.createException(
+                    new RuntimeException("denied"),
+                    GrpcStatusCode.of(Status.Code.PERMISSION_DENIED),
+                    false)))
+        .thenReturn(
+            ApiFutures.immediateFailedFuture(
+                ApiExceptionFactory.createException(
+                    new RuntimeException("unavailable"),
+                    GrpcStatusCode.of(Status.Code.UNAVAILABLE),
+                    true)));
+
+    assertEquals(2, recaptchaContext.warmUp().get(1, TimeUnit.SECONDS));
+    verify(callable, times(3)).futureCall(any(ListKeysRequest.class), any(ApiCallContext.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  private UnaryCallable<CreateAssessmentRequest, Assessment> mockCreateAssessmentCallable() {
+    UnaryCallable<CreateAssessmentRequest, Assessment> callable = mock(UnaryCallable.class);
+    RecaptchaEnterpriseServiceClient client = mock(RecaptchaEnterpriseServiceClient.class);
+    when(client.createAssessmentCallable()).thenReturn(callable);
+    replaceClient(client);
+    return callable;
+  }
+
+  /** Swaps {@code client} in for the one the context built, closing that one's channels. */
+  private void replaceClient(RecaptchaEnterpriseServiceClient client) {
+    recaptchaContext.cleanup();
+    recaptchaContext.setRecaptchaClient(client);
+  }
+
+  private EncryptedCredentials newVerification() {
+    return new EncryptedCredentials(
+        "user",
+        ByteString.copyFrom(new byte[] {1, 2, 3}),
+        ByteString.copyFrom(new byte[] {4, 5, 6}),
+        BigInteger.ONE);
+  }
 }
@@ -0,0 +1,126 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.cache.enabled=true",
+    })
+public class VerdictCacheTests {
+
+  @Autowired private MockMvc mockMvc;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldSkipHashingForRepeatedCredentials() throws Exception {
+    String credentials =
+        """
+        {
+          "username": "leakedusername",
+          "password": "leakedpassword"
+        }
+        """;
+    long hashes = stageCount(PldMetrics.HASH_STAGE);
+    long assessments = stageCount(PldMetrics.ASSESSMENT_STAGE);
+
+    perform("/createAssessment", credentials).andExpect(jsonPath("$.leakedStatus").value("LEAKED"));
+    perform("/createAssessment", credentials).andExpect(jsonPath("$.leakedStatus").value("LEAKED"));
+    assertEquals(hashes + 1, stageCount(PldMetrics.HASH_STAGE));
+    assertEquals(assessments + 1, awaitStageCount(PldMetrics.ASSESSMENT_STAGE, assessments + 1));
+
+    // A merge still assesses the event, but reuses the cached verdict.
+    perform(
+            "/mergeAssessment",
+            """
+            {
+              "credentials": %s,
+              "assessment": {
+                "event": {
+                  "siteKey": "fake-site-key",
+                  "token": "fake-token"
+                }
+              }
+            }
+            """
+                .formatted(credentials))
+        .andExpect(jsonPath("$.pldLeakedStatus").value("LEAKED"));
+    assertEquals(hashes + 1, stageCount(PldMetrics.HASH_STAGE));
+    assertEquals(assessments + 2, awaitStageCount(PldMetrics.ASSESSMENT_STAGE, assessments + 2));
+    assertEquals(
+        2.0,
+        meterRegistry
+            .get("cache.gets")
+            .tags("cache", "pldVerdicts", "result", "hit")
+            .functionCounter()
+            .count());
+  }
+
+  private long stageCount(String stage) {
+    return meterRegistry
+        .find(PldMetrics.STAGE_TIMER)
+        .tags("stage", stage, "outcome", "success")
+        .timers()
+        .stream()
+        .mapToLong(timer -> timer.count())
+        .sum();
+  }
+
+  /**
+   * Returns the count of {@code stage} once it reaches {@code expected}, or after a second. A stage
+   * is timed when its future completes, which can be just after the response is written.
+   */
+  private long awaitStageCount(String stage, long expected) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    while (stageCount(stage) < expected && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    return stageCount(stage);
+  }
+
+  private ResultActions perform(String path, String body) throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(post(path).contentType("application/json").content(body))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    return mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+  }
+}
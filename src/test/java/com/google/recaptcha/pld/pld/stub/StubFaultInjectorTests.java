@@ -0,0 +1,68 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.stub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.grpc.Status;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class StubFaultInjectorTests {
+
+  @Test
+  void shouldNotInjectAnythingByDefault() {
+    StubFaultInjector injector = new StubFaultInjector(0, 0, 0, List.of());
+
+    assertEquals(0, injector.nextLatencyNanos());
+    assertNull(injector.nextError());
+  }
+
+  @Test
+  void shouldFitLatencyToMedianAndP99() {
+    StubFaultInjector injector = new StubFaultInjector(20, 200, 0, List.of());
+
+    long[] samples = new long[100_000];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = injector.nextLatencyNanos();
+    }
+    Arrays.sort(samples);
+
+    double median = samples[samples.length / 2] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    double p99 = samples[samples.length * 99 / 100] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    assertEquals(20, median, 2);
+    assertEquals(200, p99, 30);
+  }
+
+  @Test
+  void shouldInjectConfiguredCodes() {
+    StubFaultInjector injector =
+        new StubFaultInjector(0, 0, 1, List.of(Status.Code.UNAVAILABLE, Status.Code.INTERNAL));
+
+    for (int i = 0; i < 100; i++) {
+      Status.Code code = injector.nextError().getCode();
+      assertTrue(code == Status.Code.UNAVAILABLE || code == Status.Code.INTERNAL);
+    }
+  }
+
+  @Test
+  void shouldRejectErrorRateWithoutCodes() {
+    assertThrows(IllegalArgumentException.class, () -> new StubFaultInjector(0, 0, 0.5, List.of()));
+  }
+}
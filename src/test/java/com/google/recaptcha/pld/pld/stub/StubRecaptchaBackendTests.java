@@ -0,0 +1,191 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.stub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.recaptcha.pld.pld.util.PldMetrics;
+import com.google.recaptcha.pld.v1.Credentials;
+import com.google.recaptcha.pld.v1.MergeAssessmentRequest;
+import com.google.recaptcha.pld.v1.MergeAssessmentResponse;
+import com.google.recaptcha.pld.v1.PldLeakedStatus;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.stub.leakedCredentials=leakedusername:leakedpassword,other@example.com:pass:word",
+      "pld.stub.leakedCredentialsFile=src/test/resources/stub-leaked-credentials.txt",
+    })
+public class StubRecaptchaBackendTests {
+
+  @Autowired private MockMvc mockMvc;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldReportLeakedCredentials() throws Exception {
+    assertLeakedStatus("leakedusername", "leakedpassword", "LEAKED");
+    assertLeakedStatus("other@example.com", "pass:word", "LEAKED");
+    assertLeakedStatus("comma@example.com", "pass,word", "LEAKED");
+  }
+
+  @Test
+  void shouldReportUnknownCredentials() throws Exception {
+    assertLeakedStatus("leakedusername", "a-fresh-password", "NO_STATUS");
+    assertLeakedStatus("freshusername", "leakedpassword", "NO_STATUS");
+  }
+
+  @Test
+  void shouldMergeAssessment() throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/mergeAssessment")
+                    .contentType("application/json")
+                    .content(
+                        """
+                        {
+                          "credentials": {
+                            "username": "leakedusername",
+                            "password": "leakedpassword"
+                          },
+                          "assessment": {
+                            "event": {
+                              "siteKey": "fake-site-key",
+                              "token": "fake-token"
+                            }
+                          }
+                        }
+                        """))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.pldLeakedStatus").value("LEAKED"));
+  }
+
+  @Test
+  void shouldMergeAssessmentAsProtobuf() throws Exception {
+    MergeAssessmentRequest request =
+        MergeAssessmentRequest.newBuilder()
+            .setCredentials(
+                Credentials.newBuilder()
+                    .setUsername("leakedusername")
+                    .setPassword("leakedpassword"))
+            .setAssessment(
+                Assessment.newBuilder()
+                    .setEvent(
+                        Event.newBuilder().setSiteKey("fake-site-key").setToken("fake-token")))
+            .build();
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/mergeAssessment")
+                    .contentType(ProtobufHttpMessageConverter.PROTOBUF)
+                    .accept(ProtobufHttpMessageConverter.PROTOBUF)
+                    .content(request.toByteArray()))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    byte[] response =
+        mockMvc
+            .perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(ProtobufHttpMessageConverter.PROTOBUF))
+            .andReturn()
+            .getResponse()
+            .getContentAsByteArray();
+    MergeAssessmentResponse merged = MergeAssessmentResponse.parseFrom(response);
+    assertEquals(PldLeakedStatus.LEAKED, merged.getPldLeakedStatus());
+    assertTrue(merged.hasAssessment());
+    Assessment assessment = merged.getAssessment();
+    assertEquals("fake-site-key", assessment.getEvent().getSiteKey());
+  }
+
+  @Test
+  void shouldRecordStageMetrics() throws Exception {
+    assertLeakedStatus("leakedusername", "leakedpassword", "LEAKED");
+
+    for (String stage :
+        List.of(PldMetrics.HASH_STAGE, PldMetrics.ASSESSMENT_STAGE, PldMetrics.VERIFY_STAGE)) {
+      assertTrue(
+          meterRegistry
+                  .get(PldMetrics.STAGE_TIMER)
+                  .tags("stage", stage, "outcome", "success")
+                  .timer()
+                  .count()
+              > 0,
+          stage);
+    }
+    assertTrue(
+        meterRegistry
+                .get(PldMetrics.LEAKED_STATUS_COUNTER)
+                .tag("status", "LEAKED")
+                .counter()
+                .count()
+            > 0);
+    assertTrue(
+        meterRegistry.get(PldMetrics.RECAPTCHA_CALLS_COUNTER).tag("code", "OK").counter().count()
+            > 0);
+    assertNotNull(meterRegistry.get("executor.queued").tag("name", "passwordCheck").gauge());
+  }
+
+  private void assertLeakedStatus(String username, String password, String expected)
+      throws Exception {
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/createAssessment")
+                    .contentType("application/json")
+                    .content(
+                        String.format(
+                            "{\"username\": \"%s\", \"password\": \"%s\"}", username, password)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.leakedStatus").value(expected));
+  }
+}
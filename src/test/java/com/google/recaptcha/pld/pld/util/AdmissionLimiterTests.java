@@ -0,0 +1,104 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class AdmissionLimiterTests {
+
+  @Test
+  void shouldAdmitEverythingWhenDisabled() {
+    AdmissionLimiter limiter = limiter(0, false, 0);
+    for (int i = 0; i < 100; i++) {
+      limiter.admit(CompletableFuture::new);
+    }
+  }
+
+  @Test
+  void shouldRejectBeyondLimitUntilReleased() {
+    AdmissionLimiter limiter = limiter(2, false, 1000);
+    CompletableFuture<String> first = new CompletableFuture<>();
+    limiter.admit(() -> first);
+    limiter.admit(CompletableFuture::new);
+
+    assertThrows(ServiceOverloadedException.class, () -> limiter.admit(CompletableFuture::new));
+    first.complete("done");
+    limiter.admit(CompletableFuture::new);
+  }
+
+  @Test
+  void shouldReleaseWhenCallThrows() {
+    AdmissionLimiter limiter = limiter(1, false, 1000);
+    assertThrows(
+        RejectedExecutionException.class,
+        () ->
+            limiter.admit(
+                () -> {
+                  throw new RejectedExecutionException();
+                }));
+    assertEquals("ok", limiter.admit(() -> CompletableFuture.completedFuture("ok")).join());
+  }
+
+  @Test
+  void shouldBackOffToMinimumOnSlowRequests() {
+    AdmissionLimiter limiter = limiter(10, true, 0);
+    for (int i = 0; i < 100; i++) {
+      limiter.admit(() -> CompletableFuture.completedFuture("slow"));
+    }
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  void shouldNotGrowPastConfiguredLimit() {
+    AdmissionLimiter limiter = limiter(10, true, 60_000);
+    for (int i = 0; i < 100; i++) {
+      limiter.admit(() -> CompletableFuture.completedFuture("fast"));
+    }
+    assertEquals(10, limiter.getLimit());
+  }
+
+  @Test
+  void shouldRecognizeOverloadErrors() {
+    assertTrue(
+        AdmissionLimiter.isOverload(new CompletionException(new RejectedExecutionException())));
+    assertTrue(
+        AdmissionLimiter.isOverload(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE)));
+    assertTrue(
+        AdmissionLimiter.isOverload(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS)));
+    assertFalse(AdmissionLimiter.isOverload(new ResponseStatusException(HttpStatus.NOT_FOUND)));
+    assertFalse(AdmissionLimiter.isOverload(null));
+  }
+
+  private static AdmissionLimiter limiter(int limit, boolean adaptive, long targetLatencyMillis) {
+    PldEnvironment env = mock(PldEnvironment.class);
+    when(env.getAdmissionLimit()).thenReturn(limit);
+    when(env.isAdmissionAdaptive()).thenReturn(adaptive);
+    when(env.getAdmissionMinLimit()).thenReturn(2);
+    when(env.getAdmissionTargetLatencyMillis()).thenReturn(targetLatencyMillis);
+    return new AdmissionLimiter(env, new SimpleMeterRegistry());
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import com.google.recaptchaenterprise.v1.PrivatePasswordLeakVerification;
+import com.google.recaptchaenterprise.v1.RiskAnalysis;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+public class AssessmentJsonComponentTests {
+
+  private final JsonMapper mapper = new JsonMapper();
+
+  private final Assessment assessment =
+      Assessment.newBuilder()
+          .setEvent(Event.newBuilder().setSiteKey("site-key").setToken("to\"ken"))
+          .setRiskAnalysis(
+              RiskAnalysis.newBuilder()
+                  .setScore(0.9f)
+                  .addReasons(RiskAnalysis.ClassificationReason.AUTOMATION))
+          .setPrivatePasswordLeakVerification(
+              PrivatePasswordLeakVerification.newBuilder()
+                  .setLookupHashPrefix(ByteString.copyFrom(new byte[] {1, 2, 3}))
+                  .addEncryptedLeakMatchPrefixes(ByteString.copyFrom(new byte[] {4, 5})))
+          .build();
+
+  @Test
+  void shouldWriteAssessmentAsObject() {
+    JsonNode response =
+        mapper.readTree(
+            mapper.writeValueAsString(
+                new MergeAssessmentResponse(assessment, PldLeakedStatus.LEAKED)));
+
+    JsonNode written = response.get("assessment");
+    assertTrue(written.isObject());
+    assertEquals("to\"ken", written.get("event").get("token").asString());
+    assertEquals("AUTOMATION", written.get("riskAnalysis").get("reasons").get(0).asString());
+    assertEquals("LEAKED", response.get("pldLeakedStatus").asString());
+  }
+
+  @Test
+  void shouldRoundTripAssessment() {
+    String json =
+        mapper
+            .writeValueAsString(new MergeAssessmentResponse(assessment, PldLeakedStatus.LEAKED))
+            .replace("\"pldLeakedStatus\":\"LEAKED\"", "\"credentials\":{\"username\":\"u\"}");
+
+    MergeAssessmentRequest request = mapper.readValue(json, MergeAssessmentRequest.class);
+
+    assertEquals(assessment, request.getAssessment());
+    // The fields after the assessment are still read.
+    assertEquals("u", request.getCredentials().getUsername());
+  }
+
+  @Test
+  void shouldRejectInvalidAssessment() {
+    assertThrows(
+        RuntimeException.class,
+        () ->
+            mapper.readValue(
+                "{\"assessment\": {\"noSuchField\": 1}}", MergeAssessmentRequest.class));
+  }
+}
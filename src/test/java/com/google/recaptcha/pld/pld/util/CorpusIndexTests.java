@@ -0,0 +1,93 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CorpusIndexTests {
+
+  @TempDir private Path directory;
+
+  @Test
+  void shouldFindPasswordsAcrossSortedRuns() throws Exception {
+    List<String> lines = new ArrayList<>();
+    for (int i = 999; i >= 0; i--) {
+      lines.add("password" + i);
+    }
+    lines.add("password7");
+    lines.add("");
+    Path input = Files.write(directory.resolve("passwords.txt"), lines, StandardCharsets.UTF_8);
+    Path output = directory.resolve("corpus.idx");
+
+    assertEquals(1000, CorpusIndexBuilder.build(input, output, true, 64));
+
+    CorpusIndex index = CorpusIndex.open(output);
+    assertEquals(1000, index.entries());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(index.contains("password" + i));
+    }
+    for (int i = 1000; i < 2000; i++) {
+      assertFalse(index.contains("password" + i));
+    }
+  }
+
+  @Test
+  void shouldReadSha1HashesWithCounts() throws Exception {
+    String hash =
+        HexFormat.of()
+            .withUpperCase()
+            .formatHex(CorpusIndex.newSha1().digest("hunter2".getBytes(StandardCharsets.UTF_8)));
+    Path input =
+        Files.writeString(
+            directory.resolve("hashes.txt"),
+            hash + ":17\n" + "0000000000000000000000000000000000000000:1\n");
+    Path output = directory.resolve("corpus.idx");
+
+    CorpusIndexBuilder.build(input, output, false, 1024);
+
+    CorpusIndex index = CorpusIndex.open(output);
+    assertEquals(2, index.entries());
+    assertTrue(index.contains("hunter2"));
+    assertFalse(index.contains("hunter3"));
+  }
+
+  @Test
+  void shouldRejectMalformedHash() throws Exception {
+    Path input = Files.writeString(directory.resolve("hashes.txt"), "not a hash\n");
+
+    assertThrows(
+        IOException.class,
+        () -> CorpusIndexBuilder.build(input, directory.resolve("corpus.idx"), false, 1024));
+  }
+
+  @Test
+  void shouldRejectFileWithoutHeader() throws Exception {
+    Path file = Files.writeString(directory.resolve("corpus.idx"), "password\n");
+
+    assertThrows(IOException.class, () -> CorpusIndex.open(file));
+  }
+}
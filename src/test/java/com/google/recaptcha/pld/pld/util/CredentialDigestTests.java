@@ -0,0 +1,43 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class CredentialDigestTests {
+
+  private final CredentialDigest digest = new CredentialDigest();
+
+  @Test
+  void shouldBeStableWithinProcess() {
+    assertEquals(digest.digest("username", "password"), digest.digest("username", "password"));
+    assertEquals(32, digest.digest("username", "password").size());
+  }
+
+  @Test
+  void shouldSeparateFields() {
+    assertNotEquals(digest.digest("ab", "c"), digest.digest("a", "bc"));
+    assertNotEquals(digest.digest("username", "password"), digest.digest("password", "username"));
+  }
+
+  @Test
+  void shouldUseKeyPerInstance() {
+    assertNotEquals(
+        digest.digest("username", "password"),
+        new CredentialDigest().digest("username", "password"));
+  }
+}
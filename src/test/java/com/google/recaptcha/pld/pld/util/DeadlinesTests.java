@@ -0,0 +1,83 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Deadline;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+public class DeadlinesTests {
+
+  @Test
+  void shouldLeaveRequestsWithoutTimeoutUnboundedByDefault() {
+    PldEnvironment env = mock(PldEnvironment.class);
+    when(env.getMaxTimeoutMillis()).thenReturn(30_000L);
+
+    assertNull(Deadlines.fromTimeout(null, env));
+    assertTrue(Deadlines.fromTimeout(200L, env).timeRemaining(TimeUnit.MILLISECONDS) <= 200);
+
+    when(env.getDefaultTimeoutMillis()).thenReturn(5_000L);
+    long remaining = Deadlines.fromTimeout(null, env).timeRemaining(TimeUnit.MILLISECONDS);
+    assertTrue(remaining > 4_000 && remaining <= 5_000);
+  }
+
+  @Test
+  void shouldBoundBatchEntriesByTheEarlierDeadline() {
+    PldEnvironment env = mock(PldEnvironment.class);
+    when(env.getMaxTimeoutMillis()).thenReturn(30_000L);
+    Deadline batch = Deadline.after(1, TimeUnit.HOURS);
+
+    assertSame(batch, Deadlines.forEntry(null, batch, env));
+    assertTrue(Deadlines.forEntry(200L, batch, env).timeRemaining(TimeUnit.MILLISECONDS) <= 200);
+    Deadline soon = Deadline.after(10, TimeUnit.MILLISECONDS);
+    assertSame(soon, Deadlines.forEntry(200L, soon, env));
+  }
+
+  @Test
+  void shouldFailFuturesStillPendingAtTheDeadline() {
+    CompletableFuture<String> future = new CompletableFuture<>();
+
+    Deadlines.bound(
+        future, Deadline.after(10, TimeUnit.MILLISECONDS), MoreExecutors.directExecutor());
+
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(ResponseStatusException.class, e.getCause());
+  }
+
+  @Test
+  void shouldCancelTheTimerOnceTheFutureCompletes() {
+    int pending = Timers.pending();
+    CompletableFuture<String> future = new CompletableFuture<>();
+
+    Deadlines.bound(future, Deadline.after(1, TimeUnit.HOURS), MoreExecutors.directExecutor());
+    assertEquals(pending + 1, Timers.pending());
+    future.complete("done");
+
+    assertEquals(pending, Timers.pending());
+  }
+}
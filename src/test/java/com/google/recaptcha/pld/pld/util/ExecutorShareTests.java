@@ -0,0 +1,96 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ExecutorShareTests {
+
+  private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  void shutdownPool() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  void shouldRejectBeyondPermitsWithoutStarvingOtherShares() throws Exception {
+    ExecutorShare busy = new ExecutorShare(pool, 2, "busy", new SimpleMeterRegistry());
+    ExecutorShare quiet = new ExecutorShare(pool, 2, "quiet", new SimpleMeterRegistry());
+    CountDownLatch release = new CountDownLatch(1);
+    busy.execute(() -> await(release));
+    busy.execute(() -> await(release));
+
+    assertThrows(RejectedExecutionException.class, () -> busy.execute(() -> {}));
+    assertEquals("ran", quiet.submit(() -> "ran").get());
+    assertEquals(2, busy.inFlight());
+
+    release.countDown();
+    Future<String> next = submitWhenFree(busy);
+    assertEquals("ran again", next.get());
+  }
+
+  @Test
+  void shouldReleasePermitWhenPoolRejects() {
+    ExecutorService closed = Executors.newSingleThreadExecutor();
+    closed.shutdown();
+    ExecutorShare share = new ExecutorShare(closed, 1, "tenant", new SimpleMeterRegistry());
+
+    assertThrows(RejectedExecutionException.class, () -> share.execute(() -> {}));
+    assertEquals(0, share.inFlight());
+  }
+
+  @Test
+  void shouldLeavePoolRunningOnShutdown() {
+    ExecutorShare share = new ExecutorShare(pool, 1, "tenant", new SimpleMeterRegistry());
+    share.shutdown();
+    assertFalse(pool.isShutdown());
+  }
+
+  @Test
+  void shouldSizePermitsFromShareOfThreadsAndQueue() {
+    assertEquals(50, ExecutorShare.permits(0.5, 4, 96));
+    assertEquals(34, ExecutorShare.permits(1.0 / 3, 4, 96));
+    assertEquals(1, ExecutorShare.permits(0.001, 1, 0));
+  }
+
+  private static Future<String> submitWhenFree(ExecutorShare share) throws InterruptedException {
+    while (true) {
+      try {
+        return share.submit(() -> "ran again");
+      } catch (RejectedExecutionException e) {
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyTrackerTests {
+
+  @Test
+  void shouldWaitForFullWindow() {
+    LatencyTracker tracker = new LatencyTracker(16, 0.5);
+    for (int i = 0; i < 15; i++) {
+      tracker.record(i);
+    }
+    assertEquals(-1, tracker.percentileNanos());
+  }
+
+  @Test
+  void shouldEstimatePercentileOfRecentSamples() {
+    LatencyTracker tracker = new LatencyTracker(80, 0.9);
+    for (int i = 1; i <= 80; i++) {
+      tracker.record(i);
+    }
+    assertEquals(72, tracker.percentileNanos());
+
+    for (int i = 1; i <= 80; i++) {
+      tracker.record(1000 + i);
+    }
+    assertEquals(1072, tracker.percentileNanos());
+  }
+}
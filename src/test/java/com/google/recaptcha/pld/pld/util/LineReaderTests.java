@@ -0,0 +1,74 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LineReaderTests {
+
+  @TempDir private Path directory;
+
+  @Test
+  void shouldReadLinesAcrossBuffers() throws Exception {
+    Path file = write("first line\r\nsécond\n\nlast");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      LineReader reader = new LineReader(channel, 0, 4);
+
+      assertEquals("first line", reader.next());
+      assertEquals(12, reader.position());
+      assertEquals("sécond", reader.next());
+      assertEquals("", reader.next());
+      assertEquals("last", reader.next());
+      assertEquals(Files.size(file), reader.position());
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  void shouldResumeFromPosition() throws Exception {
+    Path file = write("one\ntwo\nthree\n");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      LineReader reader = new LineReader(channel, 4, 3);
+
+      assertEquals("two", reader.next());
+      assertEquals("three", reader.next());
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  void shouldRejectOverlongLine() throws Exception {
+    Path file = write("x".repeat(LineReader.MAX_LINE_BYTES + 1));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      LineReader reader = new LineReader(channel, 0, 1 << 16);
+
+      assertThrows(IOException.class, reader::next);
+    }
+  }
+
+  private Path write(String content) throws IOException {
+    return Files.writeString(directory.resolve("lines.txt"), content, StandardCharsets.UTF_8);
+  }
+}
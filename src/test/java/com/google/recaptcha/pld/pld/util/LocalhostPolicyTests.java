@@ -15,12 +15,22 @@ package com.google.recaptcha.pld.pld.util;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.recaptcha.pld.pld.model.Messages;
+import io.grpc.Attributes;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import java.net.InetSocketAddress;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -48,6 +58,10 @@ public class LocalhostPolicyTests {
 
   @Mock private HttpServletResponse response;
 
+  @Mock private ServerCall<Object, Object> call;
+
+  @Mock private ServerCallHandler<Object, Object> next;
+
   @Test
   void shouldAllowHttps() throws Exception {
     when(env.shouldAcceptRemoteConnections()).thenReturn(true);
@@ -84,4 +98,32 @@ public class LocalhostPolicyTests {
     verify(response)
         .sendError(HttpServletResponse.SC_FORBIDDEN, Messages.LOCALHOST_OR_HTTPS_ONLY_MESSAGE);
   }
+
+  @Test
+  void shouldDenyRemoteGrpcCallWithoutHttps() {
+    when(env.shouldAcceptRemoteConnections()).thenReturn(false);
+    when(call.getAttributes())
+        .thenReturn(
+            Attributes.newBuilder()
+                .set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, new InetSocketAddress("8.8.8.8", 443))
+                .build());
+
+    policy.interceptCall(call, new Metadata(), next);
+    verify(call).close(argThat(status -> status.getCode() == Status.Code.PERMISSION_DENIED), any());
+    verify(next, never()).startCall(any(), any());
+  }
+
+  @Test
+  void shouldAllowLocalhostGrpcCall() {
+    when(env.shouldAcceptRemoteConnections()).thenReturn(false);
+    when(call.getAttributes())
+        .thenReturn(
+            Attributes.newBuilder()
+                .set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, new InetSocketAddress("127.0.0.1", 443))
+                .build());
+    Metadata headers = new Metadata();
+
+    policy.interceptCall(call, headers, next);
+    verify(next).startCall(call, headers);
+  }
 }
@@ -0,0 +1,87 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.recaptcha.pld.pld.model.Messages;
+import java.net.InetSocketAddress;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class LocalhostWebFilterTests {
+  @Mock private PldEnvironment env;
+
+  @Mock private WebFilterChain chain;
+
+  private LocalhostWebFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    filter = new LocalhostWebFilter(env, "/actuator");
+  }
+
+  @Test
+  void shouldAllowLocalhost() {
+    when(env.shouldAcceptRemoteConnections()).thenReturn(false);
+    MockServerWebExchange exchange = exchange("/createAssessment", "127.0.0.1");
+    when(chain.filter(exchange)).thenReturn(Mono.empty());
+
+    filter.filter(exchange, chain).block();
+    verify(chain).filter(exchange);
+  }
+
+  @Test
+  void shouldAllowActuatorFromRemote() {
+    when(env.shouldAcceptRemoteConnections()).thenReturn(false);
+    MockServerWebExchange exchange = exchange("/actuator/health/readiness", "8.8.8.8");
+    when(chain.filter(exchange)).thenReturn(Mono.empty());
+
+    filter.filter(exchange, chain).block();
+    verify(chain).filter(exchange);
+  }
+
+  @Test
+  void shouldDenyRemoteWithoutHttps() {
+    when(env.shouldAcceptRemoteConnections()).thenReturn(false);
+
+    ResponseStatusException e =
+        assertThrows(
+            ResponseStatusException.class,
+            () -> filter.filter(exchange("/createAssessment", "8.8.8.8"), chain).block());
+    assertEquals(HttpStatus.FORBIDDEN, e.getStatusCode());
+    assertEquals(Messages.LOCALHOST_OR_HTTPS_ONLY_MESSAGE, e.getReason());
+    verify(chain, never()).filter(any());
+  }
+
+  private static MockServerWebExchange exchange(String path, String remoteAddress) {
+    return MockServerWebExchange.from(
+        MockServerHttpRequest.post(path).remoteAddress(new InetSocketAddress(remoteAddress, 443)));
+  }
+}
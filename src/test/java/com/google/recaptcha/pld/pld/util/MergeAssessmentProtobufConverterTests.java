@@ -0,0 +1,111 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentRequest;
+import com.google.recaptcha.pld.pld.model.MergeAssessmentResponse;
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import com.google.recaptcha.pld.v1.Credentials;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import com.google.recaptchaenterprise.v1.TokenProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+public class MergeAssessmentProtobufConverterTests {
+
+  private final MergeAssessmentProtobufConverter converter =
+      new MergeAssessmentProtobufConverter(new SimpleMeterRegistry());
+
+  private final Assessment assessment =
+      Assessment.newBuilder()
+          .setEvent(Event.newBuilder().setSiteKey("site-key").setToken("token"))
+          .build();
+
+  @Test
+  void shouldOnlyHandleMergeAssessmentBodies() {
+    MediaType protobuf = ProtobufHttpMessageConverter.PROTOBUF;
+    assertTrue(converter.canRead(MergeAssessmentRequest.class, protobuf));
+    assertTrue(converter.canWrite(MergeAssessmentResponse.class, protobuf));
+    assertFalse(converter.canRead(MergeAssessmentResponse.class, protobuf));
+    assertFalse(converter.canWrite(MergeAssessmentRequest.class, protobuf));
+    assertFalse(converter.canRead(MergeAssessmentRequest.class, MediaType.APPLICATION_JSON));
+  }
+
+  @Test
+  void shouldReadRequest() throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    com.google.recaptcha.pld.v1.MergeAssessmentRequest.newBuilder()
+        .setCredentials(Credentials.newBuilder().setUsername("username").setPassword("password"))
+        .setAssessment(assessment)
+        .build()
+        .writeTo(body);
+    // Unknown fields are skipped.
+    CodedOutputStream output = CodedOutputStream.newInstance(body);
+    output.writeString(15, "from a newer client");
+    output.flush();
+
+    MergeAssessmentRequest request =
+        (MergeAssessmentRequest)
+            converter.read(
+                MergeAssessmentRequest.class, new MockHttpInputMessage(body.toByteArray()));
+
+    assertEquals("username", request.getCredentials().getUsername());
+    assertEquals("password", request.getCredentials().getPassword());
+    assertEquals(assessment, request.getAssessment());
+  }
+
+  @Test
+  void shouldRejectMalformedRequest() {
+    assertThrows(
+        HttpMessageNotReadableException.class,
+        () ->
+            converter.read(
+                MergeAssessmentRequest.class, new MockHttpInputMessage(new byte[] {0x12, 0x7f})));
+  }
+
+  @Test
+  void shouldWriteResponse() throws IOException {
+    Assessment answered =
+        assessment.toBuilder()
+            .setTokenProperties(TokenProperties.newBuilder().setValid(true))
+            .build();
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(
+        new MergeAssessmentResponse(answered, PldLeakedStatus.LEAKED),
+        ProtobufHttpMessageConverter.PROTOBUF,
+        output);
+
+    byte[] body = output.getBodyAsBytes();
+    assertEquals(body.length, output.getHeaders().getContentLength());
+    com.google.recaptcha.pld.v1.MergeAssessmentResponse response =
+        com.google.recaptcha.pld.v1.MergeAssessmentResponse.parseFrom(body);
+    assertEquals(answered, response.getAssessment());
+    assertEquals(com.google.recaptcha.pld.v1.PldLeakedStatus.LEAKED, response.getPldLeakedStatus());
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.recaptcha.pld.pld.model.PldLeakedStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+public class PldMetricsTests {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final PldMetrics metrics = new PldMetrics(registry);
+
+  @Test
+  void shouldTimeStageUntilCompletion() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+
+    assertSame(pending, metrics.timeStage(PldMetrics.HASH_STAGE, () -> pending));
+    assertEquals(0, registry.find(PldMetrics.STAGE_TIMER).timers().size());
+
+    pending.complete("done");
+    assertEquals(
+        1,
+        registry
+            .get(PldMetrics.STAGE_TIMER)
+            .tags("stage", PldMetrics.HASH_STAGE, "outcome", "success")
+            .timer()
+            .count());
+  }
+
+  @Test
+  void shouldTimeFailedStages() {
+    metrics.timeStage(
+        PldMetrics.ASSESSMENT_STAGE,
+        () -> CompletableFuture.failedFuture(new IllegalStateException()));
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            metrics.timeStage(
+                PldMetrics.VERIFY_STAGE,
+                () -> {
+                  throw new IllegalStateException();
+                }));
+
+    for (String stage : new String[] {PldMetrics.ASSESSMENT_STAGE, PldMetrics.VERIFY_STAGE}) {
+      assertEquals(
+          1,
+          registry
+              .get(PldMetrics.STAGE_TIMER)
+              .tags("stage", stage, "outcome", "error")
+              .timer()
+              .count());
+    }
+  }
+
+  @Test
+  void shouldCountByTag() {
+    metrics.countLeakedStatus(PldLeakedStatus.LEAKED);
+    metrics.countLeakedStatus(PldLeakedStatus.LEAKED);
+    metrics.countLeakedStatus(PldLeakedStatus.NO_STATUS);
+    metrics.countRecaptchaCall("OK");
+
+    assertEquals(
+        2,
+        registry.get(PldMetrics.LEAKED_STATUS_COUNTER).tag("status", "LEAKED").counter().count());
+    assertEquals(
+        1,
+        registry
+            .get(PldMetrics.LEAKED_STATUS_COUNTER)
+            .tag("status", "NO_STATUS")
+            .counter()
+            .count());
+    assertEquals(
+        1, registry.get(PldMetrics.RECAPTCHA_CALLS_COUNTER).tag("code", "OK").counter().count());
+  }
+}
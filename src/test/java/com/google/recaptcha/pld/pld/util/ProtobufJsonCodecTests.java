@@ -0,0 +1,216 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.JsonFormat;
+import com.google.recaptchaenterprise.v1.Assessment;
+import com.google.recaptchaenterprise.v1.Event;
+import com.google.recaptchaenterprise.v1.RiskAnalysis;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.json.JsonFactory;
+
+public class ProtobufJsonCodecTests {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final JsonFormat.Printer PRINTER =
+      JsonFormat.printer().omittingInsignificantWhitespace();
+
+  @Test
+  void shouldMatchJsonFormatOnRandomAssessments() throws Exception {
+    Random random = new Random(42);
+    for (int i = 0; i < 200; i++) {
+      Assessment assessment = (Assessment) fill(Assessment.newBuilder(), random, 0).build();
+      String expected = PRINTER.print(assessment);
+
+      assertEquals(expected, write(assessment), "assessment " + i);
+      assertEquals(assessment, read(expected), "assessment " + i);
+    }
+  }
+
+  @Test
+  void shouldReadWhatJsonFormatAccepts() throws Exception {
+    Assessment assessment =
+        read(
+            """
+            {
+              "name": null,
+              "event": {"site_key": "site-key", "userIpAddress": "192.0.2.1"},
+              "riskAnalysis": {"score": "0.5", "reasons": ["AUTOMATION", 3]},
+              "tokenProperties": {"valid": "true", "createTime": "2024-01-02T03:04:05.678Z"},
+              "privatePasswordLeakVerification": {
+                "lookupHashPrefix": "-_8=",
+                "encryptedLeakMatchPrefixes": ["AQI=", "AwQ"]
+              }
+            }
+            """);
+
+    Assessment.Builder expected = Assessment.newBuilder();
+    JsonFormat.parser()
+        .merge(
+            """
+            {
+              "event": {"siteKey": "site-key", "userIpAddress": "192.0.2.1"},
+              "riskAnalysis": {"score": 0.5, "reasons": ["AUTOMATION", 3]},
+              "tokenProperties": {"valid": true, "createTime": "2024-01-02T03:04:05.678Z"},
+              "privatePasswordLeakVerification": {
+                "lookupHashPrefix": "+/8=",
+                "encryptedLeakMatchPrefixes": ["AQI=", "AwQ="]
+              }
+            }
+            """,
+            expected);
+    assertEquals(expected.build(), assessment);
+    assertEquals(
+        ByteString.copyFrom(new byte[] {(byte) 0xFB, (byte) 0xFF}),
+        assessment.getPrivatePasswordLeakVerification().getLookupHashPrefix());
+  }
+
+  @Test
+  void shouldWriteNonFiniteScoresAsStrings() throws Exception {
+    Assessment assessment =
+        Assessment.newBuilder()
+            .setRiskAnalysis(RiskAnalysis.newBuilder().setScore(Float.NaN))
+            .build();
+
+    assertEquals(PRINTER.print(assessment), write(assessment));
+    assertEquals(assessment, read(write(assessment)));
+  }
+
+  @Test
+  void shouldRejectInvalidInput() {
+    for (String json :
+        List.of(
+            "{\"noSuchField\": 1}",
+            "[]",
+            "{\"event\": \"site-key\"}",
+            "{\"riskAnalysis\": {\"reasons\": [\"NO_SUCH_REASON\"]}}",
+            "{\"riskAnalysis\": {\"reasons\": \"AUTOMATION\"}}",
+            "{\"riskAnalysis\": {\"score\": \"high\"}}",
+            "{\"tokenProperties\": {\"createTime\": \"yesterday\"}}",
+            "{\"privatePasswordLeakVerification\": {\"lookupHashPrefix\": \"not base64!\"}}")) {
+      assertThrows(InvalidProtocolBufferException.class, () -> read(json), json);
+    }
+  }
+
+  @Test
+  void shouldLeaveParserOnClosingToken() throws Exception {
+    Assessment assessment =
+        Assessment.newBuilder().setEvent(Event.newBuilder().setToken("token")).build();
+    try (JsonParser parser =
+        JSON_FACTORY.createParser(
+            ObjectReadContext.empty(), "[" + PRINTER.print(assessment) + ", 7]")) {
+      parser.nextToken();
+      parser.nextToken();
+      Assessment.Builder builder = Assessment.newBuilder();
+      ProtobufJsonCodec.merge(parser, builder);
+
+      assertEquals(assessment, builder.build());
+      parser.nextToken();
+      assertEquals(7, parser.getIntValue());
+    }
+  }
+
+  private static String write(Message message) throws InvalidProtocolBufferException {
+    StringWriter json = new StringWriter();
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(ObjectWriteContext.empty(), json)) {
+      ProtobufJsonCodec.write(message, generator);
+    }
+    return json.toString();
+  }
+
+  private static Assessment read(String json) throws InvalidProtocolBufferException {
+    try (JsonParser parser = JSON_FACTORY.createParser(ObjectReadContext.empty(), json)) {
+      parser.nextToken();
+      Assessment.Builder builder = Assessment.newBuilder();
+      ProtobufJsonCodec.merge(parser, builder);
+      return builder.build();
+    }
+  }
+
+  /**
+   * Sets about half of the fields of {@code builder} to random values, nested messages included.
+   * Any fields are left unset, as neither mapping can print them without a type registry.
+   */
+  private static Message.Builder fill(Message.Builder builder, Random random, int depth) {
+    for (FieldDescriptor field : builder.getDescriptorForType().getFields()) {
+      boolean message = field.getJavaType() == FieldDescriptor.JavaType.MESSAGE;
+      if (random.nextBoolean()
+          || message && depth > 4
+          || message && field.getMessageType().getFullName().equals("google.protobuf.Any")) {
+        continue;
+      }
+      int count = field.isRepeated() ? random.nextInt(3) : 1;
+      for (int i = 0; i < count; i++) {
+        Object value = randomValue(builder, field, random, depth);
+        if (field.isRepeated()) {
+          builder.addRepeatedField(field, value);
+        } else {
+          builder.setField(field, value);
+        }
+      }
+    }
+    return builder;
+  }
+
+  private static Object randomValue(
+      Message.Builder builder, FieldDescriptor field, Random random, int depth) {
+    switch (field.getJavaType()) {
+      case INT:
+        return random.nextInt();
+      case LONG:
+        return random.nextLong();
+      case FLOAT:
+        return random.nextFloat();
+      case DOUBLE:
+        return random.nextDouble() * 1e6;
+      case BOOLEAN:
+        return random.nextBoolean();
+      case STRING:
+        return "value \"" + random.nextInt(1000) + "\" é☃";
+      case BYTE_STRING:
+        byte[] bytes = new byte[random.nextInt(40)];
+        random.nextBytes(bytes);
+        return ByteString.copyFrom(bytes);
+      case ENUM:
+        List<EnumValueDescriptor> values = field.getEnumType().getValues();
+        return values.get(random.nextInt(values.size()));
+      case MESSAGE:
+      default:
+        if (field.getMessageType().equals(Timestamp.getDescriptor())) {
+          return Timestamp.newBuilder()
+              .setSeconds(random.nextInt(Integer.MAX_VALUE))
+              .setNanos(random.nextInt(1000) * 1_000_000)
+              .build();
+        }
+        return fill(builder.newBuilderForField(field), random, depth + 1).build();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.google.recaptcha.pld.pld.services.TenantRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(
+    properties = {
+      "PASSWORD_CHECK_THREAD_POOL=5",
+      "RECAPTCHA_PROJECT_ID=test-proj-id",
+      "GOOGLE_CLOUD_API_KEY=test-api-key",
+      "pld.recaptchacontext.runinit=true",
+      "pld.backend=stub",
+      "pld.tenants=checkout",
+      "pld.tenant.checkout.projectId=checkout-proj-id",
+      "pld.tenant.checkout.apiKey=checkout-api-key",
+      "pld.ratelimit.consumer.perSecond=0.01",
+      "pld.ratelimit.consumer.burst=2",
+    })
+public class RateLimitPolicyTests {
+
+  @Autowired private MockMvc mockMvc;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Test
+  void shouldLimitTenantBeforeReadingBody() throws Exception {
+    mockMvc.perform(createAssessment("checkout")).andExpect(request().asyncStarted());
+    mockMvc.perform(createAssessment("checkout")).andExpect(request().asyncStarted());
+
+    // The body is invalid, so this request is only answered with a 429 if the body is never read.
+    mockMvc
+        .perform(
+            post("/createAssessment")
+                .header(TenantRegistry.TENANT_HEADER, "checkout")
+                .contentType("application/json")
+                .content("{}"))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "100"));
+    mockMvc.perform(createAssessment("default")).andExpect(request().asyncStarted());
+
+    assertEquals(
+        1.0,
+        meterRegistry
+            .get(PldMetrics.RATE_LIMITED_COUNTER)
+            .tags("limit", RateLimits.CONSUMER, PldMetrics.TENANT_TAG, "checkout")
+            .counter()
+            .count());
+  }
+
+  private static MockHttpServletRequestBuilder createAssessment(String tenant) {
+    return post("/tenants/" + tenant + "/createAssessment")
+        .contentType("application/json")
+        .content(
+            """
+            {"username": "username", "password": "password"}
+            """);
+  }
+}
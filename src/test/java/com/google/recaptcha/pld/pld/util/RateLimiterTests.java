@@ -0,0 +1,103 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTests {
+
+  private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+  @Test
+  void shouldAllowBurstThenRate() {
+    RateLimiter limiter = new RateLimiter(10, 3, 64, now::get);
+
+    assertEquals(0, limiter.acquire(1));
+    assertEquals(0, limiter.acquire(1));
+    assertEquals(0, limiter.acquire(1));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.acquire(1));
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(0, limiter.acquire(1));
+    assertTrue(limiter.acquire(1) > 0);
+  }
+
+  @Test
+  void shouldNotTakeTokenWhenRejected() {
+    RateLimiter limiter = new RateLimiter(1, 1, 64, now::get);
+    assertEquals(0, limiter.acquire(7));
+    for (int i = 0; i < 10; i++) {
+      assertTrue(limiter.acquire(7) > 0);
+    }
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(0, limiter.acquire(7));
+  }
+
+  @Test
+  void shouldKeepKeysApart() {
+    RateLimiter limiter = new RateLimiter(1, 1, 1 << 16, now::get);
+    int allowed = 0;
+    for (long key = 0; key < 100; key++) {
+      if (limiter.acquire(key) == 0) {
+        allowed++;
+      }
+    }
+    // A few keys may share a slot, but nearly all get their own bucket.
+    assertTrue(allowed >= 95, "allowed " + allowed);
+  }
+
+  @Test
+  void shouldBoundMemoryBySlots() {
+    assertEquals(1024, new RateLimiter(1, 1, 1000, now::get).slots());
+    assertEquals(2, new RateLimiter(1, 1, 1, now::get).slots());
+  }
+
+  @Test
+  void shouldAllowExactlyBurstUnderContention() throws Exception {
+    RateLimiter limiter = new RateLimiter(1, 100, 64, now::get);
+    AtomicInteger allowed = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    for (int i = 0; i < 8; i++) {
+      pool.execute(
+          () -> {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              return;
+            }
+            for (int j = 0; j < 100; j++) {
+              if (limiter.acquire(42) == 0) {
+                allowed.incrementAndGet();
+              }
+            }
+          });
+    }
+    start.countDown();
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    assertEquals(100, allowed.get());
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class RateLimitsTests {
+
+  @Test
+  void shouldKeySourceByPeerAddressByDefault() {
+    RateLimits limits = new RateLimits(null, null, null, null);
+
+    assertEquals("10.0.0.1", limits.sourceKey("10.0.0.1", List.of("203.0.113.7")));
+  }
+
+  @Test
+  void shouldKeySourceByEntryTheOutermostTrustedProxyAdded() {
+    RateLimits oneProxy = new RateLimits(null, null, null, null, 1);
+    RateLimits twoProxies = new RateLimits(null, null, null, null, 2);
+    // The client forged the first entry; the two proxies appended the rest.
+    List<String> forwardedFor = List.of("192.0.2.1, 203.0.113.7", "10.0.0.2");
+
+    assertEquals("10.0.0.2", oneProxy.sourceKey("10.0.0.1", forwardedFor));
+    assertEquals("203.0.113.7", twoProxies.sourceKey("10.0.0.1", forwardedFor));
+  }
+
+  @Test
+  void shouldFallBackToPeerAddressWithoutEnoughEntries() {
+    RateLimits limits = new RateLimits(null, null, null, null, 2);
+
+    assertEquals("10.0.0.1", limits.sourceKey("10.0.0.1", List.of("203.0.113.7")));
+    assertEquals("10.0.0.1", limits.sourceKey("10.0.0.1", List.of(" , ")));
+    assertEquals("10.0.0.1", limits.sourceKey("10.0.0.1", null));
+  }
+
+  @Test
+  void shouldLimitClientsBehindTheSameProxySeparately() {
+    RateLimits limits = new RateLimits(new RateLimiter(0.001, 1, 1 << 16), null, null, null, 1);
+
+    limits.checkSource("10.0.0.1", List.of("203.0.113.7"));
+    assertDoesNotThrow(() -> limits.checkSource("10.0.0.1", List.of("203.0.113.8")));
+    assertThrows(
+        RateLimitedException.class, () -> limits.checkSource("10.0.0.1", List.of("203.0.113.7")));
+  }
+}
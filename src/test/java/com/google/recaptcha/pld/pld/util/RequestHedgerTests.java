@@ -0,0 +1,145 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class RequestHedgerTests {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+  @Test
+  void shouldNotHedgeWhenDisabled() {
+    RequestHedger hedger = hedger(false, 1);
+    warmUp(hedger);
+
+    hedger.call(this::pendingAttempt);
+    assertEquals(1, attempts.size());
+  }
+
+  @Test
+  void shouldTakeFasterHedgeAndCancelFirstAttempt() throws Exception {
+    RequestHedger hedger = hedger(true, 1);
+    warmUp(hedger);
+
+    CompletableFuture<String> result = hedger.call(this::pendingAttempt);
+    awaitAttempts(2);
+    attempts.get(1).complete("hedge");
+
+    assertEquals("hedge", result.join());
+    assertTrue(attempts.get(0).isCancelled());
+    assertEquals(1.0, hedgeCount(PldMetrics.HEDGE_SENT));
+    assertEquals(1.0, hedgeCount(PldMetrics.HEDGE_WON));
+  }
+
+  @Test
+  void shouldFailOnlyOnceEveryAttemptFailed() throws Exception {
+    RequestHedger hedger = hedger(true, 1);
+    warmUp(hedger);
+
+    CompletableFuture<String> result = hedger.call(this::pendingAttempt);
+    awaitAttempts(2);
+    attempts.get(0).completeExceptionally(new IllegalStateException("first"));
+    assertFalse(result.isDone());
+    attempts.get(1).completeExceptionally(new IllegalStateException("hedge"));
+
+    // The hedger thread may still be attaching its callback to the hedge, so wait for the result.
+    assertEquals(
+        "hedge", assertThrows(CompletionException.class, result::join).getCause().getMessage());
+    assertTrue(result.isCompletedExceptionally());
+  }
+
+  @Test
+  void shouldStopHedgingWhenBudgetIsSpent() throws Exception {
+    RequestHedger hedger = hedger(true, 0);
+    warmUp(hedger);
+
+    CompletableFuture<String> result = hedger.call(this::pendingAttempt);
+    while (hedgeCount(PldMetrics.HEDGE_THROTTLED) == 0) {
+      Thread.sleep(1);
+    }
+    assertEquals(1, attempts.size());
+    attempts.get(0).complete("first");
+    assertEquals("first", result.join());
+  }
+
+  @Test
+  void shouldCancelHedgeTimerOnceFirstAttemptAnswers() {
+    RequestHedger hedger = hedger(true, 1, TimeUnit.HOURS.toMillis(1));
+    warmUp(hedger);
+    int pending = Timers.pending();
+
+    CompletableFuture<String> result = hedger.call(this::pendingAttempt);
+    assertEquals(pending + 1, Timers.pending());
+    attempts.get(0).complete("first");
+
+    assertEquals("first", result.join());
+    assertEquals(pending, Timers.pending());
+  }
+
+  private RequestHedger hedger(boolean enabled, int budgetMaxTokens) {
+    return hedger(enabled, budgetMaxTokens, 0);
+  }
+
+  private RequestHedger hedger(boolean enabled, int budgetMaxTokens, long minDelayMillis) {
+    PldEnvironment env = mock(PldEnvironment.class);
+    when(env.isHedgeEnabled()).thenReturn(enabled);
+    when(env.getHedgeMinDelayMillis()).thenReturn(minDelayMillis);
+    when(env.getHedgePercentile()).thenReturn(0.5);
+    when(env.getHedgeBudgetRatio()).thenReturn(0.0);
+    when(env.getHedgeBudgetMaxTokens()).thenReturn(budgetMaxTokens);
+    return new RequestHedger(env, new PldMetrics(meterRegistry), meterRegistry, Runnable::run);
+  }
+
+  private void warmUp(RequestHedger hedger) {
+    for (int i = 0; i < RequestHedger.WINDOW_SIZE; i++) {
+      hedger.call(() -> CompletableFuture.completedFuture("warm-up"));
+    }
+  }
+
+  private CompletableFuture<String> pendingAttempt() {
+    CompletableFuture<String> attempt = new CompletableFuture<>();
+    attempts.add(attempt);
+    return attempt;
+  }
+
+  private void awaitAttempts(int count) throws InterruptedException {
+    while (attempts.size() < count) {
+      Thread.sleep(1);
+    }
+  }
+
+  private double hedgeCount(String outcome) {
+    Counter counter =
+        meterRegistry.find(PldMetrics.HEDGES_COUNTER).tag("outcome", outcome).counter();
+    return counter == null ? 0 : counter.count();
+  }
+}
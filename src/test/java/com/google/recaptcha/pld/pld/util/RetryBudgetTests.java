@@ -0,0 +1,55 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class RetryBudgetTests {
+
+  @Test
+  void shouldStartFullAndRunDry() {
+    RetryBudget budget = new RetryBudget(0.1, 2);
+
+    assertTrue(budget.tryWithdraw());
+    assertTrue(budget.tryWithdraw());
+    assertFalse(budget.tryWithdraw());
+  }
+
+  @Test
+  void shouldRefillInProportionToCalls() {
+    RetryBudget budget = new RetryBudget(0.1, 2);
+    budget.tryWithdraw();
+    budget.tryWithdraw();
+
+    for (int i = 0; i < 9; i++) {
+      budget.deposit();
+    }
+    assertFalse(budget.tryWithdraw());
+    budget.deposit();
+    assertTrue(budget.tryWithdraw());
+  }
+
+  @Test
+  void shouldCapBalance() {
+    RetryBudget budget = new RetryBudget(0.5, 2);
+    for (int i = 0; i < 100; i++) {
+      budget.deposit();
+    }
+    assertEquals(2, budget.available());
+  }
+}
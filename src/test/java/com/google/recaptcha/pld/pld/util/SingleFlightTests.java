@@ -0,0 +1,194 @@
+// Copyright 2024 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.recaptcha.pld.pld.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTests {
+
+  private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+  private final AtomicInteger calls = new AtomicInteger();
+
+  @Test
+  void shouldShareInFlightCalls() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+
+    CompletableFuture<String> first = singleFlight.execute("key", () -> call(pending));
+    CompletableFuture<String> second = singleFlight.execute("key", () -> call(pending));
+    CompletableFuture<String> other =
+        singleFlight.execute("other", () -> call(CompletableFuture.completedFuture("other")));
+
+    assertEquals(2, calls.get());
+    assertEquals("other", other.join());
+    pending.complete("value");
+    assertEquals("value", first.join());
+    assertEquals("value", second.join());
+    assertEquals(0, singleFlight.size());
+  }
+
+  @Test
+  void shouldForgetFailedCalls() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> failed = singleFlight.execute("key", () -> call(pending));
+    pending.completeExceptionally(new IllegalStateException("failed"));
+
+    assertThrows(CompletionException.class, failed::join);
+    assertEquals(0, singleFlight.size());
+    assertEquals(
+        "retried",
+        singleFlight
+            .execute("key", () -> call(CompletableFuture.completedFuture("retried")))
+            .join());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void shouldForgetCallsThatThrow() {
+    CompletableFuture<String> failed =
+        singleFlight.execute(
+            "key",
+            () -> {
+              throw new IllegalStateException("failed");
+            });
+
+    assertTrue(failed.isCompletedExceptionally());
+    assertEquals(0, singleFlight.size());
+  }
+
+  @Test
+  void shouldIsolateCallerCancellation() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> first = singleFlight.execute("key", () -> call(pending));
+    CompletableFuture<String> second = singleFlight.execute("key", () -> call(pending));
+
+    first.cancel(true);
+    assertFalse(pending.isCancelled());
+    assertEquals(1, singleFlight.size());
+
+    pending.complete("value");
+    assertEquals("value", second.join());
+    assertEquals(0, singleFlight.size());
+  }
+
+  @Test
+  void shouldCancelCallOnceEveryCallerCancels() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> first = singleFlight.execute("key", () -> call(pending));
+    CompletableFuture<String> second = singleFlight.execute("key", () -> call(pending));
+
+    first.cancel(true);
+    second.cancel(true);
+    assertTrue(pending.isCancelled());
+    assertEquals(0, singleFlight.size());
+
+    assertEquals(
+        "restarted",
+        singleFlight
+            .execute("key", () -> call(CompletableFuture.completedFuture("restarted")))
+            .join());
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  void shouldKeepCallForCallersStillWaitingWhenOneGivesUp() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> first = singleFlight.execute("key", () -> call(pending));
+    CompletableFuture<String> second = singleFlight.execute("key", () -> call(pending));
+
+    // As Deadlines.bound does when the first caller's deadline passes.
+    first.completeExceptionally(new IllegalStateException("deadline"));
+    assertFalse(pending.isDone());
+    assertFalse(second.isDone());
+
+    pending.complete("value");
+    assertEquals("value", second.join());
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  void shouldCancelCallOnceEveryCallerGivesUp() {
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> first = singleFlight.execute("key", () -> call(pending));
+    CompletableFuture<String> second = singleFlight.execute("key", () -> call(pending));
+
+    first.completeExceptionally(new IllegalStateException("deadline"));
+    second.cancel(true);
+
+    assertTrue(pending.isCancelled());
+    assertEquals(0, singleFlight.size());
+  }
+
+  @Test
+  void shouldNotLeakFlightsUnderConcurrentCallsAndCancellations() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<CompletableFuture<String>> pending = new CopyOnWriteArrayList<>();
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int seed = t;
+        workers.add(
+            executor.submit(
+                () -> {
+                  Random random = new Random(seed);
+                  for (int i = 0; i < 2_000; i++) {
+                    CompletableFuture<String> copy =
+                        singleFlight.execute(
+                            "key-" + random.nextInt(4),
+                            () -> {
+                              CompletableFuture<String> call = new CompletableFuture<>();
+                              pending.add(call);
+                              return call;
+                            });
+                    if (random.nextBoolean()) {
+                      copy.cancel(true);
+                    } else {
+                      copy.completeExceptionally(new IllegalStateException("deadline"));
+                    }
+                  }
+                }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(0, singleFlight.size());
+    assertTrue(pending.stream().allMatch(CompletableFuture::isCancelled));
+  }
+
+  private CompletableFuture<String> call(CompletableFuture<String> result) {
+    calls.incrementAndGet();
+    return result;
+  }
+}
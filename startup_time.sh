@@ -0,0 +1,87 @@
+#!/bin/bash
+
+# Copyright 2024 Google LLC
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     https://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Measures time to first successful request: from launching a command that
+# starts the service until, once /actuator/health/readiness reports the service
+# ready, POST /createAssessment first answers 200. Each run starts the service
+# afresh and stops it afterwards.
+#
+# Usage: ./startup_time.sh <command to start the service...>
+#
+#   ./startup_time.sh java -jar target/pld-service-0.0.1-SNAPSHOT-exec.jar \
+#     --pld.backend=stub
+#   ./startup_time.sh docker run --rm --network host \
+#     pld-native --pld.backend=stub
+#
+# RUNS (default 5) sets the number of runs, TIMEOUT_SECONDS (default 120) how
+# long one run may take.
+
+readonly CREATE_ASSESSMENT_URL='127.0.0.1:8080/createAssessment'
+readonly READINESS_URL='127.0.0.1:8080/actuator/health/readiness'
+readonly RUNS="${RUNS:-5}"
+readonly TIMEOUT_SECONDS="${TIMEOUT_SECONDS:-120}"
+
+if [[ $# -eq 0 ]]; then
+  echo "Usage: $0 <command to start the service...>" >&2
+  exit 2
+fi
+
+function now_millis() {
+  echo $(( $(date +%s%N) / 1000000 ))
+}
+
+function first_success_millis() {
+  local start=$(now_millis)
+  "$@" > /dev/null 2>&1 &
+  local pid=$!
+  local elapsed=""
+  local ready=""
+  while kill -0 "${pid}" 2> /dev/null; do
+    if [[ -z "${ready}" ]]; then
+      if [[ "$(curl -s -o /dev/null -w '%{response_code}' "${READINESS_URL}")" == "200" ]]; then
+        ready=1
+      fi
+    elif [[ "$(curl -s -o /dev/null -w '%{response_code}' \
+        -X POST -H "Content-Type: application/json" \
+        -d '{"username":"startupuser","password":"startuppassword"}' \
+        "${CREATE_ASSESSMENT_URL}")" == "200" ]]; then
+      elapsed=$(( $(now_millis) - start ))
+      break
+    fi
+    if (( $(now_millis) - start > TIMEOUT_SECONDS * 1000 )); then
+      break
+    fi
+    sleep 0.05
+  done
+  kill "${pid}" 2> /dev/null
+  wait "${pid}" 2> /dev/null
+  if [[ -z "${elapsed}" ]]; then
+    echo "Service did not answer within ${TIMEOUT_SECONDS}s or exited" >&2
+    return 1
+  fi
+  echo "${elapsed}"
+}
+
+results=()
+for (( run = 1; run <= RUNS; run++ )); do
+  millis=$(first_success_millis "$@") || exit 1
+  echo "run ${run}: ${millis} ms"
+  results+=("${millis}")
+  # Let the port close before the next run.
+  sleep 1
+done
+sorted=($(printf '%s\n' "${results[@]}" | sort -n))
+echo "median: ${sorted[$(( RUNS / 2 ))]} ms"
@@ -99,7 +99,7 @@ class TestMergeAssessment(unittest.TestCase):
     self.assertEqual(response.status_code, HTTPStatus.OK)
     response_json = response.json()
     self.assertEqual(response_json["pldLeakedStatus"], "LEAKED")
-    response_assessment = json_format.Parse(
+    response_assessment = json_format.ParseDict(
         response_json["assessment"], Assessment()._pb
     )
     self.assertEqual(response_assessment.token_properties.valid, False)
@@ -119,7 +119,7 @@ class TestMergeAssessment(unittest.TestCase):
     self.assertEqual(response.status_code, HTTPStatus.OK)
     response_json = response.json()
     self.assertEqual(response_json["pldLeakedStatus"], "NO_STATUS")
-    response_assessment = json_format.Parse(
+    response_assessment = json_format.ParseDict(
         response_json["assessment"], Assessment()._pb
     )
     self.assertEqual(response_assessment.token_properties.valid, False)
@@ -139,7 +139,7 @@ class TestMergeAssessment(unittest.TestCase):
     )
     self.assertEqual(response.status_code, HTTPStatus.OK)
     response_json = response.json()
-    response_assessment = json_format.Parse(
+    response_assessment = json_format.ParseDict(
         response_json["assessment"], Assessment()._pb
     )
     self.assertEqual(response_assessment.token_properties.valid, False)